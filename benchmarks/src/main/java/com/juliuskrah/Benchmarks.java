@@ -0,0 +1,35 @@
+package com.juliuskrah;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the options of the JMH command line. Results are
+ * written to {@code jmh-result.json} unless {@code -rf} and {@code -rff} say
+ * otherwise, so runs can be compared for regressions. Run with
+ * {@code java -jar benchmarks/target/benchmarks.jar [jmh options] [regexp]}
+ *
+ * @author Julius Krah
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws CommandLineOptionException, IOException, RunnerException {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList()) {
+            // the JMH main prints help and lists benchmarks
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        final Options options = new OptionsBuilder().parent(commandLine)
+                .resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(commandLine.getResult().orElse("jmh-result.json")).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,72 @@
+package com.juliuskrah;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vavr.collection.HashMap;
+
+/**
+ * Round trips of commands of the built-in CRDTs through {@link BinaryCodec}. The
+ * codec encodes on one output, so the IDs of the command are in the dictionary
+ * as they are on a connection
+ *
+ * @author Julius Krah
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({ "REGISTER", "SET", "EDGE", "RGA_ADD", "RGA_REMOVE" })
+    String command;
+    CRDTCommand value;
+    BinaryCodec codec;
+    BinaryOutput out;
+    BinaryInput in;
+
+    @Setup
+    public void setUp() {
+        final VectorClock clock = new VectorClock("ND-1", HashMap.of("ND-1", 1_204L, "ND-2", 87L, "ND-3", 3L));
+        switch (command) {
+        case "REGISTER":
+            value = new LWWRegister.SetCommand<>("BM-1", "STROKE_LEFT", clock);
+            break;
+        case "SET":
+            value = new LWWElementSet.SetCommand<>("BM-2", 1_000, clock, 1);
+            break;
+        case "EDGE":
+            value = new LWWElementGraph.AddEdgeCommand<>("BM-3", "julius", "krah", clock);
+            break;
+        case "RGA_ADD":
+            value = new RGA.AddRightCommand<>("BM-4", clock, "STROKE_UP", clock.increment());
+            break;
+        default:
+            value = new RGA.RemoveCommand<>("BM-4", clock);
+        }
+        value.stamp(new Dot("ND-1", 1_205));
+        codec = BinaryCodec.ofDefault();
+        out = new BinaryOutput();
+        in = new BinaryInput();
+    }
+
+    @Benchmark
+    public Object binary() {
+        out.reset();
+        codec.encode(value, out);
+        return codec.decode(in.wrap(out.toByteArray()));
+    }
+}
@@ -0,0 +1,111 @@
+package com.juliuskrah;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Latency and throughput between two stores of another process. A server store
+ * echoes every value written to the register {@code BM-PING} into the register
+ * {@code BM-PONG}. Latency is the time until a value written to the ping
+ * register comes back; throughput is the number of set additions the server
+ * applied per second, confirmed by an echo after a batch. Subclasses connect the
+ * stores
+ *
+ * @author Julius Krah
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class EchoBenchmark {
+    private static final int BATCH = 1_000;
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    LWWRegister<String> ping;
+    LWWRegister<String> pong;
+    LWWElementSet<Integer> set;
+    int next;
+
+    /**
+     * Creates the registers on the server store and echoes pings
+     *
+     * @param <S>    store type
+     * @param server the server store
+     * @return the server store
+     */
+    static <S extends CRDTStore> S serve(S server) {
+        final LWWRegister<String> ping = server.createLWWRegister("BM-PING");
+        final LWWRegister<String> pong = server.createLWWRegister("BM-PONG");
+        Flux.from(ping).subscribe(command -> {
+            final String value = ping.get();
+            if (value != null && !value.equals(pong.get())) {
+                pong.set(value);
+            }
+        });
+        return server;
+    }
+
+    /**
+     * Waits for the registers of the server on the client store
+     *
+     * @param client the client store, connected to the server
+     */
+    void join(CRDTStore client) throws InterruptedException {
+        final long deadline = System.nanoTime() + TIMEOUT;
+        while (client.findLWWRegister("BM-PING").isEmpty() || client.findLWWRegister("BM-PONG").isEmpty()) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("Server registers were not replicated");
+            }
+            Thread.sleep(10);
+        }
+        ping = client.<String>findLWWRegister("BM-PING").get();
+        pong = client.<String>findLWWRegister("BM-PONG").get();
+        set = client.createLWWElementSet("BM-SET");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency() {
+        echo("PING-" + ++next);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public void throughput() {
+        for (int i = 0; i < BATCH; i++) {
+            set.add(++next);
+        }
+        echo("DONE-" + next);
+    }
+
+    /**
+     * Commands of one connection are applied in order, so the echo also confirms
+     * every write sent before the ping
+     */
+    private void echo(String value) {
+        ping.set(value);
+        final long deadline = System.nanoTime() + TIMEOUT;
+        while (!value.equals(pong.get())) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("Ping " + value + " was not echoed");
+            }
+            // the loops of the stores need the processor on a single-core host
+            Thread.yield();
+        }
+    }
+}
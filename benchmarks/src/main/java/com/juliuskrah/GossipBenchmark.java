@@ -0,0 +1,81 @@
+package com.juliuskrah;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time until the members of a {@link Gossip} cluster converge. Every node
+ * writes to its replica of a shared LWW-Element-Set, then all nodes run rounds
+ * in lock-step until their trees are equal. Member selection is seeded, so
+ * every invocation runs the same rounds
+ *
+ * @author Julius Krah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GossipBenchmark {
+    private static final int MAX_ROUNDS = 1_000;
+
+    @Param({ "10", "100" })
+    int nodes;
+    @Param({ "2" })
+    int fanout;
+    List<InMemoryCRDTStore> stores;
+    List<Gossip> gossips;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        final Random random = new Random(42L);
+        stores = new ArrayList<>();
+        gossips = new ArrayList<>();
+        for (int node = 0; node < nodes; node++) {
+            final InMemoryCRDTStore store = new InMemoryCRDTStore("ND-" + node);
+            stores.add(store);
+            gossips.add(new Gossip(store, fanout, random));
+            store.<Integer>createLWWElementSet("BM-SET").add(node);
+        }
+        for (Gossip gossip : gossips) {
+            for (InMemoryCRDTStore store : stores) {
+                gossip.join(store);
+            }
+        }
+    }
+
+    @Benchmark
+    public long converge() {
+        long messages = 0L;
+        for (int rounds = 0; !converged(); rounds++) {
+            if (rounds == MAX_ROUNDS) {
+                throw new IllegalStateException("No convergence after " + MAX_ROUNDS + " rounds");
+            }
+            for (Gossip gossip : gossips) {
+                messages += gossip.round();
+            }
+        }
+        return messages;
+    }
+
+    private boolean converged() {
+        final long hash = stores.get(0).merkleTree().getRootHash();
+        return stores.stream().allMatch(store -> store.merkleTree().getRootHash() == hash);
+    }
+}
@@ -0,0 +1,72 @@
+package com.juliuskrah;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Local writes of {@link LWWElementGraph} by the number of vertices. The graph
+ * is a path, each vertex has an edge to the next. Removing a vertex removes its
+ * edges too, so it is measured together with adding the vertex and its edge back
+ *
+ * @author Julius Krah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LWWElementGraphBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    int size;
+    LWWElementGraph<Integer> graph;
+    int next;
+
+    @Setup
+    public void setUp() {
+        graph = new LWWElementGraph<>("ND-0", "BM-GRAPH");
+        for (int vertex = 0; vertex < size; vertex++) {
+            graph.addVertex(vertex);
+        }
+        for (int vertex = 1; vertex < size; vertex++) {
+            graph.addEdge(vertex - 1, vertex);
+        }
+    }
+
+    @Benchmark
+    public void addVertex() {
+        graph.addVertex(next++ % size);
+    }
+
+    @Benchmark
+    public boolean addEdge() {
+        final int vertex = next++ % (size - 1);
+        return graph.addEdge(vertex, vertex + 1);
+    }
+
+    @Benchmark
+    public void removeEdge() {
+        final int vertex = next++ % (size - 1);
+        graph.removeEdge(vertex, vertex + 1);
+        graph.addEdge(vertex, vertex + 1);
+    }
+
+    @Benchmark
+    public void removeVertex() {
+        final int vertex = next++ % (size - 1);
+        graph.removeVertex(vertex);
+        graph.addVertex(vertex);
+        graph.addEdge(vertex, vertex + 1);
+    }
+}
@@ -0,0 +1,52 @@
+package com.juliuskrah;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Local writes of {@link LWWElementSet} by the number of elements. Writes cycle
+ * through the elements already in the set, so its size stays the same
+ *
+ * @author Julius Krah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LWWElementSetBenchmark {
+    @Param({ "1000", "100000", "1000000" })
+    int size;
+    LWWElementSet<Integer> set;
+    int next;
+
+    @Setup
+    public void setUp() {
+        set = new LWWElementSet<>("ND-0", "BM-SET");
+        for (int element = 0; element < size; element++) {
+            set.add(element);
+        }
+    }
+
+    @Benchmark
+    public void add() {
+        set.add(next++ % size);
+    }
+
+    @Benchmark
+    public void remove() {
+        set.remove(next++ % size);
+    }
+}
@@ -0,0 +1,32 @@
+package com.juliuskrah;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Latency and throughput of {@link NetworkCRDTStore} over loopback
+ *
+ * @author Julius Krah
+ */
+public class NetworkBenchmark extends EchoBenchmark {
+    NetworkCRDTStore server;
+    NetworkCRDTStore client;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        server = serve(new NetworkCRDTStore("BM-server"));
+        final InetSocketAddress address = server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = new NetworkCRDTStore("BM-client");
+        client.connect(address);
+        join(client);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+}
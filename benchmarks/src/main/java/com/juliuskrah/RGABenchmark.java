@@ -0,0 +1,83 @@
+package com.juliuskrah;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Operations of {@link RGA} by the number of elements. Inserts go to the head
+ * of the list and grow it while they are measured. Iterating reads each index
+ * with {@link RGA#get(int)}, which walks the list from the start, so it is only
+ * run up to 10<sup>4</sup> elements
+ *
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RGABenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Large {
+        @Param({ "1000", "10000", "100000", "1000000" })
+        int size;
+        RGA<Integer> rga;
+
+        @Setup
+        public void setUp() {
+            rga = filled(size);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Small {
+        @Param({ "1000", "10000" })
+        int size;
+        RGA<Integer> rga;
+
+        @Setup
+        public void setUp() {
+            rga = filled(size);
+        }
+    }
+
+    @Benchmark
+    public void insert(Large state) {
+        state.rga.add(0, state.size);
+    }
+
+    @Benchmark
+    public Integer get(Large state) {
+        return state.rga.get(state.size / 2);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long iterate(Small state) {
+        long sum = 0;
+        for (Integer element : state.rga) {
+            sum += element;
+        }
+        return sum;
+    }
+
+    private static RGA<Integer> filled(int size) {
+        final RGA<Integer> rga = new RGA<>("ND-0", "BM-RGA");
+        for (int element = 0; element < size; element++) {
+            rga.add(0, element);
+        }
+        return rga;
+    }
+}
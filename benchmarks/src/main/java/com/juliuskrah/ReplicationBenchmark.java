@@ -0,0 +1,75 @@
+package com.juliuskrah;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes per second between two connected {@link InMemoryCRDTStore}s. One store
+ * sets a register a batch of times, an invocation ends when the other store has
+ * applied the last write of the batch
+ *
+ * @author Julius Krah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplicationBenchmark {
+    private static final int BATCH = 1_000;
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    @Param({ "REACTIVE", "BLOCKING" })
+    ReplicationMode mode;
+    InMemoryCRDTStore crdtStore1;
+    InMemoryCRDTStore crdtStore2;
+    LWWRegister<Integer> register1;
+    LWWRegister<Integer> register2;
+    int next;
+
+    @Setup
+    public void setUp() {
+        crdtStore1 = new InMemoryCRDTStore("ND-0");
+        crdtStore2 = new InMemoryCRDTStore("ND-1");
+        crdtStore1.setReplicationMode(mode);
+        crdtStore2.setReplicationMode(mode);
+        crdtStore1.connect(crdtStore2);
+        register1 = crdtStore1.createLWWRegister("BM-REGISTER");
+        register2 = crdtStore2.<Integer>findLWWRegister("BM-REGISTER").get();
+    }
+
+    @TearDown
+    public void tearDown() {
+        crdtStore1.disconnect(crdtStore2);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void replicate() {
+        for (int i = 0; i < BATCH; i++) {
+            register1.set(++next);
+        }
+        final Integer last = next;
+        final long deadline = System.nanoTime() + TIMEOUT;
+        while (!last.equals(register2.get())) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("Write " + last + " was not replicated");
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
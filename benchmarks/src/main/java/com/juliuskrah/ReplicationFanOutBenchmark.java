@@ -0,0 +1,94 @@
+package com.juliuskrah;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link ReplicationMode#REACTIVE} with {@link ReplicationMode#BLOCKING}
+ * when one store writes to many CRDTs. An invocation writes once to every CRDT
+ * and ends when every peer has applied all writes
+ *
+ * @author Julius Krah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplicationFanOutBenchmark {
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    @Param({ "REACTIVE", "BLOCKING" })
+    ReplicationMode mode;
+    @Param({ "500" })
+    int crdts;
+    @Param({ "4" })
+    int peers;
+    InMemoryCRDTStore writer;
+    List<InMemoryCRDTStore> stores;
+    List<LWWElementSet<Integer>> sets;
+    List<LWWElementSet<Integer>> replicas;
+    int next;
+
+    @Setup
+    public void setUp() {
+        writer = new InMemoryCRDTStore("ND-0");
+        writer.setReplicationMode(mode);
+        stores = new ArrayList<>();
+        for (int peer = 1; peer <= peers; peer++) {
+            final InMemoryCRDTStore store = new InMemoryCRDTStore("ND-" + peer);
+            store.setReplicationMode(mode);
+            writer.connect(store);
+            stores.add(store);
+        }
+        sets = new ArrayList<>();
+        for (int crdt = 0; crdt < crdts; crdt++) {
+            sets.add(writer.createLWWElementSet("BM-" + crdt));
+        }
+        replicas = new ArrayList<>();
+        for (InMemoryCRDTStore store : stores) {
+            for (int crdt = 0; crdt < crdts; crdt++) {
+                replicas.add(store.<Integer>findLWWElementSet("BM-" + crdt).get());
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (InMemoryCRDTStore store : stores) {
+            writer.disconnect(store);
+        }
+    }
+
+    @Benchmark
+    public void replicate() {
+        final Integer element = ++next;
+        for (LWWElementSet<Integer> set : sets) {
+            set.add(element);
+        }
+        final long deadline = System.nanoTime() + TIMEOUT;
+        for (LWWElementSet<Integer> replica : replicas) {
+            while (!replica.get().contains(element)) {
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IllegalStateException("Write " + element + " was not replicated");
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
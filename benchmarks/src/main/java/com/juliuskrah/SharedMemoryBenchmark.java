@@ -0,0 +1,39 @@
+package com.juliuskrah;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Latency and throughput of {@link SharedMemoryCRDTStore}, each store writing
+ * to a ring in a temporary directory
+ *
+ * @author Julius Krah
+ */
+public class SharedMemoryBenchmark extends EchoBenchmark {
+    Path directory;
+    SharedMemoryCRDTStore server;
+    SharedMemoryCRDTStore client;
+
+    @Setup
+    public void setUp() throws InterruptedException, IOException {
+        directory = Files.createTempDirectory("crdt-ipc");
+        server = serve(new SharedMemoryCRDTStore("BM-server", directory.resolve("BM-server.ring")));
+        client = new SharedMemoryCRDTStore("BM-client", directory.resolve("BM-client.ring"));
+        server.connect(directory.resolve("BM-client.ring"));
+        client.connect(directory.resolve("BM-server.ring"));
+        join(client);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+        Files.deleteIfExists(directory.resolve("BM-client.ring"));
+        Files.deleteIfExists(directory.resolve("BM-server.ring"));
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,65 @@
+package com.juliuskrah;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.Map;
+
+/**
+ * Operations of {@link VectorClock} by the number of replicas in the clock. The
+ * two clocks are concurrent, each is ahead of the other for half the replicas,
+ * so {@link VectorClock#compareTo(VectorClock)} looks at every entry
+ *
+ * @author Julius Krah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorClockBenchmark {
+    @Param({ "1", "8", "64", "512" })
+    int width;
+    VectorClock clock1;
+    VectorClock clock2;
+
+    @Setup
+    public void setUp() {
+        Map<String, Long> entries1 = HashMap.empty();
+        Map<String, Long> entries2 = HashMap.empty();
+        for (int replica = 0; replica < width; replica++) {
+            entries1 = entries1.put("ND-" + replica, (long) replica);
+            entries2 = entries2.put("ND-" + replica, (long) width - replica);
+        }
+        clock1 = new VectorClock("ND-0", entries1);
+        clock2 = new VectorClock("ND-" + (width - 1), entries2);
+    }
+
+    @Benchmark
+    public VectorClock increment() {
+        return clock1.increment();
+    }
+
+    @Benchmark
+    public VectorClock merge() {
+        return clock1.merge(clock2);
+    }
+
+    @Benchmark
+    public int compareTo() {
+        return clock1.compareTo(clock2);
+    }
+}
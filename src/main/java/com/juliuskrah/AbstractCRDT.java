@@ -2,12 +2,9 @@ package com.juliuskrah;
 
 import java.util.Objects;
 
-import org.reactivestreams.Publisher;
-import org.reactivestreams.Subscriber;
+import com.juliuskrah.ReplicationLog.Retention;
 
 import io.vavr.control.Option;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
 
 /**
  * Implementations are encouraged to extend from this abstract class
@@ -15,18 +12,21 @@ import reactor.core.publisher.Sinks;
  * @author Julius Krah
  * @param <COMMAND>
  */
-public abstract class AbstractCRDT<COMMAND extends CRDTCommand> implements CRDT<COMMAND> {
+public abstract class AbstractCRDT<COMMAND extends CRDTCommand> implements PipelinedCRDT<COMMAND> {
     /**
      * The node ID of the current replica
      */
     protected final String nodeId;
     protected final String crdtId;
-    protected final Sinks.Many<COMMAND> commands;
+    protected final Mailbox mailbox = new Mailbox();
+    protected final ReplicationLog<COMMAND> commands;
+    private final CommandPipeline<COMMAND> pipeline;
 
-    public AbstractCRDT(String nodeId, String crdtId, Sinks.Many<COMMAND> commands) {
+    public AbstractCRDT(String nodeId, String crdtId, Retention retention) {
         this.nodeId = Objects.requireNonNull(nodeId, "nodeId must not be null");
         this.crdtId = Objects.requireNonNull(crdtId, "crdtId must not be null");
-        this.commands = Objects.requireNonNull(commands, "commands must not be null");
+        this.pipeline = new CommandPipeline<>(this, nodeId, this::snapshot, retention, mailbox, this::processCommand);
+        this.commands = pipeline.getLog();
     }
 
     /**
@@ -41,20 +41,17 @@ public abstract class AbstractCRDT<COMMAND extends CRDTCommand> implements CRDT<
      * {@inheritDoc}
      */
     @Override
-    public void subscribe(Subscriber<? super COMMAND> subscriber) {
-        commands.asFlux().subscribe(subscriber);
+    public CommandPipeline<COMMAND> getPipeline() {
+        return pipeline;
     }
 
+    protected abstract Option<? extends COMMAND> processCommand(COMMAND command);
+
     /**
-     * {@inheritDoc}
+     * Computes the commands that rebuild the current state on a new replica. Sent
+     * to subscribers ahead of the commands retained in the {@link ReplicationLog}
+     * 
+     * @return commands describing the current state
      */
-    @Override
-    public void subscribeTo(Publisher<? extends COMMAND> publisher) {
-        Flux.from(publisher).onTerminateDetach().subscribe(command -> {
-            final Option<? extends COMMAND> newCommand = processCommand(command);
-            newCommand.peek(commands::tryEmitNext);
-        });
-    }
-
-    protected abstract Option<? extends COMMAND> processCommand(COMMAND command);
+    protected abstract Iterable<? extends COMMAND> snapshot();
 }
@@ -0,0 +1,61 @@
+package com.juliuskrah;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Groups the commands a CRDT sends to replicas into batches. A batch is sent
+ * when it holds {@code maxSize} commands or when its first command has waited
+ * {@code maxLatency}, whichever comes first. The CRDT's {@link ReplicationLog}
+ * sends a batch as one signal and replicas apply it in one pass. Batching is
+ * off by default, so interactive CRDTs replicate every command as soon as it is
+ * emitted
+ *
+ * @author Julius Krah
+ */
+public final class Batching {
+    private static final Batching DISABLED = new Batching(1, Duration.ZERO);
+
+    private final int maxSize;
+    private final Duration maxLatency;
+
+    private Batching(int maxSize, Duration maxLatency) {
+        this.maxSize = maxSize;
+        this.maxLatency = maxLatency;
+    }
+
+    /**
+     * @return batching turned off
+     */
+    public static Batching disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @param maxSize    maximum number of commands in a batch
+     * @param maxLatency maximum time a command waits for its batch to fill up
+     * @return batching by size or time window
+     */
+    public static Batching of(int maxSize, Duration maxLatency) {
+        if (maxSize <= 1) {
+            throw new IllegalArgumentException("maxSize must be greater than 1");
+        }
+        Objects.requireNonNull(maxLatency, "maxLatency must not be null");
+        if (maxLatency.isNegative() || maxLatency.isZero()) {
+            throw new IllegalArgumentException("maxLatency must be positive");
+        }
+        return new Batching(maxSize, maxLatency);
+    }
+
+    public boolean isEnabled() {
+        return this != DISABLED;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Duration getMaxLatency() {
+        return maxLatency;
+    }
+}
@@ -0,0 +1,348 @@
+package com.juliuskrah;
+
+import java.util.Objects;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+
+/**
+ * Compact binary format for the commands of the built-in CRDTs. A command is
+ * written as a type tag, the interned CRDT ID, its {@link Dot} with the time of
+ * the write, and the fields of the command. Vector clocks are written as deltas against the previous
+ * clock of the same CRDT on the connection. Elements are written with a type tag followed by the output of the
+ * {@link ElementCodec} registered for their class. Nothing is looked up by
+ * reflection.
+ *
+ * Strings, integers, longs, booleans and {@code null} are supported out of the
+ * box. Both ends of a connection must register the same element codecs under
+ * the same tags
+ *
+ * @author Julius Krah
+ */
+public final class BinaryCodec implements Codec {
+    private static final int NULL = 0;
+    private static final int FIRST_USER_TAG = 16;
+
+    private static final int REGISTER_SET = 1;
+    private static final int SET_ADD = 2;
+    private static final int SET_REMOVE = 3;
+    private static final int ADD_VERTEX = 4;
+    private static final int REMOVE_VERTEX = 5;
+    private static final int ADD_EDGE = 6;
+    private static final int REMOVE_EDGE = 7;
+    private static final int ADD_RIGHT = 8;
+    private static final int REMOVE = 9;
+
+    private final Map<Class<?>, Tuple2<Integer, ElementCodec<?>>> byClass;
+    private final Map<Integer, ElementCodec<?>> byTag;
+
+    private BinaryCodec(Map<Class<?>, Tuple2<Integer, ElementCodec<?>>> byClass) {
+        this.byClass = byClass;
+        this.byTag = byClass.values().toMap(Tuple2::_1, Tuple2::_2);
+    }
+
+    /**
+     * @return codec for elements of the built-in types
+     */
+    public static BinaryCodec ofDefault() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encode(CRDTCommand command, BinaryOutput out) {
+        encode(command, false, out);
+    }
+
+    /**
+     * Encodes what makes commands equal: without the {@link Dot} and the node
+     * that owns each vector clock, so equal commands encode to equal bytes on
+     * every node. The output is reset and rolled back afterwards,
+     * its dictionary and clocks do not shape the bytes
+     *
+     * @param command the command
+     * @param out     scratch output, reusable across commands
+     * @return the encoded command
+     * @throws IllegalArgumentException if the command type or an element type is
+     *                                  not supported
+     */
+    public byte[] encodeContent(CRDTCommand command, BinaryOutput out) {
+        out.reset();
+        out.mark();
+        try {
+            encode(command, true, out);
+            return out.toByteArray();
+        } finally {
+            out.rollback();
+        }
+    }
+
+    private void encode(CRDTCommand command, boolean contentOnly, BinaryOutput out) {
+        Objects.requireNonNull(command, "command must not be null");
+        final String crdtId = command.getCrdtId();
+        if (command instanceof LWWRegister.SetCommand) {
+            final LWWRegister.SetCommand<?> set = (LWWRegister.SetCommand<?>) command;
+            header(REGISTER_SET, command, contentOnly, out);
+            writeElement(set.value, out);
+            writeClock(crdtId, contentOnly, set.vectorClock, out);
+        } else if (command instanceof LWWElementSet.SetCommand) {
+            final LWWElementSet.SetCommand<?> set = (LWWElementSet.SetCommand<?>) command;
+            header(set.type == 1 ? SET_ADD : SET_REMOVE, command, contentOnly, out);
+            writeElement(set.element, out);
+            writeClock(crdtId, contentOnly, set.vectorClock, out);
+        } else if (command instanceof LWWElementGraph.AddVertexCommand) {
+            final LWWElementGraph.AddVertexCommand<?> vertex = (LWWElementGraph.AddVertexCommand<?>) command;
+            header(ADD_VERTEX, command, contentOnly, out);
+            writeElement(vertex.element, out);
+            writeClock(crdtId, contentOnly, vertex.vectorClock, out);
+        } else if (command instanceof LWWElementGraph.RemoveVertexCommand) {
+            final LWWElementGraph.RemoveVertexCommand<?> vertex = (LWWElementGraph.RemoveVertexCommand<?>) command;
+            header(REMOVE_VERTEX, command, contentOnly, out);
+            writeElement(vertex.element, out);
+            writeClock(crdtId, contentOnly, vertex.vectorClock, out);
+        } else if (command instanceof LWWElementGraph.AddEdgeCommand) {
+            final LWWElementGraph.AddEdgeCommand<?> edge = (LWWElementGraph.AddEdgeCommand<?>) command;
+            header(ADD_EDGE, command, contentOnly, out);
+            writeElement(edge.element1, out);
+            writeElement(edge.element2, out);
+            writeClock(crdtId, contentOnly, edge.vectorClock, out);
+        } else if (command instanceof LWWElementGraph.RemoveEdgeCommand) {
+            final LWWElementGraph.RemoveEdgeCommand<?> edge = (LWWElementGraph.RemoveEdgeCommand<?>) command;
+            header(REMOVE_EDGE, command, contentOnly, out);
+            writeElement(edge.element1, out);
+            writeElement(edge.element2, out);
+            writeClock(crdtId, contentOnly, edge.vectorClock, out);
+        } else if (command instanceof RGA.AddRightCommand) {
+            final RGA.AddRightCommand<?> add = (RGA.AddRightCommand<?>) command;
+            header(ADD_RIGHT, command, contentOnly, out);
+            writeClock(crdtId, contentOnly, add.anchorClock, out);
+            writeElement(add.newVertexValue, out);
+            writeClock(crdtId, contentOnly, add.newVertexClock, out);
+        } else if (command instanceof RGA.RemoveCommand) {
+            header(REMOVE, command, contentOnly, out);
+            writeClock(crdtId, contentOnly, ((RGA.RemoveCommand<?>) command).vectorClock, out);
+        } else {
+            throw new IllegalArgumentException("No encoding for command " + command.getClass());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CRDTCommand decode(BinaryInput in) {
+        final int type = in.readVarInt();
+        final String crdtId = in.readInterned();
+        final long sequence = in.readVarLong();
+        final Dot dot = sequence == 0 ? null : new Dot(in.readInterned(), sequence);
+        final long originTime = dot == null ? 0L : in.readVarLong();
+        final CRDTCommand command;
+        switch (type) {
+        case REGISTER_SET:
+            command = new LWWRegister.SetCommand<>(crdtId, readElement(in), readClock(crdtId, in));
+            break;
+        case SET_ADD:
+            command = new LWWElementSet.SetCommand<>(crdtId, readElement(in), readClock(crdtId, in), 1);
+            break;
+        case SET_REMOVE:
+            command = new LWWElementSet.SetCommand<>(crdtId, readElement(in), readClock(crdtId, in), 0);
+            break;
+        case ADD_VERTEX:
+            command = new LWWElementGraph.AddVertexCommand<>(crdtId, readElement(in), readClock(crdtId, in));
+            break;
+        case REMOVE_VERTEX:
+            command = new LWWElementGraph.RemoveVertexCommand<>(crdtId, readElement(in),
+                    readClock(crdtId, in));
+            break;
+        case ADD_EDGE:
+            command = new LWWElementGraph.AddEdgeCommand<>(crdtId, readElement(in), readElement(in),
+                    readClock(crdtId, in));
+            break;
+        case REMOVE_EDGE:
+            command = new LWWElementGraph.RemoveEdgeCommand<>(crdtId, readElement(in), readElement(in),
+                    readClock(crdtId, in));
+            break;
+        case ADD_RIGHT:
+            command = new RGA.AddRightCommand<>(crdtId, readClock(crdtId, in), readElement(in),
+                    readClock(crdtId, in));
+            break;
+        case REMOVE:
+            command = new RGA.RemoveCommand<>(crdtId, readClock(crdtId, in));
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown command type " + type);
+        }
+        if (dot != null) {
+            command.stamp(dot, originTime);
+        }
+        return command;
+    }
+
+    /**
+     * Writes an element with the codec registered for its class
+     *
+     * @param element the element, may be {@code null}
+     * @param out     output of the connection
+     * @throws IllegalArgumentException if no codec is registered for the class
+     */
+    @SuppressWarnings("unchecked")
+    public void writeElement(Object element, BinaryOutput out) {
+        if (element == null) {
+            out.writeVarInt(NULL);
+            return;
+        }
+        final Tuple2<Integer, ElementCodec<?>> codec = byClass.get(element.getClass())
+                .getOrElseThrow(() -> new IllegalArgumentException("No codec for element " + element.getClass()));
+        out.writeVarInt(codec._1);
+        ((ElementCodec<Object>) codec._2).write(element, out);
+    }
+
+    /**
+     * @param <E> element type
+     * @param in  input of the connection
+     * @return the element
+     */
+    @SuppressWarnings("unchecked")
+    public <E> E readElement(BinaryInput in) {
+        final int tag = in.readVarInt();
+        if (tag == NULL) {
+            return null;
+        }
+        return (E) byTag.get(tag).getOrElseThrow(() -> new IllegalArgumentException("Unknown element tag " + tag))
+                .read(in);
+    }
+
+    /**
+     * Writes a clock as the difference to the previous clock of the same CRDT on
+     * the connection: the entries whose counters changed, with the change as a
+     * zig-zag varint, and the entries that are gone. Consecutive clocks of a CRDT
+     * usually differ in one counter, so the size does not grow with the number of
+     * nodes
+     *
+     * @param crdtId the CRDT the clock belongs to
+     * @param clock  the clock
+     * @param out    output of the connection
+     */
+    public void writeClock(String crdtId, VectorClock clock, BinaryOutput out) {
+        writeClock(crdtId, false, clock, out);
+    }
+
+    private void writeClock(String crdtId, boolean contentOnly, VectorClock clock, BinaryOutput out) {
+        final VectorClock previous = out.previousClock(crdtId);
+        final Map<String, Long> before = previous == null ? HashMap.empty() : previous.getEntries();
+        final Map<String, Long> entries = clock.getEntries();
+        if (!contentOnly) {
+            out.writeInterned(clock.getKey());
+        }
+        int changed = 0;
+        for (Tuple2<String, Long> entry : entries) {
+            if (!before.get(entry._1).contains(entry._2)) {
+                changed++;
+            }
+        }
+        out.writeVarInt(changed);
+        for (Tuple2<String, Long> entry : entries) {
+            if (!before.get(entry._1).contains(entry._2)) {
+                out.writeInterned(entry._1);
+                out.writeZigZag(entry._2 - before.get(entry._1).getOrElse(0L));
+            }
+        }
+        int removed = 0;
+        for (String node : before.keysIterator()) {
+            if (!entries.containsKey(node)) {
+                removed++;
+            }
+        }
+        out.writeVarInt(removed);
+        if (removed > 0) {
+            for (String node : before.keysIterator()) {
+                if (!entries.containsKey(node)) {
+                    out.writeInterned(node);
+                }
+            }
+        }
+        out.previousClock(crdtId, clock);
+    }
+
+    /**
+     * @param crdtId the CRDT the clock belongs to
+     * @param in     input of the connection
+     * @return the clock written by {@link #writeClock(String, VectorClock, BinaryOutput)}
+     */
+    public VectorClock readClock(String crdtId, BinaryInput in) {
+        final VectorClock previous = in.previousClock(crdtId);
+        final String key = in.readInterned();
+        Map<String, Long> entries = previous == null ? HashMap.empty() : previous.getEntries();
+        final int changed = in.readVarInt();
+        for (int i = 0; i < changed; i++) {
+            final String node = in.readInterned();
+            entries = entries.put(node, entries.get(node).getOrElse(0L) + in.readZigZag());
+        }
+        final int removed = in.readVarInt();
+        for (int i = 0; i < removed; i++) {
+            entries = entries.remove(in.readInterned());
+        }
+        final VectorClock clock = new VectorClock(key, entries);
+        in.previousClock(crdtId, clock);
+        return clock;
+    }
+
+    private static void header(int type, CRDTCommand command, boolean contentOnly, BinaryOutput out) {
+        out.writeVarInt(type);
+        out.writeInterned(command.getCrdtId());
+        final Option<Dot> dot = command.getDot();
+        if (contentOnly || dot.isEmpty()) {
+            out.writeVarLong(0L);
+        } else {
+            out.writeVarLong(dot.get().getSequence());
+            out.writeInterned(dot.get().getOrigin());
+            out.writeVarLong(command.getOriginTime());
+        }
+    }
+
+    public static final class Builder {
+        private Map<Class<?>, Tuple2<Integer, ElementCodec<?>>> byClass = HashMap.of( //
+                String.class, new Tuple2<>(1, ElementCodec.ofString()), //
+                Integer.class, new Tuple2<>(2, ElementCodec.ofInteger()), //
+                Long.class, new Tuple2<>(3, ElementCodec.ofLong()), //
+                Boolean.class, new Tuple2<>(4, ElementCodec.ofBoolean()));
+
+        private Builder() {
+        }
+
+        /**
+         * Registers the codec of an element type. Elements are matched by their exact
+         * class
+         *
+         * @param <E>   element type
+         * @param tag   identifies the type on the wire, 16 or higher
+         * @param type  element class
+         * @param codec the codec
+         * @return this builder
+         */
+        public <E> Builder element(int tag, Class<E> type, ElementCodec<E> codec) {
+            Objects.requireNonNull(type, "type must not be null");
+            Objects.requireNonNull(codec, "codec must not be null");
+            if (tag < FIRST_USER_TAG) {
+                throw new IllegalArgumentException("tag must be " + FIRST_USER_TAG + " or higher");
+            }
+            if (byClass.values().exists(entry -> entry._1 == tag)) {
+                throw new IllegalArgumentException("tag " + tag + " already registered");
+            }
+            byClass = byClass.put(type, new Tuple2<>(tag, codec));
+            return this;
+        }
+
+        public BinaryCodec build() {
+            return new BinaryCodec(byClass);
+        }
+    }
+}
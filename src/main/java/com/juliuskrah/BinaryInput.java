@@ -0,0 +1,127 @@
+package com.juliuskrah;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reads what a {@link BinaryOutput} wrote. One instance serves one connection
+ * and rebuilds the dictionary of interned strings and the previous clock of
+ * each CRDT from the frames it reads.
+ * Malformed input raises an {@link IllegalArgumentException}. Not thread-safe
+ *
+ * @author Julius Krah
+ */
+public final class BinaryInput {
+    private final List<String> interned = new ArrayList<>();
+    private final Map<String, VectorClock> clocks = new HashMap<>();
+    private byte[] bytes = new byte[0];
+    private int position;
+
+    /**
+     * Reads from the start of a frame. The dictionary and clocks are kept
+     * 
+     * @param bytes the frame
+     * @return this input
+     */
+    public BinaryInput wrap(byte[] bytes) {
+        this.bytes = Objects.requireNonNull(bytes, "bytes must not be null");
+        this.position = 0;
+        return this;
+    }
+
+    public int readByte() {
+        require(1);
+        return bytes[position++];
+    }
+
+    public long readVarLong() {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            require(1);
+            final byte next = bytes[position++];
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint at " + position);
+    }
+
+    public int readVarInt() {
+        final long value = readVarLong();
+        if (value >>> 32 != 0) {
+            throw new IllegalArgumentException("Varint " + value + " exceeds 32 bits");
+        }
+        return (int) value;
+    }
+
+    public long readZigZag() {
+        final long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public byte[] readBytes() {
+        final int length = readVarInt();
+        require(length);
+        final byte[] value = new byte[length];
+        System.arraycopy(bytes, position, value, 0, length);
+        position += length;
+        return value;
+    }
+
+    public String readString() {
+        final int length = readVarInt();
+        require(length);
+        final String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * @return a string written by {@link BinaryOutput#writeInterned(String)}
+     */
+    public String readInterned() {
+        final int index = readVarInt();
+        if (index == BinaryOutput.NEW_ENTRY) {
+            final String value = readString();
+            interned.add(value);
+            return value;
+        }
+        if (index == BinaryOutput.LITERAL) {
+            return readString();
+        }
+        if (index - 2 >= interned.size() || index < 0) {
+            throw new IllegalArgumentException("Unknown dictionary entry " + (index - 2));
+        }
+        return interned.get(index - 2);
+    }
+
+    /**
+     * @param crdtId the CRDT
+     * @return the clock last read for the CRDT, {@code null} if none
+     */
+    VectorClock previousClock(String crdtId) {
+        return clocks.get(crdtId);
+    }
+
+    void previousClock(String crdtId, VectorClock clock) {
+        clocks.put(crdtId, clock);
+    }
+
+    /**
+     * @return bytes left in the frame
+     */
+    public int remaining() {
+        return bytes.length - position;
+    }
+
+    private void require(int length) {
+        if (length < 0 || bytes.length - position < length) {
+            throw new IllegalArgumentException("Frame ends at " + bytes.length + ", " + length + " bytes needed at " + position);
+        }
+    }
+}
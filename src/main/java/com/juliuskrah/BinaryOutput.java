@@ -0,0 +1,236 @@
+package com.juliuskrah;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Growable buffer for the compact binary format of a {@link Codec}. Integers are
+ * written as varints, so small counters take one byte. Strings that repeat,
+ * such as node and CRDT IDs, can be interned: the first occurrence is sent with
+ * its text, later ones as an index into a dictionary both ends of a connection
+ * build in the same order.
+ *
+ * Vector clocks are written as deltas against the previous clock of the same
+ * CRDT on the connection, which this output remembers as well.
+ *
+ * One instance serves one connection and keeps its dictionary and clocks
+ * across {@link #reset()}. A writer that may fail halfway through a frame
+ * {@link #mark() marks} its start and {@link #rollback() rolls back} to it, so
+ * the dictionary and clocks never refer to a frame that was not sent. Not
+ * thread-safe
+ *
+ * @author Julius Krah
+ */
+public final class BinaryOutput {
+    /**
+     * Dictionary entries per connection. Strings beyond are sent as text
+     */
+    static final int MAX_INTERNED = 1 << 16;
+    static final int NEW_ENTRY = 0;
+    static final int LITERAL = 1;
+
+    private final Map<String, Integer> interned = new HashMap<>();
+    private final Map<String, VectorClock> clocks = new HashMap<>();
+    /**
+     * Dictionary entries added and clocks replaced since the mark
+     */
+    private final List<String> added = new ArrayList<>();
+    private final Map<String, VectorClock> replaced = new HashMap<>();
+    private byte[] bytes;
+    private int position;
+    private int mark = -1;
+
+    public BinaryOutput() {
+        this(256);
+    }
+
+    /**
+     * @param capacity initial capacity in bytes
+     */
+    public BinaryOutput(int capacity) {
+        this.bytes = new byte[Math.max(capacity, 16)];
+    }
+
+    public void writeByte(int value) {
+        ensure(1);
+        bytes[position++] = (byte) value;
+    }
+
+    /**
+     * Unsigned LEB128: 7 bits per byte, the high bit marks that more bytes follow
+     * 
+     * @param value non-negative values take 1 to 9 bytes, negative ones 10
+     */
+    public void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+    }
+
+    /**
+     * @param value treated as unsigned
+     */
+    public void writeVarInt(int value) {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Zig-zag encoding keeps small negative values short
+     * 
+     * @param value any value
+     */
+    public void writeZigZag(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * @param value length-prefixed bytes
+     */
+    public void writeBytes(byte[] value) {
+        writeVarInt(value.length);
+        ensure(value.length);
+        System.arraycopy(value, 0, bytes, position, value.length);
+        position += value.length;
+    }
+
+    /**
+     * @param value length-prefixed UTF-8
+     */
+    public void writeString(String value) {
+        writeBytes(Objects.requireNonNull(value, "value must not be null").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes a string through the dictionary of this connection
+     * 
+     * @param value the string
+     */
+    public void writeInterned(String value) {
+        final Integer index = interned.get(value);
+        if (index != null) {
+            writeVarInt(index + 2);
+        } else if (interned.size() < MAX_INTERNED) {
+            interned.put(value, interned.size());
+            if (mark >= 0) {
+                added.add(value);
+            }
+            writeVarInt(NEW_ENTRY);
+            writeString(value);
+        } else {
+            writeVarInt(LITERAL);
+            writeString(value);
+        }
+    }
+
+    /**
+     * @param crdtId the CRDT
+     * @return the clock last written for the CRDT, {@code null} if none
+     */
+    VectorClock previousClock(String crdtId) {
+        return clocks.get(crdtId);
+    }
+
+    void previousClock(String crdtId, VectorClock clock) {
+        final VectorClock previous = clocks.put(crdtId, clock);
+        if (mark >= 0 && !replaced.containsKey(crdtId)) {
+            replaced.put(crdtId, previous);
+        }
+    }
+
+    /**
+     * Starts a frame that {@link #rollback()} can undo. Replaces an earlier mark
+     */
+    public void mark() {
+        mark = position;
+        added.clear();
+        replaced.clear();
+    }
+
+    /**
+     * Discards the bytes, dictionary entries and clocks written since the
+     * {@link #mark()}, and the mark
+     *
+     * @throws IllegalStateException if there is no mark
+     */
+    public void rollback() {
+        if (mark < 0) {
+            throw new IllegalStateException("No mark to roll back to");
+        }
+        added.forEach(interned::remove);
+        replaced.forEach((crdtId, clock) -> {
+            if (clock == null) {
+                clocks.remove(crdtId);
+            } else {
+                clocks.put(crdtId, clock);
+            }
+        });
+        position = mark;
+        unmark();
+    }
+
+    /**
+     * Keeps what was written since the {@link #mark()}
+     */
+    public void unmark() {
+        mark = -1;
+        added.clear();
+        replaced.clear();
+    }
+
+    /**
+     * @return number of bytes written since the last reset
+     */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * @return copy of the bytes written since the last reset
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, position);
+    }
+
+    /**
+     * Discards the written bytes and the mark but keeps the dictionary and clocks
+     */
+    public void reset() {
+        position = 0;
+        unmark();
+    }
+
+    /**
+     * Copies bytes into a buffer
+     * 
+     * @param offset first byte to copy
+     * @param target buffer to fill
+     * @return number of bytes copied
+     */
+    int copyTo(int offset, ByteBuffer target) {
+        final int length = Math.min(target.remaining(), position - offset);
+        target.put(bytes, offset, length);
+        return length;
+    }
+
+    /**
+     * Overwrites 4 bytes, big-endian
+     */
+    void putInt(int index, int value) {
+        ByteBuffer.wrap(bytes).putInt(index, value);
+    }
+
+    private void ensure(int length) {
+        if (bytes.length - position < length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + length));
+        }
+    }
+}
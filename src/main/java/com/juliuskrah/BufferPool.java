@@ -0,0 +1,59 @@
+package com.juliuskrah;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct buffers of one size. Direct buffers are expensive to allocate
+ * and are only freed by the garbage collector, so connections borrow them for
+ * their lifetime and return them when they close
+ *
+ * @author Julius Krah
+ */
+final class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * @param bufferSize capacity of each buffer
+     * @param maxPooled  number of returned buffers kept for reuse
+     */
+    BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @return a cleared buffer
+     */
+    ByteBuffer acquire() {
+        final ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        return buffer.clear();
+    }
+
+    /**
+     * @param buffer a buffer obtained from {@link #acquire()}
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer.isDirect() && buffer.capacity() == bufferSize && pooled.incrementAndGet() <= maxPooled) {
+            free.offer(buffer);
+        } else if (buffer.isDirect() && buffer.capacity() == bufferSize) {
+            pooled.decrementAndGet();
+        }
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -1,7 +1,17 @@
 package com.juliuskrah;
 
+import java.util.List;
+import java.util.function.Function;
+
 import org.reactivestreams.Publisher;
 
+import com.juliuskrah.ReplicationLog.Digest;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.Seq;
+
+import reactor.core.publisher.Flux;
+
 /**
  * Base interface for all CRDT data types
  * 
@@ -16,10 +26,173 @@ public interface CRDT<COMMAND extends CRDTCommand> extends Publisher<COMMAND> {
      */
     String getCrdtId();
 
+    /**
+     * Applies a command received from a replica
+     * 
+     * @param command the command
+     */
+    void receive(COMMAND command);
+
+    /**
+     * Applies a batch of commands received from a replica
+     * 
+     * @param batch the commands
+     */
+    default void receiveAll(List<? extends COMMAND> batch) {
+        batch.forEach(this::receive);
+    }
+
+    /**
+     * Applies commands restored from local storage, such as a snapshot or a log.
+     * They are applied like commands of a replica, but are not replication and do
+     * not count towards the {@link ReplicationLag}
+     * 
+     * @param commands the commands
+     */
+    default void restore(List<? extends COMMAND> commands) {
+        receiveAll(commands);
+    }
+
     /**
      * Copies over the state changes to replicas if connected
      * 
      * @param publisher
      */
     void subscribeTo(Publisher<? extends COMMAND> publisher);
+
+    /**
+     * Copies over batches of state changes to replicas if connected. Each batch is
+     * applied in one pass
+     * 
+     * @param publisher batches of commands
+     * @see Batching
+     */
+    default void subscribeToBatches(Publisher<? extends List<? extends COMMAND>> publisher) {
+        subscribeTo(Flux.from(publisher).flatMapIterable(Function.identity()));
+    }
+
+    /**
+     * Commands a peer missed since it received a given command, each with its
+     * number in this replica's log
+     * 
+     * @param sequence number of the last command the peer received, 0 for none
+     * @return missed and live commands
+     * @see ReplicationLog#since(long)
+     */
+    Publisher<Tuple2<Long, COMMAND>> since(long sequence);
+
+    /**
+     * Like {@link #since(long)}, with one signal per batch of commands the CRDT sent
+     * together
+     * 
+     * @param sequence number of the last command the peer received, 0 for none
+     * @return batches of missed and live commands
+     * @see Batching
+     */
+    default Publisher<Seq<Tuple2<Long, COMMAND>>> batchesSince(long sequence) {
+        return Flux.from(since(sequence)).map(io.vavr.collection.List::of);
+    }
+
+    /**
+     * Commands a peer missed since it received a given command, without live
+     * commands
+     * 
+     * @param sequence number of the last command the peer received, 0 for none
+     * @return missed commands with their number
+     * @see ReplicationLog#missed(long)
+     */
+    Seq<Tuple2<Long, COMMAND>> missed(long sequence);
+
+    /**
+     * Commands of this replica in the parts of its state where a peer differs
+     * 
+     * @param remote tree over the peer's state
+     * @return diverging and live commands with their number
+     * @see ReplicationLog#reconcile(MerkleTree)
+     */
+    Publisher<Tuple2<Long, COMMAND>> reconcile(MerkleTree<?> remote);
+
+    /**
+     * Commands of this replica in the parts of its state where a peer differs,
+     * without live commands
+     * 
+     * @param remote tree over the peer's state
+     * @return diverging commands
+     */
+    Seq<? extends COMMAND> diverging(MerkleTree<?> remote);
+
+    /**
+     * Commands that rebuild the current state, taken in the mailbox together with
+     * the number of the last command sent. Commands after that number are not part
+     * of the snapshot
+     * 
+     * @return number of the last command and the snapshot
+     */
+    Tuple2<Long, ? extends Seq<? extends COMMAND>> checkpoint();
+
+    /**
+     * Completes the streams of this replica, peers stop receiving its commands. A
+     * store calls this when it evicts the replica from memory
+     */
+    void complete();
+
+    /**
+     * @return tree over the state of this replica
+     */
+    MerkleTree<? extends COMMAND> merkleTree();
+
+    /**
+     * @return root hash of the state and the number of the last command sent
+     */
+    Digest digest();
+
+    /**
+     * Unlike {@link #digest()}, does not hash the state and never waits for the
+     * mailbox
+     *
+     * @return number of the last command sent
+     */
+    long getSequence();
+
+    /**
+     * Local writes and commands from replicas are processed one at a time in this
+     * mailbox
+     * 
+     * @return the mailbox of this CRDT
+     */
+    Mailbox getMailbox();
+
+    /**
+     * Called by the store that registers this CRDT. Measurements are dropped
+     * unless a store installs metrics
+     * 
+     * @param metrics receives measurements of this CRDT
+     */
+    default void setMetrics(CRDTMetrics metrics) {
+    }
+
+    /**
+     * Called by the store that registers this CRDT. Commands of replicas are
+     * recorded with the time they were written
+     * 
+     * @param lag replication lag of the store
+     */
+    default void setReplicationLag(ReplicationLag lag) {
+    }
+
+    /**
+     * @return commands of local writes and relays not yet sent to replicas
+     */
+    default int getOutboxDepth() {
+        return 0;
+    }
+
+    /**
+     * How this CRDT groups the commands it sends to replicas
+     * 
+     * @return batching of outbound commands
+     */
+    default Batching getBatching() {
+        return Batching.disabled();
+    }
 }
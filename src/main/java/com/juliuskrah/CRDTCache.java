@@ -0,0 +1,336 @@
+package com.juliuskrah;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import io.vavr.collection.Seq;
+import io.vavr.control.Option;
+
+/**
+ * The CRDTs of a lazy {@link InMemoryCRDTStore}. A CRDT a peer announces stays
+ * dormant until it is first looked up. Then it is instantiated and subscribed
+ * to the peers that announced it, so later commands of the peers look it up
+ * themselves. When more than {@link Residency#getMaxResident()} CRDTs are in
+ * memory, the cache encodes the snapshot of the one the policy picks and drops
+ * the instance. Looking it up decodes the snapshot into a new instance. Encoded
+ * snapshots beyond the heap budget of the {@link Residency} are spilled to
+ * files.
+ *
+ * The snapshot is taken and the instance dropped in one task of its mailbox,
+ * so every command queued before is part of the snapshot. A lookup while a
+ * CRDT is being encoded keeps the instance. Writes through an instance that
+ * was already dropped are not kept, callers look CRDTs up again instead of
+ * holding on to them
+ *
+ * @author Julius Krah
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+final class CRDTCache {
+    private final Residency residency;
+    private final BiFunction<Class<? extends CRDT>, String, CRDT<? extends CRDTCommand>> factory;
+    private final Consumer<CRDT<? extends CRDTCommand>> onLoad;
+    private final Consumer<CRDT<? extends CRDTCommand>> onEvict;
+    private final Map<String, Entry> entries = new HashMap<>();
+    /**
+     * Resident entries, the next to evict first
+     */
+    private final NavigableSet<Entry> resident;
+    private long clock;
+    /**
+     * Bytes of encoded snapshots on the heap
+     */
+    private long encodedBytes;
+
+    /**
+     * @param residency how many CRDTs stay in memory
+     * @param factory   instantiates a CRDT without registering it
+     * @param onLoad    registers an instantiated CRDT
+     * @param onEvict   unregisters an evicted CRDT
+     */
+    CRDTCache(Residency residency, BiFunction<Class<? extends CRDT>, String, CRDT<? extends CRDTCommand>> factory,
+            Consumer<CRDT<? extends CRDTCommand>> onLoad, Consumer<CRDT<? extends CRDTCommand>> onEvict) {
+        this.residency = residency;
+        this.factory = factory;
+        this.onLoad = onLoad;
+        this.onEvict = onEvict;
+        final Comparator<Entry> recency = Comparator.comparingLong(entry -> entry.lastAccess);
+        this.resident = new TreeSet<>(residency.getPolicy() == Residency.Policy.LFU
+                ? Comparator.<Entry>comparingLong(entry -> entry.hits).thenComparing(recency)
+                : recency);
+    }
+
+    /**
+     * Looks a CRDT up, instantiating it if it is dormant or evicted
+     *
+     * @param crdtId the CRDT
+     * @return the CRDT, none if the store does not know it
+     */
+    Option<CRDT<? extends CRDTCommand>> find(String crdtId) {
+        return lookup(crdtId, null);
+    }
+
+    /**
+     * Looks a CRDT up, instantiating it if it is dormant or evicted, or new
+     *
+     * @param crdtId    the CRDT
+     * @param crdtClass class of a new CRDT
+     * @return the CRDT
+     */
+    CRDT<? extends CRDTCommand> getOrCreate(String crdtId, Class<? extends CRDT> crdtClass) {
+        return lookup(crdtId, crdtClass).get();
+    }
+
+    private Option<CRDT<? extends CRDTCommand>> lookup(String crdtId, Class<? extends CRDT> crdtClass) {
+        final CRDT<? extends CRDTCommand> crdt;
+        final boolean loaded;
+        final Collection<Runnable> attach;
+        final List<Entry> victims;
+        synchronized (this) {
+            Entry entry = entries.get(crdtId);
+            if (entry == null) {
+                if (crdtClass == null) {
+                    return Option.none();
+                }
+                entry = new Entry(crdtClass);
+                entries.put(crdtId, entry);
+            }
+            loaded = entry.crdt == null;
+            if (loaded) {
+                entry.crdt = factory.apply(entry.crdtClass, crdtId);
+                restore(entry.crdt, entry.load());
+                if (entry.state != null) {
+                    encodedBytes -= entry.state.length;
+                }
+                entry.state = null;
+                attach = entry.attach();
+            } else {
+                attach = Collections.emptyList();
+            }
+            crdt = entry.crdt;
+            touch(entry);
+            victims = victims();
+        }
+        if (loaded) {
+            onLoad.accept(crdt);
+            attach.forEach(Runnable::run);
+        }
+        evict(victims);
+        return Option.of(crdt);
+    }
+
+    /**
+     * Records a CRDT a peer announced. The subscription to the peer is made when
+     * the CRDT is first instantiated, right away if it was before
+     *
+     * @param crdtId    the CRDT
+     * @param crdtClass its class
+     * @param source    the peer's subscriber, a later announcement of the same
+     *                  peer replaces this one
+     * @param attach    subscribes the CRDT to the peer
+     */
+    void define(String crdtId, Class<? extends CRDT> crdtClass, Object source, Runnable attach) {
+        synchronized (this) {
+            final Entry entry = entries.computeIfAbsent(crdtId, id -> new Entry(crdtClass));
+            if (entry.pending != null) {
+                entry.pending.put(source, attach);
+                return;
+            }
+        }
+        attach.run();
+    }
+
+    /**
+     * @return CRDTs in memory or evicted, but not those that were only announced
+     */
+    synchronized Seq<String> getStored() {
+        return io.vavr.collection.List.ofAll(entries.entrySet())
+                .filter(entry -> entry.getValue().crdt != null || entry.getValue().isEncoded())
+                .map(Map.Entry::getKey);
+    }
+
+    /**
+     * @return number of CRDTs in memory
+     */
+    synchronized int getResidentCount() {
+        return resident.size();
+    }
+
+    private void touch(Entry entry) {
+        if (entry.resident) {
+            resident.remove(entry);
+        }
+        entry.hits++;
+        entry.lastAccess = ++clock;
+        entry.resident = true;
+        entry.evicting = false;
+        resident.add(entry);
+    }
+
+    private List<Entry> victims() {
+        final List<Entry> victims = new ArrayList<>();
+        while (resident.size() > residency.getMaxResident()) {
+            final Entry entry = resident.pollFirst();
+            entry.resident = false;
+            entry.evicting = true;
+            victims.add(entry);
+        }
+        return victims;
+    }
+
+    /**
+     * Encodes the victims outside the lock, their mailboxes may be busy
+     */
+    private void evict(List<Entry> victims) {
+        for (Entry entry : victims) {
+            final CRDT<? extends CRDTCommand> crdt;
+            synchronized (this) {
+                if (!entry.evicting) {
+                    continue;
+                }
+                crdt = entry.crdt;
+            }
+            // no command is applied between the snapshot and the unsubscription
+            crdt.getMailbox().call(() -> {
+                evict(entry, crdt);
+                return null;
+            });
+        }
+    }
+
+    private void evict(Entry entry, CRDT<? extends CRDTCommand> crdt) {
+        final byte[] state = encode(crdt);
+        final Path spilled = spill(state);
+        synchronized (this) {
+            // looked up again meanwhile
+            if (!entry.evicting || entry.crdt != crdt) {
+                delete(spilled);
+                return;
+            }
+            entry.evicting = false;
+            entry.crdt = null;
+            if (spilled == null) {
+                entry.state = state;
+                encodedBytes += state.length;
+            } else {
+                entry.spilled = spilled;
+            }
+        }
+        onEvict.accept(crdt);
+    }
+
+    /**
+     * @return file of a snapshot beyond the heap budget, {@code null} to keep it
+     *         on the heap
+     */
+    private Path spill(byte[] state) {
+        final Path directory = residency.getSpillDirectory();
+        synchronized (this) {
+            if (directory == null || encodedBytes + state.length <= residency.getMaxEncodedBytes()) {
+                return null;
+            }
+        }
+        try {
+            Files.createDirectories(directory);
+            final Path file = Files.createTempFile(directory, "crdt-", ".state");
+            Files.write(file, state);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void delete(Path spilled) {
+        if (spilled == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spilled);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] encode(CRDT<? extends CRDTCommand> crdt) {
+        final BinaryOutput out = new BinaryOutput();
+        StoreSnapshot.encode(crdt, residency.getCodec(), out);
+        return out.toByteArray();
+    }
+
+    private void restore(CRDT<? extends CRDTCommand> crdt, byte[] state) {
+        if (state == null) {
+            return;
+        }
+        StoreSnapshot.decode(new BinaryInput().wrap(state), residency.getCodec(), (crdtId, className) -> crdt);
+    }
+
+    private static final class Entry {
+        private Class<? extends CRDT> crdtClass;
+        /**
+         * The instance while resident or being evicted
+         */
+        private CRDT<? extends CRDTCommand> crdt;
+        /**
+         * The encoded snapshot while evicted on the heap
+         */
+        private byte[] state;
+        /**
+         * File of the encoded snapshot while evicted to disk
+         */
+        private Path spilled;
+        /**
+         * Subscriptions to peers made on the first instantiation, {@code null}
+         * afterwards
+         */
+        private Map<Object, Runnable> pending = new LinkedHashMap<>();
+        private boolean resident;
+        private boolean evicting;
+        private long hits;
+        private long lastAccess;
+
+        private Entry(Class<? extends CRDT> crdtClass) {
+            this.crdtClass = crdtClass;
+        }
+
+        private boolean isEncoded() {
+            return state != null || spilled != null;
+        }
+
+        /**
+         * @return the encoded snapshot, {@code null} if the CRDT was never evicted.
+         *         A spilled snapshot is read and its file deleted
+         */
+        private byte[] load() {
+            if (spilled == null) {
+                return state;
+            }
+            try {
+                final byte[] bytes = Files.readAllBytes(spilled);
+                Files.delete(spilled);
+                spilled = null;
+                return bytes;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private Collection<Runnable> attach() {
+            final Map<Object, Runnable> pending = this.pending;
+            this.pending = null;
+            return pending == null ? Collections.emptyList() : pending.values();
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.juliuskrah;
 
+import java.time.Instant;
 import java.util.Objects;
 
+import io.vavr.control.Option;
+
 /**
  * A command represents the data that is sent when replicas are in-sync. After a
  * network partition, the same command sends replay events when the node was disconnected
@@ -11,6 +14,8 @@ import java.util.Objects;
  */
 public abstract class CRDTCommand {
     private final String crdtId;
+    private volatile Dot dot;
+    private volatile long originTime;
 
     public CRDTCommand(String crdtId) {
         this.crdtId = Objects.requireNonNull(crdtId, "crdtId must not be null");
@@ -20,6 +25,64 @@ public abstract class CRDTCommand {
         return crdtId;
     }
 
+    /**
+     * @return dot of the write that created this command, none for commands that
+     *         describe a snapshot of the state
+     */
+    public Option<Dot> getDot() {
+        return Option.of(dot);
+    }
+
+    /**
+     * @return time of the write that created this command in microseconds since
+     *         the epoch, taken from the clock of the writing node; 0 for commands
+     *         without a dot
+     */
+    public long getOriginTime() {
+        return originTime;
+    }
+
+    /**
+     * @return number of replicas in the vector clock of this command, 0 for
+     *         commands without one
+     */
+    public int getClockWidth() {
+        return 0;
+    }
+
+    /**
+     * Assigns the dot of a local write, written now. The dot takes no part in
+     * equality
+     * 
+     * @param dot the dot
+     */
+    void stamp(Dot dot) {
+        stamp(dot, currentTime());
+    }
+
+    /**
+     * Assigns the dot of a write and the time it was written, for commands
+     * decoded from a replica
+     * 
+     * @param dot        the dot
+     * @param originTime microseconds since the epoch
+     */
+    void stamp(Dot dot, long originTime) {
+        if (this.dot != null) {
+            throw new IllegalStateException("Command " + this + " already has dot " + this.dot);
+        }
+        this.originTime = originTime;
+        this.dot = Objects.requireNonNull(dot, "dot must not be null");
+    }
+
+    /**
+     * @return microseconds since the epoch
+     */
+    static long currentTime() {
+        final Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000L;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -2,6 +2,9 @@ package com.juliuskrah;
 
 import org.reactivestreams.Publisher;
 
+import io.vavr.Tuple2;
+import io.vavr.collection.Seq;
+
 /**
  * Definitions required to send messages asynchronously between replicas
  * 
@@ -14,14 +17,28 @@ public final class CRDTDefinition {
     /**
      * A publisher sends events to replicas and holds a buffer of unconsumed events
      */
-    private final Publisher<? extends CRDTCommand> publisher;
+    private final CRDT<? extends CRDTCommand> publisher;
+    /**
+     * Live commands of all CRDTs of the publisher's store, {@code null} when the
+     * store has none
+     */
+    private final ReplicationChannel channel;
+    private final int handle;
 
     @SuppressWarnings("rawtypes")
     CRDTDefinition(String crdtId, Class<? extends CRDT> crdtClass,
-            Publisher<? extends CRDTCommand> publisher) {
+            CRDT<? extends CRDTCommand> publisher) {
+        this(crdtId, crdtClass, publisher, null, 0);
+    }
+
+    @SuppressWarnings("rawtypes")
+    CRDTDefinition(String crdtId, Class<? extends CRDT> crdtClass, CRDT<? extends CRDTCommand> publisher,
+            ReplicationChannel channel, int handle) {
         this.crdtId = crdtId;
         this.crdtClass = crdtClass;
         this.publisher = publisher;
+        this.channel = channel;
+        this.handle = handle;
     }
 
     public String getCrdtId() {
@@ -36,4 +53,73 @@ public final class CRDTDefinition {
     public Publisher<? extends CRDTCommand> getPublisher() {
         return publisher;
     }
+
+    /**
+     * @param sequence number of the last command received from the publisher, 0
+     *                 for none
+     * @return commands sent by the publisher after that command, with their number
+     */
+    public Publisher<? extends Tuple2<Long, ? extends CRDTCommand>> since(long sequence) {
+        return publisher.since(sequence);
+    }
+
+    /**
+     * @param sequence number of the last command received from the publisher, 0
+     *                 for none
+     * @return batches of commands sent by the publisher after that command, as the
+     *         publisher grouped them
+     */
+    public Publisher<? extends Seq<? extends Tuple2<Long, ? extends CRDTCommand>>> batchesSince(long sequence) {
+        return publisher.batchesSince(sequence);
+    }
+
+    /**
+     * @param sequence number of the last command received from the publisher, 0
+     *                 for none
+     * @return commands sent by the publisher after that command, without live
+     *         commands
+     */
+    public Seq<? extends Tuple2<Long, ? extends CRDTCommand>> missed(long sequence) {
+        return publisher.missed(sequence);
+    }
+
+    /**
+     * @param tree tree over the state of the local replica
+     * @return commands of the publisher where its state differs from the tree,
+     *         without live commands
+     */
+    public Seq<? extends CRDTCommand> diverging(MerkleTree<?> tree) {
+        return publisher.diverging(tree);
+    }
+
+    /**
+     * @param tree tree over the state of the local replica
+     * @return commands of the publisher where its state differs from the tree, with
+     *         their number
+     */
+    public Publisher<? extends Tuple2<Long, ? extends CRDTCommand>> reconcile(MerkleTree<?> tree) {
+        return publisher.reconcile(tree);
+    }
+
+    ReplicationChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return the CRDT's handle on {@link #getChannel()}
+     */
+    int getHandle() {
+        return handle;
+    }
+
+    /**
+     * Identifies the publisher's log. A CRDT gets a new log with a new handle when
+     * it is loaded again, and a restarted store a new channel. Numbers of commands
+     * only compare within one origin
+     *
+     * @return origin of the log, 0 for a CRDT without a handle
+     */
+    long getOrigin() {
+        return channel == null ? 0L : channel.getIncarnation() ^ handle;
+    }
 }
@@ -0,0 +1,87 @@
+package com.juliuskrah;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Receives measurements of CRDTs and stores. Install an implementation with
+ * {@link InMemoryCRDTStore#setMetrics(CRDTMetrics)}; it is passed on to every
+ * CRDT of the store. Without one nothing is measured, and CRDTs skip the clock
+ * reads around each command
+ *
+ * Methods are called in the mailboxes of CRDTs, on many threads at once, and
+ * must not block
+ *
+ * @author Julius Krah
+ * @see InMemoryMetrics
+ */
+public interface CRDTMetrics {
+    /**
+     * Replicas the store receives commands from
+     */
+    String PEERS = "crdt.store.peers";
+    /**
+     * CRDTs the store holds in memory
+     */
+    String LIVE_CRDTS = "crdt.store.live";
+    /**
+     * Commands waiting in the outboxes of the store's CRDTs
+     */
+    String OUTBOX_DEPTH = "crdt.store.outbox";
+    /**
+     * Peers whose last command lagged more than the threshold of the store's
+     * {@link ReplicationLag}
+     */
+    String LAGGING_PEERS = "crdt.store.lagging";
+
+    /**
+     * @return metrics that record nothing
+     */
+    static CRDTMetrics noop() {
+        return NoopMetrics.INSTANCE;
+    }
+
+    /**
+     * @return {@code false} if measurements are dropped, callers then skip taking
+     *         them
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * A local write sent a command to replicas
+     *
+     * @param crdtClass class of the CRDT
+     */
+    @SuppressWarnings("rawtypes")
+    void commandEmitted(Class<? extends CRDT> crdtClass);
+
+    /**
+     * A command received from a replica changed the state
+     *
+     * @param crdtClass    class of the CRDT
+     * @param latencyNanos time the CRDT took to apply it
+     * @param clockWidth   number of replicas in its vector clock
+     */
+    @SuppressWarnings("rawtypes")
+    void commandApplied(Class<? extends CRDT> crdtClass, long latencyNanos, int clockWidth);
+
+    /**
+     * A command received from a replica left the state as it was, because it was
+     * older than the state or referred to an element the replica does not have
+     *
+     * @param crdtClass class of the CRDT
+     */
+    @SuppressWarnings("rawtypes")
+    void commandRejected(Class<? extends CRDT> crdtClass);
+
+    /**
+     * Registers a value read when metrics are collected. A later registration
+     * under the same name and node replaces it
+     *
+     * @param name   the gauge, such as {@link #PEERS}
+     * @param nodeId node of the store
+     * @param value  reads the current value
+     */
+    void gauge(String name, String nodeId, LongSupplier value);
+}
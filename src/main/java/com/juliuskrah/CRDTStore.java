@@ -1,11 +1,19 @@
 package com.juliuskrah;
 
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.function.BiFunction;
 
 import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
 
+import com.juliuskrah.ReplicationLog.Digest;
+
+import io.vavr.Tuple2;
 import io.vavr.control.Option;
+import reactor.core.publisher.Flux;
 
 /**
  * An implementation of this interface is provided {@link InMemoryCRDTStore}
@@ -200,6 +208,17 @@ public interface CRDTStore extends Publisher<CRDTDefinition> {
         return createCrdt(LWWElementGraph.class, crdtId);
     }
 
+    /**
+     * Announces only the CRDTs a subscriber replicates
+     * 
+     * @param subscriber receives the definitions
+     * @param filter     CRDTs the subscriber replicates
+     */
+    default void subscribe(Subscriber<? super CRDTDefinition> subscriber, ReplicationFilter filter) {
+        Objects.requireNonNull(filter, "filter must not be null");
+        Flux.from(this).filter(filter::test).subscribe(subscriber);
+    }
+
     /**
      * Copies over the state changes to replicas if connected
      * 
@@ -208,7 +227,46 @@ public interface CRDTStore extends Publisher<CRDTDefinition> {
     void subscribeTo(Publisher<? extends CRDTDefinition> publisher);
 
     /**
-     * Establish a network connection to a replica
+     * Hash tree over the CRDTs of this store, keyed by CRDT ID. Peers compare trees
+     * when they connect and only reconcile the CRDTs in diverging subtrees
+     * 
+     * @return tree with one leaf per CRDT
+     */
+    MerkleTree<Tuple2<String, Digest>> merkleTree();
+
+    /**
+     * Writes the state of every CRDT of this store in a binary format that keeps
+     * the class of each CRDT. Each CRDT's state is taken at one point of its
+     * history, writers only wait while it is copied
+     * 
+     * @param channel target, not closed
+     * @throws java.io.UncheckedIOException if the channel fails
+     */
+    void exportSnapshot(WritableByteChannel channel);
+
+    /**
+     * Merges the CRDTs of an exported snapshot into this store, creating the
+     * missing ones. CRDTs are restored in parallel
+     * 
+     * @param channel source, not closed
+     * @throws java.io.UncheckedIOException if the channel fails or the snapshot is
+     *                                      corrupt
+     */
+    void importSnapshot(ReadableByteChannel channel);
+
+    /**
+     * Lag between the write of a command on a peer and its arrival at the CRDTs of
+     * this store, per peer and per CRDT
+     * 
+     * @return replication lag of this store
+     */
+    ReplicationLag getReplicationLag();
+
+    /**
+     * Establish a network connection to a replica. CRDTs both stores already hold
+     * are synchronized by anti-entropy: unchanged CRDTs only receive commands sent
+     * after the trees were compared, diverging CRDTs receive the commands of
+     * diverging buckets
      * 
      * @param other store
      */
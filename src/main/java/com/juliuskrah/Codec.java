@@ -0,0 +1,26 @@
+package com.juliuskrah;
+
+/**
+ * Encodes commands for a transport such as {@link NetworkCRDTStore}. A codec is
+ * stateless and shared by all connections; state that spans the frames of one
+ * connection, such as the dictionary of interned IDs, lives in the
+ * {@link BinaryOutput} and {@link BinaryInput} of the connection. The default
+ * is {@link BinaryCodec}
+ *
+ * @author Julius Krah
+ */
+public interface Codec {
+    /**
+     * @param command the command, including its {@link Dot}
+     * @param out     output of the connection
+     * @throws IllegalArgumentException if the command type is not supported
+     */
+    void encode(CRDTCommand command, BinaryOutput out);
+
+    /**
+     * @param in input of the connection, positioned at a command
+     * @return the command, including its {@link Dot}
+     * @throws IllegalArgumentException if the input is malformed
+     */
+    CRDTCommand decode(BinaryInput in);
+}
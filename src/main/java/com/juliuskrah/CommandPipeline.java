@@ -0,0 +1,121 @@
+package com.juliuskrah;
+
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
+import io.vavr.control.Option;
+
+/**
+ * The steps every CRDT takes for a command: local writes are stamped with a dot
+ * before they enter the {@link ReplicationLog}, commands of replicas are
+ * deduplicated by their dot, applied and relayed if they changed the state.
+ * Lag, metrics and a {@link MergeEvent} are recorded along the way
+ *
+ * @author Julius Krah
+ * @param <COMMAND> CRDT Command
+ */
+final class CommandPipeline<COMMAND extends CRDTCommand> {
+    private final CRDT<COMMAND> crdt;
+    private final Function<? super COMMAND, ? extends Option<? extends COMMAND>> process;
+    private final Mailbox mailbox;
+    private final ReplicationLog<COMMAND> log;
+    /**
+     * Dots of the applied commands. Only read and written in the mailbox
+     */
+    private final SeenSet seen;
+    private volatile CRDTMetrics metrics = CRDTMetrics.noop();
+    private volatile ReplicationLag lag;
+
+    /**
+     * @param crdt      the CRDT the commands belong to
+     * @param nodeId    the node ID of the current replica
+     * @param snapshot  commands describing the current state
+     * @param retention commands the log retains for catching up
+     * @param mailbox   mailbox of the CRDT
+     * @param process   applies a command, the command to relay if it changed the
+     *                  state
+     */
+    CommandPipeline(CRDT<COMMAND> crdt, String nodeId, Supplier<? extends Iterable<? extends COMMAND>> snapshot,
+            Retention retention, Mailbox mailbox,
+            Function<? super COMMAND, ? extends Option<? extends COMMAND>> process) {
+        this.crdt = crdt;
+        this.process = process;
+        this.mailbox = Objects.requireNonNull(mailbox, "mailbox must not be null");
+        this.seen = new SeenSet(SeenSet.incarnation(Objects.requireNonNull(nodeId, "nodeId must not be null")));
+        this.log = new ReplicationLog<>(snapshot, retention, mailbox, command -> {
+            command.stamp(seen.next());
+            metrics.commandEmitted(crdt.getClass());
+        });
+    }
+
+    Mailbox getMailbox() {
+        return mailbox;
+    }
+
+    ReplicationLog<COMMAND> getLog() {
+        return log;
+    }
+
+    void setMetrics(CRDTMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics, "metrics must not be null");
+    }
+
+    void setReplicationLag(ReplicationLag lag) {
+        this.lag = Objects.requireNonNull(lag, "lag must not be null");
+    }
+
+    /**
+     * Applies a command of a replica and relays it if it changed the state. Runs in
+     * the mailbox. The clock is only read when metrics are enabled, a
+     * {@link MergeEvent} only while a recording is running
+     */
+    void apply(COMMAND command) {
+        apply(command, true);
+    }
+
+    /**
+     * Applies a command restored from local storage. Its lag is not recorded
+     */
+    void restore(COMMAND command) {
+        apply(command, false);
+    }
+
+    private void apply(COMMAND command, boolean live) {
+        if (!firstSeen(command)) {
+            return;
+        }
+        final ReplicationLag lag = this.lag;
+        if (live && lag != null) {
+            lag.record(crdt.getCrdtId(), command);
+        }
+        final MergeEvent event = new MergeEvent();
+        event.begin();
+        final CRDTMetrics metrics = this.metrics;
+        if (!metrics.isEnabled()) {
+            final Option<? extends COMMAND> applied = process.apply(command);
+            event.end(crdt, command, applied.isDefined());
+            applied.peek(log::relay);
+            return;
+        }
+        final long start = System.nanoTime();
+        final Option<? extends COMMAND> applied = process.apply(command);
+        event.end(crdt, command, applied.isDefined());
+        if (applied.isDefined()) {
+            metrics.commandApplied(crdt.getClass(), System.nanoTime() - start, command.getClockWidth());
+            log.relay(applied.get());
+        } else {
+            metrics.commandRejected(crdt.getClass());
+        }
+    }
+
+    /**
+     * Commands relayed on several paths arrive more than once. Repeated dots are
+     * dropped before any state work, commands without a dot are always applied
+     */
+    private boolean firstSeen(COMMAND command) {
+        return command.getDot().forAll(seen::add);
+    }
+}
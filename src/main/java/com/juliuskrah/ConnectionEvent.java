@@ -0,0 +1,36 @@
+package com.juliuskrah;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of a store connecting to or disconnecting from a peer.
+ * The duration of a connect covers comparing the Merkle trees and subscribing
+ * to the peer, not the peer connecting back
+ *
+ * @author Julius Krah
+ */
+@Name("com.juliuskrah.Connection")
+@Label("CRDT Store Connection")
+@Category({ "CRDT", "Replication" })
+@Description("A store connected to or disconnected from a peer")
+@StackTrace(false)
+final class ConnectionEvent extends Event {
+    @Label("Node ID")
+    String nodeId;
+    @Label("Peer")
+    String peer;
+    @Label("Connected")
+    @Description("True for a connect, false for a disconnect")
+    boolean connected;
+    @Label("Unchanged")
+    @Description("CRDTs found unchanged in both stores, which skip the catch-up")
+    int unchanged;
+    @Label("Filtered")
+    @Description("Whether only some CRDTs of the peer are replicated")
+    boolean filtered;
+}
@@ -0,0 +1,63 @@
+package com.juliuskrah;
+
+import java.util.Objects;
+
+/**
+ * Unique identifier of a command: the node that wrote it and the number of the
+ * write on that node. Replicas relay commands with their dot unchanged, so a
+ * command reaching a replica on several paths is recognized
+ * 
+ * @author Julius Krah
+ */
+public final class Dot {
+    private final String origin;
+    private final long sequence;
+
+    public Dot(String origin, long sequence) {
+        this.origin = Objects.requireNonNull(origin, "origin must not be null");
+        if (sequence < 1) {
+            throw new IllegalArgumentException("sequence must be positive");
+        }
+        this.sequence = sequence;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        Dot that = (Dot) o;
+
+        return sequence == that.sequence && origin.equals(that.origin);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(origin, sequence);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return origin + ":" + sequence;
+    }
+}
@@ -0,0 +1,68 @@
+package com.juliuskrah;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * How a {@link DurableCRDTStore} writes its log. Commands are appended to
+ * memory-mapped segments of {@code segmentSize} bytes and forced to disk
+ * together every {@code commitInterval}, so a crash loses at most the commands
+ * of one interval. After {@code snapshotInterval} bytes of log the store writes
+ * a snapshot of every CRDT and deletes the segments it covers
+ *
+ * @author Julius Krah
+ */
+public final class Durability {
+    private static final Durability DEFAULT = new Durability(64 * 1024 * 1024, Duration.ofMillis(10),
+            64 * 1024 * 1024);
+
+    private final int segmentSize;
+    private final Duration commitInterval;
+    private final long snapshotInterval;
+
+    private Durability(int segmentSize, Duration commitInterval, long snapshotInterval) {
+        this.segmentSize = segmentSize;
+        this.commitInterval = commitInterval;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * @return 64 MiB segments, a commit every 10 milliseconds and a snapshot
+     *         every 64 MiB of log
+     */
+    public static Durability ofDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param segmentSize      size of a log segment in bytes
+     * @param commitInterval   time between two forces of the log
+     * @param snapshotInterval bytes of log between two snapshots
+     * @return the durability
+     */
+    public static Durability of(int segmentSize, Duration commitInterval, long snapshotInterval) {
+        if (segmentSize < 4096) {
+            throw new IllegalArgumentException("segmentSize must be at least 4096");
+        }
+        Objects.requireNonNull(commitInterval, "commitInterval must not be null");
+        if (commitInterval.isNegative() || commitInterval.isZero()) {
+            throw new IllegalArgumentException("commitInterval must be positive");
+        }
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("snapshotInterval must be positive");
+        }
+        return new Durability(segmentSize, commitInterval, snapshotInterval);
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public Duration getCommitInterval() {
+        return commitInterval;
+    }
+
+    public long getSnapshotInterval() {
+        return snapshotInterval;
+    }
+}
@@ -0,0 +1,394 @@
+package com.juliuskrah;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.reactivestreams.Subscription;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.Map;
+import io.vavr.collection.Seq;
+import io.vavr.control.Option;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+/**
+ * A CRDT store that keeps its CRDTs across restarts. Every definition and
+ * command of the store, local or received, is appended to a
+ * {@link WriteAheadLog write-ahead log} in memory-mapped segment files, and the
+ * log is forced to disk once per commit interval. From time to time the store
+ * writes a snapshot of every CRDT and deletes the segments it covers.
+ *
+ * {@link #recover()} loads the latest snapshot and replays the log written
+ * after it. Call it once, after registering custom factories and before using
+ * the store. Commands are encoded by a {@link Codec}, {@link BinaryCodec}
+ * unless another is given.
+ *
+ * Commands are logged after the write that created them returned. A command
+ * that cannot be logged, for example an element without a codec, is reported
+ * by the next {@link #sync()} until a snapshot covers it
+ *
+ * @author Julius Krah
+ * @see Durability
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class DurableCRDTStore extends InMemoryCRDTStore implements AutoCloseable {
+    private static final byte DEFINITION = 1;
+    private static final byte COMMAND = 2;
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d{20})\\.snap");
+    private static final int SNAPSHOT_HEADER = 2 * Integer.BYTES;
+
+    private final String nodeId;
+    private final Path directory;
+    private final Durability durability;
+    private final Codec codec;
+    private final Disposable.Composite loggers = Disposables.composite();
+    private final Object checkpointLock = new Object();
+    private volatile WriteAheadLog log;
+    private volatile Thread committer;
+    private volatile boolean closed;
+    /**
+     * Position of the log the latest snapshot covers
+     */
+    private volatile long snapshotPosition;
+    /**
+     * First append that failed since the latest snapshot
+     */
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    /**
+     * @param nodeId    the node ID
+     * @param directory directory of the log and snapshots, created if missing
+     */
+    public DurableCRDTStore(String nodeId, Path directory) {
+        this(nodeId, directory, Durability.ofDefault(), Retention.ofDefault(), BinaryCodec.ofDefault());
+    }
+
+    /**
+     * @param nodeId     the node ID
+     * @param directory  directory of the log and snapshots, created if missing
+     * @param durability how the log is written
+     * @param retention  retention of definitions announced to peers
+     * @param codec      encodes commands, must be the codec that wrote the
+     *                   directory
+     */
+    public DurableCRDTStore(String nodeId, Path directory, Durability durability, Retention retention,
+            Codec codec) {
+        super(nodeId, retention);
+        this.nodeId = nodeId;
+        this.directory = Objects.requireNonNull(directory, "directory must not be null");
+        this.durability = Objects.requireNonNull(durability, "durability must not be null");
+        this.codec = Objects.requireNonNull(codec, "codec must not be null");
+    }
+
+    /**
+     * Restores the CRDTs from the directory and starts logging
+     *
+     * @throws IllegalStateException if the store recovered already
+     */
+    public synchronized void recover() {
+        if (log != null) {
+            throw new IllegalStateException("Store already recovered");
+        }
+        try {
+            Files.createDirectories(directory);
+            final long covered = restoreSnapshot();
+            final long end = WriteAheadLog.replay(directory, (position, in) -> apply(in, position >= covered));
+            snapshotPosition = covered;
+            log = new WriteAheadLog(directory, durability.getSegmentSize(), Math.max(end, covered));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // what was restored is in the log already
+        final Map<String, Long> restored = getCrdts()
+                .toMap(crdt -> Tuple.of(crdt.getCrdtId(), crdt.checkpoint()._1));
+        subscribe(new DefinitionLogger(restored));
+        committer = new Thread(this::commit, "crdt-wal-" + nodeId);
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Forces the log to disk now instead of at the end of the commit interval
+     *
+     * @throws IllegalStateException if a definition or command could not be logged
+     *                               since the latest snapshot. The store keeps it
+     *                               in memory, a successful {@link #checkpoint()}
+     *                               makes it durable
+     */
+    public void sync() {
+        recovered().force();
+        final RuntimeException failure = this.failure.get();
+        if (failure != null) {
+            throw new IllegalStateException("Writes since the latest snapshot were not logged", failure);
+        }
+    }
+
+    /**
+     * Writes a snapshot of every CRDT and deletes the log and snapshots it
+     * replaces. The store does so every snapshot interval and when it closes
+     */
+    public void checkpoint() {
+        final WriteAheadLog log = recovered();
+        synchronized (checkpointLock) {
+            // failures after this point may concern commands the snapshot misses
+            final RuntimeException failure = this.failure.get();
+            // commands logged after this position may be in the snapshot too, they
+            // are idempotent
+            final long position = log.position();
+            final BinaryOutput out = new BinaryOutput();
+            out.writeVarLong(position);
+            final Seq<CRDT<? extends CRDTCommand>> crdts = getCrdts();
+            out.writeVarInt(crdts.size());
+            for (CRDT<? extends CRDTCommand> crdt : crdts) {
+                StoreSnapshot.encode(crdt, codec, out);
+            }
+            final byte[] payload = out.toByteArray();
+            final CRC32 crc = new CRC32();
+            crc.update(payload);
+            final Path file = directory.resolve(String.format("snapshot-%020d.snap", position));
+            final Path temporary = directory.resolve(file.getFileName() + ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    final ByteBuffer[] buffers = { ByteBuffer.allocate(SNAPSHOT_HEADER).putInt(payload.length)
+                            .putInt((int) crc.getValue()).flip(), ByteBuffer.wrap(payload) };
+                    while (buffers[1].hasRemaining()) {
+                        channel.write(buffers);
+                    }
+                    channel.force(true);
+                }
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+                snapshotPosition = position;
+                this.failure.compareAndSet(failure, null);
+                for (Tuple2<Long, Path> older : snapshots()) {
+                    if (older._1 < position) {
+                        Files.deleteIfExists(older._2);
+                    }
+                }
+                log.deleteBefore(position);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Stops logging and writes a snapshot
+     */
+    @Override
+    public void close() {
+        closed = true;
+        final Thread committer = this.committer;
+        if (committer == null) {
+            return;
+        }
+        LockSupport.unpark(committer);
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        loggers.dispose();
+        log.force();
+        checkpoint();
+    }
+
+    private WriteAheadLog recovered() {
+        final WriteAheadLog log = this.log;
+        if (log == null) {
+            throw new IllegalStateException("Store not recovered");
+        }
+        return log;
+    }
+
+    /**
+     * Forces the log once per commit interval, and writes a snapshot once the
+     * log grew by the snapshot interval
+     */
+    private void commit() {
+        final long interval = durability.getCommitInterval().toNanos();
+        while (!closed) {
+            LockSupport.parkNanos(this, interval);
+            try {
+                log.force();
+                if (!closed && log.position() - snapshotPosition >= durability.getSnapshotInterval()) {
+                    checkpoint();
+                }
+            } catch (RuntimeException e) {
+                Operators.onErrorDropped(e, Context.empty());
+            }
+        }
+    }
+
+    /**
+     * Applies the latest intact snapshot
+     *
+     * @return position of the log the snapshot covers, 0 without a snapshot
+     */
+    private long restoreSnapshot() throws IOException {
+        for (Tuple2<Long, Path> snapshot : snapshots().reverse()) {
+            final byte[] bytes = Files.readAllBytes(snapshot._2);
+            if (bytes.length < SNAPSHOT_HEADER) {
+                continue;
+            }
+            final ByteBuffer header = ByteBuffer.wrap(bytes);
+            final byte[] payload = Arrays.copyOfRange(bytes, SNAPSHOT_HEADER, bytes.length);
+            final CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (header.getInt(0) != payload.length || header.getInt(Integer.BYTES) != (int) crc.getValue()) {
+                continue;
+            }
+            final BinaryInput in = new BinaryInput().wrap(payload);
+            final long position = in.readVarLong();
+            for (int crdts = in.readVarInt(); crdts > 0; crdts--) {
+                StoreSnapshot.decode(in, codec, (crdtId, className) -> {
+                    try {
+                        return define(crdtId, className);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            return position;
+        }
+        return 0L;
+    }
+
+    /**
+     * Decodes a record of the log. Records the snapshot covers are decoded for
+     * the dictionary and clocks of their segment only
+     */
+    private void apply(BinaryInput in, boolean uncovered) throws IOException {
+        switch (in.readByte()) {
+        case DEFINITION:
+            final String crdtId = in.readInterned();
+            final String className = in.readInterned();
+            if (uncovered) {
+                define(crdtId, className);
+            }
+            break;
+        case COMMAND:
+            final CRDTCommand command = codec.decode(in);
+            if (uncovered) {
+                final Option<? extends CRDT> crdt = findCrdt(command.getCrdtId());
+                crdt.peek(replica -> replica.restore(List.of(command)));
+            }
+            break;
+        default:
+            throw new IOException("Unknown record type");
+        }
+    }
+
+    private CRDT define(String crdtId, String className) throws IOException {
+        try {
+            final Class<?> crdtClass = Class.forName(className, false, getClass().getClassLoader());
+            if (!CRDT.class.isAssignableFrom(crdtClass)) {
+                throw new IOException("Not a CRDT: " + className);
+            }
+            return createCrdt((Class) crdtClass, crdtId);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private io.vavr.collection.List<Tuple2<Long, Path>> snapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            final List<Tuple2<Long, Path>> snapshots = files.map(file -> {
+                final Matcher matcher = SNAPSHOT.matcher(file.getFileName().toString());
+                return matcher.matches() ? Tuple.of(Long.parseLong(matcher.group(1)), file) : null;
+            }).filter(Objects::nonNull).sorted(Comparator.comparing(Tuple2::_1)).collect(Collectors.toList());
+            return io.vavr.collection.List.ofAll(snapshots);
+        }
+    }
+
+    private void append(FrameWriter writer) {
+        try {
+            log.append(writer);
+        } catch (IOException e) {
+            failed(new UncheckedIOException(e));
+        } catch (RuntimeException e) {
+            failed(e);
+        }
+    }
+
+    private void failed(RuntimeException e) {
+        failure.compareAndSet(null, e);
+        Operators.onErrorDropped(e, Context.empty());
+    }
+
+    /**
+     * Logs a definition for each CRDT of this store, then its commands
+     */
+    private final class DefinitionLogger extends BaseSubscriber<CRDTDefinition> {
+        /**
+         * Number of the last command of each restored CRDT
+         */
+        private final Map<String, Long> restored;
+        /**
+         * A definition may arrive twice, in the snapshot and in the tail
+         */
+        private io.vavr.collection.Set<String> logged = HashSet.empty();
+
+        private DefinitionLogger(Map<String, Long> restored) {
+            this.restored = restored;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            loggers.add(this);
+            super.hookOnSubscribe(subscription);
+        }
+
+        @Override
+        protected void hookOnNext(CRDTDefinition definition) {
+            final String crdtId = definition.getCrdtId();
+            if (logged.contains(crdtId)) {
+                return;
+            }
+            logged = logged.add(crdtId);
+            if (!restored.containsKey(crdtId)) {
+                append(out -> {
+                    out.writeByte(DEFINITION);
+                    out.writeInterned(crdtId);
+                    out.writeInterned(definition.getCrdtClass().getName());
+                });
+            }
+            loggers.add(Flux.from(definition.since(restored.getOrElse(crdtId, 0L))).map(Tuple2::_2)
+                    .subscribe(command -> append(out -> {
+                        out.writeByte(COMMAND);
+                        codec.encode(command, out);
+                    }), error -> Operators.onErrorDropped(error, Context.empty())));
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            Operators.onErrorDropped(throwable, Context.empty());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.juliuskrah;
+
+/**
+ * Encodes the elements users store in CRDTs. Register codecs for your own
+ * element types with {@link BinaryCodec.Builder#element(int, Class, ElementCodec)}
+ *
+ * @author Julius Krah
+ * @param <E> element type
+ */
+public interface ElementCodec<E> {
+
+    void write(E element, BinaryOutput out);
+
+    E read(BinaryInput in);
+
+    static ElementCodec<String> ofString() {
+        return new ElementCodec<>() {
+            @Override
+            public void write(String element, BinaryOutput out) {
+                out.writeString(element);
+            }
+
+            @Override
+            public String read(BinaryInput in) {
+                return in.readString();
+            }
+        };
+    }
+
+    static ElementCodec<Integer> ofInteger() {
+        return new ElementCodec<>() {
+            @Override
+            public void write(Integer element, BinaryOutput out) {
+                out.writeZigZag(element);
+            }
+
+            @Override
+            public Integer read(BinaryInput in) {
+                return (int) in.readZigZag();
+            }
+        };
+    }
+
+    static ElementCodec<Long> ofLong() {
+        return new ElementCodec<>() {
+            @Override
+            public void write(Long element, BinaryOutput out) {
+                out.writeZigZag(element);
+            }
+
+            @Override
+            public Long read(BinaryInput in) {
+                return in.readZigZag();
+            }
+        };
+    }
+
+    static ElementCodec<Boolean> ofBoolean() {
+        return new ElementCodec<>() {
+            @Override
+            public void write(Boolean element, BinaryOutput out) {
+                out.writeByte(element ? 1 : 0);
+            }
+
+            @Override
+            public Boolean read(BinaryInput in) {
+                return in.readByte() != 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package com.juliuskrah;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Decides what a local write does when its CRDT cannot send the command right
+ * away. Commands wait in a bounded outbox of a {@link ReplicationLog} while
+ * another thread delivers to replicas, and in the buffers of subscribers that
+ * have not requested them yet. When the outbox plus the lag of the slowest
+ * subscriber reach the capacity, a write is retried, parked, rejected before it
+ * changes local state, or it pushes the oldest waiting write out of the outbox
+ * and leaves the slow subscriber to catch up from the tail. Commands relayed
+ * from replicas and definitions of CRDTs are not local writes, they are never
+ * held up
+ *
+ * @author Julius Krah
+ */
+public final class EmissionPolicy {
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final Duration DEFAULT_BACKOFF = Duration.ofMillis(1);
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Strategy strategy;
+    private final int capacity;
+    private final int maxAttempts;
+    private final Duration timeout;
+
+    private EmissionPolicy(Strategy strategy, int capacity, int maxAttempts, Duration timeout) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.strategy = strategy;
+        this.capacity = capacity;
+        this.maxAttempts = maxAttempts;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return parks writes while 256 commands are waiting, for at most 10 seconds
+     */
+    public static EmissionPolicy ofDefault() {
+        return park(DEFAULT_CAPACITY, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Throws {@link reactor.core.publisher.Sinks.EmissionException} before the
+     * local state is changed
+     *
+     * @param capacity commands that may wait in the outbox
+     * @return reject-before-mutate policy
+     */
+    public static EmissionPolicy reject(int capacity) {
+        return new EmissionPolicy(Strategy.REJECT, capacity, 0, Duration.ZERO);
+    }
+
+    /**
+     * Spins until the outbox has room, then rejects like {@link #reject(int)}
+     *
+     * @param capacity    commands that may wait in the outbox
+     * @param maxAttempts attempts before the write is rejected
+     * @return bounded retry policy
+     */
+    public static EmissionPolicy retry(int capacity, int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        return new EmissionPolicy(Strategy.RETRY, capacity, maxAttempts, Duration.ZERO);
+    }
+
+    /**
+     * Parks the writing thread until the outbox has room, then rejects like
+     * {@link #reject(int)}
+     *
+     * @param capacity commands that may wait in the outbox
+     * @param timeout  how long a write may be parked
+     * @return park policy
+     */
+    public static EmissionPolicy park(int capacity, Duration timeout) {
+        Objects.requireNonNull(timeout, "timeout must not be null");
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        return new EmissionPolicy(Strategy.PARK, capacity, 0, timeout);
+    }
+
+    /**
+     * Never holds up a write. The oldest waiting local write is dropped to make
+     * room and reported to {@link reactor.core.publisher.Hooks#onNextDropped};
+     * replicas catch up from the snapshot when they reconnect. A subscriber that
+     * falls behind by the capacity no longer receives live commands, it catches
+     * up from the tail once it consumed what it buffered
+     *
+     * @param capacity commands that may wait in the outbox
+     * @return drop-oldest policy
+     */
+    public static EmissionPolicy dropOldest(int capacity) {
+        return new EmissionPolicy(Strategy.DROP_OLDEST, capacity, 0, Duration.ZERO);
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return delay between attempts of a non-blocking write
+     */
+    Duration getBackoff() {
+        return DEFAULT_BACKOFF;
+    }
+
+    public enum Strategy {
+        RETRY, PARK, DROP_OLDEST, REJECT
+    }
+}
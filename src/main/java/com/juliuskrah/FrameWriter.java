@@ -0,0 +1,13 @@
+package com.juliuskrah;
+
+/**
+ * Writes the payload of a frame when a transport is ready to send it. Frames
+ * are encoded in the order they are sent, so interned strings and clock deltas
+ * reach the peer in the order its {@link BinaryInput} reads them
+ *
+ * @author Julius Krah
+ */
+@FunctionalInterface
+interface FrameWriter {
+    void write(BinaryOutput out);
+}
@@ -0,0 +1,147 @@
+package com.juliuskrah;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+import io.vavr.control.Option;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Gossip dissemination as an alternative to connecting every pair of stores.
+ * In each round a store picks a few random members, its fan-out, and runs a
+ * push-pull exchange with each of them: the trees of both stores are compared
+ * and each side receives the commands of the other side's diverging CRDTs.
+ * CRDTs a store does not hold yet are created on the fly.
+ *
+ * An update reaches all N members in O(log N) rounds, while every store only
+ * talks to its fan-out per round
+ *
+ * @author Julius Krah
+ */
+public final class Gossip {
+    private final CRDTStore local;
+    private final int fanout;
+    private final Random random;
+    private final LongAdder messages = new LongAdder();
+    private volatile Seq<CRDTStore> members = List.empty();
+
+    /**
+     * @param local  the store that gossips
+     * @param fanout number of members contacted per round
+     */
+    public Gossip(CRDTStore local, int fanout) {
+        this(local, fanout, new Random());
+    }
+
+    /**
+     * @param local  the store that gossips
+     * @param fanout number of members contacted per round
+     * @param random picks the members, seed it for a deterministic simulation
+     */
+    public Gossip(CRDTStore local, int fanout, Random random) {
+        if (fanout < 1) {
+            throw new IllegalArgumentException("fanout must be positive");
+        }
+        this.local = Objects.requireNonNull(local, "local must not be null");
+        this.fanout = fanout;
+        this.random = Objects.requireNonNull(random, "random must not be null");
+    }
+
+    /**
+     * @param member store to gossip with
+     */
+    public synchronized void join(CRDTStore member) {
+        Objects.requireNonNull(member, "member must not be null");
+        if (member != local && !members.contains(member)) {
+            members = members.append(member);
+        }
+    }
+
+    /**
+     * @param member store to stop gossiping with
+     */
+    public synchronized void leave(CRDTStore member) {
+        members = members.remove(member);
+    }
+
+    /**
+     * Runs one round: a push-pull exchange with up to fan-out random members
+     *
+     * @return number of messages sent in this round
+     */
+    public long round() {
+        long sent = 0L;
+        for (CRDTStore member : pick()) {
+            sent += exchange(local, member);
+        }
+        messages.add(sent);
+        return sent;
+    }
+
+    /**
+     * Runs rounds periodically
+     *
+     * @param period    time between rounds
+     * @param scheduler runs the rounds
+     * @return disposable to stop gossiping
+     */
+    public Disposable start(Duration period, Scheduler scheduler) {
+        Objects.requireNonNull(period, "period must not be null");
+        Objects.requireNonNull(scheduler, "scheduler must not be null");
+        return Flux.interval(period, scheduler).onBackpressureDrop().subscribe(tick -> round());
+    }
+
+    /**
+     * @return messages sent by this store since it was created. A tree sent for
+     *         comparison counts as one message, as does every command
+     */
+    public long getMessages() {
+        return messages.sum();
+    }
+
+    private Seq<CRDTStore> pick() {
+        Seq<CRDTStore> candidates = members;
+        Seq<CRDTStore> picked = List.empty();
+        while (picked.size() < fanout && !candidates.isEmpty()) {
+            final CRDTStore member = candidates.get(random.nextInt(candidates.size()));
+            candidates = candidates.remove(member);
+            picked = picked.append(member);
+        }
+        return picked;
+    }
+
+    /**
+     * Both stores send their tree, then pull the diverging CRDTs of each other
+     */
+    private static long exchange(CRDTStore store, CRDTStore member) {
+        final MerkleTree<Tuple2<String, ReplicationLog.Digest>> tree = store.merkleTree();
+        final MerkleTree<Tuple2<String, ReplicationLog.Digest>> memberTree = member.merkleTree();
+        long sent = 2L;
+        for (Tuple2<String, ReplicationLog.Digest> leaf : memberTree.diverging(tree)) {
+            sent += pull(store, member, leaf._1);
+        }
+        for (Tuple2<String, ReplicationLog.Digest> leaf : tree.diverging(memberTree)) {
+            sent += pull(member, store, leaf._1);
+        }
+        return sent;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static long pull(CRDTStore target, CRDTStore source, String crdtId) {
+        final CRDT<? extends CRDTCommand> crdt = source.findCrdt(crdtId).get();
+        final Option<CRDT> existing = (Option) target.findCrdt(crdtId);
+        final CRDT replica = existing.getOrElse(() -> target.createCrdt(crdt.getClass(), crdtId));
+        final Seq<? extends CRDTCommand> commands = crdt.diverging(replica.merkleTree());
+        if (!commands.isEmpty()) {
+            replica.receiveAll(commands.asJava());
+        }
+        return commands.size();
+    }
+}
@@ -1,19 +1,36 @@
 package com.juliuskrah;
 
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
+import com.juliuskrah.ReplicationLog.Digest;
+import com.juliuskrah.ReplicationLog.Retention;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
 import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
 import io.vavr.collection.Map;
+import io.vavr.collection.Seq;
 import io.vavr.control.Option;
 import reactor.core.publisher.BaseSubscriber;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
 import reactor.core.publisher.Sinks;
 import reactor.core.publisher.Sinks.EmitFailureHandler;
+import reactor.util.context.Context;
 
 /**
  * In memory implementation of a CRDT store. Mimics independent replicas
@@ -22,12 +39,48 @@ import reactor.core.publisher.Sinks.EmitFailureHandler;
  */
 @SuppressWarnings("rawtypes")
 public class InMemoryCRDTStore implements CRDTStore {
+    /**
+     * Missed commands are applied in batches of at most this many
+     */
+    private static final int CATCH_UP_BATCH = 1024;
     private final String nodeId;
-    private final Sinks.Many<CRDTDefinition> definitions = Sinks.many().replay().all();
-    private Map<CRDTStore, CRDTStoreSubscriber> subscribers = HashMap.empty();
+    private final ReplicationLog<CRDTDefinition> definitions;
+    private final Residency residency;
+    /**
+     * CRDTs of a lazy store, {@code null} for an eager one
+     */
+    private final CRDTCache cache;
+    private volatile Executor executor;
+    private volatile ReplicationMode replicationMode = ReplicationMode.REACTIVE;
+    private volatile CRDTMetrics metrics = CRDTMetrics.noop();
+    private final ReplicationLag lag;
+    private final ConcurrentMap<CRDTStore, CRDTStoreSubscriber> subscribers = new ConcurrentHashMap<>();
+    /**
+     * Origin of the log and number of the last command received, per peer and
+     * CRDT. Kept across disconnects, so a reconnecting peer only sends what was
+     * missed. A cursor only applies to the log it was taken from, see
+     * {@link CRDTDefinition#getOrigin()}
+     */
+    private final ConcurrentMap<CRDTStore, ConcurrentMap<String, Tuple2<Long, Long>>> cursors = //
+            new ConcurrentHashMap<>();
 
-    private Map<String, CRDT<? extends CRDTCommand>> crdts = HashMap.empty();
-    private Map<Class<? extends CRDT>, BiFunction<String, String, ? extends CRDT>> factories = HashMap.empty();
+    /**
+     * Registered CRDTs. Lookups do not lock, and a CRDT is created at most once
+     * per ID however many threads create it at the same time
+     */
+    private final ConcurrentMap<String, CRDT<? extends CRDTCommand>> crdts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<? extends CRDT>, BiFunction<String, String, ? extends CRDT>> factories = //
+            new ConcurrentHashMap<>();
+    /**
+     * Live commands of all CRDTs, peers subscribe to it once
+     */
+    private final ReplicationChannel channel = new ReplicationChannel();
+    /**
+     * Handle on the channel of each registered CRDT, with the instance it belongs
+     * to
+     */
+    private final ConcurrentMap<String, Tuple2<CRDT<? extends CRDTCommand>, Integer>> handles = //
+            new ConcurrentHashMap<>();
 
     /**
      * Loads all default implementations
@@ -42,13 +95,50 @@ public class InMemoryCRDTStore implements CRDTStore {
     }
 
     /**
-     * Registers the CRDT implementation InMemory
+     * Announces a CRDT that was added to {@link #crdts}. A peer that connects
+     * meanwhile may receive its definition twice, in the snapshot and in the tail
      * 
      * @param crdt CRDT implementation
      */
     private void register(CRDT<? extends CRDTCommand> crdt) {
-        crdts = crdts.put(crdt.getCrdtId(), crdt);
-        definitions.emitNext(new CRDTDefinition(crdt.getCrdtId(), crdt.getClass(), crdt), EmitFailureHandler.FAIL_FAST);
+        final Executor executor = this.executor;
+        if (executor != null) {
+            crdt.getMailbox().setExecutor(executor);
+        }
+        crdt.setMetrics(metrics);
+        crdt.setReplicationLag(lag);
+        handles.put(crdt.getCrdtId(), Tuple.of(crdt, channel.open(crdt)));
+        definitions.publish(() -> definitionOf(crdt));
+    }
+
+    /**
+     * Registers a CRDT the cache instantiated
+     */
+    private void load(CRDT<? extends CRDTCommand> crdt) {
+        crdts.put(crdt.getCrdtId(), crdt);
+        register(crdt);
+    }
+
+    /**
+     * Removes a CRDT the cache evicted. Peers stop receiving its commands and
+     * receive a new definition when it is loaded again
+     */
+    private void unregister(CRDT<? extends CRDTCommand> crdt) {
+        crdts.remove(crdt.getCrdtId(), crdt);
+        lag.forget(crdt.getCrdtId());
+        handles.computeIfPresent(crdt.getCrdtId(), (crdtId, handle) -> handle._1 == crdt ? null : handle);
+        crdt.complete();
+    }
+
+    /**
+     * A CRDT that is not registered yet has no handle, peers subscribe to it alone
+     */
+    private CRDTDefinition definitionOf(CRDT<? extends CRDTCommand> crdt) {
+        final Tuple2<CRDT<? extends CRDTCommand>, Integer> handle = handles.get(crdt.getCrdtId());
+        if (handle == null || handle._1 != crdt) {
+            return new CRDTDefinition(crdt.getCrdtId(), crdt.getClass(), crdt);
+        }
+        return new CRDTDefinition(crdt.getCrdtId(), crdt.getClass(), crdt, channel, handle._2);
     }
 
     public InMemoryCRDTStore() {
@@ -56,10 +146,42 @@ public class InMemoryCRDTStore implements CRDTStore {
     }
 
     public InMemoryCRDTStore(String nodeId) {
+        this(nodeId, Retention.ofDefault());
+    }
+
+    /**
+     * @param nodeId    the node ID
+     * @param retention retention of definitions announced to peers. Peers always
+     *                  receive a definition of every registered CRDT when they connect
+     */
+    public InMemoryCRDTStore(String nodeId, Retention retention) {
+        this(nodeId, retention, Residency.eager());
+    }
+
+    /**
+     * @param nodeId    the node ID
+     * @param retention retention of definitions announced to peers
+     * @param residency which CRDTs stay in memory. A lazy store only announces
+     *                  the CRDTs in memory, and its {@link #merkleTree()} only
+     *                  covers those
+     */
+    public InMemoryCRDTStore(String nodeId, Retention retention, Residency residency) {
         this.nodeId = nodeId;
+        this.lag = new ReplicationLag(nodeId);
+        this.definitions = new ReplicationLog<>(this::snapshot, retention);
+        this.residency = Objects.requireNonNull(residency, "residency must not be null");
+        this.cache = residency.isLazy() ? new CRDTCache(residency, this::instantiate, this::load, this::unregister)
+                : null;
         registerDefaultFactories();
     }
 
+    /**
+     * @return a definition for every registered CRDT
+     */
+    private Iterable<CRDTDefinition> snapshot() {
+        return List.ofAll(crdts.values()).map(this::definitionOf);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -68,13 +190,69 @@ public class InMemoryCRDTStore implements CRDTStore {
         definitions.asFlux().subscribe(s);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void subscribe(Subscriber<? super CRDTDefinition> subscriber, ReplicationFilter filter) {
+        Objects.requireNonNull(filter, "filter must not be null");
+        (filter.isAll() ? definitions.asFlux() : definitions.asFlux().filter(filter::test)).subscribe(subscriber);
+    }
+
+    /**
+     * Drains the mailboxes of all CRDTs in this store on a shared executor, such as
+     * {@code Schedulers.parallel()::schedule}. By default a mailbox is drained by
+     * the thread that writes to the CRDT or delivers a command to it
+     * 
+     * @param executor shared executor for CRDT mailboxes
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor must not be null");
+        crdts.values().forEach(crdt -> crdt.getMailbox().setExecutor(executor));
+    }
+
+    /**
+     * Installs metrics for this store and all its CRDTs, including those created
+     * later. Registers the gauges {@link CRDTMetrics#PEERS},
+     * {@link CRDTMetrics#LIVE_CRDTS}, {@link CRDTMetrics#OUTBOX_DEPTH} and
+     * {@link CRDTMetrics#LAGGING_PEERS} under the node ID
+     * 
+     * @param metrics receives measurements, {@link CRDTMetrics#noop()} to stop
+     */
+    public void setMetrics(CRDTMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics, "metrics must not be null");
+        crdts.values().forEach(crdt -> crdt.setMetrics(metrics));
+        metrics.gauge(CRDTMetrics.PEERS, nodeId, subscribers::size);
+        metrics.gauge(CRDTMetrics.LIVE_CRDTS, nodeId, crdts::size);
+        metrics.gauge(CRDTMetrics.OUTBOX_DEPTH, nodeId,
+                () -> crdts.values().stream().mapToLong(CRDT::getOutboxDepth).sum());
+        metrics.gauge(CRDTMetrics.LAGGING_PEERS, nodeId, () -> lag.getLagging().size());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ReplicationLag getReplicationLag() {
+        return lag;
+    }
+
+    /**
+     * Takes effect for CRDTs of peers that connect afterwards
+     * 
+     * @param replicationMode how commands of peers are delivered to local CRDTs
+     */
+    public void setReplicationMode(ReplicationMode replicationMode) {
+        this.replicationMode = Objects.requireNonNull(replicationMode, "replicationMode must not be null");
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public <T extends CRDT<? extends CRDTCommand>> void registerFactory(Class<T> crdtClass, //
             BiFunction<String, String, T> mapper) {
-        factories = factories.put(crdtClass, mapper);
+        factories.put(crdtClass, mapper);
     }
 
     /**
@@ -82,24 +260,64 @@ public class InMemoryCRDTStore implements CRDTStore {
      */
     @Override
     public Option<? extends CRDT<? extends CRDTCommand>> findCrdt(String crdtId) {
-        return crdts.get(crdtId);
+        return cache == null ? Option.of(crdts.get(crdtId)) : cache.find(crdtId);
     }
 
     /**
-     * {@inheritDoc}
+     * @return the registered CRDTs
+     */
+    Seq<CRDT<? extends CRDTCommand>> getCrdts() {
+        return List.ofAll(crdts.values());
+    }
+
+    ReplicationChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns the CRDT with the ID if there is one, or creates and announces it.
+     * Of several threads creating the same CRDT, one creates it and all return it
+     * 
+     * @throws IllegalArgumentException if no factory is registered for the class,
+     *                                  or the existing CRDT is of another class
      */
     @Override
     public <T extends CRDT<? extends CRDTCommand>> T createCrdt(Class<T> crdtClass, String crdtId) {
         Objects.requireNonNull(crdtClass, "crdtClass must not be null");
         Objects.requireNonNull(crdtId, "crdtId must not be null");
-        final Option<BiFunction<String, String, ? extends CRDT>> factory = factories.get(crdtClass);
-        if (factory.isEmpty()) {
+        if (cache != null) {
+            return checked(crdtClass, cache.getOrCreate(crdtId, crdtClass));
+        }
+        final CRDT<? extends CRDTCommand> existing = crdts.get(crdtId);
+        if (existing != null) {
+            return checked(crdtClass, existing);
+        }
+        // a factory only constructs, the instance of a thread that loses the race is
+        // dropped
+        final CRDT<? extends CRDTCommand> created = instantiate(crdtClass, crdtId);
+        final CRDT<? extends CRDTCommand> winner = crdts.putIfAbsent(crdtId, created);
+        if (winner != null) {
+            return checked(crdtClass, winner);
+        }
+        register(created);
+        return crdtClass.cast(created);
+    }
+
+    private static <T extends CRDT<? extends CRDTCommand>> T checked(Class<T> crdtClass,
+            CRDT<? extends CRDTCommand> crdt) {
+        if (!crdtClass.isInstance(crdt)) {
+            throw new IllegalArgumentException("CRDT " + crdt.getCrdtId() + " is a " + crdt.getClass().getName()
+                    + ", not a " + crdtClass.getName());
+        }
+        return crdtClass.cast(crdt);
+    }
+
+    private CRDT<? extends CRDTCommand> instantiate(Class<? extends CRDT> crdtClass, String crdtId) {
+        final BiFunction<String, String, ? extends CRDT> factory = factories.get(crdtClass);
+        if (factory == null) {
             throw new IllegalArgumentException("Factory for class " + crdtClass + " not defined");
         }
-        @SuppressWarnings("unchecked")
-        final T result = (T) factory.get().apply(nodeId, crdtId);
-        register(result);
-        return result;
+        return factory.apply(nodeId, crdtId);
     }
 
     /**
@@ -107,7 +325,97 @@ public class InMemoryCRDTStore implements CRDTStore {
      */
     @Override
     public void subscribeTo(Publisher<? extends CRDTDefinition> publisher) {
-        Flux.from(publisher).onTerminateDetach().subscribe(new CRDTStoreSubscriber());
+        Flux.from(publisher).onTerminateDetach().subscribe(new CRDTStoreSubscriber(HashMap.empty(), new ConcurrentHashMap<>()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MerkleTree<Tuple2<String, Digest>> merkleTree() {
+        return MerkleTree.of(List.ofAll(crdts.entrySet()) //
+                .map(entry -> Tuple.of(entry.getKey(), entry.getValue().digest())), //
+                leaf -> leaf._1.hashCode(), //
+                leaf -> 31L * leaf._1.hashCode() + leaf._2.getHash());
+    }
+
+    /**
+     * {@inheritDoc} A lazy store also writes the CRDTs it evicted, loading them
+     * one at a time. Commands are encoded with {@link BinaryCodec}
+     */
+    @Override
+    public void exportSnapshot(WritableByteChannel channel) {
+        exportSnapshot(channel, BinaryCodec.ofDefault());
+    }
+
+    /**
+     * @param channel target, not closed
+     * @param codec   encodes commands
+     * @see #exportSnapshot(WritableByteChannel)
+     */
+    public void exportSnapshot(WritableByteChannel channel, Codec codec) {
+        Objects.requireNonNull(channel, "channel must not be null");
+        Objects.requireNonNull(codec, "codec must not be null");
+        final Iterable<CRDT<? extends CRDTCommand>> exported = cache == null ? getCrdts()
+                : cache.getStored().iterator().flatMap(cache::find);
+        StoreSnapshot.write(exported, channel, codec);
+    }
+
+    /**
+     * {@inheritDoc} Commands are decoded with {@link BinaryCodec}
+     * 
+     * @throws IllegalArgumentException if the snapshot holds a class that is not
+     *                                  a CRDT or has no factory
+     */
+    @Override
+    public void importSnapshot(ReadableByteChannel channel) {
+        importSnapshot(channel, BinaryCodec.ofDefault());
+    }
+
+    /**
+     * @param channel source, not closed
+     * @param codec   decodes commands, compatible with the one of the export
+     * @see #importSnapshot(ReadableByteChannel)
+     */
+    public void importSnapshot(ReadableByteChannel channel, Codec codec) {
+        Objects.requireNonNull(channel, "channel must not be null");
+        Objects.requireNonNull(codec, "codec must not be null");
+        StoreSnapshot.read(channel, codec, this::createCrdt);
+    }
+
+    @SuppressWarnings("unchecked")
+    private CRDT createCrdt(String crdtId, String className) {
+        final Class<?> crdtClass;
+        try {
+            crdtClass = Class.forName(className, false, getClass().getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown CRDT class " + className, e);
+        }
+        if (!CRDT.class.isAssignableFrom(crdtClass)) {
+            throw new IllegalArgumentException("Not a CRDT: " + className);
+        }
+        return createCrdt((Class<? extends CRDT>) crdtClass, crdtId);
+    }
+
+    /**
+     * @param peer   a store this store received commands from
+     * @param crdtId the CRDT
+     * @return number of the last command received from the peer's replica
+     */
+    public Option<Long> getCursor(CRDTStore peer, String crdtId) {
+        return Option.of(cursors.get(peer)).flatMap(cursor -> Option.of(cursor.get(crdtId))).map(Tuple2::_2);
+    }
+
+    /**
+     * Compares the trees of both stores top-down
+     * 
+     * @param other store
+     * @return CRDTs in matching subtrees and the number of the last command the
+     *         other store had sent when it built its tree
+     */
+    private Map<String, Long> unchangedIn(CRDTStore other) {
+        return other.merkleTree().matching(merkleTree()) //
+                .toMap(leaf -> Tuple.of(leaf._1, leaf._2.getSequence()));
     }
 
     /**
@@ -115,11 +423,40 @@ public class InMemoryCRDTStore implements CRDTStore {
      */
     @Override
     public void connect(CRDTStore other) {
-        if (!subscribers.containsKey(other)) {
-            final CRDTStoreSubscriber subscriber = new CRDTStoreSubscriber();
-            other.subscribe(subscriber);
-            subscribers = subscribers.put(other, subscriber);
+        connect(other, ReplicationFilter.all());
+    }
+
+    /**
+     * Like {@link #connect(CRDTStore)}, replicating only some CRDTs of the other
+     * store. The other store applies the filter before it announces a CRDT or
+     * sends a command, so CRDTs that do not match are never instantiated here.
+     * What the other store replicates from this one is up to the other store
+     * 
+     * @param other  store
+     * @param filter CRDTs of the other store to replicate
+     */
+    public void connect(CRDTStore other, ReplicationFilter filter) {
+        Objects.requireNonNull(filter, "filter must not be null");
+        if (subscribers.containsKey(other)) {
+            return;
+        }
+        final ConnectionEvent event = new ConnectionEvent();
+        event.begin();
+        final Map<String, Long> unchanged = unchangedIn(other);
+        final CRDTStoreSubscriber subscriber = new CRDTStoreSubscriber(unchanged,
+                cursors.computeIfAbsent(other, peer -> new ConcurrentHashMap<>()), filter);
+        if (subscribers.putIfAbsent(other, subscriber) == null) {
+            other.subscribe(subscriber, filter);
+            event.end();
             other.connect(this);
+            if (event.shouldCommit()) {
+                event.nodeId = nodeId;
+                event.peer = peerId(other);
+                event.connected = true;
+                event.unchanged = unchanged.size();
+                event.filtered = !filter.isAll();
+                event.commit();
+            }
         }
     }
 
@@ -128,35 +465,216 @@ public class InMemoryCRDTStore implements CRDTStore {
      */
     @Override
     public void disconnect(CRDTStore other) {
-        subscribers.get(other).peek(subscriber -> {
+        final ConnectionEvent event = new ConnectionEvent();
+        event.begin();
+        final CRDTStoreSubscriber subscriber = subscribers.remove(other);
+        if (subscriber != null) {
             subscriber.dispose();
-            subscribers = subscribers.remove(other);
+            event.end();
             other.disconnect(this);
-        });
+            if (event.shouldCommit()) {
+                event.nodeId = nodeId;
+                event.peer = peerId(other);
+                event.connected = false;
+                event.commit();
+            }
+        }
+    }
+
+    private static String peerId(CRDTStore other) {
+        return other instanceof InMemoryCRDTStore ? ((InMemoryCRDTStore) other).nodeId : other.toString();
     }
 
     /**
-     * Subscriber implementation
+     * Subscriber implementation. Commands of the peer's CRDTs arrive on the peer's
+     * {@link ReplicationChannel}, so a peer costs one subscription however many
+     * CRDTs it has. Each CRDT catches up from its own log first. Definitions
+     * without a channel get a subscription of their own
      */
     protected class CRDTStoreSubscriber extends BaseSubscriber<CRDTDefinition> {
         private final Sinks.Many<Boolean> cancelProcessor = Sinks.many().replay().latest();
+        /**
+         * Definition of each CRDT subscribed to. A definition may arrive twice, in
+         * the snapshot and in the tail, and again with a new publisher after the peer
+         * evicted and loaded the CRDT
+         */
+        private Map<String, CRDTDefinition> subscribed = HashMap.empty();
+        /**
+         * CRDTs found unchanged when the stores connected
+         */
+        private final Map<String, Long> unchanged;
+        private final ConcurrentMap<String, Tuple2<Long, Long>> cursor;
+        /**
+         * The peer's channel, subscribed to with the first definition that has one
+         */
+        private volatile ReplicationChannel channel;
+        private final ConcurrentMap<Integer, Receiver> receivers = new ConcurrentHashMap<>();
+        /**
+         * CRDTs of the peer replicated, applied by the peer's channel
+         */
+        private final ReplicationFilter filter;
+
+        protected CRDTStoreSubscriber(Map<String, Long> unchanged, ConcurrentMap<String, Tuple2<Long, Long>> cursor) {
+            this(unchanged, cursor, ReplicationFilter.all());
+        }
+
+        protected CRDTStoreSubscriber(Map<String, Long> unchanged, ConcurrentMap<String, Tuple2<Long, Long>> cursor,
+                ReplicationFilter filter) {
+            this.unchanged = unchanged;
+            this.cursor = cursor;
+            this.filter = filter;
+        }
 
         /**
          * {@inheritDoc}
          */
-        @SuppressWarnings("unchecked")
         @Override
         public void hookOnNext(CRDTDefinition definition) {
             final String crdtId = definition.getCrdtId();
-            final Flux<? extends CRDTCommand> publisher = Flux.from(definition.getPublisher())
-                    .takeUntilOther(cancelProcessor.asFlux());
-            final Option<? extends CRDT> existingCrdt = findCrdt(crdtId);
+            final Option<CRDTDefinition> previous = subscribed.get(crdtId);
+            if (previous.exists(known -> known.getPublisher() == definition.getPublisher())) {
+                return;
+            }
+            subscribed = subscribed.put(crdtId, definition);
+            if (previous.isDefined()) {
+                // the numbers of a new publisher start over
+                cursor.remove(crdtId);
+                if (isBound(previous.get())) {
+                    Option.of(receivers.remove(previous.get().getHandle())).forEach(Receiver::close);
+                }
+            }
+            bind(definition.getChannel());
+            final Option<Long> received = previous.isDefined() ? Option.none()
+                    : unchanged.get(crdtId).orElse(() -> cursorOf(definition));
+            if (cache != null) {
+                cache.define(crdtId, definition.getCrdtClass(), this,
+                        () -> attach(definition, received, Option.none(), () -> cache.find(crdtId).get()));
+                return;
+            }
+            final Option<CRDT> existingCrdt = Option.narrow(findCrdt(crdtId));
             if (existingCrdt.isDefined()) {
-                existingCrdt.get().subscribeTo(publisher);
+                attach(definition, received, existingCrdt, existingCrdt::get);
+            } else if (factories.containsKey(definition.getCrdtClass())) {
+                // a local write may have created the CRDT meanwhile, the whole state of the
+                // peer is correct either way
+                final CRDT crdt = createCrdt(definition.getCrdtClass(), crdtId);
+                attach(definition, Option.none(), Option.none(), () -> crdt);
+            }
+        }
+
+        private void bind(ReplicationChannel channel) {
+            if (this.channel == null && channel != null) {
+                this.channel = channel;
+                channel.asFlux(filter).takeUntilOther(cancelProcessor.asFlux()).subscribe(this::deliver);
+            }
+        }
+
+        private boolean isBound(CRDTDefinition definition) {
+            return definition.getChannel() != null && definition.getChannel() == channel;
+        }
+
+        /**
+         * @return number of the last command received of the definition's log. A
+         *         cursor of another log, one the peer replaced since or a CRDT without
+         *         a handle, does not count
+         */
+        private Option<Long> cursorOf(CRDTDefinition definition) {
+            final long origin = definition.getOrigin();
+            return Option.of(cursor.get(definition.getCrdtId()))
+                    .filter(known -> origin != 0L && known._1 == origin).map(Tuple2::_2);
+        }
+
+        /**
+         * Records the number of a command received of a log, replacing the cursor of
+         * another log
+         */
+        private void advance(String crdtId, long origin, long sequence) {
+            cursor.merge(crdtId, Tuple.of(origin, sequence),
+                    (known, next) -> known._1 == origin && known._2 >= sequence ? known : next);
+        }
+
+        /**
+         * Subscribes a local replica to a CRDT of the peer. The replica first receives
+         * only what it is missing: nothing if it was unchanged, the commands after the
+         * last one received, the diverging parts of its state, or the whole state of
+         * the peer
+         *
+         * @param existing the replica to reconcile when nothing was received, none
+         *                 for the whole state
+         * @param target   looks up the replica
+         */
+        private void attach(CRDTDefinition definition, Option<Long> received, Option<CRDT> existing,
+                Supplier<CRDT> target) {
+            final String crdtId = definition.getCrdtId();
+            if (!isBound(definition)) {
+                final Publisher<? extends Seq<? extends Tuple2<Long, ? extends CRDTCommand>>> missing = received
+                        .<Publisher<? extends Seq<? extends Tuple2<Long, ? extends CRDTCommand>>>>map(
+                                definition::batchesSince) //
+                        .orElse(() -> existing.map(crdt -> Flux.from(definition.reconcile(crdt.merkleTree()))
+                                .map(List::of))) //
+                        .getOrElse(() -> definition.batchesSince(0L));
+                subscribeTo(crdtId, target, track(crdtId, definition.getOrigin(), missing));
+                return;
+            }
+            final Receiver receiver = new Receiver(crdtId, definition.getOrigin(), target);
+            Option.of(receivers.put(definition.getHandle(), receiver)).forEach(Receiver::close);
+            // frames from here on wait in the receiver, none falls between them and the
+            // catch-up
+            if (received.isEmpty() && existing.isDefined()) {
+                receiver.start(definition.diverging(existing.get().merkleTree()), 0L);
+            } else {
+                final Seq<? extends Tuple2<Long, ? extends CRDTCommand>> missed = definition
+                        .missed(received.getOrElse(0L));
+                receiver.start(missed.map(Tuple2::_2), missed.lastOption().map(Tuple2::_1).getOrElse(0L));
+            }
+        }
+
+        private void deliver(ReplicationChannel.Frame frame) {
+            try {
+                if (frame.isLast()) {
+                    Option.of(receivers.remove(frame.getHandle())).forEach(Receiver::close);
+                } else {
+                    Option.of(receivers.get(frame.getHandle())).forEach(receiver -> receiver.accept(frame));
+                }
+            } catch (RuntimeException e) {
+                // one CRDT failing leaves the channel to the others
+                Operators.onErrorDropped(e, Context.empty());
+            }
+        }
+
+        /**
+         * Records the number of the last command of each batch received from the peer
+         */
+        private Flux<Seq<? extends CRDTCommand>> track(String crdtId, long origin,
+                Publisher<? extends Seq<? extends Tuple2<Long, ? extends CRDTCommand>>> numbered) {
+            return Flux.<Seq<? extends Tuple2<Long, ? extends CRDTCommand>>>from(numbered)
+                    .takeUntilOther(cancelProcessor.asFlux()) //
+                    .doOnNext(batch -> advance(crdtId, origin, batch.last()._1)) //
+                    .map(batch -> batch.map(Tuple2::_2));
+        }
+
+        /**
+         * Delivers batches of a peer to a local replica, which is looked up for each
+         * batch. A CRDT of a lazy store is instantiated again if it was evicted
+         */
+        private void subscribeTo(String crdtId, Supplier<CRDT> target, Flux<Seq<? extends CRDTCommand>> publisher) {
+            if (replicationMode == ReplicationMode.BLOCKING) {
+                publisher.subscribe(
+                        ReplicationLoop.start("crdt-" + nodeId + "-" + crdtId, batch -> receive(target.get(), batch)));
             } else {
-                final Class<? extends CRDT> crdtClass = definition.getCrdtClass();
-                factories.get(crdtClass).map(factory -> factory.apply(nodeId, crdtId))
-                        .peek(InMemoryCRDTStore.this::register).peek(crdt -> crdt.subscribeTo(publisher));
+                publisher.onTerminateDetach().subscribe(batch -> receive(target.get(), batch));
+            }
+        }
+
+        /**
+         * Applies a batch in one pass
+         */
+        @SuppressWarnings("unchecked")
+        private void receive(CRDT crdt, Seq<? extends CRDTCommand> batch) {
+            if (batch.size() == 1) {
+                crdt.receive(batch.head());
+            } else {
+                crdt.receiveAll(batch.asJava());
             }
         }
 
@@ -181,8 +699,99 @@ public class InMemoryCRDTStore implements CRDTStore {
          */
         @Override
         public void dispose() {
+            super.dispose();
             cancelProcessor.emitNext(true, EmitFailureHandler.FAIL_FAST);
             cancelProcessor.emitComplete(EmitFailureHandler.FAIL_FAST);
+            receivers.clear();
+        }
+
+        /**
+         * Passes the frames of one CRDT to the local replica, each frame's batch in one
+         * pass. Frames that arrive while the replica catches up wait until it is done.
+         * Blocking delivery keeps a queue per CRDT, otherwise the replica's mailbox is
+         * the queue
+         */
+        private final class Receiver {
+            private final String crdtId;
+            private final long origin;
+            private final Consumer<Seq<? extends CRDTCommand>> target;
+            private final Sinks.Many<Seq<? extends CRDTCommand>> queue;
+            /**
+             * Frames received during the catch-up, {@code null} afterwards
+             */
+            private java.util.List<ReplicationChannel.Frame> waiting = new ArrayList<>();
+
+            private Receiver(String crdtId, long origin, Supplier<CRDT> target) {
+                this.crdtId = crdtId;
+                this.origin = origin;
+                if (replicationMode == ReplicationMode.BLOCKING) {
+                    final Sinks.Many<Seq<? extends CRDTCommand>> queue = Sinks.many().unicast().onBackpressureBuffer();
+                    subscribeTo(crdtId, target, queue.asFlux().takeUntilOther(cancelProcessor.asFlux()));
+                    this.queue = queue;
+                    this.target = queue::tryEmitNext;
+                } else {
+                    this.queue = null;
+                    this.target = batch -> receive(target.get(), batch);
+                }
+            }
+
+            /**
+             * @param missed   commands the replica is missing
+             * @param sequence number of the last missed command, 0 if unknown
+             */
+            private void start(Seq<? extends CRDTCommand> missed, long sequence) {
+                final ReplayEvent event = new ReplayEvent();
+                event.begin();
+                missed.grouped(CATCH_UP_BATCH).forEach(target);
+                final int replayed = missed.size();
+                event.end();
+                if (event.shouldCommit()) {
+                    event.nodeId = nodeId;
+                    event.crdtId = crdtId;
+                    event.commands = replayed;
+                    event.sequence = sequence;
+                    event.commit();
+                }
+                if (sequence > 0) {
+                    advance(crdtId, origin, sequence);
+                }
+                for (;;) {
+                    final java.util.List<ReplicationChannel.Frame> frames;
+                    synchronized (this) {
+                        if (waiting.isEmpty()) {
+                            waiting = null;
+                            return;
+                        }
+                        frames = waiting;
+                        waiting = new ArrayList<>();
+                    }
+                    // commands up to the number are part of the catch-up
+                    frames.forEach(frame -> deliver(frame.getCommands().filter(command -> command._1 > sequence)));
+                }
+            }
+
+            private void accept(ReplicationChannel.Frame frame) {
+                synchronized (this) {
+                    if (waiting != null) {
+                        waiting.add(frame);
+                        return;
+                    }
+                }
+                deliver(frame.getCommands());
+            }
+
+            private void deliver(Seq<? extends Tuple2<Long, ? extends CRDTCommand>> batch) {
+                if (!batch.isEmpty()) {
+                    advance(crdtId, origin, batch.last()._1);
+                    target.accept(batch.map(Tuple2::_2));
+                }
+            }
+
+            private void close() {
+                if (queue != null) {
+                    queue.tryEmitComplete();
+                }
+            }
         }
     }
 }
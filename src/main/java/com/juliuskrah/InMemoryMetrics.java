@@ -0,0 +1,115 @@
+package com.juliuskrah;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.control.Option;
+
+/**
+ * {@link CRDTMetrics} kept in memory, for tests and for exporting to a
+ * monitoring system on a schedule. Counters are striped, so recording does not
+ * contend between mailboxes. Apply latencies go into a histogram with one
+ * bucket per power of two nanoseconds, percentiles are exact to within a factor
+ * of two
+ *
+ * @author Julius Krah
+ */
+@SuppressWarnings("rawtypes")
+public final class InMemoryMetrics implements CRDTMetrics {
+    private final ConcurrentMap<Class<? extends CRDT>, Stats> stats = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Tuple2<String, String>, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public void commandEmitted(Class<? extends CRDT> crdtClass) {
+        stats(crdtClass).emitted.increment();
+    }
+
+    @Override
+    public void commandApplied(Class<? extends CRDT> crdtClass, long latencyNanos, int clockWidth) {
+        final Stats stats = stats(crdtClass);
+        stats.applied.increment();
+        stats.latencies.record(latencyNanos);
+        stats.maxClockWidth.accumulate(clockWidth);
+    }
+
+    @Override
+    public void commandRejected(Class<? extends CRDT> crdtClass) {
+        stats(crdtClass).rejected.increment();
+    }
+
+    @Override
+    public void gauge(String name, String nodeId, LongSupplier value) {
+        gauges.put(Tuple.of(name, nodeId), value);
+    }
+
+    /**
+     * @param crdtClass class of the CRDTs
+     * @return commands sent by local writes
+     */
+    public long getEmitted(Class<? extends CRDT> crdtClass) {
+        return Option.of(stats.get(crdtClass)).map(stats -> stats.emitted.sum()).getOrElse(0L);
+    }
+
+    /**
+     * @param crdtClass class of the CRDTs
+     * @return commands of replicas that changed the state
+     */
+    public long getApplied(Class<? extends CRDT> crdtClass) {
+        return Option.of(stats.get(crdtClass)).map(stats -> stats.applied.sum()).getOrElse(0L);
+    }
+
+    /**
+     * @param crdtClass class of the CRDTs
+     * @return commands of replicas that left the state as it was
+     */
+    public long getRejected(Class<? extends CRDT> crdtClass) {
+        return Option.of(stats.get(crdtClass)).map(stats -> stats.rejected.sum()).getOrElse(0L);
+    }
+
+    /**
+     * @param crdtClass class of the CRDTs
+     * @return widest vector clock of an applied command, 0 if none was applied
+     */
+    public long getMaxClockWidth(Class<? extends CRDT> crdtClass) {
+        return Option.of(stats.get(crdtClass)).map(stats -> stats.maxClockWidth.get()).getOrElse(0L);
+    }
+
+    /**
+     * @param crdtClass  class of the CRDTs
+     * @param percentile between 0 and 1, such as 0.99
+     * @return upper bound of the bucket holding the percentile of apply
+     *         latencies, in nanoseconds; 0 if no command was applied
+     */
+    public long getLatencyPercentile(Class<? extends CRDT> crdtClass, double percentile) {
+        LatencyHistogram.checkPercentile(percentile);
+        final Stats stats = this.stats.get(crdtClass);
+        return stats == null ? 0L : stats.latencies.getPercentile(percentile);
+    }
+
+    /**
+     * @param name   the gauge
+     * @param nodeId node of the store
+     * @return current value, none if the gauge was never registered
+     */
+    public Option<Long> getGauge(String name, String nodeId) {
+        return Option.of(gauges.get(Tuple.of(name, nodeId))).map(LongSupplier::getAsLong);
+    }
+
+    private Stats stats(Class<? extends CRDT> crdtClass) {
+        final Stats existing = stats.get(crdtClass);
+        return existing != null ? existing : stats.computeIfAbsent(crdtClass, type -> new Stats());
+    }
+
+    private static final class Stats {
+        private final LongAdder emitted = new LongAdder();
+        private final LongAdder applied = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAccumulator maxClockWidth = new LongAccumulator(Math::max, 0L);
+        private final LatencyHistogram latencies = new LatencyHistogram();
+    }
+}
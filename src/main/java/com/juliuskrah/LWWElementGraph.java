@@ -3,14 +3,18 @@ package com.juliuskrah;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.Objects;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
 import io.vavr.collection.HashMap;
 import io.vavr.collection.HashSet;
 import io.vavr.collection.List;
 import io.vavr.collection.Map;
 import io.vavr.collection.Set;
 import io.vavr.control.Option;
-import reactor.core.publisher.Sinks;
-import reactor.core.publisher.Sinks.EmitFailureHandler;
+import reactor.core.publisher.Mono;
 
 /**
  * An Adjacency List Graph for CRDT
@@ -24,30 +28,34 @@ public class LWWElementGraph<T> extends AbstractCRDT<LWWElementGraph.GraphComman
      * Temporary holder to store vector clocks
      */
     private Map<T, VectorClock> elements;
+    /**
+     * Clocks of the writes behind each edge and removed vertex, sent in the
+     * snapshot
+     */
+    private Map<Set<T>, VectorClock> edgeClocks;
+    private Map<T, VectorClock> removalClocks;
     private VectorClock vectorClock;
 
-    private void prepareAddVertex(T element) {
+    private GraphCommand prepareAddVertex(T element) {
         vectorClock = vectorClock.increment();
         doAddVertex(element, vectorClock);
-        commands.emitNext(new AddVertexCommand<>(crdtId, element, vectorClock), //
-                EmitFailureHandler.FAIL_FAST);
+        return new AddVertexCommand<>(crdtId, element, vectorClock);
     }
 
     private void doAddVertex(T element, VectorClock vectorClock) {
         var vertex = new Vertex<>(element, vectorClock);
         elements = elements.put(element, vectorClock);
+        removalClocks = removalClocks.remove(element);
         vertices = vertices.computeIfAbsent(vertex, v -> List.empty())._2;
     }
 
-    private boolean prepareAddEdge(T element1, T element2) {
+    private Tuple2<Boolean, GraphCommand> prepareAddEdge(T element1, T element2) {
         vectorClock = vectorClock.increment();
-        var result = doAddEdge(element1, element2);
-        commands.emitNext(new AddEdgeCommand<>(crdtId, element1, element2, vectorClock), 
-            EmitFailureHandler.FAIL_FAST);
-        return result;
+        var result = doAddEdge(element1, element2, vectorClock);
+        return Tuple.of(result, new AddEdgeCommand<>(crdtId, element1, element2, vectorClock));
     }
 
-    private boolean doAddEdge(T element1, T element2) {
+    private boolean doAddEdge(T element1, T element2, VectorClock vectorClock) {
         if(!elements.containsKey(element1) && !elements.containsKey(element2)) {
             // one or both vertices do not exist to create an edge
             return false;
@@ -60,18 +68,18 @@ public class LWWElementGraph<T> extends AbstractCRDT<LWWElementGraph.GraphComman
         vertices = vertices.computeIfPresent(vertex1, (k, v) -> v.append(vertex2))._2;
         // add vertex1 to vertex2 adjacency list
         vertices = vertices.computeIfPresent(vertex2, (k, v) -> v.append(vertex1))._2;
+        edgeClocks = edgeClocks.put(HashSet.of(element1, element2), vectorClock);
         return true;
     }
 
-    private void prepareRemoveVertex(T element) {
+    private GraphCommand prepareRemoveVertex(T element) {
         vectorClock = vectorClock.increment();
-        doRemoveVertex(element);
-        commands.emitNext(new RemoveVertexCommand<>(crdtId, element, vectorClock), //
-            EmitFailureHandler.FAIL_FAST);
+        doRemoveVertex(element, vectorClock);
+        return new RemoveVertexCommand<>(crdtId, element, vectorClock);
     }
 
     @SuppressWarnings("deprecation")
-    private void doRemoveVertex(T element) {
+    private void doRemoveVertex(T element, VectorClock vectorClock) {
         // get original clock
         var clock = elements.get(element);
         if (clock.isDefined()) {
@@ -79,14 +87,15 @@ public class LWWElementGraph<T> extends AbstractCRDT<LWWElementGraph.GraphComman
             // remove all adjacent vertices
             vertices.values().forEach(e -> e.remove(vertex));
             vertices = vertices.remove(vertex);
+            edgeClocks = edgeClocks.filterKeys(edge -> !edge.contains(element));
+            removalClocks = removalClocks.put(element, vectorClock);
         }
     }
 
-    private void prepareRemoveEdge(T element1, T element2) {
+    private GraphCommand prepareRemoveEdge(T element1, T element2) {
         vectorClock = vectorClock.increment();
         doRemoveEdge(element1, element2);
-        commands.emitNext(new RemoveEdgeCommand<>(crdtId, element1, element2, vectorClock), //
-            EmitFailureHandler.FAIL_FAST);
+        return new RemoveEdgeCommand<>(crdtId, element1, element2, vectorClock);
     }
 
     private void doRemoveEdge(T element1, T element2) {
@@ -100,6 +109,7 @@ public class LWWElementGraph<T> extends AbstractCRDT<LWWElementGraph.GraphComman
             vertices = vertices.computeIfPresent(vertex1, (k, v) -> v.remove(vertex2))._2;
             // remove vertex1 from vertex2 adjacency list
             vertices = vertices.computeIfPresent(vertex2, (k, v) -> v.remove(vertex1))._2;
+            edgeClocks = edgeClocks.remove(HashSet.of(element1, element2));
         }
     }
 
@@ -117,11 +127,11 @@ public class LWWElementGraph<T> extends AbstractCRDT<LWWElementGraph.GraphComman
                 return Option.of(command);
             } else if(command instanceof RemoveVertexCommand) {
                 var removeVertex = (RemoveVertexCommand<T>) command;
-                doRemoveVertex(removeVertex.element);
+                doRemoveVertex(removeVertex.element, command.vectorClock);
                 return Option.of(command);
             } else if(command instanceof AddEdgeCommand) {
                 var addEdge = (AddEdgeCommand<T>) command;
-                doAddEdge(addEdge.element1, addEdge.element2);
+                doAddEdge(addEdge.element1, addEdge.element2, command.vectorClock);
                 return Option.of(command);
             } else if(command instanceof RemoveEdgeCommand) {
                 var removeEdge = (RemoveEdgeCommand<T>) command;
@@ -132,28 +142,81 @@ public class LWWElementGraph<T> extends AbstractCRDT<LWWElementGraph.GraphComman
         return Option.none();
     }
 
+    /**
+     * One command per vertex, per edge and per removed vertex, each with the clock
+     * of its write and all in causal order. A replica accepts each command after
+     * the ones before it
+     */
+    @Override
+    protected Iterable<? extends GraphCommand> snapshot() {
+        final List<GraphCommand> addVertices = vertices.keySet().toList() //
+                .map(vertex -> new AddVertexCommand<>(crdtId, vertex.getValue(), vertex.getVectorClock()));
+        Set<Set<T>> edges = HashSet.empty();
+        List<GraphCommand> addEdges = List.empty();
+        for (var adjacency : vertices) {
+            for (var adjacent : adjacency._2) {
+                final Set<T> edge = HashSet.of(adjacency._1.getValue(), adjacent.getValue());
+                if (!edges.contains(edge)) {
+                    // each edge is held in both adjacency lists
+                    edges = edges.add(edge);
+                    addEdges = addEdges.append(new AddEdgeCommand<>(crdtId, adjacency._1.getValue(), //
+                            adjacent.getValue(), edgeClocks.get(edge).getOrElse(vectorClock)));
+                }
+            }
+        }
+        final List<GraphCommand> removeVertices = elements //
+                .filter((element, clock) -> !vertices.containsKey(new Vertex<>(element, clock))).toList() //
+                .map(entry -> new RemoveVertexCommand<>(crdtId, entry._1,
+                        removalClocks.get(entry._1).getOrElse(vectorClock)));
+        // a stable sort keeps vertices ahead of the edges written with the same sum
+        return addVertices.appendAll(addEdges).appendAll(removeVertices) //
+                .sortBy(command -> command.vectorClock.sum());
+    }
+
     public LWWElementGraph(String nodeId, String crdtId) {
-        super(nodeId, crdtId, Sinks.many().replay().all());
+        this(nodeId, crdtId, Retention.ofDefault());
+    }
+
+    public LWWElementGraph(String nodeId, String crdtId, Retention retention) {
+        super(nodeId, crdtId, retention);
         this.vertices = HashMap.empty();
         this.elements = HashMap.empty();
+        this.edgeClocks = HashMap.empty();
+        this.removalClocks = HashMap.empty();
         Objects.requireNonNull(nodeId, "nodeId must not be null");
         this.vectorClock = new VectorClock(nodeId);
     }
 
     public void addVertex(T element) {
-        prepareAddVertex(element);
+        commands.emit(() -> prepareAddVertex(element));
+    }
+
+    public Mono<Void> addVertexAsync(T element) {
+        return commands.emitAsync(() -> prepareAddVertex(element));
     }
 
     public void removeVertex(T element) {
-        prepareRemoveVertex(element);
+        commands.emit(() -> prepareRemoveVertex(element));
+    }
+
+    public Mono<Void> removeVertexAsync(T element) {
+        return commands.emitAsync(() -> prepareRemoveVertex(element));
     }
 
     public boolean addEdge(T element1, T element2) {
-        return prepareAddEdge(element1, element2);
+        return commands.emitWithResult(() -> prepareAddEdge(element1, element2));
+    }
+
+    public Mono<Boolean> addEdgeAsync(T element1, T element2) {
+        return commands.emitWithResultAsync(() -> prepareAddEdge(element1, element2));
     }
 
     public void removeEdge(T element1, T element2) {
-        prepareRemoveEdge(element1, element2);
+        commands.emit(() -> prepareRemoveEdge(element1, element2));
+    }
+
+    public Mono<Void> removeEdgeAsync(T element1, T element2) {
+        return commands.emitAsync(() -> prepareRemoveEdge(element1, element2));
     }
 
     /**
@@ -205,50 +268,141 @@ public class LWWElementGraph<T> extends AbstractCRDT<LWWElementGraph.GraphComman
     }
 
     public static class GraphCommand extends CRDTCommand {
-        private final VectorClock vectorClock;
+        final VectorClock vectorClock;
         public GraphCommand(String crdtId, VectorClock vectorClock) {
             super(crdtId);
             this.vectorClock = vectorClock;
         }
+
+        @Override
+        public int getClockWidth() {
+            return vectorClock == null ? 0 : vectorClock.size();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            GraphCommand that = (GraphCommand) o;
+
+            return Objects.equals(vectorClock, that.vectorClock);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(vectorClock);
+        }
     }
 
     public static class AddVertexCommand<T> extends GraphCommand {
-        private final T element;
+        final T element;
 
         public AddVertexCommand(String crdtId, T element, VectorClock vectorClock) {
             super(crdtId, vectorClock);
             this.element = element;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            AddVertexCommand<?> that = (AddVertexCommand<?>) o;
+
+            return Objects.equals(element, that.element) //
+                && super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(super.hashCode(), element);
+        }
     }
 
     public static class RemoveVertexCommand<T> extends GraphCommand {
-        private final T element;
+        final T element;
 
         public RemoveVertexCommand(String crdtId, T element, VectorClock vectorClock) {
             super(crdtId, vectorClock);
             this.element = element;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            RemoveVertexCommand<?> that = (RemoveVertexCommand<?>) o;
+
+            return Objects.equals(element, that.element) //
+                && super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(super.hashCode(), element);
+        }
     }
 
     public static class AddEdgeCommand<T> extends GraphCommand {
-        private final T element1;
-        private final T element2;
+        final T element1;
+        final T element2;
         
         public AddEdgeCommand(String crdtId, T element1, T element2, VectorClock vectorClock) {
             super(crdtId, vectorClock);
             this.element1 = element1;
             this.element2 = element2;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            AddEdgeCommand<?> that = (AddEdgeCommand<?>) o;
+
+            return Objects.equals(element1, that.element1) //
+                && Objects.equals(element2, that.element2) //
+                && super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(super.hashCode(), element1, element2);
+        }
     }
 
     public static class RemoveEdgeCommand<T> extends GraphCommand {
-        private final T element1;
-        private final T element2;
+        final T element1;
+        final T element2;
         public RemoveEdgeCommand(String crdtId, T element1, T element2, VectorClock vectorClock) {
             super(crdtId, vectorClock);
             this.element1 = element1;
             this.element2 = element2;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            RemoveEdgeCommand<?> that = (RemoveEdgeCommand<?>) o;
+
+            return Objects.equals(element1, that.element1) //
+                && Objects.equals(element2, that.element2) //
+                && super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(super.hashCode(), element1, element2);
+        }
     }
 
 }
@@ -1,12 +1,15 @@
 package com.juliuskrah;
 
+import java.util.Objects;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
 import io.vavr.collection.HashMap;
 import io.vavr.collection.HashSet;
 import io.vavr.collection.Map;
 import io.vavr.collection.Set;
 import io.vavr.control.Option;
-import reactor.core.publisher.Sinks;
-import reactor.core.publisher.Sinks.EmitFailureHandler;
+import reactor.core.publisher.Mono;
 
 /**
  * A simple LWW element set. The underlying set is a HashSet
@@ -30,12 +33,12 @@ public class LWWElementSet<E> extends AbstractCRDT<LWWElementSet.SetCommand<E>>
     }
 
     /**
-     * Publishes an event to replicas after successfully adding an element
+     * Adds an element and prepares the event published to replicas
      * @see #add(Object)
      */
-    private void prepareAdd(E element) {
+    private SetCommand<E> prepareAdd(E element) {
         doAdd(element);
-        commands.emitNext(new SetCommand<>(crdtId, element, vectorClock, 1), EmitFailureHandler.FAIL_FAST);
+        return new SetCommand<>(crdtId, element, vectorClock, 1);
     }
 
     /**
@@ -73,44 +76,74 @@ public class LWWElementSet<E> extends AbstractCRDT<LWWElementSet.SetCommand<E>>
     }
 
     /**
-     * Publishes an event to replicas after successfully removing an element
+     * Removes an element and prepares the event published to replicas
      * @param element
      * @see #remove(Object)
      */
-    private void prepareRemove(E element) {
+    private SetCommand<E> prepareRemove(E element) {
         doRemove(element);
-        commands.emitNext(new SetCommand<>(crdtId, element, vectorClock, 0), EmitFailureHandler.FAIL_FAST);
+        return new SetCommand<>(crdtId, element, vectorClock, 0);
     }
 
     /**
-     * Processes all received events (commands)
+     * Processes all received events (commands). The element keeps the timestamp of
+     * the command, so consecutive commands from one replica are all applied and a
+     * command that was already seen changes nothing
      */
     @Override
     protected Option<? extends SetCommand<E>> processCommand(SetCommand<E> command) {
-        if (vectorClock.compareTo(command.vectorClock) < 0 
-            || vectorClock.compareTo(command.vectorClock) == 0) {
-            E element = command.element;
-            switch (command.type) {
-            case 0:
-                doRemove(element);
+        final E element = command.element;
+        switch (command.type) {
+        case 0:
+            if (isNewer(removeSet, element, command.vectorClock)) {
+                vectorClock = vectorClock.merge(command.vectorClock);
+                removeSet = removeSet.put(element, command.vectorClock);
+                updateElements(element);
                 return Option.of(command);
-            case 1:
-                doAdd(element);
+            }
+            break;
+        case 1:
+            if (isNewer(addSet, element, command.vectorClock)) {
+                vectorClock = vectorClock.merge(command.vectorClock);
+                addSet = addSet.put(element, command.vectorClock);
+                updateElements(element);
                 return Option.of(command);
-            default:
-                // do nothing
-                break;
             }
+            break;
+        default:
+            // do nothing
+            break;
         }
         return Option.none();
     }
 
+    private boolean isNewer(Map<E, VectorClock> set, E element, VectorClock clock) {
+        final Option<VectorClock> current = set.get(element);
+        return current.isEmpty() || (!current.get().equals(clock) && current.get().compareTo(clock) < 0);
+    }
+
+    /**
+     * One command per element: an add for elements in the set and a remove for
+     * elements that were removed
+     */
+    @Override
+    protected Iterable<? extends SetCommand<E>> snapshot() {
+        return addSet.filterKeys(elements::contains).toList() //
+                .map(entry -> new SetCommand<>(crdtId, entry._1, entry._2, 1)) //
+                .appendAll(removeSet.filterKeys(element -> !elements.contains(element)).toList() //
+                        .map(entry -> new SetCommand<>(crdtId, entry._1, entry._2, 0)));
+    }
+
     public LWWElementSet(String nodeId, String crdtId) {
         this(nodeId, crdtId, LWWBias.ADD);
     }
 
     public LWWElementSet(String nodeId, String crdtId, LWWBias bias) {
-        super(nodeId, crdtId, Sinks.many().replay().all());
+        this(nodeId, crdtId, bias, Retention.ofDefault());
+    }
+
+    public LWWElementSet(String nodeId, String crdtId, LWWBias bias, Retention retention) {
+        super(nodeId, crdtId, retention);
         this.bias = bias;
         this.vectorClock = new VectorClock(nodeId);
     }
@@ -120,7 +153,16 @@ public class LWWElementSet<E> extends AbstractCRDT<LWWElementSet.SetCommand<E>>
      * @param element
      */
     public void add(E element) {
-        prepareAdd(element);
+        commands.emit(() -> prepareAdd(element));
+    }
+
+    /**
+     * Adds an element to the addSet without blocking the caller
+     * @param element
+     * @return completes when the element is added
+     */
+    public Mono<Void> addAsync(E element) {
+        return commands.emitAsync(() -> prepareAdd(element));
     }
 
     /**
@@ -128,7 +170,16 @@ public class LWWElementSet<E> extends AbstractCRDT<LWWElementSet.SetCommand<E>>
      * @param element
      */
     public void remove(E element) {
-        prepareRemove(element);
+        commands.emit(() -> prepareRemove(element));
+    }
+
+    /**
+     * Removes an element from the removeSet without blocking the caller
+     * @param element
+     * @return completes when the element is removed
+     */
+    public Mono<Void> removeAsync(E element) {
+        return commands.emitAsync(() -> prepareRemove(element));
     }
 
     /**
@@ -159,6 +210,28 @@ public class LWWElementSet<E> extends AbstractCRDT<LWWElementSet.SetCommand<E>>
             this.type = type;
         }
 
+        @Override
+        public int getClockWidth() {
+            return vectorClock == null ? 0 : vectorClock.size();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            SetCommand<?> that = (SetCommand<?>) o;
+
+            return type == that.type //
+                && Objects.equals(element, that.element) //
+                && Objects.equals(vectorClock, that.vectorClock);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(element, vectorClock, type);
+        }
     }
 
 }
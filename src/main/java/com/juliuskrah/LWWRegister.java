@@ -2,9 +2,11 @@ package com.juliuskrah;
 
 import java.util.Objects;
 
+import com.juliuskrah.ReplicationLog.Retention;
+
+import io.vavr.collection.List;
 import io.vavr.control.Option;
-import reactor.core.publisher.Sinks;
-import reactor.core.publisher.Sinks.EmitFailureHandler;
+import reactor.core.publisher.Mono;
 
 /**
  * Implements a 'Last Writer Wins Register' CRDT, also called a 'LWW-Register'.
@@ -22,27 +24,59 @@ import reactor.core.publisher.Sinks.EmitFailureHandler;
  *           synchronization
  */
 public class LWWRegister<T> extends AbstractCRDT<LWWRegister.SetCommand<T>> {
-    private T value;
-    private VectorClock vectorClock;
+    /**
+     * Value and clock change together, so readers never see a torn pair. Only
+     * written in the mailbox: a local write must hold its place in the outbox
+     * before it is applied, and the log numbers commands in the mailbox, so a
+     * compare-and-set on the caller's thread would not spare the hand-off
+     */
+    private volatile Cell<T> state;
 
-    private void doSet(T value) {
-        this.value = value;
-        vectorClock = vectorClock.increment();
+    @Override
+    protected Option<? extends SetCommand<T>> processCommand(SetCommand<T> command) {
+        final Cell<T> current = state;
+        if (current.vectorClock.compareTo(command.getVectorClock()) >= 0) {
+            return Option.none();
+        }
+        state = new Cell<>(command.getValue(), current.vectorClock.merge(command.getVectorClock()));
+        return Option.of(command);
     }
 
+    /**
+     * The last write is all a new replica needs
+     */
     @Override
-    protected Option<? extends SetCommand<T>> processCommand(SetCommand<T> command) {
-        if (vectorClock.compareTo(command.getVectorClock()) < 0) {
-            vectorClock = vectorClock.merge(command.getVectorClock());
-            doSet(command.getValue());
-            return Option.of(command);
+    protected Iterable<? extends SetCommand<T>> snapshot() {
+        final Cell<T> current = state;
+        if (current.vectorClock.sum() == 0L) {
+            // never written
+            return List.empty();
         }
-        return Option.none();
+        return List.of(new SetCommand<>(crdtId, current.value, current.vectorClock));
     }
 
     public LWWRegister(String nodeId, String crdtId) {
-        super(nodeId, crdtId, Sinks.many().replay().all());
-        this.vectorClock = new VectorClock(nodeId);
+        this(nodeId, crdtId, Retention.ofDefault());
+    }
+
+    public LWWRegister(String nodeId, String crdtId, Retention retention) {
+        super(nodeId, crdtId, retention);
+        this.state = new Cell<>(null, new VectorClock(nodeId));
+    }
+
+    /**
+     * Sets the new value and prepares the event published to replicas
+     * @param newValue
+     * @return event, or null if the value did not change
+     */
+    private SetCommand<T> prepareSet(T newValue) {
+        final Cell<T> current = state;
+        if (Objects.equals(current.value, newValue)) {
+            return null;
+        }
+        final Cell<T> next = new Cell<>(newValue, current.vectorClock.increment());
+        state = next;
+        return new SetCommand<>(crdtId, next.value, next.vectorClock);
     }
 
     /**
@@ -50,25 +84,43 @@ public class LWWRegister<T> extends AbstractCRDT<LWWRegister.SetCommand<T>> {
      * @param newValue
      */
     public void set(T newValue) {
-        if (!Objects.equals(value, newValue)) {
-            doSet(newValue);
-            commands.emitNext(new SetCommand<>(crdtId, value, vectorClock), EmitFailureHandler.FAIL_FAST);
+        if (!Objects.equals(get(), newValue)) {
+            commands.emit(() -> prepareSet(newValue));
         }
     }
 
     /**
-     * Gets the current value
+     * Sets the new value without blocking the caller
+     * @param newValue
+     * @return completes when the value is set
+     */
+    public Mono<Void> setAsync(T newValue) {
+        return commands.emitAsync(() -> prepareSet(newValue));
+    }
+
+    /**
+     * Gets the current value. Never blocks
      * @return
      */
     public T get() {
-        return value;
+        return state.value;
     }
 
-    public static final class SetCommand<T> extends CRDTCommand {
-
+    private static final class Cell<T> {
         private final T value;
         private final VectorClock vectorClock;
 
+        private Cell(T value, VectorClock vectorClock) {
+            this.value = value;
+            this.vectorClock = vectorClock;
+        }
+    }
+
+    public static final class SetCommand<T> extends CRDTCommand {
+
+        final T value;
+        final VectorClock vectorClock;
+
         SetCommand(String crdtId, T value, VectorClock vectorClock) {
             super(crdtId);
             this.value = value;
@@ -83,6 +135,11 @@ public class LWWRegister<T> extends AbstractCRDT<LWWRegister.SetCommand<T>> {
             return this.vectorClock;
         }
 
+        @Override
+        public int getClockWidth() {
+            return vectorClock.size();
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o)
@@ -0,0 +1,58 @@
+package com.juliuskrah;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts values in one bucket per power of two. Recording does not lock or
+ * allocate, percentiles are exact to within a factor of two
+ *
+ * @author Julius Krah
+ */
+final class LatencyHistogram {
+    /**
+     * Bucket {@code b} counts values from {@code 2^b} to {@code 2^(b+1) - 1}
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+
+    /**
+     * @param value the value, values below 1 count as 1
+     */
+    void record(long value) {
+        buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(value, 1L)));
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    long getCount() {
+        long total = 0;
+        for (int bucket = 0; bucket < Long.SIZE; bucket++) {
+            total += buckets.get(bucket);
+        }
+        return total;
+    }
+
+    /**
+     * @param percentile between 0 and 1, such as 0.99
+     * @return upper bound of the bucket holding the percentile, 0 if nothing was
+     *         recorded
+     */
+    long getPercentile(double percentile) {
+        checkPercentile(percentile);
+        final long rank = (long) Math.ceil(percentile * getCount());
+        long seen = 0;
+        for (int bucket = 0; bucket < Long.SIZE; bucket++) {
+            seen += buckets.get(bucket);
+            if (seen > 0 && seen >= rank) {
+                return bucket == Long.SIZE - 1 ? Long.MAX_VALUE : (2L << bucket) - 1;
+            }
+        }
+        return 0L;
+    }
+
+    static void checkPercentile(double percentile) {
+        if (percentile < 0.0 || percentile > 1.0) {
+            throw new IllegalArgumentException("percentile must be between 0 and 1");
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.juliuskrah;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+/**
+ * A serial mailbox owned by one CRDT. Local writes and commands received from
+ * replicas are queued and run one at a time, so a CRDT never changes state on two
+ * threads at once. Mailboxes of different CRDTs share an {@link Executor} and
+ * run in parallel.
+ *
+ * The default executor runs tasks on the submitting thread when the mailbox is
+ * idle. A task submitted while another task runs is picked up by the thread that
+ * is already draining the mailbox
+ *
+ * @author Julius Krah
+ */
+public final class Mailbox {
+    private static final Executor DIRECT = Runnable::run;
+
+    private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder totalLatency = new LongAdder();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private volatile Executor executor;
+    /**
+     * The thread draining the mailbox
+     */
+    private volatile Thread owner;
+
+    public Mailbox() {
+        this(DIRECT);
+    }
+
+    /**
+     * @param executor shared executor that drains the mailbox
+     */
+    public Mailbox(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor must not be null");
+    }
+
+    /**
+     * Queues a task
+     *
+     * @param task the task
+     */
+    public void execute(Runnable task) {
+        depth.incrementAndGet();
+        tasks.offer(new Task(task, System.nanoTime()));
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Runs a task and waits for its result. A task submitted from a task of the
+     * same mailbox runs at once
+     *
+     * @param <R>  result type
+     * @param task the task
+     * @return result of the task
+     */
+    public <R> R call(Supplier<R> task) {
+        if (owner == Thread.currentThread()) {
+            return task.get();
+        }
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                result.complete(task.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            throw Exceptions.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Queues a task without waiting for its result
+     *
+     * @param <R>  result type
+     * @param task the task
+     * @return result of the task, empty if the task returns {@code null}
+     */
+    public <R> Mono<R> submit(Supplier<R> task) {
+        return Mono.defer(() -> {
+            if (owner == Thread.currentThread()) {
+                return Mono.fromSupplier(task);
+            }
+            return Mono.create(sink -> execute(() -> {
+                try {
+                    sink.success(task.get());
+                } catch (RuntimeException e) {
+                    sink.error(e);
+                }
+            }));
+        });
+    }
+
+    /**
+     * Takes effect for the next drain of the mailbox
+     *
+     * @param executor shared executor that drains the mailbox
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor must not be null");
+    }
+
+    /**
+     * @return number of tasks waiting in the mailbox
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    /**
+     * @return number of tasks run from the mailbox
+     */
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    /**
+     * @return average time from queuing a task to its completion
+     */
+    public Duration getAverageLatency() {
+        final long count = processed.sum();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(totalLatency.sum() / count);
+    }
+
+    /**
+     * @return longest time from queuing a task to its completion
+     */
+    public Duration getMaxLatency() {
+        return Duration.ofNanos(maxLatency.get());
+    }
+
+    private void drain() {
+        final Thread current = Thread.currentThread();
+        owner = current;
+        int missed = 1;
+        do {
+            Task task;
+            while ((task = tasks.poll()) != null) {
+                depth.decrementAndGet();
+                try {
+                    task.runnable.run();
+                } catch (RuntimeException e) {
+                    Operators.onErrorDropped(e, Context.empty());
+                }
+                final long latency = System.nanoTime() - task.queuedAt;
+                processed.increment();
+                totalLatency.add(latency);
+                maxLatency.accumulateAndGet(latency, Math::max);
+            }
+            owner = null;
+            missed = wip.addAndGet(-missed);
+            if (missed != 0) {
+                owner = current;
+            }
+        } while (missed != 0);
+    }
+
+    private static final class Task {
+        private final Runnable runnable;
+        private final long queuedAt;
+
+        private Task(Runnable runnable, long queuedAt) {
+            this.runnable = runnable;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
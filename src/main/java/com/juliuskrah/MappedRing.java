@@ -0,0 +1,309 @@
+package com.juliuskrah;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Ring buffer in a memory-mapped file, written by one process and read by up to
+ * {@value #MAX_READERS} others on the same host. Positions grow without bound;
+ * the index into the ring is the position modulo the capacity.
+ *
+ * The writer appends records of a 4-byte length followed by the payload and
+ * publishes them by storing the new tail with release semantics. Each reader
+ * claims a slot in the header and stores its position there after it consumed
+ * records. The writer never passes the slowest reader by more than the
+ * capacity, and frees the slots of readers that stopped sending heartbeats.
+ * Neither side makes a system call to exchange records.
+ *
+ * Layout: a header with the magic number, the capacity and an epoch that
+ * changes whenever a writer initializes the file, the tail and a join counter
+ * on cache lines of their own, the reader slots, then the data
+ *
+ * @author Julius Krah
+ */
+final class MappedRing {
+    static final int MAX_READERS = 16;
+    /**
+     * A reader whose heartbeat is older than this may be freed by the writer
+     */
+    static final long EVICT_MILLIS = 5_000;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int EPOCH_OFFSET = 8;
+    private static final int TAIL_OFFSET = 64;
+    private static final int JOINS_OFFSET = 128;
+    private static final int SLOTS_OFFSET = 192;
+    private static final int SLOT_SIZE = 64;
+    private static final int HEARTBEAT = 8;
+    private static final int DATA_OFFSET = 2048;
+    private static final int RECORD_HEADER = Integer.BYTES;
+    private static final int ALIGNMENT = Long.BYTES;
+    private static final int PADDING = -1;
+    private static final long FREE = -1L;
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class,
+            ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    /**
+     * Writer only: the next position to write and the position up to which the
+     * readers left room
+     */
+    private long tail;
+    private long limit;
+
+    private MappedRing(MappedByteBuffer buffer, int capacity) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Maps the file for writing and initializes it. Readers of a previous writer
+     * see the epoch change and claim new slots
+     *
+     * @param file     the file, created if missing
+     * @param capacity size of the data in bytes, a power of two
+     * @return the ring
+     */
+    static MappedRing create(Path file, int capacity) throws IOException {
+        if (capacity < 1024 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two of at least 1024");
+        }
+        final MappedRing ring = new MappedRing(map(file, DATA_OFFSET + capacity, true), capacity);
+        final ByteBuffer buffer = ring.buffer;
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        LONG.setRelease(buffer, TAIL_OFFSET, 0L);
+        LONG.setRelease(buffer, JOINS_OFFSET, 0L);
+        for (int slot = 0; slot < MAX_READERS; slot++) {
+            LONG.setRelease(buffer, SLOTS_OFFSET + slot * SLOT_SIZE, FREE);
+        }
+        LONG.setRelease(buffer, EPOCH_OFFSET, System.nanoTime() ^ ProcessHandle.current().pid() << 32);
+        INT.setRelease(buffer, 0, StoreSnapshot.MAGIC);
+        return ring;
+    }
+
+    /**
+     * Maps the file of a writer for reading
+     *
+     * @param file the file
+     * @return the ring
+     */
+    static MappedRing open(Path file) throws IOException {
+        final MappedByteBuffer header = map(file, DATA_OFFSET, false);
+        if ((int) INT.getAcquire(header, 0) != StoreSnapshot.MAGIC) {
+            throw new IOException("Not a ring buffer: " + file);
+        }
+        final int capacity = header.getInt(CAPACITY_OFFSET);
+        return new MappedRing(map(file, DATA_OFFSET + capacity, false), capacity);
+    }
+
+    private static MappedByteBuffer map(Path file, int size, boolean create) throws IOException {
+        try (FileChannel channel = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (!create && channel.size() < size) {
+                throw new IOException("Ring buffer " + file + " is truncated");
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            return buffer;
+        }
+    }
+
+    /**
+     * @return largest payload of a record
+     */
+    int getMaxPayload() {
+        return capacity / 2 - RECORD_HEADER;
+    }
+
+    /**
+     * @return number of slots readers claimed so far, changes when one joins
+     */
+    long getJoins() {
+        return (long) LONG.getAcquire(buffer, JOINS_OFFSET);
+    }
+
+    /**
+     * Appends a record. Writer only
+     *
+     * @param payload the encoded frame
+     * @return {@code false} if a reader has not made room yet
+     */
+    boolean offer(BinaryOutput payload) {
+        final int length = payload.size();
+        if (length > getMaxPayload()) {
+            throw new IllegalArgumentException("Frame of " + length + " bytes exceeds " + getMaxPayload());
+        }
+        final int recordLength = align(RECORD_HEADER + length);
+        int index = (int) (tail & mask);
+        final int padding = capacity - index < recordLength ? capacity - index : 0;
+        if (tail + padding + recordLength > limit) {
+            limit = computeLimit();
+            if (tail + padding + recordLength > limit) {
+                return false;
+            }
+        }
+        if (padding > 0) {
+            buffer.putInt(DATA_OFFSET + index, PADDING);
+            index = 0;
+        }
+        buffer.putInt(DATA_OFFSET + index, length);
+        final ByteBuffer data = buffer.duplicate();
+        data.position(DATA_OFFSET + index + RECORD_HEADER);
+        payload.copyTo(0, data);
+        tail += padding + recordLength;
+        LONG.setRelease(buffer, TAIL_OFFSET, tail);
+        return true;
+    }
+
+    /**
+     * Frees the slots of readers that are behind and have not sent a heartbeat
+     * for {@value #EVICT_MILLIS} milliseconds. Writer only
+     *
+     * @return number of readers freed
+     */
+    int evictStale() {
+        final long deadline = System.currentTimeMillis() - EVICT_MILLIS;
+        int evicted = 0;
+        for (int slot = 0; slot < MAX_READERS; slot++) {
+            final int offset = SLOTS_OFFSET + slot * SLOT_SIZE;
+            final long position = (long) LONG.getAcquire(buffer, offset);
+            if (position != FREE && position < tail && (long) LONG.getAcquire(buffer, offset + HEARTBEAT) < deadline
+                    && LONG.compareAndSet(buffer, offset, position, FREE)) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private long computeLimit() {
+        long slowest = tail;
+        for (int slot = 0; slot < MAX_READERS; slot++) {
+            final long position = (long) LONG.getAcquire(buffer, SLOTS_OFFSET + slot * SLOT_SIZE);
+            if (position != FREE && position < slowest) {
+                slowest = position;
+            }
+        }
+        return slowest + capacity;
+    }
+
+    private static int align(int length) {
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * @return a reader starting at the tail, or {@code null} if all slots are
+     *         taken
+     */
+    Reader reader() {
+        final long epoch = (long) LONG.getAcquire(buffer, EPOCH_OFFSET);
+        for (int slot = 0; slot < MAX_READERS; slot++) {
+            final int offset = SLOTS_OFFSET + slot * SLOT_SIZE;
+            // a position taken before the writer computes its limit can never be
+            // overwritten, the limit is at most a capacity ahead of the tail
+            final long position = (long) LONG.getAcquire(buffer, TAIL_OFFSET);
+            LONG.setRelease(buffer, offset + HEARTBEAT, System.currentTimeMillis());
+            if (LONG.compareAndSet(buffer, offset, FREE, position)) {
+                LONG.getAndAdd(buffer, JOINS_OFFSET, 1L);
+                return new Reader(offset, position, epoch);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Consumes the records of one reader. Not thread-safe
+     */
+    final class Reader {
+        private final int offset;
+        private final long epoch;
+        private long position;
+        private long heartbeat;
+
+        private Reader(int offset, long position, long epoch) {
+            this.offset = offset;
+            this.position = position;
+            this.epoch = epoch;
+        }
+
+        /**
+         * @return {@code false} once the writer freed the slot or initialized the
+         *         file again, the reader has to claim a new slot
+         */
+        boolean isValid() {
+            return (long) LONG.getAcquire(buffer, EPOCH_OFFSET) == epoch
+                    && (long) LONG.getAcquire(buffer, offset) == position;
+        }
+
+        /**
+         * Reads the published records
+         *
+         * @param max       most records to read
+         * @param onPayload receives the payload of each record
+         * @return number of records read, -1 if the reader is no longer valid
+         */
+        int poll(int max, PayloadHandler onPayload) {
+            final long now = System.currentTimeMillis();
+            if (now != heartbeat) {
+                heartbeat = now;
+                LONG.setRelease(buffer, offset + HEARTBEAT, now);
+            }
+            final long published = (long) LONG.getAcquire(buffer, TAIL_OFFSET);
+            if (published == position) {
+                return 0;
+            }
+            if (!isValid()) {
+                return -1;
+            }
+            final long start = position;
+            int read = 0;
+            while (position < published && read < max) {
+                final int index = (int) (position & mask);
+                final int length = buffer.getInt(DATA_OFFSET + index);
+                if (length == PADDING) {
+                    position += capacity - index;
+                    continue;
+                }
+                if (length < 0 || length > getMaxPayload()) {
+                    return -1;
+                }
+                final byte[] payload = new byte[length];
+                buffer.duplicate().position(DATA_OFFSET + index + RECORD_HEADER).get(payload);
+                // the writer only overwrites records of readers it freed
+                if ((long) LONG.getAcquire(buffer, offset) != start) {
+                    return -1;
+                }
+                position += align(RECORD_HEADER + length);
+                onPayload.accept(payload);
+                read++;
+            }
+            if (!LONG.compareAndSet(buffer, offset, start, position)) {
+                return -1;
+            }
+            return read;
+        }
+
+        /**
+         * Frees the slot
+         */
+        void close() {
+            LONG.compareAndSet(buffer, offset, position, FREE);
+        }
+    }
+
+    @FunctionalInterface
+    interface PayloadHandler {
+        void accept(byte[] payload);
+    }
+}
@@ -0,0 +1,58 @@
+package com.juliuskrah;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event of a CRDT applying a command of a replica. The duration
+ * covers the clock comparisons and the vertex lookups and removals of the
+ * command, so stalls are attributed to a CRDT and a command type. Only merges
+ * slower than the threshold are recorded unless a recording lowers it. While no
+ * recording is running, the event is not even allocated once compiled
+ *
+ * @author Julius Krah
+ */
+@Name("com.juliuskrah.Merge")
+@Label("CRDT Merge")
+@Category({ "CRDT", "Replication" })
+@Description("A CRDT applied a command received from a replica")
+@StackTrace(false)
+@Threshold("1 ms")
+final class MergeEvent extends Event {
+    @Label("CRDT ID")
+    String crdtId;
+    @Label("CRDT Type")
+    Class<?> crdtType;
+    @Label("Command Type")
+    Class<?> commandType;
+    @Label("Clock Width")
+    @Description("Number of replicas in the vector clock of the command")
+    int clockWidth;
+    @Label("Applied")
+    @Description("Whether the command changed the state of the CRDT")
+    boolean applied;
+
+    /**
+     * Ends the event and commits it if it is enabled and slow enough
+     *
+     * @param crdt    the CRDT
+     * @param command the command
+     * @param applied whether the command changed the state
+     */
+    void end(CRDT<?> crdt, CRDTCommand command, boolean applied) {
+        end();
+        if (shouldCommit()) {
+            this.crdtId = crdt.getCrdtId();
+            this.crdtType = crdt.getClass();
+            this.commandType = command.getClass();
+            this.clockWidth = command.getClockWidth();
+            this.applied = applied;
+            commit();
+        }
+    }
+}
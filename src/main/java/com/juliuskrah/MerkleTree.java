@@ -0,0 +1,206 @@
+package com.juliuskrah;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+
+/**
+ * A hash tree over the leaves of a replica, such as the commands that describe
+ * the state of a CRDT or the CRDTs of a store. Leaves fall into 4096 buckets by
+ * the hash of their key, and every node hashes the leaves below it. Commands
+ * are hashed by their encoding with a 64-bit hash, so the hashes agree across
+ * nodes and processes and rarely collide.
+ *
+ * Two trees are compared top-down. Only subtrees whose hashes differ are
+ * visited, so the comparison grows with the number of differences rather than
+ * with the number of leaves
+ *
+ * @author Julius Krah
+ * @param <K> leaf type
+ */
+public final class MerkleTree<K> {
+    private static final int FANOUT_BITS = 4;
+    private static final int FANOUT = 1 << FANOUT_BITS;
+    private static final int DEPTH = 3;
+
+    /**
+     * Node hashes per level, from the root down to the buckets. Empty nodes are
+     * absent and hash to 0
+     */
+    private final Map<Integer, Long>[] levels;
+    private final Map<Integer, List<K>> buckets;
+    private final int size;
+
+    /**
+     * @param keyHash hash of the key of a leaf, {@code null} to bucket leaves by
+     *                their leaf hash
+     */
+    @SuppressWarnings("unchecked")
+    private MerkleTree(Iterable<? extends K> leaves, ToIntFunction<? super K> keyHash,
+            ToLongFunction<? super K> leafHash) {
+        this.levels = new Map[DEPTH + 1];
+        for (int level = 0; level <= DEPTH; level++) {
+            levels[level] = new HashMap<>();
+        }
+        this.buckets = new HashMap<>();
+        int size = 0;
+        for (K leaf : leaves) {
+            final long leafHashValue = leafHash.applyAsLong(leaf);
+            final int bucket = bucketOf(keyHash == null ? (int) (leafHashValue ^ (leafHashValue >>> 32))
+                    : keyHash.applyAsInt(leaf));
+            final long hash = mix(leafHashValue);
+            for (int level = 0; level <= DEPTH; level++) {
+                levels[level].merge(bucket >>> (FANOUT_BITS * (DEPTH - level)), hash, Long::sum);
+            }
+            buckets.merge(bucket, List.of(leaf), List::appendAll);
+            size++;
+        }
+        this.size = size;
+    }
+
+    /**
+     * Builds a tree keyed and hashed by the content of its leaves. Commands are
+     * hashed by their {@link BinaryCodec#encodeContent encoding} without the dot.
+     * Other leaves, and commands whose elements the default codec cannot encode,
+     * are hashed by {@link Object#hashCode()}
+     *
+     * @param <K>    leaf type
+     * @param leaves the leaves
+     * @return the tree
+     */
+    public static <K> MerkleTree<K> of(Iterable<? extends K> leaves) {
+        Objects.requireNonNull(leaves, "leaves must not be null");
+        final BinaryCodec codec = BinaryCodec.ofDefault();
+        final BinaryOutput scratch = new BinaryOutput();
+        return new MerkleTree<>(leaves, null, leaf -> {
+            if (leaf instanceof CRDTCommand) {
+                try {
+                    return hash(codec.encodeContent((CRDTCommand) leaf, scratch));
+                } catch (IllegalArgumentException e) {
+                    // no encoding for the element type
+                }
+            }
+            return leaf.hashCode();
+        });
+    }
+
+    /**
+     * @param <K>      leaf type
+     * @param leaves   the leaves
+     * @param keyHash  hash of the key of a leaf, which decides its bucket
+     * @param leafHash hash of the content of a leaf
+     * @return the tree
+     */
+    public static <K> MerkleTree<K> of(Iterable<? extends K> leaves, ToIntFunction<? super K> keyHash,
+            ToLongFunction<? super K> leafHash) {
+        Objects.requireNonNull(leaves, "leaves must not be null");
+        return new MerkleTree<>(leaves, keyHash, leafHash);
+    }
+
+    /**
+     * @return hash of all leaves, 0 for an empty tree
+     */
+    public long getRootHash() {
+        return hash(0, 0);
+    }
+
+    /**
+     * @return number of leaves
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Leaves of this tree in buckets whose hash differs from the other tree. These
+     * are the leaves the other side may be missing
+     *
+     * @param other tree of a peer
+     * @return diverging leaves
+     */
+    public Seq<K> diverging(MerkleTree<?> other) {
+        final Set<Integer> diverging = divergingBuckets(other);
+        List<K> result = List.empty();
+        for (Integer bucket : diverging) {
+            result = result.appendAll(buckets.getOrDefault(bucket, List.empty()));
+        }
+        return result;
+    }
+
+    /**
+     * Leaves of this tree in buckets whose hash equals the other tree
+     *
+     * @param other tree of a peer
+     * @return matching leaves
+     */
+    public Seq<K> matching(MerkleTree<?> other) {
+        final Set<Integer> diverging = divergingBuckets(other);
+        List<K> result = List.empty();
+        for (Map.Entry<Integer, List<K>> bucket : buckets.entrySet()) {
+            if (!diverging.contains(bucket.getKey())) {
+                result = result.appendAll(bucket.getValue());
+            }
+        }
+        return result;
+    }
+
+    private Set<Integer> divergingBuckets(MerkleTree<?> other) {
+        final Set<Integer> diverging = new HashSet<>();
+        compare(other, 0, 0, diverging);
+        return diverging;
+    }
+
+    private void compare(MerkleTree<?> other, int level, int index, Set<Integer> diverging) {
+        if (hash(level, index) == other.hash(level, index)) {
+            return;
+        }
+        if (level == DEPTH) {
+            diverging.add(index);
+            return;
+        }
+        for (int child = 0; child < FANOUT; child++) {
+            compare(other, level + 1, (index << FANOUT_BITS) | child, diverging);
+        }
+    }
+
+    private long hash(int level, int index) {
+        return levels[level].getOrDefault(index, 0L);
+    }
+
+    private static int bucketOf(int keyHash) {
+        final int spread = keyHash ^ (keyHash >>> 16);
+        return spread & ((1 << (FANOUT_BITS * DEPTH)) - 1);
+    }
+
+    /**
+     * 64-bit FNV-1a
+     */
+    static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Node hashes are sums of mixed leaf hashes, so the order of leaves does not
+     * matter
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
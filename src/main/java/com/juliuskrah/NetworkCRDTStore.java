@@ -0,0 +1,498 @@
+package com.juliuskrah;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Subscription;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
+import io.vavr.control.Option;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+/**
+ * A CRDT store that also replicates over TCP. Locally it behaves like an
+ * {@link InMemoryCRDTStore}; in addition it accepts connections on
+ * {@link #bind(InetSocketAddress)} and opens them with
+ * {@link #connect(InetSocketAddress)}, so stores in different JVMs replicate
+ * their CRDTs.
+ *
+ * Both ends of a connection send a definition for each of their CRDTs. The
+ * receiving store creates missing CRDTs with its registered factories and
+ * answers with the number of the last command it received of the CRDT's log on
+ * an earlier connection. The commands of the CRDT follow from there, or from its
+ * snapshot when nothing was received, so a reconnect resumes where the last
+ * connection stopped. All connections of a
+ * store share one non-blocking event loop, and each CRDT has at most 256
+ * commands queued per connection. Commands are encoded by a {@link Codec},
+ * {@link BinaryCodec} unless another is given
+ *
+ * @author Julius Krah
+ */
+public class NetworkCRDTStore extends InMemoryCRDTStore implements AutoCloseable {
+    private static final byte DEFINITION = 1;
+    private static final byte COMMAND = 2;
+    private static final byte RESUME = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+
+    private final BufferPool pool = new BufferPool(BUFFER_SIZE, 64);
+    private final Selector selector;
+    private final Thread loop;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final Set<NetworkConnection> connections = ConcurrentHashMap.newKeySet();
+    private final Codec codec;
+    /**
+     * Number of the last command received of each CRDT log of a peer, by CRDT ID
+     * and origin of the log. Kept across connections
+     */
+    private final ConcurrentMap<Tuple2<String, Long>, Long> received = new ConcurrentHashMap<>();
+    private final AtomicLong commandsReceived = new AtomicLong();
+    private volatile boolean closed;
+
+    public NetworkCRDTStore(String nodeId) {
+        this(nodeId, Retention.ofDefault());
+    }
+
+    /**
+     * @param nodeId    the node ID
+     * @param retention retention of definitions announced to peers
+     */
+    public NetworkCRDTStore(String nodeId, Retention retention) {
+        this(nodeId, retention, BinaryCodec.ofDefault());
+    }
+
+    /**
+     * @param nodeId    the node ID
+     * @param retention retention of definitions announced to peers
+     * @param codec     encodes commands, peers must use a compatible codec
+     */
+    public NetworkCRDTStore(String nodeId, Retention retention, Codec codec) {
+        super(nodeId, retention);
+        this.codec = Objects.requireNonNull(codec, "codec must not be null");
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.loop = new Thread(this::run, "crdt-network-" + nodeId);
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /**
+     * Accepts connections of peers
+     *
+     * @param address local address, port 0 picks a free port
+     * @return the bound address
+     */
+    public InetSocketAddress bind(InetSocketAddress address) {
+        try {
+            final ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(address);
+            server.configureBlocking(false);
+            await(call(() -> server.register(selector, SelectionKey.OP_ACCEPT, server)));
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Opens a connection to a peer and waits until it is established
+     *
+     * @param address address the peer is bound to
+     */
+    public void connect(InetSocketAddress address) {
+        final CompletableFuture<NetworkConnection> connected = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                final SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                if (channel.connect(address)) {
+                    connected.complete(established(channel, null));
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, connected);
+                }
+            } catch (IOException e) {
+                connected.completeExceptionally(e);
+            }
+        });
+        await(connected);
+    }
+
+    /**
+     * Closes the connections to a peer
+     *
+     * @param address address of the peer
+     */
+    public void disconnect(InetSocketAddress address) {
+        await(call(() -> {
+            connections.stream().filter(connection -> address.equals(connection.getRemoteAddress()))
+                    .forEach(NetworkConnection::close);
+            return null;
+        }));
+    }
+
+    /**
+     * @return number of open connections
+     */
+    public int getConnectionCount() {
+        return (int) connections.stream().filter(connection -> !connection.isClosed()).count();
+    }
+
+    /**
+     * @return number of commands received from peers, including commands this
+     *         store had already
+     */
+    public long getCommandsReceived() {
+        return commandsReceived.get();
+    }
+
+    /**
+     * Closes all connections and stops the event loop
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            loop.join(TimeUnit.SECONDS.toMillis(CONNECT_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                // tasks queued by the loop itself do not wake up the selector
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                wakeupPending.set(false);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key.isValid()) {
+                        handle(key);
+                    }
+                }
+                selector.selectedKeys().clear();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                connections.removeIf(NetworkConnection::isClosed);
+            }
+        } catch (IOException | RuntimeException e) {
+            Operators.onErrorDropped(e, Context.empty());
+        } finally {
+            connections.forEach(NetworkConnection::close);
+            connections.clear();
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handle(SelectionKey key) {
+        final Object attachment = key.attachment();
+        if (key.isAcceptable()) {
+            try {
+                final SocketChannel channel = ((ServerSocketChannel) attachment).accept();
+                if (channel != null) {
+                    channel.configureBlocking(false);
+                    established(channel, null);
+                }
+            } catch (IOException e) {
+                Operators.onErrorDropped(e, Context.empty());
+            }
+        } else if (key.isConnectable()) {
+            final CompletableFuture<NetworkConnection> connected = (CompletableFuture<NetworkConnection>) attachment;
+            try {
+                ((SocketChannel) key.channel()).finishConnect();
+                connected.complete(established((SocketChannel) key.channel(), key));
+            } catch (IOException e) {
+                key.cancel();
+                connected.completeExceptionally(e);
+            }
+        } else {
+            final NetworkConnection connection = (NetworkConnection) attachment;
+            if (key.isReadable()) {
+                connection.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.onWritable();
+            }
+        }
+    }
+
+    /**
+     * Registers a connected channel and starts sending the CRDTs of this store
+     * 
+     * @param key key of the channel if it is registered already
+     */
+    private NetworkConnection established(SocketChannel channel, SelectionKey key) throws IOException {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        final Session session = new Session();
+        final NetworkConnection connection = new NetworkConnection(channel, pool, this::execute, session::receive);
+        if (key == null) {
+            connection.register(channel.register(selector, SelectionKey.OP_READ, connection));
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+            key.attach(connection);
+            connection.register(key);
+        }
+        connections.add(connection);
+        final DefinitionSender sender = new DefinitionSender(connection, session);
+        connection.add(sender);
+        subscribe(sender);
+        return connection;
+    }
+
+    private static FrameWriter definitionFrame(CRDTDefinition definition, long origin) {
+        return out -> {
+            out.writeByte(DEFINITION);
+            out.writeInterned(definition.getCrdtId());
+            out.writeInterned(definition.getCrdtClass().getName());
+            out.writeVarLong(origin);
+        };
+    }
+
+    private static FrameWriter resumeFrame(String crdtId, long sequence) {
+        return out -> {
+            out.writeByte(RESUME);
+            out.writeInterned(crdtId);
+            out.writeVarLong(sequence);
+        };
+    }
+
+    private FrameWriter commandFrame(Tuple2<Long, ? extends CRDTCommand> command) {
+        return out -> {
+            out.writeByte(COMMAND);
+            out.writeVarLong(command._1);
+            codec.encode(command._2, out);
+        };
+    }
+
+    private void execute(Runnable task) {
+        tasks.offer(task);
+        if (Thread.currentThread() != loop && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private <T> CompletableFuture<T> call(IOCallable<T> task) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                result.complete(task.call());
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out after " + CONNECT_TIMEOUT_SECONDS + " seconds", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IOCallable<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * What both ends of one connection know about the CRDTs of the other
+     */
+    private final class Session {
+        /**
+         * Definitions sent, waiting for the peer to say where to resume
+         */
+        private final ConcurrentMap<String, CRDTDefinition> announced = new ConcurrentHashMap<>();
+        /**
+         * Origins of the logs of the peer's CRDTs. Only used on the event loop
+         */
+        private io.vavr.collection.Map<String, Long> origins = HashMap.empty();
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private void receive(NetworkConnection connection, BinaryInput in) {
+            try {
+                switch (in.readByte()) {
+                case DEFINITION: {
+                    final String crdtId = in.readInterned();
+                    final String className = in.readInterned();
+                    final long origin = in.readVarLong();
+                    if (findCrdt(crdtId).isEmpty()) {
+                        final Class<?> crdtClass = Class.forName(className, false,
+                                NetworkCRDTStore.this.getClass().getClassLoader());
+                        if (!CRDT.class.isAssignableFrom(crdtClass)) {
+                            throw new IOException("Not a CRDT: " + className);
+                        }
+                        createCrdt((Class) crdtClass, crdtId);
+                    }
+                    origins = origins.put(crdtId, origin);
+                    final long sequence = origin == 0L ? 0L : received.getOrDefault(Tuple.of(crdtId, origin), 0L);
+                    connection.send(resumeFrame(crdtId, sequence), null);
+                    break;
+                }
+                case RESUME: {
+                    final String crdtId = in.readInterned();
+                    final long sequence = in.readVarLong();
+                    final CRDTDefinition definition = announced.remove(crdtId);
+                    if (definition == null) {
+                        throw new IOException("Resume of a CRDT not announced from " + connection.getRemoteAddress());
+                    }
+                    final CommandSender commands = new CommandSender(connection);
+                    connection.add(commands);
+                    Flux.from(definition.since(sequence)).subscribe(commands);
+                    break;
+                }
+                case COMMAND: {
+                    final long sequence = in.readVarLong();
+                    final CRDTCommand command = codec.decode(in);
+                    final Option<? extends CRDT> crdt = findCrdt(command.getCrdtId());
+                    commandsReceived.incrementAndGet();
+                    if (crdt.isDefined()) {
+                        crdt.get().receive(command);
+                        origins.get(command.getCrdtId()).filter(origin -> origin != 0L).forEach(origin -> received
+                                .merge(Tuple.of(command.getCrdtId(), origin), sequence, Math::max));
+                    }
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown message type in frame from " + connection.getRemoteAddress());
+                }
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                Operators.onErrorDropped(e, Context.empty());
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Sends a definition for each CRDT of this store. Its commands follow once the
+     * peer said where to resume
+     */
+    private final class DefinitionSender extends BaseSubscriber<CRDTDefinition> {
+        private final NetworkConnection connection;
+        private final Session session;
+        /**
+         * A definition may arrive twice, in the snapshot and in the tail
+         */
+        private io.vavr.collection.Set<String> sent = HashSet.empty();
+
+        private DefinitionSender(NetworkConnection connection, Session session) {
+            this.connection = connection;
+            this.session = session;
+        }
+
+        @Override
+        protected void hookOnNext(CRDTDefinition definition) {
+            if (sent.contains(definition.getCrdtId())) {
+                return;
+            }
+            sent = sent.add(definition.getCrdtId());
+            session.announced.put(definition.getCrdtId(), definition);
+            connection.send(definitionFrame(definition, definition.getOrigin()), null);
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            Operators.onErrorDropped(throwable, Context.empty());
+            connection.close();
+        }
+    }
+
+    /**
+     * Requests commands as the connection writes them, so a slow peer holds at
+     * most {@value #PREFETCH} commands per CRDT in memory
+     */
+    private final class CommandSender extends BaseSubscriber<Tuple2<Long, ? extends CRDTCommand>> {
+        private static final int PREFETCH = 256;
+        private static final int REPLENISH = PREFETCH - (PREFETCH >> 2);
+
+        private final NetworkConnection connection;
+        /**
+         * Only updated on the event loop
+         */
+        private int written;
+
+        private CommandSender(NetworkConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            request(PREFETCH);
+        }
+
+        @Override
+        protected void hookOnNext(Tuple2<Long, ? extends CRDTCommand> command) {
+            connection.send(commandFrame(command), this::written);
+        }
+
+        private void written() {
+            if (++written == REPLENISH) {
+                written = 0;
+                request(REPLENISH);
+            }
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            Operators.onErrorDropped(throwable, Context.empty());
+            connection.close();
+        }
+    }
+}
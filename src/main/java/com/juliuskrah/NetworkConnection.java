@@ -0,0 +1,261 @@
+package com.juliuskrah;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+/**
+ * One TCP connection of a {@link NetworkCRDTStore}. Messages travel in frames
+ * of a 4-byte length followed by the payload.
+ *
+ * Any thread may send frames. They are queued and encoded by the event loop in
+ * queue order, so the dictionary of the connection's {@link BinaryOutput} is
+ * built in the order the peer reads it. The loop coalesces as many frames as
+ * fit into one pooled direct buffer before it writes to the socket. Frames
+ * larger than a buffer are written in chunks. All other methods are called on
+ * the event loop
+ *
+ * @author Julius Krah
+ */
+final class NetworkConnection {
+    static final int MAX_FRAME = 16 * 1024 * 1024;
+
+    private final SocketChannel channel;
+    private final SocketAddress remoteAddress;
+    private final BufferPool pool;
+    private final Executor loop;
+    private final BiConsumer<NetworkConnection, BinaryInput> onFrame;
+    private final BinaryOutput output = new BinaryOutput();
+    private final BinaryInput input = new BinaryInput();
+    private final Queue<Frame> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Disposable.Composite subscriptions = Disposables.composite();
+    private SelectionKey key;
+    private ByteBuffer readBuffer;
+    private ByteBuffer writeBuffer;
+    /**
+     * The write buffer holds bytes the socket did not accept yet
+     */
+    private boolean writing;
+    private Frame current;
+    private int offset;
+    private volatile boolean closed;
+
+    /**
+     * @param channel connected channel in non-blocking mode
+     * @param pool    pool of the read and write buffers
+     * @param loop    runs tasks on the event loop
+     * @param onFrame receives the connection and the input positioned at the
+     *                payload of each frame
+     */
+    NetworkConnection(SocketChannel channel, BufferPool pool, Executor loop,
+            BiConsumer<NetworkConnection, BinaryInput> onFrame)
+            throws IOException {
+        this.channel = channel;
+        this.remoteAddress = channel.getRemoteAddress();
+        this.pool = pool;
+        this.loop = loop;
+        this.onFrame = onFrame;
+        this.readBuffer = pool.acquire();
+        this.writeBuffer = pool.acquire().flip();
+    }
+
+    void register(SelectionKey key) {
+        this.key = key;
+    }
+
+    SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * @param subscription disposed when the connection closes
+     */
+    void add(Disposable subscription) {
+        subscriptions.add(subscription);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Queues a frame. May be called from any thread
+     *
+     * @param frame     writes the payload when the frame is due
+     * @param onWritten called on the event loop once the frame is in the write
+     *                  buffer, may be {@code null}
+     */
+    void send(FrameWriter frame, Runnable onWritten) {
+        if (closed) {
+            return;
+        }
+        outbound.offer(new Frame(frame, onWritten));
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+    }
+
+    void onReadable() {
+        try {
+            if (channel.read(readBuffer) < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            int length = -1;
+            while (readBuffer.remaining() >= Integer.BYTES) {
+                length = readBuffer.getInt(readBuffer.position());
+                if (length < 0 || length > MAX_FRAME) {
+                    fail(new ProtocolException("Invalid frame length " + length + " from " + remoteAddress));
+                    return;
+                }
+                if (readBuffer.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                readBuffer.getInt();
+                final byte[] payload = new byte[length];
+                readBuffer.get(payload);
+                onFrame.accept(this, input.wrap(payload));
+                length = -1;
+            }
+            readBuffer.compact();
+            if (length >= 0 && Integer.BYTES + length > readBuffer.capacity()) {
+                // a frame larger than the pooled buffer, read it into a dedicated buffer
+                final ByteBuffer larger = ByteBuffer.allocate(Integer.BYTES + length);
+                larger.put(readBuffer.flip());
+                pool.release(readBuffer);
+                readBuffer = larger;
+            } else if (length < 0 && !readBuffer.isDirect() && readBuffer.position() == 0) {
+                readBuffer = pool.acquire();
+            }
+        } catch (IOException e) {
+            // the peer went away
+            close();
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    void onWritable() {
+        flush();
+    }
+
+    /**
+     * Fills the write buffer with queued frames and writes it until the socket
+     * stops accepting bytes or nothing is left
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        if (closed) {
+            return;
+        }
+        try {
+            for (;;) {
+                if (writing) {
+                    channel.write(writeBuffer);
+                    if (writeBuffer.hasRemaining()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    writing = false;
+                }
+                writeBuffer.clear();
+                while (writeBuffer.hasRemaining()) {
+                    if (current == null) {
+                        current = outbound.poll();
+                        if (current == null) {
+                            break;
+                        }
+                        encode(current);
+                    }
+                    offset += output.copyTo(offset, writeBuffer);
+                    if (offset == output.size()) {
+                        final Runnable onWritten = current.onWritten;
+                        current = null;
+                        if (onWritten != null) {
+                            onWritten.run();
+                        }
+                    }
+                }
+                writeBuffer.flip();
+                if (!writeBuffer.hasRemaining()) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    return;
+                }
+                writing = true;
+            }
+        } catch (IOException e) {
+            // the peer went away
+            close();
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void encode(Frame frame) {
+        output.reset();
+        // room for the length
+        for (int i = 0; i < Integer.BYTES; i++) {
+            output.writeByte(0);
+        }
+        frame.writer.write(output);
+        final int length = output.size() - Integer.BYTES;
+        if (length > MAX_FRAME) {
+            throw new IllegalArgumentException("Frame of " + length + " bytes exceeds " + MAX_FRAME);
+        }
+        output.putInt(0, length);
+        offset = 0;
+    }
+
+    /**
+     * Closes the channel, cancels the subscriptions that feed it and returns the
+     * buffers to the pool
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        subscriptions.dispose();
+        outbound.clear();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        pool.release(readBuffer);
+        pool.release(writeBuffer);
+    }
+
+    private void fail(Throwable error) {
+        Operators.onErrorDropped(error, Context.empty());
+        close();
+    }
+
+    private static final class Frame {
+        private final FrameWriter writer;
+        private final Runnable onWritten;
+
+        private Frame(FrameWriter writer, Runnable onWritten) {
+            this.writer = writer;
+            this.onWritten = onWritten;
+        }
+    }
+}
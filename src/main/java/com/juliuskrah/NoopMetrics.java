@@ -0,0 +1,39 @@
+package com.juliuskrah;
+
+import java.util.function.LongSupplier;
+
+/**
+ * {@link CRDTMetrics} that records nothing
+ *
+ * @author Julius Krah
+ */
+final class NoopMetrics implements CRDTMetrics {
+    static final NoopMetrics INSTANCE = new NoopMetrics();
+
+    private NoopMetrics() {
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void commandEmitted(Class<? extends CRDT> crdtClass) {
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void commandApplied(Class<? extends CRDT> crdtClass, long latencyNanos, int clockWidth) {
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void commandRejected(Class<? extends CRDT> crdtClass) {
+    }
+
+    @Override
+    public void gauge(String name, String nodeId, LongSupplier value) {
+    }
+}
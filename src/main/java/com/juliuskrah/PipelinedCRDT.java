@@ -0,0 +1,225 @@
+package com.juliuskrah;
+
+import java.util.List;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import com.juliuskrah.ReplicationLog.Digest;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.Seq;
+import reactor.core.publisher.Flux;
+
+/**
+ * A CRDT whose commands go through a {@link CommandPipeline}. Shared by
+ * {@link AbstractCRDT} and {@link RGA}, which cannot extend it because it is a
+ * {@link java.util.List}
+ *
+ * @author Julius Krah
+ * @param <COMMAND> CRDT Command
+ */
+interface PipelinedCRDT<COMMAND extends CRDTCommand> extends CRDT<COMMAND> {
+
+    /**
+     * @return the pipeline the commands of this CRDT go through
+     */
+    CommandPipeline<COMMAND> getPipeline();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default void subscribe(Subscriber<? super COMMAND> subscriber) {
+        getPipeline().getLog().asFlux().subscribe(subscriber);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default void subscribeTo(Publisher<? extends COMMAND> publisher) {
+        Flux.from(publisher).onTerminateDetach().subscribe(this::receive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default void subscribeToBatches(Publisher<? extends List<? extends COMMAND>> publisher) {
+        Flux.from(publisher).onTerminateDetach().subscribe(this::receiveAll);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default void receive(COMMAND command) {
+        final CommandPipeline<COMMAND> pipeline = getPipeline();
+        pipeline.getMailbox().execute(() -> pipeline.apply(command));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default void receiveAll(List<? extends COMMAND> batch) {
+        final CommandPipeline<COMMAND> pipeline = getPipeline();
+        pipeline.getMailbox().execute(() -> {
+            for (COMMAND command : batch) {
+                pipeline.apply(command);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default void restore(List<? extends COMMAND> commands) {
+        final CommandPipeline<COMMAND> pipeline = getPipeline();
+        pipeline.getMailbox().execute(() -> {
+            for (COMMAND command : commands) {
+                pipeline.restore(command);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default Publisher<Tuple2<Long, COMMAND>> since(long sequence) {
+        return getPipeline().getLog().since(sequence);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default Publisher<Seq<Tuple2<Long, COMMAND>>> batchesSince(long sequence) {
+        return getPipeline().getLog().batchesSince(sequence);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default Seq<Tuple2<Long, COMMAND>> missed(long sequence) {
+        return getPipeline().getLog().missed(sequence);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default Publisher<Tuple2<Long, COMMAND>> reconcile(MerkleTree<?> remote) {
+        return getPipeline().getLog().reconcile(remote);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default Seq<COMMAND> diverging(MerkleTree<?> remote) {
+        return getPipeline().getLog().diverging(remote);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default Tuple2<Long, Seq<COMMAND>> checkpoint() {
+        return getPipeline().getLog().checkpoint();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default void complete() {
+        getPipeline().getLog().complete();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default MerkleTree<COMMAND> merkleTree() {
+        return getPipeline().getLog().merkleTree();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default Digest digest() {
+        return getPipeline().getLog().digest();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default long getSequence() {
+        return getPipeline().getLog().getSequence();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default Mailbox getMailbox() {
+        return getPipeline().getMailbox();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default Batching getBatching() {
+        return getPipeline().getLog().getBatching();
+    }
+
+    /**
+     * Batches outbound commands. Takes effect with the next command
+     *
+     * @param batching batching of outbound commands
+     */
+    default void setBatching(Batching batching) {
+        getPipeline().getLog().setBatching(batching);
+    }
+
+    /**
+     * Decides what local writes do when commands cannot be sent right away
+     *
+     * @param policy emission policy
+     */
+    default void setEmissionPolicy(EmissionPolicy policy) {
+        getPipeline().getLog().setPolicy(policy);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default void setMetrics(CRDTMetrics metrics) {
+        getPipeline().setMetrics(metrics);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default void setReplicationLag(ReplicationLag lag) {
+        getPipeline().setReplicationLag(lag);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default int getOutboxDepth() {
+        return getPipeline().getLog().getQueued();
+    }
+}
@@ -3,15 +3,16 @@ package com.juliuskrah;
 import java.util.AbstractList;
 import java.util.Objects;
 
-import org.reactivestreams.Publisher;
-import org.reactivestreams.Subscriber;
+import com.juliuskrah.ReplicationLog.Retention;
 
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.Seq;
 import io.vavr.collection.HashMap;
 import io.vavr.collection.Map;
+import io.vavr.collection.Vector;
 import io.vavr.control.Option;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
-import reactor.core.publisher.Sinks.EmitFailureHandler;
+import reactor.core.publisher.Mono;
 
 /**
  * Replicated Growable Array
@@ -22,13 +23,20 @@ import reactor.core.publisher.Sinks.EmitFailureHandler;
  * @implNote We start from less complex implementations to test our synchronization
  */
 @SuppressWarnings("unchecked")
-public class RGA<E> extends AbstractList<E> implements CRDT<RGA.RGACommand> {
+public class RGA<E> extends AbstractList<E> implements PipelinedCRDT<RGA.RGACommand> {
     private final String crdtId;
-    private final Sinks.Many<RGACommand> commands = Sinks.many().replay().all();
+    private final Mailbox mailbox = new Mailbox();
+    private final ReplicationLog<RGACommand> commands;
+    private final CommandPipeline<RGACommand> pipeline;
     private final Vertex<E> start;
 
     private Map<VectorClock, Vertex<E>> vertices;
     private Map<Vertex<E>, Vertex<E>> edges = HashMap.empty();
+    /**
+     * Commands of replicas that arrived before the vertex they refer to, by the
+     * clock of that vertex. Only read and written in the mailbox
+     */
+    private Map<VectorClock, Seq<RGACommand>> waiting = HashMap.empty();
     private VectorClock clock;
     private int size;
 
@@ -53,27 +61,53 @@ public class RGA<E> extends AbstractList<E> implements CRDT<RGA.RGACommand> {
         }
     }
 
+    /**
+     * A command whose anchor or removed vertex has not arrived yet waits for it,
+     * and the clock only moves once the command is applied
+     */
     private Option<RGACommand> processCommand(RGACommand command) {
         if (command instanceof AddRightCommand) {
             final AddRightCommand<E> addRightCommand = (AddRightCommand<E>) command;
             if (findVertex(addRightCommand.newVertexClock).isEmpty()) {
                 final Option<Vertex<E>> anchor = findVertex(addRightCommand.anchorClock);
+                if (anchor.isEmpty()) {
+                    await(addRightCommand.anchorClock, command);
+                    return Option.none();
+                }
                 clock = clock.merge(addRightCommand.newVertexClock);
-                anchor.peek(
-                        vertex -> doAddRight(vertex, addRightCommand.newVertexValue, //
-                            addRightCommand.newVertexClock)
-                );
+                doAddRight(anchor.get(), addRightCommand.newVertexValue, addRightCommand.newVertexClock);
+                if (waiting.containsKey(addRightCommand.newVertexClock)) {
+                    // the vertex is relayed before the commands that refer to it
+                    mailbox.execute(() -> release(addRightCommand.newVertexClock));
+                }
                 return Option.of(command);
             }
         } else if (command instanceof RemoveCommand) {
             final VectorClock removedClock = ((RemoveCommand<E>) command).vectorClock;
             final Option<Vertex<E>> vertex = findVertex(removedClock);
-            return vertex.map(this::doRemove).flatMap(result -> Boolean.TRUE.equals(result)? Option.of(command) : Option.none());
+            if (vertex.isEmpty()) {
+                await(removedClock, command);
+                return Option.none();
+            }
+            return doRemove(vertex.get()) ? Option.of(command) : Option.none();
         }
 
         return Option.none();
     }
 
+    private void await(VectorClock vertexClock, RGACommand command) {
+        waiting = waiting.put(vertexClock, waiting.get(vertexClock).getOrElse(Vector.empty()).append(command));
+    }
+
+    /**
+     * Applies and relays the commands that waited for a vertex
+     */
+    private void release(VectorClock vertexClock) {
+        final Seq<RGACommand> ready = waiting.get(vertexClock).getOrElse(Vector.empty());
+        waiting = waiting.remove(vertexClock);
+        ready.forEach(command -> processCommand(command).peek(commands::relay));
+    }
+
     /**
      * Find vertex by index
      * 
@@ -103,9 +137,10 @@ public class RGA<E> extends AbstractList<E> implements CRDT<RGA.RGACommand> {
         return vertices.get(vectorClock);
     }
 
-    private void prepareRemove(Vertex<E> vertex) {
-        commands.emitNext(new RemoveCommand<>(crdtId, vertex.getVectorClock()), EmitFailureHandler.FAIL_FAST);
+    private Tuple2<E, RGACommand> prepareRemove(int index) {
+        final Vertex<E> vertex = findVertex(index);
         doRemove(vertex);
+        return Tuple.of(vertex.getValue(), new RemoveCommand<>(crdtId, vertex.getVectorClock()));
     }
 
     private boolean doRemove(Vertex<E> vertex) {
@@ -117,30 +152,53 @@ public class RGA<E> extends AbstractList<E> implements CRDT<RGA.RGACommand> {
         return false;
     }
 
-    private void prepareAddRight(Vertex<E> anchor, E value) {
+    private RGACommand prepareAddRight(int index, E value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException();
+        }
+        final Vertex<E> anchor = index == 0 ? start : findVertex(index - 1);
         clock = clock.increment();
         doAddRight(anchor, value, clock);
-        commands.emitNext(new AddRightCommand<>(crdtId, anchor.getVectorClock(), value, clock), //
-            EmitFailureHandler.FAIL_FAST);
+        return new AddRightCommand<>(crdtId, anchor.getVectorClock(), value, clock);
+    }
+
+    /**
+     * Walks the array from the start and inserts every vertex to the right of its
+     * predecessor. Removed vertices are kept as tombstones
+     * 
+     * @return commands describing the current state
+     */
+    private Iterable<RGACommand> snapshot() {
+        Vector<RGACommand> snapshot = Vector.empty();
+        Vertex<E> anchor = start;
+        Option<Vertex<E>> next = edges.get(start);
+        while (next.isDefined()) {
+            final Vertex<E> vertex = next.get();
+            snapshot = snapshot.append(new AddRightCommand<>(crdtId, anchor.getVectorClock(), //
+                    vertex.getValue(), vertex.getVectorClock()));
+            if (vertex.isRemoved()) {
+                snapshot = snapshot.append(new RemoveCommand<>(crdtId, vertex.getVectorClock()));
+            }
+            anchor = vertex;
+            next = edges.get(vertex);
+        }
+        return snapshot;
     }
 
     public RGA(String nodeId, String crdtId) {
+        this(nodeId, crdtId, Retention.ofDefault());
+    }
+
+    public RGA(String nodeId, String crdtId, Retention retention) {
         this.crdtId = Objects.requireNonNull(crdtId, "crtdId must not be null");
+        this.pipeline = new CommandPipeline<>(this, nodeId, this::snapshot, retention, mailbox, this::processCommand);
+        this.commands = pipeline.getLog();
 
-        Objects.requireNonNull(nodeId, "nodeId must not be null");
         this.clock = new VectorClock(nodeId);
         this.start = new Vertex<>(null, clock);
         this.vertices = HashMap.of(clock, start);
     }
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void subscribe(Subscriber<? super RGACommand> s) {
-        commands.asFlux().subscribe(s);
-    }
-
     /**
      * {@inheritDoc}
      */
@@ -153,11 +211,8 @@ public class RGA<E> extends AbstractList<E> implements CRDT<RGA.RGACommand> {
      * {@inheritDoc}
      */
     @Override
-    public void subscribeTo(Publisher<? extends RGACommand> publisher) {
-        Flux.from(publisher).onTerminateDetach().subscribe(command -> {
-            final Option<RGACommand> newCommand = processCommand(command);
-            newCommand.peek(commands::tryEmitNext);
-        });
+    public CommandPipeline<RGACommand> getPipeline() {
+        return pipeline;
     }
 
     /**
@@ -181,11 +236,18 @@ public class RGA<E> extends AbstractList<E> implements CRDT<RGA.RGACommand> {
      */
     @Override
     public void add(int index, E element) {
-        if (index < 0 || index > size) {
-            throw new IndexOutOfBoundsException();
-        }
-        final Vertex<E> anchor = index == 0 ? start : findVertex(index - 1);
-        prepareAddRight(anchor, element);
+        commands.emit(() -> prepareAddRight(index, element));
+    }
+
+    /**
+     * Inserts the element without blocking the caller
+     * 
+     * @param index   index at which the element is inserted
+     * @param element element to be inserted
+     * @return completes when the element is inserted
+     */
+    public Mono<Void> addAsync(int index, E element) {
+        return commands.emitAsync(() -> prepareAddRight(index, element));
     }
 
     /**
@@ -193,9 +255,17 @@ public class RGA<E> extends AbstractList<E> implements CRDT<RGA.RGACommand> {
      */
     @Override
     public E remove(int index) {
-        final Vertex<E> vertex = findVertex(index);
-        prepareRemove(vertex);
-        return vertex.getValue();
+        return commands.emitWithResult(() -> prepareRemove(index));
+    }
+
+    /**
+     * Removes the element without blocking the caller
+     * 
+     * @param index index of the element to be removed
+     * @return the element previously at the index
+     */
+    public Mono<E> removeAsync(int index) {
+        return commands.emitWithResultAsync(() -> prepareRemove(index));
     }
 
     public abstract static class RGACommand extends CRDTCommand {
@@ -206,13 +276,18 @@ public class RGA<E> extends AbstractList<E> implements CRDT<RGA.RGACommand> {
 
     public static final class RemoveCommand<E> extends RGACommand {
 
-        private final VectorClock vectorClock;
+        final VectorClock vectorClock;
 
-        private RemoveCommand(String crdtId, VectorClock vectorClock) {
+        RemoveCommand(String crdtId, VectorClock vectorClock) {
             super(crdtId);
             this.vectorClock = vectorClock;
         }
 
+        @Override
+        public int getClockWidth() {
+            return vectorClock == null ? 0 : vectorClock.size();
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -232,17 +307,22 @@ public class RGA<E> extends AbstractList<E> implements CRDT<RGA.RGACommand> {
 
     public static final class AddRightCommand<E> extends RGACommand {
 
-        private final VectorClock anchorClock;
-        private final E newVertexValue;
-        private final VectorClock newVertexClock;
+        final VectorClock anchorClock;
+        final E newVertexValue;
+        final VectorClock newVertexClock;
 
-        private AddRightCommand(String crdtId, VectorClock anchorClock, E newVertexValue, VectorClock newVertexClock) {
+        AddRightCommand(String crdtId, VectorClock anchorClock, E newVertexValue, VectorClock newVertexClock) {
             super(crdtId);
             this.anchorClock = Objects.requireNonNull(anchorClock, "anchorClock must not be null");
             this.newVertexValue = Objects.requireNonNull(newVertexValue, "newVertexValue must not be null");
             this.newVertexClock = Objects.requireNonNull(newVertexClock, "newVertexClock must not be null");
         }
 
+        @Override
+        public int getClockWidth() {
+            return newVertexClock.size();
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -0,0 +1,32 @@
+package com.juliuskrah;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of a CRDT catching up with a peer, before it takes
+ * commands from the peer's channel
+ *
+ * @author Julius Krah
+ */
+@Name("com.juliuskrah.Replay")
+@Label("CRDT Replay")
+@Category({ "CRDT", "Replication" })
+@Description("A CRDT replayed the commands it missed from a peer")
+@StackTrace(false)
+final class ReplayEvent extends Event {
+    @Label("Node ID")
+    String nodeId;
+    @Label("CRDT ID")
+    String crdtId;
+    @Label("Commands")
+    @Description("Commands replayed")
+    int commands;
+    @Label("Sequence")
+    @Description("Number of the last command replayed from the peer's log, 0 if not known")
+    long sequence;
+}
@@ -0,0 +1,151 @@
+package com.juliuskrah;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Live commands of every CRDT of a store on one stream. A peer holds a single
+ * subscription to the channel however many CRDTs the store has, instead of one
+ * per CRDT. Each registered CRDT gets a small handle, and a frame carries the
+ * handle and a batch the CRDT sent, each command with its number in the CRDT's
+ * log. Peers learn the handle from the CRDT's {@link CRDTDefinition} and catch
+ * up on what came before with {@link CRDT#missed(long)}
+ *
+ * A peer that replicates only some CRDTs subscribes with a
+ * {@link ReplicationFilter}, and frames of other CRDTs are not passed to it
+ *
+ * Frames pass through an outbox. Whichever thread finds it idle delivers every
+ * waiting frame, so the logs of several CRDTs may feed the channel at once
+ *
+ * @author Julius Krah
+ */
+final class ReplicationChannel {
+    private final AtomicInteger handles = new AtomicInteger();
+    /**
+     * Tells the handles of this channel apart from those of a previous instance of
+     * the store, whose handles started over
+     */
+    private final long incarnation = ThreadLocalRandom.current().nextLong();
+    /**
+     * Peers subscribe without a limit, a frame is never held back for one of them
+     */
+    private final Sinks.Many<Frame> frames = Sinks.many().multicast().directBestEffort();
+    private final Queue<Frame> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger wip = new AtomicInteger();
+
+    /**
+     * Forwards the live batches of a CRDT, one frame per batch. When its log
+     * completes, peers receive a last frame without commands and drop the handle
+     *
+     * @param crdt the CRDT
+     * @return handle of the CRDT
+     */
+    int open(CRDT<? extends CRDTCommand> crdt) {
+        final int handle = handles.incrementAndGet();
+        final String crdtId = crdt.getCrdtId();
+        @SuppressWarnings("rawtypes")
+        final Class<? extends CRDT> crdtClass = crdt.getClass();
+        // the state so far reaches peers through missed(), not the channel
+        Flux.from(crdt.batchesSince(crdt.getSequence())).subscribe( //
+                batch -> send(new Frame(handle, crdtId, crdtClass, batch)), //
+                error -> send(new Frame(handle, crdtId, crdtClass, List.empty())), //
+                () -> send(new Frame(handle, crdtId, crdtClass, List.empty())));
+        return handle;
+    }
+
+    long getIncarnation() {
+        return incarnation;
+    }
+
+    /**
+     * @return live frames of all CRDTs opened on this channel
+     */
+    Flux<Frame> asFlux() {
+        return frames.asFlux();
+    }
+
+    /**
+     * @param filter CRDTs the peer replicates
+     * @return live frames of the matching CRDTs
+     */
+    Flux<Frame> asFlux(ReplicationFilter filter) {
+        if (filter.isAll()) {
+            return asFlux();
+        }
+        return frames.asFlux().filter(frame -> filter.test(frame.crdtId, frame.crdtClass));
+    }
+
+    /**
+     * @return number of peers subscribed
+     */
+    int getSubscriberCount() {
+        return frames.currentSubscriberCount();
+    }
+
+    private void send(Frame frame) {
+        outbox.offer(frame);
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Frame next;
+            while ((next = outbox.poll()) != null) {
+                frames.tryEmitNext(next);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * A batch of commands of one CRDT on the channel. The frame names its CRDT, so
+     * filters decide on the frame alone
+     */
+    static final class Frame {
+        private final int handle;
+        private final String crdtId;
+        @SuppressWarnings("rawtypes")
+        private final Class<? extends CRDT> crdtClass;
+        private final Seq<? extends Tuple2<Long, ? extends CRDTCommand>> commands;
+
+        @SuppressWarnings("rawtypes")
+        private Frame(int handle, String crdtId, Class<? extends CRDT> crdtClass,
+                Seq<? extends Tuple2<Long, ? extends CRDTCommand>> commands) {
+            this.handle = handle;
+            this.crdtId = crdtId;
+            this.crdtClass = crdtClass;
+            this.commands = commands;
+        }
+
+        int getHandle() {
+            return handle;
+        }
+
+        /**
+         * @return number of the last command in the log of its CRDT, 0 for the last
+         *         frame
+         */
+        long getSequence() {
+            return commands.isEmpty() ? 0L : commands.last()._1;
+        }
+
+        /**
+         * @return the commands with their number, none once the CRDT's log completed
+         */
+        Seq<? extends Tuple2<Long, ? extends CRDTCommand>> getCommands() {
+            return commands;
+        }
+
+        boolean isLast() {
+            return commands.isEmpty();
+        }
+    }
+}
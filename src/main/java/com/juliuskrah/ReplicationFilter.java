@@ -0,0 +1,94 @@
+package com.juliuskrah;
+
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Which CRDTs of a peer a store replicates. The filter is handed to the peer
+ * when the stores connect and the peer applies it to what it sends: CRDTs that
+ * do not match are neither announced nor their commands delivered, so the
+ * store never instantiates them
+ *
+ * @author Julius Krah
+ */
+public final class ReplicationFilter {
+    private static final ReplicationFilter ALL = new ReplicationFilter((crdtId, crdtClass) -> true);
+
+    private final Matcher matcher;
+
+    private ReplicationFilter(Matcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * @return every CRDT
+     */
+    public static ReplicationFilter all() {
+        return ALL;
+    }
+
+    /**
+     * @param prefix start of the CRDT IDs, such as {@code "tenant-42/"}
+     * @return CRDTs whose ID starts with the prefix
+     */
+    public static ReplicationFilter prefix(String prefix) {
+        Objects.requireNonNull(prefix, "prefix must not be null");
+        return new ReplicationFilter((crdtId, crdtClass) -> crdtId.startsWith(prefix));
+    }
+
+    /**
+     * @param predicate tests a CRDT ID
+     * @return CRDTs whose ID matches the predicate
+     */
+    public static ReplicationFilter of(Predicate<String> predicate) {
+        Objects.requireNonNull(predicate, "predicate must not be null");
+        return new ReplicationFilter((crdtId, crdtClass) -> predicate.test(crdtId));
+    }
+
+    /**
+     * @param crdtClass CRDT class
+     * @return CRDTs of the class or a subclass
+     */
+    @SuppressWarnings("rawtypes")
+    public static ReplicationFilter crdtClass(Class<? extends CRDT> crdtClass) {
+        Objects.requireNonNull(crdtClass, "crdtClass must not be null");
+        return new ReplicationFilter((crdtId, type) -> crdtClass.isAssignableFrom(type));
+    }
+
+    /**
+     * @param other another filter
+     * @return CRDTs matching both filters
+     */
+    public ReplicationFilter and(ReplicationFilter other) {
+        Objects.requireNonNull(other, "other must not be null");
+        if (this == ALL) {
+            return other;
+        }
+        return other == ALL ? this
+                : new ReplicationFilter((crdtId, crdtClass) -> matcher.test(crdtId, crdtClass)
+                        && other.matcher.test(crdtId, crdtClass));
+    }
+
+    /**
+     * @param definition definition of a CRDT
+     * @return {@code true} if the CRDT is replicated
+     */
+    public boolean test(CRDTDefinition definition) {
+        return test(definition.getCrdtId(), definition.getCrdtClass());
+    }
+
+    @SuppressWarnings("rawtypes")
+    boolean test(String crdtId, Class<? extends CRDT> crdtClass) {
+        return matcher.test(crdtId, crdtClass);
+    }
+
+    boolean isAll() {
+        return this == ALL;
+    }
+
+    @FunctionalInterface
+    private interface Matcher {
+        @SuppressWarnings("rawtypes")
+        boolean test(String crdtId, Class<? extends CRDT> crdtClass);
+    }
+}
@@ -0,0 +1,167 @@
+package com.juliuskrah;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.vavr.collection.HashSet;
+import io.vavr.collection.Set;
+import io.vavr.control.Option;
+
+/**
+ * Time from the write of a command on its origin node until a store applied
+ * it, per peer and per CRDT. Origin times come from the clock of the writing
+ * node, so the lag includes the skew between both clocks; negative lags count
+ * as 0. A peer is lagging while its last command arrived later than the
+ * threshold
+ * 
+ * Only live commands of peers count: commands the store wrote itself and
+ * commands restored from local storage are not replication. Lags are kept for
+ * at most {@value #MAX_CRDTS} CRDTs at a time, a CRDT's lags are dropped when
+ * the store unloads it
+ * 
+ * @author Julius Krah
+ * @see CRDTStore#getReplicationLag()
+ */
+public final class ReplicationLag {
+    static final int MAX_CRDTS = 4096;
+
+    private final String nodeId;
+    private final ConcurrentMap<String, Peer> peers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> crdts = new ConcurrentHashMap<>();
+    private volatile Duration threshold = Duration.ofSeconds(5);
+
+    /**
+     * @param nodeId node ID of the store, its own commands are not recorded
+     */
+    ReplicationLag(String nodeId) {
+        this.nodeId = Objects.requireNonNull(nodeId, "nodeId must not be null");
+    }
+
+    /**
+     * Records a command of a replica when the store first receives it. Commands
+     * without an origin time and commands of the store itself are skipped
+     * 
+     * @param crdtId  the CRDT the command was applied to
+     * @param command the command
+     */
+    void record(String crdtId, CRDTCommand command) {
+        final long originTime = command.getOriginTime();
+        if (originTime == 0L || command.getDot().isEmpty()) {
+            return;
+        }
+        final String origin = SeenSet.nodeOf(command.getDot().get().getOrigin());
+        if (origin.equals(nodeId)) {
+            return;
+        }
+        final long lag = Math.max(0L, CRDTCommand.currentTime() - originTime);
+        final Peer peer = peers.computeIfAbsent(origin, id -> new Peer());
+        peer.latencies.record(lag);
+        peer.last.set(lag);
+        LatencyHistogram latencies = crdts.get(crdtId);
+        if (latencies == null) {
+            if (crdts.size() >= MAX_CRDTS) {
+                return;
+            }
+            latencies = crdts.computeIfAbsent(crdtId, id -> new LatencyHistogram());
+        }
+        latencies.record(lag);
+    }
+
+    /**
+     * Drops the lags of a CRDT the store no longer holds
+     * 
+     * @param crdtId the CRDT
+     */
+    void forget(String crdtId) {
+        crdts.remove(crdtId);
+    }
+
+    /**
+     * @param nodeId     node ID of the peer that wrote the commands
+     * @param percentile between 0 and 1, such as 0.99
+     * @return upper bound of the lag below which that share of the peer's commands
+     *         were applied, {@link Duration#ZERO} if none was
+     * @throws IllegalArgumentException if the percentile is not between 0 and 1
+     */
+    public Duration getPeerLag(String nodeId, double percentile) {
+        LatencyHistogram.checkPercentile(percentile);
+        final Peer peer = peers.get(Objects.requireNonNull(nodeId, "nodeId must not be null"));
+        return peer == null ? Duration.ZERO : Duration.ofNanos(peer.latencies.getPercentile(percentile) * 1_000L);
+    }
+
+    /**
+     * @param crdtId     the CRDT
+     * @param percentile between 0 and 1, such as 0.99
+     * @return upper bound of the lag below which that share of the CRDT's commands
+     *         were applied, {@link Duration#ZERO} if none was
+     * @throws IllegalArgumentException if the percentile is not between 0 and 1
+     */
+    public Duration getCrdtLag(String crdtId, double percentile) {
+        LatencyHistogram.checkPercentile(percentile);
+        final LatencyHistogram latencies = crdts.get(Objects.requireNonNull(crdtId, "crdtId must not be null"));
+        return latencies == null ? Duration.ZERO : Duration.ofNanos(latencies.getPercentile(percentile) * 1_000L);
+    }
+
+    /**
+     * @param nodeId node ID of the peer
+     * @return lag of the last command of the peer the store applied
+     */
+    public Option<Duration> getLastLag(String nodeId) {
+        return Option.of(peers.get(Objects.requireNonNull(nodeId, "nodeId must not be null")))
+                .map(peer -> Duration.ofNanos(peer.last.get() * 1_000L));
+    }
+
+    /**
+     * @return node IDs of the peers the store applied commands of
+     */
+    public Set<String> getPeers() {
+        return HashSet.ofAll(peers.keySet());
+    }
+
+    /**
+     * @return node IDs of the peers whose last command lagged more than the
+     *         threshold
+     */
+    public Set<String> getLagging() {
+        return getPeers().filter(this::isLagging);
+    }
+
+    /**
+     * @param nodeId node ID of the peer
+     * @return {@code true} if the last command of the peer lagged more than the
+     *         threshold
+     */
+    public boolean isLagging(String nodeId) {
+        return getLastLag(nodeId).exists(lag -> lag.compareTo(threshold) > 0);
+    }
+
+    /**
+     * @return lag above which a peer is lagging
+     */
+    public Duration getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param threshold lag above which a peer is lagging, 5 seconds by default
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public void setThreshold(Duration threshold) {
+        Objects.requireNonNull(threshold, "threshold must not be null");
+        if (threshold.isNegative()) {
+            throw new IllegalArgumentException("threshold must not be negative");
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * Lags of one peer in microseconds
+     */
+    private static final class Peer {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final AtomicLong last = new AtomicLong();
+    }
+}
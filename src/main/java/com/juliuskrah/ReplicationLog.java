@@ -0,0 +1,813 @@
+package com.juliuskrah;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Operators;
+import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Sinks.EmissionException;
+import reactor.core.publisher.Sinks.EmitResult;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+import reactor.util.context.Context;
+import reactor.util.retry.Retry;
+
+/**
+ * Holds the commands a replica sends to its peers. Unlike
+ * {@code Sinks.many().replay().all()}, the log does not retain every command
+ * ever emitted. It keeps a bounded tail of recent commands and a snapshot of the
+ * current state. A new subscriber receives the snapshot, followed by the tail and
+ * then live commands
+ * 
+ * Every command is numbered. A peer that knows the last number it received
+ * catches up from the tail with {@link #since(long)}, and a peer that knows
+ * nothing but its own state sends a {@link MerkleTree} to {@link #reconcile(MerkleTree)}
+ * and receives only the commands in diverging buckets
+ * 
+ * Live commands are sent in batches, one signal per batch. Without
+ * {@link Batching} a batch holds the one command just written; with it, commands
+ * wait until the batch is full or its first command waited the maximum
+ * latency. Commands are numbered and retained as soon as they leave the outbox,
+ * so a peer that catches up meanwhile receives them from the tail
+ * 
+ * Commands pass through a bounded outbox. Whichever thread finds the outbox idle
+ * delivers every waiting command, so concurrent writers never fail with
+ * {@link EmitResult#FAIL_NON_SERIALIZED}. Each subscriber buffers a bounded
+ * number of live batches it has not requested yet. The {@link EmissionPolicy}
+ * decides what a local write does when the outbox plus the {@link #getLag() lag}
+ * of the slowest subscriber reach its capacity. Relayed and published commands
+ * bypass it, they are never rejected or dropped. Commands that are dropped are
+ * reported to {@link reactor.core.publisher.Hooks#onNextDropped}. A subscriber
+ * whose buffer overflows, or that drop-oldest leaves behind, stops receiving
+ * live batches; once it consumed its buffer it catches up from the tail
+ * 
+ * Local writes and snapshots run in the {@link Mailbox} of the CRDT that owns the
+ * log
+ *
+ * @author Julius Krah
+ * @param <T> command type
+ */
+public final class ReplicationLog<T> {
+    private static final int CATCH_UP_BATCH = 1024;
+    /**
+     * Live batches a subscriber buffers before it is left to catch up from the tail
+     */
+    private static final int SUBSCRIBER_BUFFER = 1024;
+
+    private final Supplier<? extends Iterable<? extends T>> snapshot;
+    private final Retention retention;
+    private final Mailbox mailbox;
+    private final Consumer<? super T> onWrite;
+    /**
+     * Delivers live batches. Each subscriber buffers what it has not consumed yet
+     */
+    private final Sinks.Many<Seq<Entry<T>>> live = Sinks.many().replay().limit(1);
+    /**
+     * Subscribers that receive live batches
+     */
+    private final Set<Reader> readers = ConcurrentHashMap.newKeySet();
+    /**
+     * Retained commands by number. Only read and written in the mailbox
+     */
+    private final Deque<Entry<T>> tail = new ArrayDeque<>();
+    private volatile long sequence;
+    private Digest digest;
+    private final Queue<Outgoing<T>> outbox = new ConcurrentLinkedQueue<>();
+    /**
+     * Commands waiting in the outbox plus writes that reserved a place
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile EmissionPolicy policy = EmissionPolicy.ofDefault();
+    private volatile Batching batching = Batching.disabled();
+    /**
+     * Numbered commands of the batch being filled. Only read and written in the
+     * mailbox
+     */
+    private final java.util.List<Entry<T>> pending = new ArrayList<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean flushDue = new AtomicBoolean();
+    private volatile boolean completed;
+
+    /**
+     * @param snapshot  computes the commands that rebuild the current state
+     * @param retention how many commands are kept in the tail
+     */
+    public ReplicationLog(Supplier<? extends Iterable<? extends T>> snapshot, Retention retention) {
+        this(snapshot, retention, new Mailbox());
+    }
+
+    /**
+     * @param snapshot  computes the commands that rebuild the current state
+     * @param retention how many commands are kept in the tail
+     * @param mailbox   serializes local writes and snapshots with the commands the
+     *                  owner receives from replicas
+     */
+    public ReplicationLog(Supplier<? extends Iterable<? extends T>> snapshot, Retention retention,
+            Mailbox mailbox) {
+        this(snapshot, retention, mailbox, command -> {
+        });
+    }
+
+    /**
+     * @param snapshot  computes the commands that rebuild the current state
+     * @param retention how many commands are kept in the tail
+     * @param mailbox   serializes local writes and snapshots with the commands the
+     *                  owner receives from replicas
+     * @param onWrite   called in the mailbox with the command of every local write
+     *                  before it is sent, but not with relayed commands
+     */
+    public ReplicationLog(Supplier<? extends Iterable<? extends T>> snapshot, Retention retention,
+            Mailbox mailbox, Consumer<? super T> onWrite) {
+        this.snapshot = Objects.requireNonNull(snapshot, "snapshot must not be null");
+        this.retention = Objects.requireNonNull(retention, "retention must not be null");
+        this.mailbox = Objects.requireNonNull(mailbox, "mailbox must not be null");
+        this.onWrite = Objects.requireNonNull(onWrite, "onWrite must not be null");
+    }
+
+    /**
+     * Reserves a place in the outbox, applies a local write and sends the command it
+     * returns. When the outbox is full the write is not applied
+     * 
+     * @param mutation changes local state and returns the command for replicas, or
+     *                 {@code null} when there is nothing to send
+     * @throws EmissionException when the policy rejects the write
+     */
+    public void emit(Supplier<? extends T> mutation) {
+        mailbox.call(() -> {
+            reserve();
+            send(written(mutate(mutation)), true);
+            return null;
+        });
+    }
+
+    /**
+     * Like {@link #emit(Supplier)}, for writes that return a result to the caller
+     * 
+     * @param <R>      result type
+     * @param mutation changes local state and returns the result and the command
+     * @return result of the write
+     * @throws EmissionException when the policy rejects the write
+     */
+    public <R> R emitWithResult(Supplier<? extends Tuple2<? extends R, ? extends T>> mutation) {
+        return mailbox.call(() -> {
+            reserve();
+            final Tuple2<? extends R, ? extends T> result = mutate(mutation);
+            send(written(result._2), true);
+            return result._1;
+        });
+    }
+
+    /**
+     * Non-blocking variant of {@link #emit(Supplier)}. While the outbox is full the
+     * write is retried after a delay instead of parking the caller
+     * 
+     * @param mutation changes local state and returns the command for replicas
+     * @return completes once the command is handed to the outbox
+     */
+    public Mono<Void> emitAsync(Supplier<? extends T> mutation) {
+        return withRetry(mailbox.submit(() -> {
+            tryReserveOrFail();
+            send(written(mutate(mutation)), true);
+            return null;
+        }));
+    }
+
+    /**
+     * Non-blocking variant of {@link #emitWithResult(Supplier)}
+     * 
+     * @param <R>      result type
+     * @param mutation changes local state and returns the result and the command
+     * @return result of the write
+     */
+    public <R> Mono<R> emitWithResultAsync(Supplier<? extends Tuple2<? extends R, ? extends T>> mutation) {
+        return withRetry(mailbox.submit(() -> {
+            tryReserveOrFail();
+            final Tuple2<? extends R, ? extends T> result = mutate(mutation);
+            send(written(result._2), true);
+            return result._1;
+        }));
+    }
+
+    /**
+     * Sends a command received from a replica and accepted by the local CRDT. The
+     * state has already changed, so the command is never rejected. Called from a
+     * task of the owner's mailbox
+     * 
+     * @param command the command
+     */
+    public void relay(T command) {
+        queued.incrementAndGet();
+        send(command, false);
+    }
+
+    /**
+     * Sends a command that is not a local write of the owner, such as the
+     * definition of a CRDT a store registered. Like a relayed command it bypasses
+     * the {@link EmissionPolicy}
+     * 
+     * @param command computes the command in the mailbox, {@code null} when there
+     *                is nothing to send
+     */
+    public void publish(Supplier<? extends T> command) {
+        mailbox.call(() -> {
+            queued.incrementAndGet();
+            send(mutate(command), false);
+            return null;
+        });
+    }
+
+    /**
+     * @return commands waiting in the outbox plus writes that reserved a place
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public EmissionPolicy getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(EmissionPolicy policy) {
+        this.policy = Objects.requireNonNull(policy, "policy must not be null");
+    }
+
+    public Batching getBatching() {
+        return batching;
+    }
+
+    /**
+     * @param batching how live commands are grouped, takes effect with the next
+     *                 command
+     */
+    public void setBatching(Batching batching) {
+        this.batching = Objects.requireNonNull(batching, "batching must not be null");
+    }
+
+    private <U> U mutate(Supplier<U> mutation) {
+        try {
+            return mutation.get();
+        } catch (RuntimeException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private T written(T command) {
+        if (command != null) {
+            onWrite.accept(command);
+        }
+        return command;
+    }
+
+    private void send(T command, boolean write) {
+        if (command == null) {
+            queued.decrementAndGet();
+            return;
+        }
+        outbox.offer(new Outgoing<>(command, write));
+        drain();
+    }
+
+    /**
+     * Numbers commands into the tail, always in the mailbox. Commands offered
+     * again while a subscriber processes a command are delivered before the drain
+     * leaves
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            final Batching batching = this.batching;
+            Outgoing<T> outgoing;
+            while ((outgoing = outbox.poll()) != null) {
+                queued.decrementAndGet();
+                final Entry<T> entry = new Entry<>(sequence + 1, System.nanoTime(), outgoing.command);
+                sequence = entry.sequence;
+                tail.addLast(entry);
+                trim();
+                if (!batching.isEnabled()) {
+                    flush();
+                    emit(List.of(entry));
+                    continue;
+                }
+                pending.add(entry);
+                if (pending.size() >= batching.getMaxSize()) {
+                    flush();
+                }
+            }
+            if (flushDue.getAndSet(false) || completed || !batching.isEnabled()) {
+                flush();
+            } else if (!pending.isEmpty() && flushScheduled.compareAndSet(false, true)) {
+                Schedulers.parallel().schedule(() -> {
+                    flushScheduled.set(false);
+                    flushDue.set(true);
+                    mailbox.execute(this::drain);
+                }, batching.getMaxLatency().toNanos(), TimeUnit.NANOSECONDS);
+            }
+            if (completed) {
+                live.tryEmitComplete();
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Emits the batch being filled
+     */
+    private void flush() {
+        if (!pending.isEmpty()) {
+            final Seq<Entry<T>> batch = List.ofAll(pending);
+            pending.clear();
+            emit(batch);
+        }
+    }
+
+    private void emit(Seq<Entry<T>> batch) {
+        if (live.tryEmitNext(batch).isFailure()) {
+            // only after complete(), later subscribers still find them in the tail
+            batch.forEach(entry -> Operators.onNextDropped(entry.command, Context.empty()));
+        }
+    }
+
+    private void reserve() {
+        final EmissionPolicy policy = this.policy;
+        if (tryReserve(policy)) {
+            return;
+        }
+        switch (policy.getStrategy()) {
+        case RETRY:
+            for (int attempt = 1; attempt < policy.getMaxAttempts(); attempt++) {
+                Thread.onSpinWait();
+                if (tryReserve(policy)) {
+                    return;
+                }
+            }
+            break;
+        case PARK:
+            final long deadline = System.nanoTime() + policy.getTimeout().toNanos();
+            while (deadline - System.nanoTime() > 0) {
+                LockSupport.parkNanos(policy.getBackoff().toNanos());
+                if (tryReserve(policy)) {
+                    return;
+                }
+            }
+            break;
+        default:
+            break;
+        }
+        throw overflow();
+    }
+
+    private void tryReserveOrFail() {
+        if (!tryReserve(policy)) {
+            throw overflow();
+        }
+    }
+
+    private boolean tryReserve(EmissionPolicy policy) {
+        if (policy.getStrategy() == EmissionPolicy.Strategy.DROP_OLDEST) {
+            if (queued.incrementAndGet() > policy.getCapacity()) {
+                dropOldestWrite();
+            }
+            readers.stream().filter(reader -> sequence - reader.position >= policy.getCapacity())
+                    .forEach(Reader::detach);
+            return true;
+        }
+        final long lag = getLag();
+        for (;;) {
+            final int current = queued.get();
+            if (current + lag >= policy.getCapacity()) {
+                return false;
+            }
+            if (queued.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest local write from the outbox. Relayed and published
+     * commands stay
+     */
+    private void dropOldestWrite() {
+        for (Iterator<Outgoing<T>> waiting = outbox.iterator(); waiting.hasNext();) {
+            final Outgoing<T> outgoing = waiting.next();
+            if (outgoing.write && outbox.remove(outgoing)) {
+                queued.decrementAndGet();
+                Operators.onNextDropped(outgoing.command, Context.empty());
+                return;
+            }
+        }
+    }
+
+    private <V> Mono<V> withRetry(Mono<V> write) {
+        final EmissionPolicy policy = this.policy;
+        switch (policy.getStrategy()) {
+        case RETRY:
+            return write.retryWhen(Retry.backoff(policy.getMaxAttempts(), policy.getBackoff()) //
+                    .filter(EmissionException.class::isInstance) //
+                    .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+        case PARK:
+            return write.retryWhen(Retry.fixedDelay(Long.MAX_VALUE, policy.getBackoff()) //
+                    .filter(EmissionException.class::isInstance)) //
+                    .timeout(policy.getTimeout(), Mono.error(this::overflow));
+        default:
+            return write;
+        }
+    }
+
+    private EmissionException overflow() {
+        return new EmissionException(EmitResult.FAIL_OVERFLOW, "Replication outbox is full");
+    }
+
+    /**
+     * The snapshot is computed in the owner's mailbox when a subscriber attaches, so
+     * it is never older than the first command in the tail. Commands in the tail
+     * that are already part of the snapshot are delivered again; CRDT commands are
+     * safe to apply more than once
+     *
+     * @return snapshot, tail and live commands
+     */
+    public Flux<T> asFlux() {
+        return replay(() -> {
+            final Seq<Tuple2<Long, T>> retained = tail.stream().map(Entry::numbered).collect(List.collector());
+            return retention.isUnbounded() ? retained : numbered(snapshot.get()).appendAll(retained);
+        }).flatMapIterable(batch -> batch, 1).map(Tuple2::_2);
+    }
+
+    /**
+     * Catches up a peer that received every command up to a number. When the tail
+     * no longer holds the commands after that number, the peer receives the
+     * snapshot instead. Commands come with their number, so the peer can resume
+     * from the last one it received. Commands of a snapshot carry the number of
+     * the last command it includes
+     *
+     * @param sequence number of the last command the peer received, 0 for none
+     * @return missed and live commands
+     */
+    public Flux<Tuple2<Long, T>> since(long sequence) {
+        return replay(() -> missedAfter(sequence)).flatMapIterable(batch -> batch, 1);
+    }
+
+    /**
+     * Like {@link #since(long)}, with one signal per batch. Missed commands come in
+     * batches of at most 1024
+     *
+     * @param sequence number of the last command the peer received, 0 for none
+     * @return batches of missed and live commands
+     */
+    public Flux<Seq<Tuple2<Long, T>>> batchesSince(long sequence) {
+        return replay(() -> missedAfter(sequence));
+    }
+
+    /**
+     * One-off variant of {@link #since(long)} without live commands
+     *
+     * @param sequence number of the last command the peer received, 0 for none
+     * @return missed commands with their number
+     */
+    public Seq<Tuple2<Long, T>> missed(long sequence) {
+        return mailbox.call(() -> missedAfter(sequence));
+    }
+
+    private Seq<Tuple2<Long, T>> missedAfter(long sequence) {
+        if (sequence == this.sequence) {
+            return List.empty();
+        }
+        trim();
+        final Entry<T> oldest = tail.peekFirst();
+        if (sequence < this.sequence && oldest != null && oldest.sequence <= sequence + 1) {
+            return tail.stream().filter(entry -> entry.sequence > sequence).map(Entry::numbered)
+                    .collect(List.collector());
+        }
+        return numbered(snapshot.get());
+    }
+
+    /**
+     * Sends a peer the commands of the snapshot that fall into buckets where its
+     * tree differs
+     *
+     * @param remote tree over the peer's state
+     * @return diverging and live commands with their number
+     */
+    public Flux<Tuple2<Long, T>> reconcile(MerkleTree<?> remote) {
+        Objects.requireNonNull(remote, "remote must not be null");
+        return replay(() -> {
+            final MerkleTree<T> tree = MerkleTree.of(snapshot.get());
+            digest = new Digest(this.sequence, tree.getRootHash());
+            return numbered(tree.diverging(remote));
+        }).flatMapIterable(batch -> batch, 1);
+    }
+
+    /**
+     * One-off variant of {@link #reconcile(MerkleTree)} without live commands
+     *
+     * @param remote tree over the peer's state
+     * @return commands of the snapshot in diverging buckets
+     */
+    public Seq<T> diverging(MerkleTree<?> remote) {
+        Objects.requireNonNull(remote, "remote must not be null");
+        return mailbox.call(() -> MerkleTree.<T>of(snapshot.get()).diverging(remote));
+    }
+
+    /**
+     * Completes the live stream once the commands in the outbox are delivered.
+     * Subscribers complete after consuming them
+     */
+    public void complete() {
+        completed = true;
+        mailbox.execute(this::drain);
+    }
+
+    /**
+     * @return number of the last command sent and the snapshot
+     */
+    public Tuple2<Long, Seq<T>> checkpoint() {
+        return mailbox.call(() -> Tuple.of(this.sequence, List.ofAll(snapshot.get())));
+    }
+
+    /**
+     * @return tree over the snapshot
+     */
+    public MerkleTree<T> merkleTree() {
+        return mailbox.call(() -> MerkleTree.of(snapshot.get()));
+    }
+
+    /**
+     * The digest is kept until the next command, so an unchanged replica is not
+     * hashed again
+     *
+     * @return root hash of the snapshot and the number of the last command
+     */
+    public Digest digest() {
+        return mailbox.call(() -> {
+            if (digest == null || digest.sequence != this.sequence) {
+                digest = new Digest(this.sequence, MerkleTree.of(snapshot.get()).getRootHash());
+            }
+            return digest;
+        });
+    }
+
+    /**
+     * @return number of the last command sent
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return live commands the slowest subscriber has not consumed yet, 0 without
+     *         subscribers
+     */
+    public long getLag() {
+        final long current = sequence;
+        long slowest = current;
+        for (Reader reader : readers) {
+            slowest = Math.min(slowest, reader.position);
+        }
+        return current - slowest;
+    }
+
+    /**
+     * Computes the commands a subscriber is missing in the mailbox, then follows with
+     * live batches of commands numbered after that point. Live batches are buffered
+     * from before the mailbox reads the number, so none sent in between is lost. A
+     * subscriber that was detached from the live batches continues after the last
+     * command it consumed
+     */
+    private Flux<Seq<Tuple2<Long, T>>> replay(Supplier<Seq<Tuple2<Long, T>>> missed) {
+        return Flux.defer(() -> {
+            final Reader reader = new Reader();
+            reader.subscription = live.asFlux().subscribe(reader::offer, reader.buffer::tryEmitError,
+                    reader.buffer::tryEmitComplete);
+            return mailbox.submit(() -> {
+                reader.position = this.sequence;
+                readers.add(reader);
+                return Tuple.of(missed.get(), this.sequence);
+            }).flatMapMany(replay -> Flux.<Seq<Tuple2<Long, T>>>fromIterable(replay._1.grouped(CATCH_UP_BATCH)
+                    .toList())
+                    .concatWith(reader.buffer.asFlux() //
+                            .map(batch -> batch.filter(entry -> entry.sequence > replay._2).map(Entry::numbered)) //
+                            .filter(batch -> !batch.isEmpty()))) //
+                    .doOnNext(batch -> reader.position = Math.max(reader.position, batch.last()._1)) //
+                    .doFinally(signal -> reader.detach()) //
+                    .concatWith(Flux.defer(() -> reader.detached ? replay(() -> missedAfter(reader.position))
+                            : Flux.empty()));
+        });
+    }
+
+    private Seq<Tuple2<Long, T>> numbered(Iterable<? extends T> commands) {
+        final long current = this.sequence;
+        return List.<T>ofAll(commands).map(command -> Tuple.of(current, command));
+    }
+
+    private void trim() {
+        while (tail.size() > retention.getMaxSize()) {
+            tail.removeFirst();
+        }
+        if (retention.getMaxAge() != null) {
+            final long now = System.nanoTime();
+            final long maxAge = retention.getMaxAge().toNanos();
+            while (!tail.isEmpty() && now - tail.peekFirst().timestamp >= maxAge) {
+                tail.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * A subscriber's bounded buffer of live batches and the number of the last
+     * command it consumed
+     */
+    private final class Reader {
+        private final Sinks.Many<Seq<Entry<T>>> buffer = Sinks.many().unicast()
+                .onBackpressureBuffer(Queues.<Seq<Entry<T>>>get(SUBSCRIBER_BUFFER).get());
+        private volatile Disposable subscription;
+        private volatile long position;
+        private volatile boolean detached;
+
+        /**
+         * Called in the mailbox with every live batch
+         */
+        private void offer(Seq<Entry<T>> batch) {
+            if (!detached && buffer.tryEmitNext(batch) == EmitResult.FAIL_OVERFLOW) {
+                detach();
+            }
+        }
+
+        /**
+         * Stops the live batches. The subscriber consumes its buffer and catches up
+         * from the tail
+         */
+        private void detach() {
+            if (detached) {
+                return;
+            }
+            detached = true;
+            readers.remove(this);
+            final Disposable subscription = this.subscription;
+            if (subscription != null) {
+                subscription.dispose();
+            }
+            buffer.tryEmitComplete();
+        }
+    }
+
+    private static final class Outgoing<T> {
+        private final T command;
+        /**
+         * Whether the command is a local write, which the policy may drop
+         */
+        private final boolean write;
+
+        private Outgoing(T command, boolean write) {
+            this.command = command;
+            this.write = write;
+        }
+    }
+
+    private static final class Entry<T> {
+        private final long sequence;
+        private final long timestamp;
+        private final T command;
+
+        private Entry(long sequence, long timestamp, T command) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.command = command;
+        }
+
+        private Tuple2<Long, T> numbered() {
+            return Tuple.of(sequence, command);
+        }
+    }
+
+    /**
+     * Summary of a replica exchanged between peers when they reconnect
+     */
+    public static final class Digest {
+        private final long sequence;
+        private final long hash;
+
+        Digest(long sequence, long hash) {
+            this.sequence = sequence;
+            this.hash = hash;
+        }
+
+        /**
+         * @return number of the last command sent when the digest was taken
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return root hash of the replica's {@link MerkleTree}
+         */
+        public long getHash() {
+            return hash;
+        }
+    }
+
+    /**
+     * Size and age based retention for the tail of a {@link ReplicationLog}
+     */
+    public static final class Retention {
+        private static final int DEFAULT_SIZE = 1024;
+        private static final Retention UNBOUNDED = new Retention(Integer.MAX_VALUE, null);
+
+        private final int maxSize;
+        private final Duration maxAge;
+
+        private Retention(int maxSize, Duration maxAge) {
+            this.maxSize = maxSize;
+            this.maxAge = maxAge;
+        }
+
+        /**
+         * Keeps every command. Subscribers receive the full history and no snapshot
+         *
+         * @return unbounded retention
+         */
+        public static Retention unbounded() {
+            return UNBOUNDED;
+        }
+
+        /**
+         * @return retention of the last 1024 commands
+         */
+        public static Retention ofDefault() {
+            return ofSize(DEFAULT_SIZE);
+        }
+
+        /**
+         * @param maxSize number of commands kept in the tail
+         * @return size based retention
+         */
+        public static Retention ofSize(int maxSize) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("maxSize must be positive");
+            }
+            return new Retention(maxSize, null);
+        }
+
+        /**
+         * @param maxAge age after which commands are dropped from the tail
+         * @return age based retention
+         */
+        public static Retention ofAge(Duration maxAge) {
+            return of(Integer.MAX_VALUE, maxAge);
+        }
+
+        /**
+         * @param maxSize number of commands kept in the tail
+         * @param maxAge  age after which commands are dropped from the tail
+         * @return size and age based retention
+         */
+        public static Retention of(int maxSize, Duration maxAge) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("maxSize must be positive");
+            }
+            Objects.requireNonNull(maxAge, "maxAge must not be null");
+            if (maxAge.isNegative() || maxAge.isZero()) {
+                throw new IllegalArgumentException("maxAge must be positive");
+            }
+            return new Retention(maxSize, maxAge);
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public Duration getMaxAge() {
+            return maxAge;
+        }
+
+        boolean isUnbounded() {
+            return this == UNBOUNDED;
+        }
+    }
+}
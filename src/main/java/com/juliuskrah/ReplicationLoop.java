@@ -0,0 +1,155 @@
+package com.juliuskrah;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.reactivestreams.Subscription;
+
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Replication loop of {@link ReplicationMode#BLOCKING}. Commands of one peer for
+ * one CRDT are put in a bounded queue and taken by a dedicated virtual thread.
+ * The loop requests more commands from the peer as it consumes them, so the
+ * queue never overflows and the emitting thread never blocks
+ *
+ * Without virtual threads a thread per loop would not scale to many CRDTs and
+ * peers. The loops then share the threads of
+ * {@link Schedulers#boundedElastic()}, and a loop drains its queue whenever
+ * commands arrive instead of waiting on it
+ *
+ * @author Julius Krah
+ * @param <T> command type
+ */
+final class ReplicationLoop<T> extends BaseSubscriber<T> implements Runnable {
+    private static final int PREFETCH = 256;
+    private static final int REPLENISH = PREFETCH - (PREFETCH >> 2);
+    private static final Object DONE = new Object();
+    /**
+     * Virtual threads, {@code null} when the runtime has none
+     */
+    private static final ThreadFactory THREADS = threadFactory();
+
+    /**
+     * Room for a full prefetch and the terminal signal
+     */
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(PREFETCH + 1);
+    private final Consumer<? super T> consumer;
+    /**
+     * Drains scheduled without virtual threads, only one drains at a time
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+    private int consumed;
+
+    private ReplicationLoop(Consumer<? super T> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Starts a loop that passes each command to the consumer on its own virtual
+     * thread, or on a shared thread while it drains. The loop ends when the
+     * publisher terminates
+     *
+     * @param <T>      command type
+     * @param name     name of the loop thread
+     * @param consumer applies a command
+     * @return the loop, to be subscribed to the publisher of commands
+     */
+    static <T> ReplicationLoop<T> start(String name, Consumer<? super T> consumer) {
+        final ReplicationLoop<T> loop = new ReplicationLoop<>(Objects.requireNonNull(consumer, "consumer must not be null"));
+        if (THREADS != null) {
+            final Thread thread = THREADS.newThread(loop);
+            thread.setName(name);
+            thread.start();
+        }
+        return loop;
+    }
+
+    @Override
+    protected void hookOnSubscribe(Subscription subscription) {
+        request(PREFETCH);
+    }
+
+    @Override
+    protected void hookOnNext(T command) {
+        queue.offer(command);
+        signal();
+    }
+
+    @Override
+    protected void hookFinally(SignalType type) {
+        queue.offer(DONE);
+        signal();
+    }
+
+    /**
+     * Takes commands until the publisher terminates, on a virtual thread
+     */
+    @Override
+    public void run() {
+        try {
+            for (;;) {
+                final Object next = queue.take();
+                if (next == DONE) {
+                    return;
+                }
+                accept(next);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dispose();
+        }
+    }
+
+    private void signal() {
+        if (THREADS == null && wip.getAndIncrement() == 0) {
+            Schedulers.boundedElastic().schedule(this::drain);
+        }
+    }
+
+    /**
+     * Takes the commands that arrived, on a shared thread
+     */
+    private void drain() {
+        int missed = 1;
+        do {
+            Object next;
+            while ((next = queue.poll()) != null) {
+                if (next == DONE) {
+                    return;
+                }
+                accept(next);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void accept(Object command) {
+        consumer.accept((T) command);
+        if (++consumed == REPLENISH) {
+            consumed = 0;
+            request(REPLENISH);
+        }
+    }
+
+    /**
+     * Virtual threads are looked up reflectively so the library still runs on the
+     * JDK 11 baseline
+     */
+    private static ThreadFactory threadFactory() {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.juliuskrah;
+
+/**
+ * How a {@link CRDTStore} delivers the commands of a peer to its local CRDTs
+ *
+ * @author Julius Krah
+ */
+public enum ReplicationMode {
+    /**
+     * Commands are delivered by Reactor on the thread that emitted them
+     */
+    REACTIVE,
+    /**
+     * Each CRDT of each peer has its own replication loop that takes commands from
+     * a bounded blocking queue. Loops run on virtual threads when the runtime
+     * supports them (JDK 21 and later), otherwise they share a bounded pool of
+     * platform threads
+     */
+    BLOCKING
+}
@@ -0,0 +1,131 @@
+package com.juliuskrah;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Which CRDTs an {@link InMemoryCRDTStore} keeps in memory. An eager store
+ * holds every CRDT it created or learned of from a peer. A lazy store
+ * instantiates a peer's CRDT when it is first looked up, keeps at most
+ * {@code maxResident} CRDTs in memory and encodes the rest with a
+ * {@link Codec}. An evicted CRDT is decoded again when it is looked up or a
+ * peer sends it a command
+ *
+ * Encoded CRDTs stay on the heap unless a spill directory is given. Then they
+ * stay on the heap up to {@code maxEncodedBytes} in total, and the rest is
+ * written to files in the directory until it is looked up again
+ *
+ * @author Julius Krah
+ */
+public final class Residency {
+    private static final Residency EAGER = new Residency(false, Integer.MAX_VALUE, Policy.LRU, null, null,
+            Long.MAX_VALUE);
+
+    private final boolean lazy;
+    private final int maxResident;
+    private final Policy policy;
+    private final Codec codec;
+    private final Path spillDirectory;
+    private final long maxEncodedBytes;
+
+    private Residency(boolean lazy, int maxResident, Policy policy, Codec codec, Path spillDirectory,
+            long maxEncodedBytes) {
+        this.lazy = lazy;
+        this.maxResident = maxResident;
+        this.policy = policy;
+        this.codec = codec;
+        this.spillDirectory = spillDirectory;
+        this.maxEncodedBytes = maxEncodedBytes;
+    }
+
+    /**
+     * @return every CRDT stays in memory
+     */
+    public static Residency eager() {
+        return EAGER;
+    }
+
+    /**
+     * @param maxResident most CRDTs in memory
+     * @return lazy residency evicting the least recently used CRDT, encoded with
+     *         {@link BinaryCodec}
+     */
+    public static Residency lazy(int maxResident) {
+        return lazy(maxResident, Policy.LRU, BinaryCodec.ofDefault());
+    }
+
+    /**
+     * @param maxResident most CRDTs in memory
+     * @param policy      which CRDT to evict
+     * @param codec       encodes evicted CRDTs
+     * @return lazy residency
+     */
+    public static Residency lazy(int maxResident, Policy policy, Codec codec) {
+        if (maxResident < 1) {
+            throw new IllegalArgumentException("maxResident must be positive");
+        }
+        Objects.requireNonNull(policy, "policy must not be null");
+        Objects.requireNonNull(codec, "codec must not be null");
+        return new Residency(true, maxResident, policy, codec, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxResident     most CRDTs in memory
+     * @param policy          which CRDT to evict
+     * @param codec           encodes evicted CRDTs
+     * @param spillDirectory  directory for encoded CRDTs beyond the heap budget
+     * @param maxEncodedBytes most bytes of encoded CRDTs on the heap
+     * @return lazy residency spilling encoded CRDTs to disk
+     */
+    public static Residency lazy(int maxResident, Policy policy, Codec codec, Path spillDirectory,
+            long maxEncodedBytes) {
+        final Residency residency = lazy(maxResident, policy, codec);
+        Objects.requireNonNull(spillDirectory, "spillDirectory must not be null");
+        if (maxEncodedBytes < 0) {
+            throw new IllegalArgumentException("maxEncodedBytes must not be negative");
+        }
+        return new Residency(true, residency.maxResident, policy, codec, spillDirectory, maxEncodedBytes);
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public int getMaxResident() {
+        return maxResident;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return directory for encoded CRDTs beyond the heap budget, {@code null} to
+     *         keep them all on the heap
+     */
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public long getMaxEncodedBytes() {
+        return maxEncodedBytes;
+    }
+
+    /**
+     * Which CRDT a full store evicts
+     */
+    public enum Policy {
+        /**
+         * The one looked up least recently
+         */
+        LRU,
+        /**
+         * The one looked up least often, the least recent among equals
+         */
+        LFU
+    }
+}
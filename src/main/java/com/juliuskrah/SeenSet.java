@@ -0,0 +1,209 @@
+package com.juliuskrah;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link Dot dots} a replica has applied. Per origin it keeps a watermark,
+ * below which every dot has been seen, and the runs of consecutive dots seen
+ * above the watermark. Commands usually arrive in order, so the runs stay few.
+ * 
+ * A replica that falls behind the retained tail of a peer receives a snapshot
+ * instead of the missed commands and never sees their dots, which leaves gaps.
+ * The runs of an origin are therefore capped: beyond the cap the origin stops
+ * suppressing duplicates above its watermark. A dot that was not seen is never
+ * reported as seen, CRDT commands are safe to apply twice.
+ * 
+ * Each start of a replica writes under a new {@link #incarnation(String)
+ * incarnation} of its node ID. Only the latest incarnation of a node is kept, so
+ * the set does not grow with restarts and reloads. Dots of an older incarnation
+ * are always applied. Not thread-safe, a CRDT only uses it in its
+ * {@link Mailbox}
+ * 
+ * @author Julius Krah
+ */
+public final class SeenSet {
+    private static final int MAX_RUNS = 1024;
+    private static final AtomicLong LAST_START = new AtomicLong();
+
+    private final String origin;
+    /**
+     * Dots of the latest incarnation of each node
+     */
+    private final Map<String, Origin> origins = new HashMap<>();
+    private long written;
+
+    /**
+     * A replica that restarts, for example from a durable store, numbers its writes
+     * from 1 again. Peers have seen those dots already, so every start of a replica
+     * writes under an origin of its own. The origin holds the start time, later
+     * starts in a process have later times, and a random part keeps it unique when
+     * the clock went back
+     * 
+     * @param nodeId node ID of the replica
+     * @return origin for the dots of one start of the replica
+     */
+    static String incarnation(String nodeId) {
+        final long start = LAST_START.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis()));
+        return nodeId + '/' + Long.toHexString(start) + '.'
+                + Integer.toHexString(ThreadLocalRandom.current().nextInt());
+    }
+
+    /**
+     * @param origin origin of a dot
+     * @return start time of the incarnation, 0 for an origin that is a plain node
+     *         ID
+     */
+    static long startOf(String origin) {
+        final int separator = origin.lastIndexOf('/');
+        final int random = origin.indexOf('.', separator + 1);
+        if (separator < 0 || random < 0) {
+            return 0L;
+        }
+        try {
+            return Long.parseUnsignedLong(origin.substring(separator + 1, random), 16);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * @param origin origin of a dot
+     * @return node ID of the replica that wrote under the origin
+     */
+    static String nodeOf(String origin) {
+        final int separator = origin.lastIndexOf('/');
+        return separator < 0 ? origin : origin.substring(0, separator);
+    }
+
+    /**
+     * @param origin node ID of the replica, used for the dots of local writes
+     */
+    public SeenSet(String origin) {
+        this.origin = Objects.requireNonNull(origin, "origin must not be null");
+    }
+
+    /**
+     * Creates the dot of a local write and marks it as seen, so the write is
+     * dropped when a peer relays it back
+     * 
+     * @return the dot
+     */
+    public Dot next() {
+        final Dot dot = new Dot(origin, ++written);
+        add(dot);
+        return dot;
+    }
+
+    /**
+     * Marks a dot as seen
+     * 
+     * @param dot the dot
+     * @return {@code false} if the dot has been seen before
+     */
+    public boolean add(Dot dot) {
+        Objects.requireNonNull(dot, "dot must not be null");
+        final String node = nodeOf(dot.getOrigin());
+        Origin seen = origins.get(node);
+        if (seen == null || !seen.origin.equals(dot.getOrigin())) {
+            if (seen != null && startOf(dot.getOrigin()) < startOf(seen.origin)) {
+                return true;
+            }
+            seen = new Origin(dot.getOrigin());
+            origins.put(node, seen);
+        }
+        return seen.add(dot.getSequence());
+    }
+
+    /**
+     * @param dot the dot
+     * @return {@code true} if the dot has been seen
+     */
+    public boolean contains(Dot dot) {
+        Objects.requireNonNull(dot, "dot must not be null");
+        final Origin seen = origins.get(nodeOf(dot.getOrigin()));
+        return seen != null && seen.origin.equals(dot.getOrigin()) && seen.contains(dot.getSequence());
+    }
+
+    /**
+     * @param origin origin of dots
+     * @return highest sequence up to which every dot of the origin has been seen, 0
+     *         unless it is the latest incarnation of its node
+     */
+    public long getWatermark(String origin) {
+        final Origin seen = origins.get(nodeOf(origin));
+        return seen == null || !seen.origin.equals(origin) ? 0L : seen.watermark;
+    }
+
+    /**
+     * @return number of origins whose dots are kept, at most one per node
+     */
+    int size() {
+        return origins.size();
+    }
+
+    private static final class Origin {
+        private final String origin;
+        private long watermark;
+        /**
+         * First and last dot of each run above the watermark, apart from each other
+         * and from the watermark
+         */
+        private final NavigableMap<Long, Long> runs = new TreeMap<>();
+        /**
+         * Set once the runs exceeded the cap, dots above the watermark then always
+         * count as unseen. The watermark still follows dots that arrive in order
+         */
+        private boolean saturated;
+
+        private Origin(String origin) {
+            this.origin = origin;
+        }
+
+        private boolean contains(long sequence) {
+            if (sequence <= watermark) {
+                return true;
+            }
+            final Map.Entry<Long, Long> run = runs.floorEntry(sequence);
+            return run != null && run.getValue() >= sequence;
+        }
+
+        private boolean add(long sequence) {
+            if (contains(sequence)) {
+                return false;
+            }
+            if (saturated) {
+                if (sequence == watermark + 1) {
+                    watermark = sequence;
+                }
+                return true;
+            }
+            long first = sequence;
+            long last = sequence;
+            final Map.Entry<Long, Long> before = runs.floorEntry(sequence);
+            if (before != null && before.getValue() == sequence - 1) {
+                first = before.getKey();
+            }
+            final Long after = runs.remove(sequence + 1);
+            if (after != null) {
+                last = after;
+            }
+            if (first == watermark + 1) {
+                runs.remove(first);
+                watermark = last;
+            } else {
+                runs.put(first, last);
+            }
+            if (runs.size() > MAX_RUNS) {
+                saturated = true;
+                runs.clear();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,544 @@
+package com.juliuskrah;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+import org.reactivestreams.Subscription;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.HashSet;
+import io.vavr.control.Option;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+/**
+ * A CRDT store that also replicates with stores of other processes on the same
+ * host through shared memory. Each store writes its definitions and commands to
+ * a ring buffer in a memory-mapped file, and reads the files of the stores it
+ * {@link #connect(Path) connects} to. Stores replicate both ways when each
+ * connects to the file of the other.
+ *
+ * The store writes one stream for all readers. Whenever a reader joins, the
+ * stream starts over with a reset, the definitions and the snapshots, so the
+ * new reader catches up and the others apply what they already have. One
+ * thread per store writes the ring and polls the rings it reads. It spins while
+ * there is work and backs off to parking when idle, so replication takes
+ * microseconds and no system calls. Commands are encoded by a {@link Codec},
+ * {@link BinaryCodec} unless another is given. A frame larger than a ring
+ * record is split into fragments that readers put back together
+ *
+ * @author Julius Krah
+ */
+public class SharedMemoryCRDTStore extends InMemoryCRDTStore implements AutoCloseable {
+    /**
+     * Size of the data of a ring buffer unless another is given
+     */
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+    private static final byte DEFINITION = 1;
+    private static final byte COMMAND = 2;
+    private static final byte RESET = 3;
+    private static final byte FRAGMENT = 4;
+    /**
+     * Type, last flag and the length of the chunk
+     */
+    private static final int FRAGMENT_HEADER = 7;
+    private static final int POLL_LIMIT = 256;
+    /**
+     * Spinning on a single processor only delays the thread being waited for
+     */
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 10_000 : 0;
+    private static final int YIELDS = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final MappedRing ring;
+    private final Codec codec;
+    private final Thread loop;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Queue<Frame> outbound = new ConcurrentLinkedQueue<>();
+    private final Map<Path, Peer> peers = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+    /**
+     * Incremented by the loop each time the stream starts over. Frames of an
+     * earlier generation are dropped
+     */
+    private volatile int generation;
+    /**
+     * Only accessed on the loop
+     */
+    private Disposable.Composite senders = Disposables.composite();
+    private BinaryOutput output = new BinaryOutput();
+    private Frame current;
+    /**
+     * The current frame while it is written in fragments, {@code null} otherwise
+     */
+    private byte[] split;
+    private int splitOffset;
+    private long joins;
+
+    /**
+     * @param nodeId the node ID
+     * @param file   the ring buffer this store writes, created if missing
+     */
+    public SharedMemoryCRDTStore(String nodeId, Path file) {
+        this(nodeId, file, DEFAULT_CAPACITY, Retention.ofDefault(), BinaryCodec.ofDefault());
+    }
+
+    /**
+     * @param nodeId    the node ID
+     * @param file      the ring buffer this store writes, created if missing
+     * @param capacity  size of the ring buffer in bytes, a power of two. Frames
+     *                  larger than half of it are split
+     * @param retention retention of definitions announced to peers
+     * @param codec     encodes commands, peers must use a compatible codec
+     */
+    public SharedMemoryCRDTStore(String nodeId, Path file, int capacity, Retention retention, Codec codec) {
+        super(nodeId, retention);
+        Objects.requireNonNull(file, "file must not be null");
+        this.codec = Objects.requireNonNull(codec, "codec must not be null");
+        try {
+            this.ring = MappedRing.create(file, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.loop = new Thread(this::run, "crdt-ipc-" + nodeId);
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /**
+     * Starts reading the ring buffer of another store
+     *
+     * @param file the file the other store writes
+     */
+    public void connect(Path file) {
+        Objects.requireNonNull(file, "file must not be null");
+        await(call(() -> {
+            if (!peers.containsKey(file)) {
+                final Peer peer = new Peer(MappedRing.open(file));
+                peer.join();
+                peers.put(file, peer);
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Stops reading the ring buffer of another store
+     *
+     * @param file the file the other store writes
+     */
+    public void disconnect(Path file) {
+        await(call(() -> {
+            final Peer peer = peers.remove(file);
+            if (peer != null) {
+                peer.close();
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * @return number of ring buffers this store reads
+     */
+    public int getConnectionCount() {
+        return peers.size();
+    }
+
+    /**
+     * Stops reading and writing. The file is left in place
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(loop);
+        try {
+            loop.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        int idle = 0;
+        try {
+            while (!closed) {
+                int work = 0;
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                    work++;
+                }
+                final long joined = ring.getJoins();
+                if (joined != joins) {
+                    joins = joined;
+                    restart();
+                }
+                work += write();
+                for (Peer peer : peers.values()) {
+                    work += peer.poll();
+                }
+                idle = work > 0 ? 0 : idle(idle);
+            }
+        } catch (RuntimeException e) {
+            Operators.onErrorDropped(e, Context.empty());
+        } finally {
+            senders.dispose();
+            outbound.clear();
+            peers.values().forEach(Peer::close);
+            peers.clear();
+        }
+    }
+
+    private static int idle(int idle) {
+        if (idle < SPINS) {
+            Thread.onSpinWait();
+        } else if (idle < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1_000L << Math.min(idle - SPINS - YIELDS, 10)));
+        }
+        return idle + 1;
+    }
+
+    /**
+     * Starts the stream over: readers reset their dictionaries and receive the
+     * definitions and snapshots again
+     */
+    private void restart() {
+        senders.dispose();
+        senders = Disposables.composite();
+        generation++;
+        current = null;
+        split = null;
+        output = new BinaryOutput();
+        send(generation, out -> out.writeByte(RESET), null);
+        final DefinitionSender sender = new DefinitionSender(generation, senders);
+        senders.add(sender);
+        subscribe(sender);
+    }
+
+    /**
+     * Copies queued frames into the ring until it is full
+     *
+     * @return number of frames written
+     */
+    private int write() {
+        int written = 0;
+        for (;;) {
+            if (current == null) {
+                current = outbound.poll();
+                if (current == null) {
+                    return written;
+                }
+                if (current.generation != generation) {
+                    current = null;
+                    continue;
+                }
+                output.reset();
+                current.writer.write(output);
+                if (output.size() > ring.getMaxPayload()) {
+                    split = output.toByteArray();
+                    splitOffset = 0;
+                    nextFragment();
+                }
+            }
+            if (!ring.offer(output)) {
+                if (ring.evictStale() == 0) {
+                    return written;
+                }
+                continue;
+            }
+            if (split != null && splitOffset < split.length) {
+                nextFragment();
+                continue;
+            }
+            split = null;
+            final Runnable onWritten = current.onWritten;
+            current = null;
+            written++;
+            if (onWritten != null) {
+                onWritten.run();
+            }
+        }
+    }
+
+    /**
+     * Puts the next chunk of the frame being split into the output. The chunk
+     * refers to the dictionary as the whole frame does
+     */
+    private void nextFragment() {
+        final int length = Math.min(split.length - splitOffset, ring.getMaxPayload() - FRAGMENT_HEADER);
+        output.reset();
+        output.writeByte(FRAGMENT);
+        output.writeByte(splitOffset + length == split.length ? 1 : 0);
+        output.writeBytes(Arrays.copyOfRange(split, splitOffset, splitOffset + length));
+        splitOffset += length;
+    }
+
+    private void send(int generation, FrameWriter writer, Runnable onWritten) {
+        outbound.offer(new Frame(generation, writer, onWritten));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void receive(BinaryInput in) throws IOException, ClassNotFoundException {
+        switch (in.readByte()) {
+        case DEFINITION:
+            final String crdtId = in.readInterned();
+            final String className = in.readInterned();
+            if (findCrdt(crdtId).isEmpty()) {
+                final Class<?> crdtClass = Class.forName(className, false, getClass().getClassLoader());
+                if (!CRDT.class.isAssignableFrom(crdtClass)) {
+                    throw new IOException("Not a CRDT: " + className);
+                }
+                createCrdt((Class) crdtClass, crdtId);
+            }
+            break;
+        case COMMAND:
+            final CRDTCommand command = codec.decode(in);
+            final Option<? extends CRDT> crdt = findCrdt(command.getCrdtId());
+            crdt.peek(replica -> replica.receive(command));
+            break;
+        default:
+            throw new IOException("Unknown message type");
+        }
+    }
+
+    private void execute(Runnable task) {
+        tasks.offer(task);
+        LockSupport.unpark(loop);
+    }
+
+    private <T> CompletableFuture<T> call(IOCallable<T> task) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                result.complete(task.call());
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out after " + TIMEOUT_SECONDS + " seconds", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IOCallable<T> {
+        T call() throws IOException;
+    }
+
+    private static final class Frame {
+        private final int generation;
+        private final FrameWriter writer;
+        private final Runnable onWritten;
+
+        private Frame(int generation, FrameWriter writer, Runnable onWritten) {
+            this.generation = generation;
+            this.writer = writer;
+            this.onWritten = onWritten;
+        }
+    }
+
+    /**
+     * A ring buffer this store reads. Records before the first reset are
+     * skipped, their dictionary entries are unknown. Only used on the loop
+     */
+    private final class Peer {
+        private final MappedRing ring;
+        private MappedRing.Reader reader;
+        private BinaryInput input;
+        /**
+         * Chunks of a split frame received so far
+         */
+        private final ByteArrayOutputStream fragments = new ByteArrayOutputStream();
+
+        private Peer(MappedRing ring) {
+            this.ring = ring;
+        }
+
+        private void join() throws IOException {
+            reader = ring.reader();
+            input = null;
+            if (reader == null) {
+                throw new IOException("All " + MappedRing.MAX_READERS + " reader slots are taken");
+            }
+        }
+
+        private int poll() {
+            if (reader == null) {
+                return rejoin();
+            }
+            final int read = reader.poll(POLL_LIMIT, this::accept);
+            return read < 0 ? rejoin() : read;
+        }
+
+        private void accept(byte[] payload) {
+            if (payload.length > 0 && payload[0] == RESET) {
+                input = new BinaryInput();
+                fragments.reset();
+                return;
+            }
+            if (input == null) {
+                return;
+            }
+            if (payload.length > 0 && payload[0] == FRAGMENT) {
+                final BinaryInput fragment = new BinaryInput().wrap(payload);
+                fragment.readByte();
+                final boolean last = fragment.readByte() == 1;
+                fragments.writeBytes(fragment.readBytes());
+                if (last) {
+                    final byte[] frame = fragments.toByteArray();
+                    fragments.reset();
+                    accept(frame);
+                }
+                return;
+            }
+            try {
+                receive(input.wrap(payload));
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                // start over with the next reset
+                Operators.onErrorDropped(e, Context.empty());
+                input = null;
+                reader.close();
+                reader = null;
+            }
+        }
+
+        /**
+         * Claims a new slot after the writer freed this one or started over
+         */
+        private int rejoin() {
+            if (reader != null) {
+                reader.close();
+            }
+            try {
+                join();
+                return 1;
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        private void close() {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Sends a definition for each CRDT of this store, then its commands
+     */
+    private final class DefinitionSender extends BaseSubscriber<CRDTDefinition> {
+        private final int generation;
+        private final Disposable.Composite senders;
+        /**
+         * A definition may arrive twice, in the snapshot and in the tail
+         */
+        private io.vavr.collection.Set<String> sent = HashSet.empty();
+
+        private DefinitionSender(int generation, Disposable.Composite senders) {
+            this.generation = generation;
+            this.senders = senders;
+        }
+
+        @Override
+        protected void hookOnNext(CRDTDefinition definition) {
+            if (sent.contains(definition.getCrdtId())) {
+                return;
+            }
+            sent = sent.add(definition.getCrdtId());
+            send(generation, out -> {
+                out.writeByte(DEFINITION);
+                out.writeInterned(definition.getCrdtId());
+                out.writeInterned(definition.getCrdtClass().getName());
+            }, null);
+            final CommandSender commands = new CommandSender(generation);
+            senders.add(commands);
+            Flux.from(definition.since(0L)).<CRDTCommand>map(Tuple2::_2).subscribe(commands);
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            Operators.onErrorDropped(throwable, Context.empty());
+        }
+    }
+
+    /**
+     * Requests commands as the loop writes them, so slow readers hold at most
+     * {@value #PREFETCH} commands per CRDT in memory
+     */
+    private final class CommandSender extends BaseSubscriber<CRDTCommand> {
+        private static final int PREFETCH = 256;
+        private static final int REPLENISH = PREFETCH - (PREFETCH >> 2);
+
+        private final int generation;
+        /**
+         * Only updated on the loop
+         */
+        private int written;
+
+        private CommandSender(int generation) {
+            this.generation = generation;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            request(PREFETCH);
+        }
+
+        @Override
+        protected void hookOnNext(CRDTCommand command) {
+            send(generation, out -> {
+                out.writeByte(COMMAND);
+                codec.encode(command, out);
+            }, this::written);
+        }
+
+        private void written() {
+            if (++written == REPLENISH) {
+                written = 0;
+                request(REPLENISH);
+            }
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            Operators.onErrorDropped(throwable, Context.empty());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.juliuskrah;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.zip.CRC32;
+
+import io.vavr.collection.Seq;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Binary snapshot of all CRDTs of a store, written by
+ * {@link CRDTStore#exportSnapshot(WritableByteChannel)}. A header is followed
+ * by one frame per CRDT and an empty frame at the end. A frame is its length,
+ * its CRC32 and a payload with the CRDT ID, the class name and the commands of
+ * the CRDT's snapshot. Each payload has a dictionary of its own, so frames are
+ * decoded independently and in parallel. Checkpoints of a
+ * {@link DurableCRDTStore} and CRDTs a {@link CRDTCache} evicted encode a CRDT
+ * the same way
+ *
+ * @author Julius Krah
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+final class StoreSnapshot {
+    /**
+     * Opens the files of the library, snapshots and {@link MappedRing}s
+     */
+    static final int MAGIC = 0x43524454;
+    /**
+     * Largest frame, checked before a frame is read into memory
+     */
+    static final int MAX_FRAME = 1 << 28;
+    private static final int VERSION = 1;
+    private static final int HEADER = 2 * Integer.BYTES;
+    /**
+     * Frames decoded ahead per thread, bounds the memory of an import
+     */
+    private static final int PREFETCH = 4;
+
+    private StoreSnapshot() {
+    }
+
+    /**
+     * Takes the snapshot of one CRDT at a time in its mailbox, and encodes and
+     * writes it outside, so writers wait for a copy of the state only
+     *
+     * @param crdts   the CRDTs
+     * @param channel target
+     * @param codec   encodes commands
+     */
+    static void write(Iterable<? extends CRDT<? extends CRDTCommand>> crdts, WritableByteChannel channel,
+            Codec codec) {
+        try {
+            writeFully(channel, ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).flip());
+            for (CRDT<? extends CRDTCommand> crdt : crdts) {
+                final BinaryOutput out = new BinaryOutput();
+                encode(crdt, codec, out);
+                final byte[] payload = out.toByteArray();
+                if (payload.length > MAX_FRAME) {
+                    throw new IOException("Snapshot of " + crdt.getCrdtId() + " exceeds " + MAX_FRAME + " bytes");
+                }
+                final CRC32 crc = new CRC32();
+                crc.update(payload);
+                writeFully(channel, ByteBuffer.allocate(HEADER).putInt(payload.length)
+                        .putInt((int) crc.getValue()).flip(), ByteBuffer.wrap(payload));
+            }
+            writeFully(channel, ByteBuffer.allocate(HEADER).putInt(0).putInt(0).flip());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads frames on the calling thread and applies them on
+     * {@link Schedulers#parallel()}, CRDTs are restored concurrently
+     *
+     * @param channel source
+     * @param codec   decodes commands
+     * @param define  returns the CRDT of an ID and class name
+     * @return number of CRDTs restored
+     */
+    static long read(ReadableByteChannel channel, Codec codec, BiFunction<String, String, CRDT> define) {
+        try {
+            final ByteBuffer header = readFully(channel, HEADER);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a CRDT snapshot");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final Long restored = Flux.<byte[]>generate(sink -> {
+            try {
+                final byte[] payload = next(channel);
+                if (payload == null) {
+                    sink.complete();
+                } else {
+                    sink.next(payload);
+                }
+            } catch (IOException e) {
+                sink.error(new UncheckedIOException(e));
+            }
+        }).parallel().runOn(Schedulers.parallel(), PREFETCH) //
+                .doOnNext(payload -> restore(payload, codec, define)) //
+                .sequential().count().block();
+        return restored == null ? 0L : restored;
+    }
+
+    /**
+     * Writes the ID, the class name and the commands of the snapshot of a CRDT
+     *
+     * @param crdt  the CRDT
+     * @param codec encodes commands
+     * @param out   target
+     */
+    static void encode(CRDT<? extends CRDTCommand> crdt, Codec codec, BinaryOutput out) {
+        final Seq<? extends CRDTCommand> commands = crdt.checkpoint()._2;
+        out.writeInterned(crdt.getCrdtId());
+        out.writeInterned(crdt.getClass().getName());
+        out.writeVarInt(commands.size());
+        commands.forEach(command -> codec.encode(command, out));
+    }
+
+    /**
+     * Reads a CRDT written by {@link #encode(CRDT, Codec, BinaryOutput)} and
+     * restores its commands
+     *
+     * @param in     source
+     * @param codec  decodes commands
+     * @param define returns the CRDT of an ID and class name
+     * @return the restored CRDT
+     */
+    static CRDT decode(BinaryInput in, Codec codec, BiFunction<String, String, ? extends CRDT> define) {
+        final CRDT crdt = define.apply(in.readInterned(), in.readInterned());
+        final List<CRDTCommand> commands = new ArrayList<>();
+        for (int count = in.readVarInt(); count > 0; count--) {
+            commands.add(codec.decode(in));
+        }
+        crdt.restore(commands);
+        return crdt;
+    }
+
+    private static void restore(byte[] payload, Codec codec, BiFunction<String, String, CRDT> define) {
+        decode(new BinaryInput().wrap(payload), codec, define);
+    }
+
+    /**
+     * @return payload of the next frame, {@code null} at the end
+     */
+    private static byte[] next(ReadableByteChannel channel) throws IOException {
+        final ByteBuffer header = readFully(channel, HEADER);
+        final int length = header.getInt();
+        final int checksum = header.getInt();
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length > MAX_FRAME) {
+            throw new IOException("Corrupt snapshot frame");
+        }
+        final byte[] payload = readFully(channel, length).array();
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Corrupt snapshot frame");
+        }
+        return payload;
+    }
+
+    private static ByteBuffer readFully(ReadableByteChannel channel, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Snapshot ends in a frame");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer... buffers) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -39,6 +39,14 @@ public final class VectorClock implements Comparable<VectorClock> {
         this.entries = entries;
     }
 
+    String getKey() {
+        return key;
+    }
+
+    Map<String, Long> getEntries() {
+        return entries;
+    }
+
     /**
      * increments the logical clock in the vector by one
      * 
@@ -59,6 +67,24 @@ public final class VectorClock implements Comparable<VectorClock> {
         return new VectorClock(key, entries.merge(other.entries, Math::max));
     }
 
+    /**
+     * @return number of replicas in the vector
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Sums up all counters in the vector. A clock that happened before another
+     * clock always has a smaller sum, so the sum orders clocks consistently with
+     * causality
+     * 
+     * @return sum of all counters
+     */
+    long sum() {
+        return entries.values().sum().longValue();
+    }
+
     /**
      * {@inheritDoc}
      */
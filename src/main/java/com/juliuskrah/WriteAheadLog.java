@@ -0,0 +1,235 @@
+package com.juliuskrah;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Log of records in memory-mapped segment files. A record is a 4-byte length, a
+ * CRC-32 of the payload, then the payload; a length of zero ends a segment.
+ * Positions grow across segments and each segment is named after the position
+ * of its first record.
+ *
+ * Appending copies the record into the mapping without a system call. A
+ * segment reaches the disk when {@link #force()} is called, which the owner
+ * does for all records of a commit interval at once. Each segment starts a new
+ * {@link BinaryOutput}, so it can be read without the segments before it
+ *
+ * @author Julius Krah
+ */
+final class WriteAheadLog {
+    private static final Pattern SEGMENT = Pattern.compile("wal-(\\d{20})\\.log");
+    private static final int RECORD_HEADER = 2 * Integer.BYTES;
+    private static final int END = Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final List<Long> segments;
+    private Segment current;
+    private BinaryOutput output = new BinaryOutput();
+    /**
+     * Segments written since the last force
+     */
+    private List<Segment> unforced = new ArrayList<>();
+
+    /**
+     * Opens a log for appending. Existing segments are kept and a new segment
+     * starts at {@code position}
+     *
+     * @param directory   directory of the segments
+     * @param segmentSize size of a segment in bytes
+     * @param position    end of the existing segments, see
+     *                    {@link #replay(Path, RecordHandler)}
+     */
+    WriteAheadLog(Path directory, int segmentSize, long position) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.segments = new ArrayList<>(segmentsIn(directory));
+        this.current = Segment.create(directory, position, segmentSize);
+        this.segments.add(position);
+        this.unforced.add(current);
+    }
+
+    /**
+     * Reads every valid record of the segments in a directory. A segment ends at
+     * its first torn or corrupt record, the rest of it was never forced. It also
+     * ends at the first record the handler fails to decode, the records after it
+     * may refer to its dictionary entries
+     *
+     * @param directory directory of the segments
+     * @param onRecord  receives the position and payload of each record. The
+     *                  input is shared by the records of a segment
+     * @return position after the last segment
+     */
+    static long replay(Path directory, RecordHandler onRecord) throws IOException {
+        long end = 0L;
+        for (long base : segmentsIn(directory)) {
+            final ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(fileOf(directory, base), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            final BinaryInput input = new BinaryInput();
+            final CRC32 crc = new CRC32();
+            int offset = 0;
+            while (offset + RECORD_HEADER <= buffer.capacity()) {
+                final int length = buffer.getInt(offset);
+                if (length <= 0 || length > buffer.capacity() - offset - RECORD_HEADER) {
+                    break;
+                }
+                final byte[] payload = new byte[length];
+                buffer.duplicate().position(offset + RECORD_HEADER).get(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+                    break;
+                }
+                try {
+                    onRecord.accept(base + offset, input.wrap(payload));
+                } catch (IOException | RuntimeException e) {
+                    break;
+                }
+                offset += RECORD_HEADER + length;
+            }
+            end = base + buffer.capacity();
+        }
+        return end;
+    }
+
+    /**
+     * Appends a record, in a new segment if it does not fit into this one. A
+     * record that fails to encode is not appended, and the records after it do
+     * not refer to anything it wrote
+     *
+     * @param writer encodes the payload
+     * @return position of the record
+     */
+    synchronized long append(FrameWriter writer) throws IOException {
+        encode(writer);
+        if (!current.fits(output.size())) {
+            // the record was encoded against the dictionary of the full segment
+            roll(output.size());
+            encode(writer);
+        }
+        return current.append(output);
+    }
+
+    private void encode(FrameWriter writer) {
+        output.reset();
+        output.mark();
+        try {
+            writer.write(output);
+        } catch (RuntimeException e) {
+            output.rollback();
+            throw e;
+        }
+        output.unmark();
+    }
+
+    private void roll(int length) throws IOException {
+        final long position = current.base + current.buffer.capacity();
+        current = Segment.create(directory, position, Math.max(segmentSize, RECORD_HEADER + length + END));
+        segments.add(position);
+        unforced.add(current);
+        output = new BinaryOutput();
+    }
+
+    /**
+     * @return position of the next record
+     */
+    synchronized long position() {
+        return current.base + current.offset;
+    }
+
+    /**
+     * Writes the appended records to the disk
+     */
+    void force() {
+        final List<Segment> segments;
+        synchronized (this) {
+            segments = unforced;
+            unforced = new ArrayList<>();
+            unforced.add(current);
+        }
+        segments.forEach(segment -> segment.buffer.force());
+    }
+
+    /**
+     * Deletes the segments whose records all precede a position
+     *
+     * @param position position covered by a snapshot
+     */
+    synchronized void deleteBefore(long position) throws IOException {
+        while (segments.size() > 1 && segments.get(1) <= position) {
+            Files.deleteIfExists(fileOf(directory, segments.remove(0)));
+        }
+    }
+
+    private static List<Long> segmentsIn(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> SEGMENT.matcher(file.getFileName().toString())) //
+                    .filter(Matcher::matches) //
+                    .map(matcher -> Long.parseLong(matcher.group(1))) //
+                    .sorted() //
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static Path fileOf(Path directory, long base) {
+        return directory.resolve(String.format("wal-%020d.log", base));
+    }
+
+    private static final class Segment {
+        private final long base;
+        private final MappedByteBuffer buffer;
+        private final CRC32 crc = new CRC32();
+        private int offset;
+
+        private Segment(long base, MappedByteBuffer buffer) {
+            this.base = base;
+            this.buffer = buffer;
+        }
+
+        private static Segment create(Path directory, long base, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(fileOf(directory, base), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new Segment(base, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        private boolean fits(int length) {
+            return offset + RECORD_HEADER + length + END <= buffer.capacity();
+        }
+
+        /**
+         * Writes the length last, a record is not readable before its payload
+         */
+        private long append(BinaryOutput payload) {
+            final ByteBuffer data = buffer.duplicate();
+            data.position(offset + RECORD_HEADER);
+            payload.copyTo(0, data);
+            crc.reset();
+            crc.update(data.flip().position(offset + RECORD_HEADER));
+            buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+            buffer.putInt(offset, payload.size());
+            final long position = base + offset;
+            offset += RECORD_HEADER + payload.size();
+            return position;
+        }
+    }
+
+    @FunctionalInterface
+    interface RecordHandler {
+        void accept(long position, BinaryInput payload) throws IOException;
+    }
+}
@@ -0,0 +1,129 @@
+package com.juliuskrah;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.Seq;
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Julius Krah
+ * @see {@link Batching Batching of outbound commands}
+ */
+public class BatchingTest {
+    private final CRDTStoreFactory factory = CRDTStoreFactory.getInstance();
+
+    @Test
+    @DisplayName("Batched commands are applied when the batch is full")
+    @SuppressWarnings("unchecked")
+    void testBatchBySize() {
+        final CRDTStore crdtStore1 = factory.crdtStore("ND-61");
+        final CRDTStore crdtStore2 = factory.crdtStore("ND-62");
+        // batches of 3 commands; the time window is long enough to never elapse
+        crdtStore1.registerFactory(LWWElementSet.class, (nodeId, crdtId) -> {
+            final var set = new LWWElementSet<>(nodeId, crdtId);
+            set.setBatching(Batching.of(3, Duration.ofHours(1)));
+            return set;
+        });
+        crdtStore1.connect(crdtStore2);
+
+        final var replica1 = crdtStore1.<String>createLWWElementSet("18-AD");
+        final var replica2 = crdtStore2.<String>findLWWElementSet("18-AD").get();
+
+        replica1.add("STROKE_UP");
+        replica1.add("STROKE_DOWN");
+
+        SoftAssertions softly = new SoftAssertions();
+        // the batch is not full yet
+        softly.assertThat(replica2.get()).isEmpty();
+
+        replica1.add("STROKE_LEFT");
+        softly.assertThat(replica2.get()).containsExactlyInAnyOrder("STROKE_UP", "STROKE_DOWN", "STROKE_LEFT");
+
+        // replica2 does not batch, its commands are applied at once
+        replica2.add("STROKE_RIGHT");
+        softly.assertThat(replica1.get()).contains("STROKE_RIGHT");
+
+        // the pending batch is numbered in the log, reconnecting catches up on it
+        replica1.remove("STROKE_UP");
+        crdtStore1.disconnect(crdtStore2);
+        softly.assertThat(replica2.get()).contains("STROKE_UP");
+        crdtStore1.connect(crdtStore2);
+        softly.assertThat(replica2.get()).containsExactlyInAnyOrder("STROKE_DOWN", "STROKE_LEFT", "STROKE_RIGHT");
+
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A batch is sent as one signal")
+    void testOneSignalPerBatch() {
+        final var replica = new LWWElementSet<String>("ND-158", "80-AD");
+        replica.setBatching(Batching.of(2, Duration.ofHours(1)));
+        final List<Seq<? extends Tuple2<Long, ?>>> batches = new ArrayList<>();
+        Flux.from(replica.batchesSince(0L)).subscribe(batches::add);
+
+        replica.add("STROKE_UP");
+        replica.add("STROKE_DOWN");
+        replica.add("STROKE_LEFT");
+
+        SoftAssertions softly = new SoftAssertions();
+        // the third command waits for its batch
+        softly.assertThat(batches).hasSize(1);
+        softly.assertThat(batches.get(0).map(Tuple2::_1)).containsExactly(1L, 2L);
+        // every command is numbered as it leaves the outbox, a peer catching up gets
+        // the pending one too
+        softly.assertThat(replica.missed(0L)).hasSize(3);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A batch is sent when its time window elapses")
+    void testBatchByTime() throws Exception {
+        final var replica = new LWWElementSet<String>("ND-159", "81-AD");
+        replica.setBatching(Batching.of(100, Duration.ofMillis(500)));
+        final CompletableFuture<Seq<Tuple2<Long, LWWElementSet.SetCommand<String>>>> batch = Flux
+                .from(replica.batchesSince(0L)).next().toFuture();
+
+        replica.add("STROKE_UP");
+        replica.add("STROKE_DOWN");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(batch.get(10, TimeUnit.SECONDS).map(command -> command._2.element))
+                .containsExactly("STROKE_UP", "STROKE_DOWN");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A batch flushed by its time window is sent from the mailbox")
+    void testTimedFlushInMailbox() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor(task -> new Thread(task, "crdt-mailbox"));
+        try {
+            final ReplicationLog<String> log = new ReplicationLog<>(io.vavr.collection.List::empty,
+                    Retention.ofDefault(), new Mailbox(executor));
+            log.setBatching(Batching.of(10, Duration.ofMillis(20)));
+            final CompletableFuture<String> flushed = new CompletableFuture<>();
+            log.batchesSince(0L).subscribe(batch -> flushed.complete(Thread.currentThread().getName()));
+
+            log.emit(() -> "STROKE_UP");
+
+            SoftAssertions softly = new SoftAssertions();
+            // the tail is only touched in the mailbox, never on the timer's thread
+            softly.assertThat(flushed.get(5, TimeUnit.SECONDS)).isEqualTo("crdt-mailbox");
+            softly.assertAll();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
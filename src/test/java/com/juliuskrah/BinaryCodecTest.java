@@ -0,0 +1,137 @@
+package com.juliuskrah;
+
+import java.util.List;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.vavr.collection.HashMap;
+
+/**
+ * @author Julius Krah
+ * @see {@link BinaryCodec Binary codec}
+ */
+public class BinaryCodecTest {
+    private final VectorClock clock = new VectorClock("ND-110", HashMap.of("ND-110", 3L, "ND-111", 300L));
+
+    @Test
+    @DisplayName("Commands survive a round trip")
+    void testRoundTrip() {
+        final BinaryCodec codec = BinaryCodec.ofDefault();
+        final List<CRDTCommand> commands = List.of( //
+                new LWWRegister.SetCommand<>("31-AD", "STROKE_LEFT", clock), //
+                new LWWRegister.SetCommand<>("31-AD", null, clock), //
+                new LWWElementSet.SetCommand<>("32-AD", 42, clock, 1), //
+                new LWWElementSet.SetCommand<>("32-AD", -42L, clock, 0), //
+                new LWWElementGraph.AddVertexCommand<>("33-AD", "julius", clock), //
+                new LWWElementGraph.RemoveVertexCommand<>("33-AD", "julius", clock), //
+                new LWWElementGraph.AddEdgeCommand<>("33-AD", "julius", "krah", clock), //
+                new LWWElementGraph.RemoveEdgeCommand<>("33-AD", "julius", "krah", clock), //
+                new RGA.AddRightCommand<>("34-AD", clock, true, clock.increment()), //
+                new RGA.RemoveCommand<>("34-AD", clock));
+        commands.get(0).stamp(new Dot("ND-110", 7));
+
+        final BinaryOutput out = new BinaryOutput();
+        final BinaryInput in = new BinaryInput();
+        SoftAssertions softly = new SoftAssertions();
+        for (CRDTCommand command : commands) {
+            out.reset();
+            codec.encode(command, out);
+            final CRDTCommand decoded = codec.decode(in.wrap(out.toByteArray()));
+            softly.assertThat(decoded).isEqualTo(command);
+            softly.assertThat(decoded.getCrdtId()).isEqualTo(command.getCrdtId());
+            softly.assertThat(decoded.getDot()).isEqualTo(command.getDot());
+            softly.assertThat(decoded.getOriginTime()).isEqualTo(command.getOriginTime());
+            softly.assertThat(in.remaining()).isZero();
+        }
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Repeated IDs are sent once per connection")
+    void testDictionary() {
+        final BinaryCodec codec = BinaryCodec.ofDefault();
+        final BinaryOutput out = new BinaryOutput();
+        codec.encode(new LWWElementSet.SetCommand<>("35-AD", 1, clock, 1), out);
+        final int first = out.size();
+        out.reset();
+        codec.encode(new LWWElementSet.SetCommand<>("35-AD", 2, clock, 1), out);
+
+        SoftAssertions softly = new SoftAssertions();
+        // type, ID, dot, element tag and value, clock key, no changed and no removed
+        // entries
+        softly.assertThat(out.size()).isEqualTo(1 + 1 + 1 + 2 + 1 + 1 + 1);
+        softly.assertThat(out.size()).isLessThan(first / 2);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Users supply codecs for their element types")
+    @SuppressWarnings("unchecked")
+    void testElementCodec() {
+        final ElementCodec<Vertex<String>> vertexCodec = new ElementCodec<>() {
+            @Override
+            public void write(Vertex<String> element, BinaryOutput out) {
+                out.writeString(element.getValue());
+            }
+
+            @Override
+            public Vertex<String> read(BinaryInput in) {
+                return new Vertex<>(in.readString(), null);
+            }
+        };
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        final BinaryCodec codec = BinaryCodec.builder().element(16, (Class) Vertex.class, vertexCodec).build();
+        final var command = new LWWElementSet.SetCommand<>("36-AD", new Vertex<>("STROKE_UP", null), clock, 1);
+        final BinaryOutput out = new BinaryOutput();
+        codec.encode(command, out);
+        final LWWElementSet.SetCommand<Vertex<String>> decoded = (LWWElementSet.SetCommand<Vertex<String>>) codec
+                .decode(new BinaryInput().wrap(out.toByteArray()));
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(decoded.element.getValue()).isEqualTo("STROKE_UP");
+        softly.assertThatThrownBy(() -> BinaryCodec.ofDefault().encode(command, new BinaryOutput()))
+                .isInstanceOf(IllegalArgumentException.class);
+        softly.assertThatThrownBy(() -> BinaryCodec.builder().element(4, String.class, ElementCodec.ofString()))
+                .isInstanceOf(IllegalArgumentException.class);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Clocks are sent as deltas")
+    void testClockDelta() {
+        final BinaryCodec codec = BinaryCodec.ofDefault();
+        final BinaryOutput out = new BinaryOutput();
+        final BinaryInput in = new BinaryInput();
+        final int[] sizes = new int[2];
+        SoftAssertions softly = new SoftAssertions();
+        for (int nodes : new int[] { 2, 200 }) {
+            final String crdtId = "37-AD-" + nodes;
+            VectorClock clock = new VectorClock("ND-112");
+            for (int i = 0; i < nodes; i++) {
+                clock = clock.merge(new VectorClock("ND-" + i).increment());
+            }
+            codec.decode(in.wrap(encode(codec, new LWWElementSet.SetCommand<>(crdtId, 1, clock, 1), out)));
+            final VectorClock next = clock.increment();
+            final byte[] bytes = encode(codec, new LWWElementSet.SetCommand<>(crdtId, 2, next, 1), out);
+            sizes[nodes == 2 ? 0 : 1] = bytes.length;
+            final var decoded = (LWWElementSet.SetCommand<?>) codec.decode(in.wrap(bytes));
+            softly.assertThat(decoded.vectorClock).isEqualTo(next);
+            softly.assertThat(decoded.vectorClock.getKey()).isEqualTo("ND-112");
+            // a clock of another origin that lacks entries of the previous one
+            final VectorClock other = new VectorClock("ND-113").increment();
+            final var relayed = (LWWElementSet.SetCommand<?>) codec.decode(
+                    in.wrap(encode(codec, new LWWElementSet.SetCommand<>(crdtId, 3, other, 1), out)));
+            softly.assertThat(relayed.vectorClock.getEntries()).isEqualTo(other.getEntries());
+        }
+        softly.assertThat(sizes[1]).isEqualTo(sizes[0]);
+        softly.assertAll();
+    }
+
+    private static byte[] encode(BinaryCodec codec, CRDTCommand command, BinaryOutput out) {
+        out.reset();
+        codec.encode(command, out);
+        return out.toByteArray();
+    }
+}
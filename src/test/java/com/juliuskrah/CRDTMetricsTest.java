@@ -0,0 +1,65 @@
+package com.juliuskrah;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Julius Krah
+ * @see {@link CRDTMetrics Metrics}
+ */
+public class CRDTMetricsTest {
+
+    @Test
+    @DisplayName("Stores count emitted, applied and rejected commands per CRDT type")
+    void testCommands() {
+        final InMemoryMetrics metrics1 = new InMemoryMetrics();
+        final InMemoryMetrics metrics2 = new InMemoryMetrics();
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-145");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-146");
+        crdtStore1.setMetrics(metrics1);
+        final LWWElementSet<String> replica1 = crdtStore1.createLWWElementSet("72-AD");
+        crdtStore2.setMetrics(metrics2);
+        crdtStore1.connect(crdtStore2);
+        final RGA<String> rga1 = crdtStore1.createRGA("73-AD");
+
+        replica1.add("STROKE_UP");
+        replica1.add("STROKE_DOWN");
+        crdtStore2.<String>findLWWElementSet("72-AD").get().add("STROKE_LEFT");
+        rga1.add("STROKE_RIGHT");
+        crdtStore2.<String>findRGA("73-AD").get().receive(new RGA.RemoveCommand<>("73-AD", new VectorClock("ND-147").increment()));
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(metrics1.getEmitted(LWWElementSet.class)).isEqualTo(2);
+        softly.assertThat(metrics1.getApplied(LWWElementSet.class)).isEqualTo(1);
+        softly.assertThat(metrics2.getApplied(LWWElementSet.class)).isEqualTo(2);
+        softly.assertThat(metrics2.getMaxClockWidth(LWWElementSet.class)).isEqualTo(1);
+        softly.assertThat(metrics1.getMaxClockWidth(LWWElementSet.class)).isEqualTo(2);
+        softly.assertThat(metrics2.getApplied(RGA.class)).isEqualTo(1);
+        softly.assertThat(metrics2.getRejected(RGA.class)).isEqualTo(1);
+        softly.assertThat(metrics2.getLatencyPercentile(RGA.class, 0.99)).isPositive();
+        softly.assertThat(metrics2.getLatencyPercentile(LWWRegister.class, 0.5)).isZero();
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Stores report peers, live CRDTs and outbox depth as gauges")
+    void testGauges() {
+        final InMemoryMetrics metrics = new InMemoryMetrics();
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-148");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-149");
+        crdtStore1.setMetrics(metrics);
+        crdtStore1.createLWWRegister("74-AD");
+        crdtStore1.createLWWRegister("75-AD");
+        crdtStore1.connect(crdtStore2);
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(metrics.getGauge(CRDTMetrics.PEERS, "ND-148")).contains(1L);
+        softly.assertThat(metrics.getGauge(CRDTMetrics.LIVE_CRDTS, "ND-148")).contains(2L);
+        softly.assertThat(metrics.getGauge(CRDTMetrics.OUTBOX_DEPTH, "ND-148")).contains(0L);
+        softly.assertThat(metrics.getGauge(CRDTMetrics.PEERS, "ND-149")).isEmpty();
+        softly.assertThatThrownBy(() -> metrics.getLatencyPercentile(RGA.class, 2.0))
+                .isInstanceOf(IllegalArgumentException.class);
+        softly.assertAll();
+    }
+}
@@ -0,0 +1,83 @@
+package com.juliuskrah;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.vavr.collection.List;
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Julius Krah
+ * @see {@link InMemoryCRDTStore Concurrent registry}
+ */
+public class CRDTStoreConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int CRDTS = 500;
+
+    @Test
+    @DisplayName("Threads creating the same CRDTs at once share one instance each")
+    void testCreateOrGet() throws Exception {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-128");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-129");
+        crdtStore1.connect(crdtStore2);
+        final ConcurrentHashMap<String, Integer> announced = new ConcurrentHashMap<>();
+        Flux.from(crdtStore1).subscribe(definition -> announced.merge(definition.getCrdtId(), 1, Integer::sum));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<LWWElementSet<Integer>>>> futures = List.empty();
+        for (int thread = 0; thread < THREADS; thread++) {
+            final int value = thread;
+            futures = futures.append(executor.submit(() -> {
+                start.await();
+                List<LWWElementSet<Integer>> created = List.empty();
+                for (int i = 0; i < CRDTS; i++) {
+                    final LWWElementSet<Integer> replica = crdtStore1.createLWWElementSet("55-AD-" + i);
+                    replica.add(value);
+                    created = created.append(replica);
+                }
+                return created;
+            }));
+        }
+        start.countDown();
+        final List<List<LWWElementSet<Integer>>> results = futures.map(future -> {
+            try {
+                return future.get(30, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        executor.shutdown();
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(crdtStore1.getCrdts().size()).isEqualTo(CRDTS);
+        softly.assertThat(announced).hasSize(CRDTS);
+        for (int i = 0; i < CRDTS; i++) {
+            final int index = i;
+            softly.assertThat(results.map(created -> created.get(index)).distinct().size()).isEqualTo(1);
+        }
+        softly.assertThat(crdtStore1.<Integer>findLWWElementSet("55-AD-0").get().get()).hasSize(THREADS);
+        softly.assertThat(crdtStore2.<Integer>findLWWElementSet("55-AD-" + (CRDTS - 1)).get().get())
+                .hasSize(THREADS);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A CRDT ID belongs to one class")
+    void testClassMismatch() {
+        final InMemoryCRDTStore crdtStore = new InMemoryCRDTStore("ND-130");
+        crdtStore.createLWWRegister("56-AD");
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(crdtStore.<String>createLWWRegister("56-AD")).isSameAs(crdtStore.findCrdt("56-AD").get());
+        softly.assertThatThrownBy(() -> crdtStore.createRGA("56-AD")).isInstanceOf(IllegalArgumentException.class);
+        softly.assertAll();
+    }
+}
@@ -0,0 +1,95 @@
+package com.juliuskrah;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
+/**
+ * @author Julius Krah
+ * @see {@link ReplicationLog#since(long) Incremental catch-up}
+ */
+public class CatchUpTest {
+
+    @Test
+    @DisplayName("A reconnecting replica resumes after the last command it received")
+    void testCatchUp() {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-A1");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-A2");
+        crdtStore1.connect(crdtStore2);
+
+        final var replica1 = crdtStore1.<String>createRGA("25-AD");
+        final var replica2 = crdtStore2.<String>findRGA("25-AD").get();
+        replica1.add("STROKE_UP");
+        replica1.add("STROKE_DOWN");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(crdtStore2.getCursor(crdtStore1, "25-AD")).contains(replica1.digest().getSequence());
+
+        crdtStore1.disconnect(crdtStore2);
+        replica1.add("STROKE_LEFT");
+        replica1.remove("STROKE_UP");
+        softly.assertThat(crdtStore2.getCursor(crdtStore1, "25-AD")).contains(2L);
+
+        crdtStore1.connect(crdtStore2);
+        softly.assertThat(replica2).containsExactly("STROKE_DOWN", "STROKE_LEFT");
+        softly.assertThat(crdtStore2.getCursor(crdtStore1, "25-AD")).contains(replica1.digest().getSequence());
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A replica that missed more than the tail receives the snapshot")
+    @SuppressWarnings("unchecked")
+    void testCatchUpFromSnapshot() {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-A3");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-A4");
+        crdtStore1.registerFactory(LWWElementSet.class,
+                (nodeId, crdtId) -> new LWWElementSet<>(nodeId, crdtId, LWWElementSet.LWWBias.ADD, Retention.ofSize(1)));
+        crdtStore1.connect(crdtStore2);
+
+        final var replica1 = crdtStore1.<String>createLWWElementSet("26-AD");
+        final var replica2 = crdtStore2.<String>findLWWElementSet("26-AD").get();
+        replica1.add("STROKE_UP");
+
+        crdtStore1.disconnect(crdtStore2);
+        replica1.add("STROKE_DOWN");
+        replica1.add("STROKE_LEFT");
+        crdtStore1.connect(crdtStore2);
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(replica2.get()).containsExactlyInAnyOrder("STROKE_UP", "STROKE_DOWN", "STROKE_LEFT");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A replica does not resume from a log the peer replaced since")
+    void testCatchUpAfterEviction() {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-173", Retention.ofSize(1),
+                Residency.lazy(1));
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-174");
+        // the lazy store only publishes, none of its CRDTs is evicted by replicas
+        final ReplicationFilter none = ReplicationFilter.of(crdtId -> false);
+        crdtStore1.connect(crdtStore2, none);
+
+        final var replica1 = crdtStore1.<String>createLWWElementSet("90-AD");
+        final var replica2 = crdtStore2.<String>findLWWElementSet("90-AD").get();
+        replica1.add("STROKE_UP");
+        replica1.remove("STROKE_UP");
+        replica1.add("STROKE_UP");
+        replica1.remove("STROKE_UP");
+
+        crdtStore1.disconnect(crdtStore2);
+        // evicted and loaded again, with a new log that starts from the snapshot
+        crdtStore1.<String>createLWWRegister("91-AD").set("STROKE_UP");
+        final var loaded = crdtStore1.<String>findLWWElementSet("90-AD").get();
+        loaded.add("STROKE_DOWN");
+        loaded.add("STROKE_LEFT");
+        loaded.add("STROKE_RIGHT");
+        crdtStore1.connect(crdtStore2, none);
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(replica2.get()).containsExactlyInAnyOrder("STROKE_DOWN", "STROKE_LEFT", "STROKE_RIGHT");
+        softly.assertAll();
+    }
+}
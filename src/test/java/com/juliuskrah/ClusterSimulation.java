@@ -0,0 +1,463 @@
+package com.juliuskrah;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+import io.vavr.collection.HashSet;
+import io.vavr.collection.Set;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Mono;
+
+/**
+ * Deterministic simulation of a cluster of {@link InMemoryCRDTStore}s under load
+ * and partitions. Time is virtual and all randomness comes from one seeded
+ * {@link Random}, so a scenario and a seed always yield the same result.
+ *
+ * Each store drains its mailboxes on an executor of the simulation. A mailbox
+ * woken by a command of another store is drained after the latency of the link
+ * plus a random jitter, so commands of different CRDTs and different senders
+ * are reordered. Writes arrive at each store at random with the configured
+ * rate and use the non-blocking API. A partition splits the stores in two at
+ * random and disconnects every pair across the split, healing reconnects them.
+ * Connecting and disconnecting wait for replicas, so commands in flight are
+ * delivered before a link changes. Run with
+ * {@code java -cp ... com.juliuskrah.ClusterSimulation [nodes] [seed]}
+ *
+ * @author Julius Krah
+ */
+public class ClusterSimulation {
+    private final Scenario scenario;
+    private final Random random;
+    private final List<InMemoryCRDTStore> stores = new ArrayList<>();
+    private final InMemoryMetrics metrics = new InMemoryMetrics();
+    /**
+     * Mailbox drains on their way to a store
+     */
+    private final PriorityQueue<Event> deliveries = new PriorityQueue<>();
+    /**
+     * Writes and partitions
+     */
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long now;
+    private long sequence;
+    /**
+     * Store whose mailboxes are being drained, -1 for the simulation itself
+     */
+    private int running = -1;
+    private List<Integer> partitioned = Collections.emptyList();
+    private long writes;
+    private long failed;
+    private long dropped;
+    private long lastChange;
+    private long lastDelivery;
+    private int maxDivergence;
+
+    private ClusterSimulation(Scenario scenario) {
+        this.scenario = scenario;
+        this.random = new Random(scenario.seed);
+    }
+
+    public static void main(String[] args) {
+        final int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+        System.out.printf("nodes=%d seed=%d%n", nodes, seed);
+        for (Workload workload : new Workload[] { Workload.REGISTERS, Workload.SETS, Workload.LISTS,
+                Workload.GRAPHS, Workload.MIXED }) {
+            for (long partitionLength : new long[] { 0L, 1_000L }) {
+                final Scenario scenario = new Scenario(nodes, 10_000L, 20.0, 5L, 20L, 3_000L, partitionLength,
+                        workload, seed);
+                final long start = System.nanoTime();
+                final Result result = run(scenario);
+                System.out.printf("%-9s partitions %5d ms %s in %.0f ms%n", workload, partitionLength, result,
+                        (System.nanoTime() - start) / 1e6);
+            }
+        }
+    }
+
+    /**
+     * @param scenario stores, load and partitions
+     * @return measurements of the run
+     */
+    static Result run(Scenario scenario) {
+        final ClusterSimulation simulation = new ClusterSimulation(scenario);
+        // commands a replica fails to apply are dropped by its mailbox
+        Hooks.onErrorDropped(error -> simulation.dropped++);
+        try {
+            return simulation.run();
+        } finally {
+            Hooks.resetOnErrorDropped();
+        }
+    }
+
+    private Result run() {
+        for (int node = 0; node < scenario.nodes; node++) {
+            final InMemoryCRDTStore store = new InMemoryCRDTStore("SIM-" + node);
+            store.setMetrics(metrics);
+            stores.add(store);
+        }
+        for (int node = 0; node < scenario.nodes; node++) {
+            for (int peer = node + 1; peer < scenario.nodes; peer++) {
+                stores.get(node).connect(stores.get(peer));
+            }
+        }
+        for (int index = 0; index < Workload.CRDTS; index++) {
+            stores.get(0).createLWWRegister("SIM-REGISTER-" + index);
+            stores.get(0).createLWWElementSet("SIM-SET-" + index);
+            stores.get(0).createRGA("SIM-LIST-" + index);
+            stores.get(0).createLWWElementGraph("SIM-GRAPH-" + index);
+        }
+        for (int node = 0; node < scenario.nodes; node++) {
+            final int target = node;
+            stores.get(node).setExecutor(task -> execute(target, task));
+            scheduleWrite(node);
+        }
+        if (scenario.partitionLength > 0) {
+            for (long start = scenario.partitionInterval; start + scenario.partitionLength <= scenario.duration;
+                    start += scenario.partitionInterval) {
+                schedule(events, start, -1, this::partition);
+                schedule(events, start + scenario.partitionLength, -1, this::heal);
+            }
+        }
+
+        for (;;) {
+            final Event delivery = deliveries.peek();
+            final Event event = events.peek();
+            if (delivery == null && event == null) {
+                break;
+            }
+            if (event == null || (delivery != null && delivery.time <= event.time)) {
+                deliveries.poll();
+                now = delivery.time;
+                lastDelivery = now;
+                runAs(delivery.node, delivery.task);
+            } else {
+                events.poll();
+                now = event.time;
+                event.task.run();
+            }
+        }
+
+        final long applied = metrics.getApplied(LWWRegister.class) + metrics.getApplied(LWWElementSet.class)
+                + metrics.getApplied(RGA.class) + metrics.getApplied(LWWElementGraph.class);
+        long totalBytes = 0L;
+        long maxBytes = 0L;
+        for (InMemoryCRDTStore store : stores) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            store.exportSnapshot(Channels.newChannel(out));
+            totalBytes += out.size();
+            maxBytes = Math.max(maxBytes, out.size());
+        }
+        return new Result(writes, failed, dropped, applied, writes * 1_000.0 / scenario.duration,
+                Math.max(0L, lastDelivery - lastChange), maxDivergence, divergence(), totalBytes / stores.size(),
+                maxBytes);
+    }
+
+    /**
+     * The executor of a store. A mailbox woken by the simulation or by the store
+     * itself is drained at once, one woken by another store after the delay of
+     * the link
+     */
+    private void execute(int node, Runnable task) {
+        if (running == -1 || running == node) {
+            runAs(node, task);
+        } else {
+            schedule(deliveries, now + scenario.latency + random.nextInt((int) scenario.jitter + 1), node, task);
+        }
+    }
+
+    private void runAs(int node, Runnable task) {
+        final int previous = running;
+        running = node;
+        try {
+            task.run();
+        } finally {
+            running = previous;
+        }
+    }
+
+    private void schedule(PriorityQueue<Event> queue, long time, int node, Runnable task) {
+        queue.add(new Event(time, sequence++, node, task));
+    }
+
+    private void scheduleWrite(int node) {
+        final long time = now + Math.max(1L,
+                Math.round(-Math.log(1.0 - random.nextDouble()) * 1_000.0 / scenario.writesPerSecond));
+        if (time <= scenario.duration) {
+            schedule(events, time, node, () -> {
+                write(stores.get(node));
+                lastChange = Math.max(lastChange, now);
+                scheduleWrite(node);
+            });
+        }
+    }
+
+    private void write(InMemoryCRDTStore store) {
+        final int index = random.nextInt(Workload.CRDTS);
+        final int value = random.nextInt(Workload.VALUES);
+        final int operation = random.nextInt(100);
+        final Mono<?> write;
+        switch (scenario.workload.pick(random)) {
+        case 0:
+            write = store.<Integer>findLWWRegister("SIM-REGISTER-" + index).get().setAsync(value);
+            break;
+        case 1:
+            final LWWElementSet<Integer> set = store.<Integer>findLWWElementSet("SIM-SET-" + index).get();
+            write = operation < 75 ? set.addAsync(value) : set.removeAsync(value);
+            break;
+        case 2:
+            final RGA<Integer> list = store.<Integer>findRGA("SIM-LIST-" + index).get();
+            final int size = list.size();
+            write = operation < 80 || size == 0 ? list.addAsync(random.nextInt(size + 1), value)
+                    : list.removeAsync(random.nextInt(size));
+            break;
+        default:
+            final LWWElementGraph<Integer> graph = store.<Integer>findLWWElementGraph("SIM-GRAPH-" + index).get();
+            write = operation < 50 ? graph.addVertexAsync(value)
+                    : operation < 90 ? graph.addEdgeAsync(value, random.nextInt(Workload.VALUES))
+                    : graph.removeVertexAsync(value);
+            break;
+        }
+        // a write queued behind a delivery completes with it
+        write.subscribe(result -> {
+        }, error -> failed++, () -> writes++);
+    }
+
+    private void partition() {
+        final List<Integer> nodes = new ArrayList<>();
+        for (int node = 0; node < scenario.nodes; node++) {
+            nodes.add(node);
+        }
+        Collections.shuffle(nodes, random);
+        partitioned = nodes.subList(0, 1 + random.nextInt(scenario.nodes - 1));
+        forEachLink((store, peer) -> store.disconnect(peer));
+        lastChange = now;
+    }
+
+    private void heal() {
+        flush();
+        maxDivergence = Math.max(maxDivergence, divergence());
+        forEachLink((store, peer) -> store.connect(peer));
+        partitioned = Collections.emptyList();
+        lastChange = now;
+    }
+
+    private void forEachLink(BiConsumer<InMemoryCRDTStore, InMemoryCRDTStore> action) {
+        for (int node = 0; node < scenario.nodes; node++) {
+            if (!partitioned.contains(node)) {
+                continue;
+            }
+            for (int peer = 0; peer < scenario.nodes; peer++) {
+                if (!partitioned.contains(peer)) {
+                    flush();
+                    action.accept(stores.get(node), stores.get(peer));
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers what is in flight at the current time, so no mailbox is waiting for
+     * the simulation when the simulation waits for a mailbox
+     */
+    private void flush() {
+        Event delivery;
+        while ((delivery = deliveries.poll()) != null) {
+            runAs(delivery.node, delivery.task);
+        }
+    }
+
+    /**
+     * @return number of CRDTs whose state differs between stores
+     */
+    private int divergence() {
+        int diverging = 0;
+        for (String crdtId : stores.get(0).getCrdts().map(CRDT::getCrdtId)) {
+            Set<Long> hashes = HashSet.empty();
+            for (InMemoryCRDTStore store : stores) {
+                hashes = hashes.add(store.findCrdt(crdtId).get().digest().getHash());
+            }
+            if (hashes.size() > 1) {
+                diverging++;
+            }
+        }
+        return diverging;
+    }
+
+    /**
+     * Stores, load and partitions of a run. Times are virtual milliseconds
+     */
+    static final class Scenario {
+        final int nodes;
+        final long duration;
+        final double writesPerSecond;
+        final long latency;
+        final long jitter;
+        final long partitionInterval;
+        final long partitionLength;
+        final Workload workload;
+        final long seed;
+
+        /**
+         * @param nodes             number of stores, fully connected
+         * @param duration          time during which writes arrive
+         * @param writesPerSecond   writes per second at each store
+         * @param latency           least delay of a link
+         * @param jitter            largest random delay added to the latency
+         * @param partitionInterval time between the starts of partitions
+         * @param partitionLength   time a partition lasts, 0 for none
+         * @param workload          mix of CRDTs written
+         * @param seed              seed of all random choices
+         */
+        Scenario(int nodes, long duration, double writesPerSecond, long latency, long jitter,
+                long partitionInterval, long partitionLength, Workload workload, long seed) {
+            if (nodes < 2) {
+                throw new IllegalArgumentException("nodes must be at least 2");
+            }
+            if (partitionLength >= partitionInterval) {
+                throw new IllegalArgumentException("partitionLength must be less than partitionInterval");
+            }
+            this.nodes = nodes;
+            this.duration = duration;
+            this.writesPerSecond = writesPerSecond;
+            this.latency = latency;
+            this.jitter = jitter;
+            this.partitionInterval = partitionInterval;
+            this.partitionLength = partitionLength;
+            this.workload = workload;
+            this.seed = seed;
+        }
+    }
+
+    /**
+     * Relative weights of writes to registers, sets, lists and graphs
+     */
+    static final class Workload {
+        static final int CRDTS = 4;
+        static final int VALUES = 64;
+        static final Workload REGISTERS = new Workload("registers", 1, 0, 0, 0);
+        static final Workload SETS = new Workload("sets", 0, 1, 0, 0);
+        static final Workload LISTS = new Workload("lists", 0, 0, 1, 0);
+        static final Workload GRAPHS = new Workload("graphs", 0, 0, 0, 1);
+        static final Workload MIXED = new Workload("mixed", 4, 3, 2, 1);
+
+        private final String name;
+        private final int[] weights;
+
+        Workload(String name, int registers, int sets, int lists, int graphs) {
+            if (registers < 0 || sets < 0 || lists < 0 || graphs < 0 || registers + sets + lists + graphs == 0) {
+                throw new IllegalArgumentException("weights must not be negative and not all zero");
+            }
+            this.name = name;
+            this.weights = new int[] { registers, sets, lists, graphs };
+        }
+
+        private int pick(Random random) {
+            int remaining = random.nextInt(weights[0] + weights[1] + weights[2] + weights[3]);
+            int kind = 0;
+            while (remaining >= weights[kind]) {
+                remaining -= weights[kind++];
+            }
+            return kind;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Measurements of a run
+     */
+    static final class Result {
+        /**
+         * Writes completed
+         */
+        final long writes;
+        /**
+         * Writes rejected, such as a list index removed concurrently
+         */
+        final long failed;
+        /**
+         * Commands that failed to apply at a replica and are lost
+         */
+        final long dropped;
+        /**
+         * Commands of replicas that changed a store
+         */
+        final long applied;
+        /**
+         * Writes per virtual second over the whole cluster
+         */
+        final double throughput;
+        /**
+         * Virtual time from the last write or heal to the last delivery
+         */
+        final long convergence;
+        /**
+         * Most CRDTs diverging when a partition healed
+         */
+        final int maxDivergence;
+        /**
+         * CRDTs diverging at the end, 0 once converged
+         */
+        final int divergence;
+        /**
+         * Snapshot bytes of the average store
+         */
+        final long meanBytes;
+        /**
+         * Snapshot bytes of the largest store
+         */
+        final long maxBytes;
+
+        Result(long writes, long failed, long dropped, long applied, double throughput, long convergence,
+                int maxDivergence, int divergence, long meanBytes, long maxBytes) {
+            this.writes = writes;
+            this.failed = failed;
+            this.dropped = dropped;
+            this.applied = applied;
+            this.throughput = throughput;
+            this.convergence = convergence;
+            this.maxDivergence = maxDivergence;
+            this.divergence = divergence;
+            this.meanBytes = meanBytes;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("writes %6d failed %4d dropped %4d applied %8d writes/s %7.1f "
+                    + "convergence %4d ms diverged %2d/%2d bytes %7d/%7d", writes, failed, dropped, applied,
+                    throughput, convergence, maxDivergence, divergence, meanBytes, maxBytes);
+        }
+    }
+
+    private static final class Event implements Comparable<Event> {
+        private static final Comparator<Event> ORDER = Comparator.<Event>comparingLong(event -> event.time)
+                .thenComparingLong(event -> event.sequence);
+        private final long time;
+        private final long sequence;
+        private final int node;
+        private final Runnable task;
+
+        private Event(long time, long sequence, int node, Runnable task) {
+            this.time = time;
+            this.sequence = sequence;
+            this.node = node;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return ORDER.compare(this, other);
+        }
+    }
+}
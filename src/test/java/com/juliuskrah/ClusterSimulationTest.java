@@ -0,0 +1,47 @@
+package com.juliuskrah;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.juliuskrah.ClusterSimulation.Result;
+import com.juliuskrah.ClusterSimulation.Scenario;
+import com.juliuskrah.ClusterSimulation.Workload;
+
+/**
+ * @author Julius Krah
+ * @see {@link ClusterSimulation Cluster simulation}
+ */
+public class ClusterSimulationTest {
+
+    @Test
+    @DisplayName("Stores converge after partitions heal")
+    void testConvergence() {
+        final Workload workload = new Workload("sets and lists", 0, 1, 1, 0);
+        final Result result = ClusterSimulation
+                .run(new Scenario(5, 4_000L, 25.0, 5L, 20L, 1_500L, 500L, workload, 7L));
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(result.writes).isPositive();
+        softly.assertThat(result.applied).isGreaterThan(result.writes);
+        softly.assertThat(result.maxDivergence).isPositive();
+        softly.assertThat(result.dropped).isZero();
+        softly.assertThat(result.divergence).isZero();
+        softly.assertThat(result.maxBytes).isGreaterThanOrEqualTo(result.meanBytes).isPositive();
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A seed always yields the same run")
+    void testReproducible() {
+        final Scenario scenario = new Scenario(4, 3_000L, 30.0, 2L, 30L, 1_000L, 400L, Workload.MIXED, 42L);
+        final Result result = ClusterSimulation.run(scenario);
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(ClusterSimulation.run(scenario)).isEqualToComparingFieldByField(result);
+        softly.assertThat(ClusterSimulation
+                .run(new Scenario(4, 3_000L, 30.0, 2L, 30L, 1_000L, 400L, Workload.MIXED, 43L)).writes)
+                .isNotEqualTo(result.writes);
+        softly.assertAll();
+    }
+}
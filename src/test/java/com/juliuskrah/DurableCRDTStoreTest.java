@@ -0,0 +1,154 @@
+package com.juliuskrah;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
+/**
+ * @author Julius Krah
+ * @see {@link DurableCRDTStore Durable store}
+ */
+public class DurableCRDTStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("A store replays its log after a crash")
+    void testReplay() {
+        // small segments make the log roll over
+        final Durability durability = Durability.of(4096, Duration.ofMillis(5), Long.MAX_VALUE);
+        try (DurableCRDTStore crdtStore1 = new DurableCRDTStore("ND-119", directory, durability,
+                Retention.ofDefault(), BinaryCodec.ofDefault())) {
+            crdtStore1.recover();
+            final var replica1 = crdtStore1.<Integer>createLWWElementSet("41-AD");
+            for (int i = 0; i < 1_000; i++) {
+                replica1.add(i);
+            }
+            replica1.remove(7);
+            final var rga1 = crdtStore1.<String>createRGA("42-AD");
+            rga1.add("STROKE_UP");
+            rga1.add("STROKE_DOWN");
+            rga1.add(0, "STROKE_LEFT");
+            crdtStore1.sync();
+
+            // the first store never closes, like a process that was killed
+            try (DurableCRDTStore crdtStore2 = new DurableCRDTStore("ND-120", directory.resolve("copy"))) {
+                copy(directory, directory.resolve("copy"));
+                crdtStore2.recover();
+                SoftAssertions softly = new SoftAssertions();
+                softly.assertThat(crdtStore2.<Integer>findLWWElementSet("41-AD").map(set -> set.get().size()))
+                        .containsExactly(999);
+                softly.assertThat(crdtStore2.<String>findRGA("42-AD").get()).containsExactly("STROKE_LEFT",
+                        "STROKE_UP", "STROKE_DOWN");
+                softly.assertAll();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("A store loads its snapshot and replays the log after it")
+    void testSnapshot() throws IOException {
+        try (DurableCRDTStore crdtStore1 = new DurableCRDTStore("ND-121", directory)) {
+            crdtStore1.recover();
+            final var register1 = crdtStore1.<String>createLWWRegister("43-AD");
+            register1.set("STROKE_UP");
+            crdtStore1.checkpoint();
+            register1.set("STROKE_DOWN");
+            crdtStore1.createLWWElementSet("44-AD").add("STROKE_LEFT");
+        }
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(count("snapshot-")).isEqualTo(1);
+
+        try (DurableCRDTStore crdtStore2 = new DurableCRDTStore("ND-121", directory)) {
+            crdtStore2.recover();
+            final var register2 = crdtStore2.<String>findLWWRegister("43-AD").get();
+            softly.assertThat(register2.get()).isEqualTo("STROKE_DOWN");
+            softly.assertThat(crdtStore2.findLWWElementSet("44-AD").get().get()).containsExactly("STROKE_LEFT");
+            register2.set("STROKE_RIGHT");
+            crdtStore2.checkpoint();
+            // the snapshot covers every segment but the one being written
+            softly.assertThat(count("wal-")).isEqualTo(1);
+        }
+        try (DurableCRDTStore crdtStore3 = new DurableCRDTStore("ND-121", directory)) {
+            crdtStore3.recover();
+            softly.assertThat(crdtStore3.<String>findLWWRegister("43-AD").get().get()).isEqualTo("STROKE_RIGHT");
+        }
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Peers accept the writes of a restarted store")
+    void testRestart() {
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-123");
+        try (DurableCRDTStore crdtStore1 = new DurableCRDTStore("ND-122", directory)) {
+            crdtStore1.recover();
+            crdtStore1.connect(crdtStore2);
+            crdtStore1.<String>createLWWElementSet("45-AD").add("STROKE_UP");
+            crdtStore1.disconnect(crdtStore2);
+        }
+        try (DurableCRDTStore crdtStore1 = new DurableCRDTStore("ND-122", directory)) {
+            crdtStore1.recover();
+            crdtStore1.connect(crdtStore2);
+            // numbered from 1 again, but under a new origin
+            crdtStore1.<String>findLWWElementSet("45-AD").get().add("STROKE_DOWN");
+            SoftAssertions softly = new SoftAssertions();
+            softly.assertThat(crdtStore2.<String>findLWWElementSet("45-AD").get().get())
+                    .containsExactlyInAnyOrder("STROKE_UP", "STROKE_DOWN");
+            softly.assertAll();
+        }
+    }
+
+    @Test
+    @DisplayName("A command that cannot be logged is reported and does not corrupt the log")
+    void testAppendFailure() {
+        try (DurableCRDTStore crdtStore1 = new DurableCRDTStore("ND-124", directory)) {
+            crdtStore1.recover();
+            final var register1 = crdtStore1.<Object>createLWWRegister("46-AD");
+            // no element codec for UUIDs
+            register1.set(UUID.randomUUID());
+            crdtStore1.<String>createLWWElementSet("47-AD").add("STROKE_UP");
+
+            SoftAssertions softly = new SoftAssertions();
+            softly.assertThatThrownBy(crdtStore1::sync).isInstanceOf(IllegalStateException.class)
+                    .hasCauseInstanceOf(IllegalArgumentException.class);
+            try (DurableCRDTStore crdtStore2 = new DurableCRDTStore("ND-125", directory.resolve("copy"))) {
+                copy(directory, directory.resolve("copy"));
+                crdtStore2.recover();
+                softly.assertThat(crdtStore2.<String>findLWWElementSet("47-AD").get().get())
+                        .containsExactly("STROKE_UP");
+            }
+            register1.set("STROKE_DOWN");
+            crdtStore1.checkpoint();
+            softly.assertThatCode(crdtStore1::sync).doesNotThrowAnyException();
+            softly.assertAll();
+        }
+    }
+
+    private long count(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+
+    private static void copy(Path source, Path target) {
+        try (Stream<Path> files = Files.list(source)) {
+            Files.createDirectories(target);
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                Files.copy(file, target.resolve(file.getFileName()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
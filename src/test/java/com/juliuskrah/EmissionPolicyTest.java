@@ -0,0 +1,265 @@
+package com.juliuskrah;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Sinks.EmissionException;
+
+/**
+ * @author Julius Krah
+ * @see {@link EmissionPolicy Emission Policy}
+ */
+public class EmissionPolicyTest {
+    private final CRDTStoreFactory factory = CRDTStoreFactory.getInstance();
+
+    @Test
+    @DisplayName("Concurrent writers do not fail")
+    void testConcurrentEmission() throws InterruptedException {
+        final ReplicationLog<Integer> log = new ReplicationLog<>(List::empty, Retention.ofDefault());
+        log.setPolicy(EmissionPolicy.park(16, Duration.ofSeconds(10)));
+        final AtomicInteger received = new AtomicInteger();
+        log.asFlux().subscribe(command -> received.incrementAndGet());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < 10_000; i++) {
+                    log.emit(() -> 1);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        softly.assertThat(received).hasValue(80_000);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A rejected write does not change local state")
+    void testRejectBeforeMutate() {
+        final ReplicationLog<String> log = new ReplicationLog<>(List::empty, Retention.ofDefault());
+        log.setPolicy(EmissionPolicy.reject(1));
+        final AtomicInteger mutations = new AtomicInteger();
+        final java.util.List<Throwable> errors = new ArrayList<>();
+        // while the first command is delivered, the subscriber writes twice. The first
+        // write waits in the outbox, the second finds it full
+        log.asFlux().filter("STROKE_UP"::equals).subscribe(command -> {
+            log.emit(() -> {
+                mutations.incrementAndGet();
+                return "STROKE_DOWN";
+            });
+            try {
+                log.emit(() -> {
+                    mutations.incrementAndGet();
+                    return "STROKE_LEFT";
+                });
+            } catch (EmissionException e) {
+                errors.add(e);
+            }
+        });
+        log.emit(() -> "STROKE_UP");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(mutations).hasValue(1);
+        softly.assertThat(errors).hasSize(1);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Drop-oldest keeps the latest commands")
+    void testDropOldest() {
+        final ReplicationLog<String> log = new ReplicationLog<>(List::empty, Retention.ofDefault());
+        log.setPolicy(EmissionPolicy.dropOldest(1));
+        final java.util.List<String> received = new ArrayList<>();
+        log.asFlux().subscribe(command -> {
+            received.add(command);
+            if ("STROKE_UP".equals(command)) {
+                log.emit(() -> "STROKE_DOWN");
+                log.emit(() -> "STROKE_LEFT");
+            }
+        });
+        log.emit(() -> "STROKE_UP");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(received).containsExactly("STROKE_UP", "STROKE_LEFT");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Relayed and published commands bypass the policy")
+    void testBypass() {
+        final ReplicationLog<String> log = new ReplicationLog<>(List::empty, Retention.ofDefault());
+        log.setPolicy(EmissionPolicy.dropOldest(1));
+        final java.util.List<String> received = new ArrayList<>();
+        final java.util.List<Object> dropped = new ArrayList<>();
+        Hooks.onNextDropped(dropped::add);
+        try {
+            log.asFlux().subscribe(command -> {
+                received.add(command);
+                if ("STROKE_UP".equals(command)) {
+                    log.relay("STROKE_RIGHT");
+                    log.publish(() -> "STROKE_DEFINED");
+                    log.emit(() -> "STROKE_DOWN");
+                    log.emit(() -> "STROKE_LEFT");
+                }
+            });
+            log.emit(() -> "STROKE_UP");
+        } finally {
+            Hooks.resetOnNextDropped();
+        }
+        final ReplicationLog<String> rejecting = new ReplicationLog<>(List::empty, Retention.ofDefault());
+        rejecting.setPolicy(EmissionPolicy.reject(1));
+        final java.util.List<String> published = new ArrayList<>();
+        rejecting.asFlux().subscribe(command -> {
+            published.add(command);
+            if ("STROKE_UP".equals(command)) {
+                rejecting.publish(() -> "STROKE_DOWN");
+                rejecting.publish(() -> "STROKE_LEFT");
+            }
+        });
+        rejecting.publish(() -> "STROKE_UP");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(received).containsExactly("STROKE_UP", "STROKE_RIGHT", "STROKE_DEFINED", "STROKE_LEFT");
+        softly.assertThat(dropped).containsExactly("STROKE_DOWN");
+        softly.assertThat(published).containsExactly("STROKE_UP", "STROKE_DOWN", "STROKE_LEFT");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Non-blocking writes replicate")
+    void testAsyncWrites() {
+        final CRDTStore crdtStore1 = factory.crdtStore("ND-71");
+        final CRDTStore crdtStore2 = factory.crdtStore("ND-72");
+        crdtStore1.connect(crdtStore2);
+
+        final var replica1 = crdtStore1.<String>createLWWElementGraph("19-AD");
+        final var replica2 = crdtStore2.<String>findLWWElementGraph("19-AD").get();
+
+        replica1.addVertexAsync("julius").block();
+        replica1.addVertexAsync("alice").block();
+        final Boolean added = replica1.addEdgeAsync("julius", "alice").block();
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(added).isTrue();
+        softly.assertThat(replica2.vertexSize()).isEqualTo(2);
+        softly.assertThat(replica2.findAdjacentVertices("julius")).extracting(Vertex::getValue)
+                .containsOnly("alice");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A subscriber that does not keep up holds up writes")
+    void testSlowSubscriber() throws Exception {
+        SoftAssertions softly = new SoftAssertions();
+        for (EmissionPolicy policy : List.of(EmissionPolicy.reject(2), EmissionPolicy.retry(2, 100))) {
+            final ReplicationLog<String> log = new ReplicationLog<>(List::empty, Retention.ofDefault());
+            log.setPolicy(policy);
+            final SlowSubscriber slow = new SlowSubscriber();
+            log.batchesSince(0L).subscribe(slow);
+            log.emit(() -> "STROKE_UP");
+            log.emit(() -> "STROKE_DOWN");
+            log.emit(() -> "STROKE_LEFT");
+
+            final AtomicInteger mutations = new AtomicInteger();
+            softly.assertThatThrownBy(() -> log.emit(() -> {
+                mutations.incrementAndGet();
+                return "STROKE_RIGHT";
+            })).isInstanceOf(EmissionException.class);
+            softly.assertThat(mutations).hasValue(0);
+            softly.assertThat(log.getLag()).isEqualTo(2L);
+
+            slow.request(2);
+            log.emit(() -> "STROKE_RIGHT");
+            softly.assertThat(slow.commands()).containsExactly("STROKE_UP", "STROKE_DOWN", "STROKE_LEFT");
+        }
+
+        final ReplicationLog<String> parking = new ReplicationLog<>(List::empty, Retention.ofDefault());
+        parking.setPolicy(EmissionPolicy.park(2, Duration.ofSeconds(10)));
+        final SlowSubscriber slow = new SlowSubscriber();
+        parking.batchesSince(0L).subscribe(slow);
+        parking.emit(() -> "STROKE_UP");
+        parking.emit(() -> "STROKE_DOWN");
+        parking.emit(() -> "STROKE_LEFT");
+        final CompletableFuture<Void> parked = CompletableFuture.runAsync(() -> parking.emit(() -> "STROKE_RIGHT"));
+        softly.assertThatThrownBy(() -> parked.get(100, TimeUnit.MILLISECONDS))
+                .isInstanceOf(TimeoutException.class);
+        slow.request(2);
+        parked.get(5, TimeUnit.SECONDS);
+        softly.assertThat(parking.getLag()).isEqualTo(1L);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Drop-oldest leaves a subscriber that does not keep up to catch up from the tail")
+    void testSlowSubscriberDropOldest() {
+        final ReplicationLog<String> log = new ReplicationLog<>(List::empty, Retention.ofDefault());
+        log.setPolicy(EmissionPolicy.dropOldest(2));
+        final SlowSubscriber slow = new SlowSubscriber();
+        log.batchesSince(0L).subscribe(slow);
+        log.emit(() -> "STROKE_UP");
+        log.emit(() -> "STROKE_DOWN");
+        log.emit(() -> "STROKE_LEFT");
+        log.emit(() -> "STROKE_RIGHT");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(log.getLag()).isZero();
+        softly.assertThat(slow.commands()).containsExactly("STROKE_UP");
+
+        slow.request(Long.MAX_VALUE);
+        log.emit(() -> "STROKE_CENTRE");
+        softly.assertThat(slow.commands()).containsExactly("STROKE_UP", "STROKE_DOWN", "STROKE_LEFT",
+                "STROKE_RIGHT", "STROKE_CENTRE");
+        softly.assertAll();
+    }
+
+    /**
+     * Requests one batch when it subscribes, then only what the test requests
+     */
+    private static final class SlowSubscriber extends BaseSubscriber<Seq<Tuple2<Long, String>>> {
+        private final java.util.List<Seq<Tuple2<Long, String>>> received = new CopyOnWriteArrayList<>();
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            request(1);
+        }
+
+        @Override
+        protected void hookOnNext(Seq<Tuple2<Long, String>> batch) {
+            received.add(batch);
+        }
+
+        private java.util.List<String> commands() {
+            return List.ofAll(received).flatMap(batch -> batch.map(Tuple2::_2)).asJava();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.juliuskrah;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * @author Julius Krah
+ * @see {@link MergeEvent Merge event}
+ */
+public class FlightRecorderTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Merges, replays and connections are recorded per CRDT and peer")
+    void testEvents() throws IOException {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-150");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-151");
+        final RGA<String> rga1 = crdtStore1.createRGA("76-AD");
+        rga1.add("STROKE_UP");
+        rga1.add("STROKE_DOWN");
+
+        final Path file = directory.resolve("crdt.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(MergeEvent.class).withoutThreshold();
+            recording.enable(ReplayEvent.class);
+            recording.enable(ConnectionEvent.class);
+            recording.start();
+            crdtStore2.connect(crdtStore1);
+            rga1.add("STROKE_LEFT");
+            crdtStore2.disconnect(crdtStore1);
+            recording.stop();
+            recording.dump(file);
+        }
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        final List<RecordedEvent> merges = ofType(events, "com.juliuskrah.Merge");
+        final List<RecordedEvent> replays = ofType(events, "com.juliuskrah.Replay");
+        final List<RecordedEvent> connections = ofType(events, "com.juliuskrah.Connection");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(merges).extracting(event -> event.getString("crdtId")).containsOnly("76-AD");
+        softly.assertThat(merges).filteredOn(event -> event.getBoolean("applied")).hasSize(3);
+        softly.assertThat(merges).extracting(event -> event.getClass("commandType").getName())
+                .containsOnly(RGA.AddRightCommand.class.getName());
+        softly.assertThat(replays).anySatisfy(event -> {
+            softly.assertThat(event.getString("nodeId")).isEqualTo("ND-151");
+            softly.assertThat(event.getString("crdtId")).isEqualTo("76-AD");
+            softly.assertThat(event.getInt("commands")).isEqualTo(2);
+        });
+        softly.assertThat(connections).extracting(event -> event.getString("nodeId") + "->"
+                + event.getString("peer") + ":" + event.getBoolean("connected"))
+                .contains("ND-151->ND-150:true", "ND-150->ND-151:true", "ND-151->ND-150:false");
+        softly.assertAll();
+    }
+
+    private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,71 @@
+package com.juliuskrah;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic in-process simulation of {@link Gossip}. Every node writes to
+ * its replica of a shared LWW-Element-Set, then all nodes run gossip rounds in
+ * lock-step until their trees are equal. Member selection uses a seeded
+ * {@link Random} and delivery is synchronous, so a seed always yields the same
+ * rounds and message count
+ *
+ * @author Julius Krah
+ */
+final class GossipSimulation {
+    private static final int MAX_ROUNDS = 1_000;
+
+    private GossipSimulation() {
+    }
+
+    /**
+     * @param nodes  number of stores
+     * @param fanout members each store contacts per round
+     * @param seed   seed of member selection
+     * @return rounds and messages until convergence
+     */
+    static Result run(int nodes, int fanout, long seed) {
+        final Random random = new Random(seed);
+        final List<InMemoryCRDTStore> stores = new ArrayList<>();
+        final List<Gossip> gossips = new ArrayList<>();
+        for (int node = 0; node < nodes; node++) {
+            final InMemoryCRDTStore store = new InMemoryCRDTStore("ND-" + node);
+            stores.add(store);
+            gossips.add(new Gossip(store, fanout, random));
+            store.<Integer>createLWWElementSet("GS-1").add(node);
+        }
+        for (Gossip gossip : gossips) {
+            for (InMemoryCRDTStore store : stores) {
+                gossip.join(store);
+            }
+        }
+
+        int rounds = 0;
+        long messages = 0L;
+        while (!converged(stores)) {
+            if (++rounds > MAX_ROUNDS) {
+                throw new IllegalStateException("no convergence after " + MAX_ROUNDS + " rounds");
+            }
+            for (Gossip gossip : gossips) {
+                messages += gossip.round();
+            }
+        }
+        return new Result(rounds, messages);
+    }
+
+    private static boolean converged(List<InMemoryCRDTStore> stores) {
+        final long hash = stores.get(0).merkleTree().getRootHash();
+        return stores.stream().allMatch(store -> store.merkleTree().getRootHash() == hash);
+    }
+
+    static final class Result {
+        final int rounds;
+        final long messages;
+
+        Result(int rounds, long messages) {
+            this.rounds = rounds;
+            this.messages = messages;
+        }
+    }
+}
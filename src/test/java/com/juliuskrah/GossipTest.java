@@ -0,0 +1,59 @@
+package com.juliuskrah;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Julius Krah
+ * @see {@link Gossip Gossip dissemination}
+ */
+public class GossipTest {
+
+    @Test
+    @DisplayName("Gossip spreads CRDTs to stores that are not connected")
+    void testPushPull() {
+        final CRDTStore crdtStore1 = new InMemoryCRDTStore("ND-97");
+        final CRDTStore crdtStore2 = new InMemoryCRDTStore("ND-98");
+        final CRDTStore crdtStore3 = new InMemoryCRDTStore("ND-99");
+        final Gossip gossip = new Gossip(crdtStore1, 2);
+        gossip.join(crdtStore2);
+        gossip.join(crdtStore3);
+
+        final var replica1 = crdtStore1.<String>createLWWElementSet("25-AD");
+        replica1.add("STROKE_LEFT");
+        final var register3 = crdtStore3.<String>createLWWRegister("26-AD");
+        register3.set("STROKE_UP");
+        gossip.round();
+
+        SoftAssertions softly = new SoftAssertions();
+        // pushed to both members
+        softly.assertThat(crdtStore2.<String>findLWWElementSet("25-AD").get().get()).containsExactly("STROKE_LEFT");
+        softly.assertThat(crdtStore3.<String>findLWWElementSet("25-AD").get().get()).containsExactly("STROKE_LEFT");
+        // pulled from a member
+        softly.assertThat(crdtStore1.<String>findLWWRegister("26-AD").get().get()).isEqualTo("STROKE_UP");
+
+        // at the latest in the next round the register reaches crdtStore2, then stores
+        // only exchange their trees
+        gossip.round();
+        softly.assertThat(crdtStore2.<String>findLWWRegister("26-AD").get().get()).isEqualTo("STROKE_UP");
+        final long messages = gossip.getMessages();
+        softly.assertThat(gossip.round()).isEqualTo(4L);
+        softly.assertThat(gossip.getMessages()).isEqualTo(messages + 4L);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Gossip converges in a logarithmic number of rounds")
+    void testConvergence() {
+        final GossipSimulation.Result small = GossipSimulation.run(10, 2, 42L);
+        final GossipSimulation.Result large = GossipSimulation.run(100, 2, 42L);
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(small.rounds).isLessThanOrEqualTo(2 * 4);
+        softly.assertThat(large.rounds).isLessThanOrEqualTo(2 * 7);
+        // same seed, same run
+        softly.assertThat(GossipSimulation.run(10, 2, 42L).messages).isEqualTo(small.messages);
+        softly.assertAll();
+    }
+}
@@ -4,6 +4,8 @@ import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import com.juliuskrah.ReplicationLog.Retention;
+
 /**
  * @author Julius Krah
  * @see {@link LWWElementGraph LWW Element Graph CRDT}
@@ -89,4 +91,35 @@ public class LWWElementGraphTest {
 
         softly.assertAll();
     }   
+
+    @Test
+    @DisplayName("A replica that joins late receives the edges and removals of the snapshot")
+    void testLateJoiner() {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-170");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-171");
+        final InMemoryCRDTStore crdtStore3 = new InMemoryCRDTStore("ND-172");
+        // the tail holds the last command only, a late replica receives the snapshot
+        crdtStore2.registerFactory(LWWElementGraph.class,
+                (nodeId, crdtId) -> new LWWElementGraph<>(nodeId, crdtId, Retention.ofSize(1)));
+        crdtStore1.connect(crdtStore2);
+
+        final var replica1 = crdtStore1.<String>createLWWElementGraph("89-AD");
+        replica1.addVertex("julius");
+        replica1.addVertex("james");
+        replica1.addVertex("deleteme");
+        replica1.addEdge("julius", "james");
+        replica1.removeVertex("deleteme");
+        replica1.addVertex("alice");
+        crdtStore3.connect(crdtStore2);
+
+        final var replica2 = crdtStore2.<String>findLWWElementGraph("89-AD").get();
+        final var replica3 = crdtStore3.<String>findLWWElementGraph("89-AD").get();
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(replica2.findAdjacentVertices("julius")).extracting(Vertex::getValue).containsOnly("james");
+        softly.assertThat(replica3.vertexSize()).isEqualTo(3);
+        softly.assertThat(replica3.containsVertex("deleteme")).isFalse();
+        softly.assertThat(replica3.findAdjacentVertices("julius")).extracting(Vertex::getValue).containsOnly("james");
+        softly.assertThat(replica3.findAdjacentVertices("james")).extracting(Vertex::getValue).containsOnly("julius");
+        softly.assertAll();
+    }
 }
@@ -1,5 +1,10 @@
 package com.juliuskrah;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -56,4 +61,42 @@ public class LWWRegisterTest {
         softly.assertAll();
     }
 
+    @Test
+    @DisplayName("Concurrent writes to both replicas converge")
+    void testConcurrentWrites() throws InterruptedException {
+        final CRDTStore crdtStore1 = factory.crdtStore("ND-23");
+        final CRDTStore crdtStore2 = factory.crdtStore("ND-24");
+        crdtStore1.connect(crdtStore2);
+
+        final var replica1 = crdtStore1.<String>createLWWRegister("14-AD");
+        final var replica2 = crdtStore2.<String>findLWWRegister("14-AD").get();
+        replica1.set("STROKE-0");
+
+        final AtomicBoolean unset = new AtomicBoolean();
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        executor.execute(() -> {
+            for (int i = 1; i <= 10_000; i++) {
+                replica1.set("STROKE-" + i);
+            }
+        });
+        executor.execute(() -> {
+            for (int i = 1; i <= 10_000; i++) {
+                replica2.set("STROKE-" + -i);
+            }
+        });
+        executor.execute(() -> {
+            for (int i = 0; i < 100_000; i++) {
+                if (replica2.get() == null) {
+                    unset.set(true);
+                }
+            }
+        });
+        executor.shutdown();
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        softly.assertThat(unset).isFalse();
+        softly.assertThat(replica1.get()).isEqualTo(replica2.get());
+        softly.assertAll();
+    }
 }
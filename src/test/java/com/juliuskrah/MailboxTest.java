@@ -0,0 +1,93 @@
+package com.juliuskrah;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * @author Julius Krah
+ * @see {@link Mailbox CRDT mailbox}
+ */
+public class MailboxTest {
+
+    @Test
+    @DisplayName("Concurrent writes on a shared scheduler are not lost")
+    void testConcurrentWrites() throws InterruptedException {
+        final Scheduler scheduler = Schedulers.newParallel("crdt", 4);
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-81");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-82");
+        crdtStore1.setExecutor(scheduler::schedule);
+        crdtStore2.setExecutor(scheduler::schedule);
+        crdtStore1.connect(crdtStore2);
+
+        final var replica1 = crdtStore1.<String>createLWWElementSet("20-AD");
+        final var replica2 = crdtStore2.<String>findLWWElementSet("20-AD").get();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int thread = 0; thread < 8; thread++) {
+            final int writer = thread;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < 500; i++) {
+                    replica1.add("W" + writer + "-" + i);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        softly.assertThat(replica1.get()).hasSize(4_000);
+        softly.assertThat(await(() -> replica2.get().size() == 4_000)).isTrue();
+        softly.assertThat(replica1.getMailbox().getProcessedCount()).isGreaterThanOrEqualTo(4_000);
+        softly.assertThat(replica1.getMailbox().getMaxLatency()).isGreaterThan(Duration.ZERO);
+        softly.assertThat(await(() -> replica2.getMailbox().getQueueDepth() == 0)).isTrue();
+        softly.assertAll();
+        scheduler.dispose();
+    }
+
+    @Test
+    @DisplayName("A task submitted from the same mailbox runs at once")
+    void testReentrantCall() {
+        final Mailbox mailbox = new Mailbox();
+        final StringBuilder trace = new StringBuilder();
+        mailbox.call(() -> {
+            trace.append("outer-");
+            mailbox.execute(() -> trace.append("queued-"));
+            return mailbox.call(() -> trace.append("inner-"));
+        });
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(trace).hasToString("outer-inner-queued-");
+        softly.assertThat(mailbox.getProcessedCount()).isEqualTo(2);
+        softly.assertThat(mailbox.getQueueDepth()).isZero();
+        softly.assertAll();
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (deadline - System.nanoTime() < 0) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package com.juliuskrah;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+
+import io.vavr.Tuple2;
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Julius Krah
+ * @see {@link MerkleTree Merkle tree anti-entropy}
+ */
+public class MerkleTreeTest {
+    private final CRDTStoreFactory factory = CRDTStoreFactory.getInstance();
+
+    @Test
+    @DisplayName("Trees find the leaves that differ")
+    void testDiverging() {
+        final MerkleTree<String> tree1 = MerkleTree.of(io.vavr.collection.List.range(0, 1_000).map(i -> "STROKE-" + i));
+        final MerkleTree<String> tree2 = MerkleTree.of(io.vavr.collection.List.range(0, 1_000).map(i -> "STROKE-" + i)
+                .replace("STROKE-7", "STROKE_UP"));
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(tree1.getRootHash()).isNotEqualTo(tree2.getRootHash());
+        softly.assertThat(tree1.diverging(tree1)).isEmpty();
+        softly.assertThat(tree1.diverging(tree2)).contains("STROKE-7");
+        softly.assertThat(tree1.diverging(tree2).size()).isLessThan(5);
+        softly.assertThat(tree2.diverging(tree1)).contains("STROKE_UP");
+        softly.assertThat(tree1.matching(tree2)).doesNotContain("STROKE-7");
+        softly.assertThat(tree1.matching(tree2).size()).isGreaterThan(995);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Commands are hashed by their encoding without the dot")
+    void testCommandHash() {
+        final LWWElementSet.SetCommand<String> command1 = new LWWElementSet.SetCommand<>("85-AD", "STROKE_UP",
+                new VectorClock("ND-163").increment(), 1);
+        final LWWElementSet.SetCommand<String> command2 = new LWWElementSet.SetCommand<>("85-AD", "STROKE_UP",
+                new VectorClock("ND-163").increment(), 1);
+        command1.stamp(new Dot("ND-163/1", 1));
+        command2.stamp(new Dot("ND-164/1", 7));
+        final LWWElementSet.SetCommand<String> removed = new LWWElementSet.SetCommand<>("85-AD", "STROKE_UP",
+                new VectorClock("ND-163").increment(), 2);
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(MerkleTree.of(List.of(command1)).getRootHash())
+                .isEqualTo(MerkleTree.of(List.of(command2)).getRootHash());
+        softly.assertThat(MerkleTree.of(List.of(command1)).getRootHash())
+                .isNotEqualTo(MerkleTree.of(List.of(removed)).getRootHash());
+        // the same command in a larger tree still hashes the same
+        softly.assertThat(MerkleTree.of(List.of(removed, command1)).diverging(MerkleTree.of(List.of(command2))))
+                .containsExactly(removed);
+        softly.assertThat(MerkleTree.hash(new byte[0])).isEqualTo(0xcbf29ce484222325L);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A replica sends only the diverging and missed commands")
+    void testReconcile() {
+        final var replica1 = new LWWElementSet<Integer>("ND-93", "22-AD");
+        final var replica2 = new LWWElementSet<Integer>("ND-94", "22-AD");
+        for (int i = 0; i < 1_000; i++) {
+            replica1.add(i);
+        }
+        // replica2 goes offline after the first 1000 elements
+        Flux.from(replica1).subscribe(replica2::receive).dispose();
+        final long sequence = replica1.digest().getSequence();
+        replica1.add(1_000);
+        replica1.add(1_001);
+
+        final List<Integer> diverging = received(replica1.reconcile(replica2.merkleTree()));
+        final List<Integer> missed = received(replica1.since(sequence));
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(replica2.get()).hasSize(1_000);
+        // the changes and the few commands that share a bucket with them
+        softly.assertThat(diverging).contains(1_000, 1_001);
+        softly.assertThat(diverging.size()).isLessThan(10);
+        softly.assertThat(missed).containsExactly(1_000, 1_001);
+        softly.assertThat(received(replica1.since(replica1.digest().getSequence()))).isEmpty();
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Reconnecting stores converge")
+    void testReconnect() {
+        final CRDTStore crdtStore1 = factory.crdtStore("ND-95");
+        final CRDTStore crdtStore2 = factory.crdtStore("ND-96");
+        crdtStore1.connect(crdtStore2);
+
+        final var replica1 = crdtStore1.<Integer>createLWWElementSet("23-AD");
+        final var replica2 = crdtStore2.<Integer>findLWWElementSet("23-AD").get();
+        final var register1 = crdtStore1.<String>createLWWRegister("24-AD");
+        final var register2 = crdtStore2.<String>findLWWRegister("24-AD").get();
+        for (int i = 0; i < 1_000; i++) {
+            replica1.add(i);
+        }
+        register1.set("STROKE_CENTRE");
+
+        crdtStore1.disconnect(crdtStore2);
+        replica1.add(1_000);
+        replica2.remove(0);
+        crdtStore1.connect(crdtStore2);
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(replica1.get()).hasSize(1_000).doesNotContain(0).contains(1_000);
+        softly.assertThat(replica2.get()).isEqualTo(replica1.get());
+        softly.assertThat(register2.get()).isEqualTo("STROKE_CENTRE");
+
+        // unchanged CRDTs still receive new writes
+        register1.set("STROKE_LEFT");
+        softly.assertThat(register2.get()).isEqualTo("STROKE_LEFT");
+        softly.assertAll();
+    }
+
+    /**
+     * Elements of the commands a publisher sends right away
+     */
+    private static List<Integer> received(Publisher<Tuple2<Long, LWWElementSet.SetCommand<Integer>>> publisher) {
+        final List<Integer> received = new ArrayList<>();
+        Flux.from(publisher).subscribe(command -> received.add(command._2.element)).dispose();
+        return received;
+    }
+}
@@ -0,0 +1,124 @@
+package com.juliuskrah;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Julius Krah
+ * @see {@link NetworkCRDTStore TCP replication}
+ */
+public class NetworkCRDTStoreTest {
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+    @Test
+    @DisplayName("Stores replicate over loopback")
+    void testReplicate() throws InterruptedException {
+        try (NetworkCRDTStore crdtStore1 = new NetworkCRDTStore("ND-105");
+                NetworkCRDTStore crdtStore2 = new NetworkCRDTStore("ND-106")) {
+            final InetSocketAddress address = crdtStore1.bind(LOOPBACK);
+            final var replica1 = crdtStore1.<Integer>createLWWElementSet("28-AD");
+            replica1.add(-1);
+            crdtStore2.connect(address);
+
+            for (int i = 0; i < 1_000; i++) {
+                replica1.add(i);
+            }
+            final var register2 = crdtStore2.<String>createLWWRegister("29-AD");
+            register2.set("STROKE_LEFT");
+
+            SoftAssertions softly = new SoftAssertions();
+            softly.assertThat(await(() -> crdtStore2.findLWWElementSet("28-AD").isDefined())).isTrue();
+            final var replica2 = crdtStore2.<Integer>findLWWElementSet("28-AD").get();
+            softly.assertThat(await(() -> replica2.get().size() == 1_001)).isTrue();
+            softly.assertThat(await(() -> crdtStore1.findLWWRegister("29-AD").isDefined())).isTrue();
+            final var register1 = crdtStore1.<String>findLWWRegister("29-AD").get();
+            softly.assertThat(await(() -> "STROKE_LEFT".equals(register1.get()))).isTrue();
+
+            // writes flow both ways, a value larger than the pooled buffers is split
+            // into several writes and reassembled
+            final String large = "STROKE_".repeat(20_000);
+            register1.set(large);
+            replica2.remove(0);
+            softly.assertThat(await(() -> large.equals(register2.get()))).isTrue();
+            softly.assertThat(await(() -> !replica1.get().contains(0))).isTrue();
+            softly.assertThat(crdtStore1.getConnectionCount()).isEqualTo(1);
+            softly.assertAll();
+        }
+    }
+
+    @Test
+    @DisplayName("Commands are relayed to stores that are not connected directly")
+    void testRelay() throws InterruptedException {
+        try (NetworkCRDTStore crdtStore1 = new NetworkCRDTStore("ND-107");
+                NetworkCRDTStore crdtStore2 = new NetworkCRDTStore("ND-108");
+                NetworkCRDTStore crdtStore3 = new NetworkCRDTStore("ND-109")) {
+            final InetSocketAddress address2 = crdtStore2.bind(LOOPBACK);
+            crdtStore1.connect(address2);
+            crdtStore3.connect(address2);
+
+            final var replica1 = crdtStore1.<String>createRGA("30-AD");
+            replica1.add("STROKE_UP");
+            replica1.add("STROKE_DOWN");
+
+            SoftAssertions softly = new SoftAssertions();
+            softly.assertThat(await(() -> crdtStore3.findRGA("30-AD").isDefined())).isTrue();
+            final var replica3 = crdtStore3.<String>findRGA("30-AD").get();
+            softly.assertThat(await(() -> replica3.size() == 2)).isTrue();
+            softly.assertThat(replica3).containsExactly("STROKE_UP", "STROKE_DOWN");
+
+            crdtStore1.disconnect(address2);
+            softly.assertThat(await(() -> crdtStore2.getConnectionCount() == 1)).isTrue();
+            replica1.add("STROKE_LEFT");
+            Thread.sleep(100);
+            softly.assertThat(replica3).doesNotContain("STROKE_LEFT");
+            softly.assertAll();
+        }
+    }
+
+    @Test
+    @DisplayName("A reconnect resumes after the last command received")
+    void testResume() throws InterruptedException {
+        try (NetworkCRDTStore crdtStore1 = new NetworkCRDTStore("ND-168");
+                NetworkCRDTStore crdtStore2 = new NetworkCRDTStore("ND-169")) {
+            final InetSocketAddress address = crdtStore1.bind(LOOPBACK);
+            final var replica1 = crdtStore1.<Integer>createLWWElementSet("88-AD");
+            for (int i = 0; i < 1_000; i++) {
+                replica1.add(i);
+            }
+            crdtStore2.connect(address);
+
+            SoftAssertions softly = new SoftAssertions();
+            softly.assertThat(await(() -> crdtStore2.findLWWElementSet("88-AD").isDefined())).isTrue();
+            final var replica2 = crdtStore2.<Integer>findLWWElementSet("88-AD").get();
+            softly.assertThat(await(() -> replica2.get().size() == 1_000)).isTrue();
+
+            crdtStore2.disconnect(address);
+            softly.assertThat(await(() -> crdtStore1.getConnectionCount() == 0)).isTrue();
+            final long received = crdtStore2.getCommandsReceived();
+            replica1.add(1_000);
+            crdtStore2.connect(address);
+
+            softly.assertThat(await(() -> replica2.get().size() == 1_001)).isTrue();
+            // the new command, not the snapshot of the set
+            softly.assertThat(crdtStore2.getCommandsReceived() - received).isLessThan(10L);
+            softly.assertAll();
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (deadline - System.nanoTime() < 0) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
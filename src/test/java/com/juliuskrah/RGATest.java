@@ -4,6 +4,9 @@ import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import io.vavr.Tuple2;
+import io.vavr.collection.Seq;
+
 /**
  * @author Julius Krah
  * @see {@link RGA RGA CRDT}
@@ -72,4 +75,28 @@ public class RGATest {
 
         softly.assertAll();
     }
+
+    @Test
+    @DisplayName("RGA commands that arrive before their anchor wait for it")
+    void testOutOfOrderDelivery() {
+        final RGA<String> replica1 = new RGA<>("ND-175", "92-AD");
+        final RGA<String> replica2 = new RGA<>("ND-176", "92-AD");
+        replica1.add("STROKE_UP");
+        replica1.add("STROKE_DOWN");
+        replica1.remove("STROKE_UP");
+        final Seq<RGA.RGACommand> sent = replica1.missed(0L).map(Tuple2::_2);
+
+        // the second vertex and the removal of the first arrive first
+        replica2.receive(sent.get(2));
+        replica2.receive(sent.get(1));
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(replica2).isEmpty();
+
+        replica2.receive(sent.get(0));
+        softly.assertThat(replica2).containsExactly("STROKE_DOWN");
+        // the relayed vertex comes before the commands that waited for it
+        softly.assertThat(replica2.missed(0L).map(Tuple2::_2)).containsExactly(sent.get(0), sent.get(2), sent.get(1));
+        softly.assertAll();
+    }
 }
@@ -0,0 +1,90 @@
+package com.juliuskrah;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Julius Krah
+ * @see {@link ReplicationChannel Multiplexed replication}
+ */
+public class ReplicationChannelTest {
+    private static final int CRDTS = 200;
+
+    @Test
+    @DisplayName("A peer receives the commands of all CRDTs on one subscription")
+    void testOneSubscriptionPerPeer() {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-131");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-132");
+        final InMemoryCRDTStore crdtStore3 = new InMemoryCRDTStore("ND-133");
+        for (int i = 0; i < CRDTS / 2; i++) {
+            crdtStore1.<Integer>createLWWRegister("57-AD-" + i).set(i);
+        }
+        crdtStore1.connect(crdtStore2);
+        crdtStore1.connect(crdtStore3);
+        for (int i = CRDTS / 2; i < CRDTS; i++) {
+            crdtStore1.<Integer>createLWWRegister("57-AD-" + i).set(i);
+        }
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(crdtStore1.getChannel().getSubscriberCount()).isEqualTo(2);
+        softly.assertThat(crdtStore2.getChannel().getSubscriberCount()).isEqualTo(1);
+        for (int i = 0; i < CRDTS; i++) {
+            softly.assertThat(crdtStore3.<Integer>findLWWRegister("57-AD-" + i).get().get()).isEqualTo(i);
+        }
+        crdtStore3.<Integer>findLWWRegister("57-AD-7").get().set(-7);
+        softly.assertThat(crdtStore2.<Integer>findLWWRegister("57-AD-7").get().get()).isEqualTo(-7);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A disconnected peer leaves the channel and catches up when it reconnects")
+    void testReconnect() {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-134");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-135");
+        crdtStore1.connect(crdtStore2);
+        final RGA<String> rga1 = crdtStore1.createRGA("58-AD");
+        rga1.add("STROKE_UP");
+        final RGA<String> rga2 = crdtStore2.<String>findRGA("58-AD").get();
+
+        crdtStore1.disconnect(crdtStore2);
+        rga1.add("STROKE_DOWN");
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(crdtStore1.getChannel().getSubscriberCount()).isZero();
+        softly.assertThat(rga2).containsExactly("STROKE_UP");
+
+        crdtStore1.connect(crdtStore2);
+        rga1.add("STROKE_LEFT");
+        softly.assertThat(rga2).containsExactly("STROKE_UP", "STROKE_DOWN", "STROKE_LEFT");
+        softly.assertThat(crdtStore2.getCursor(crdtStore1, "58-AD")).contains(rga1.digest().getSequence());
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A filtered peer receives the frames a CRDT sent before it completed")
+    void testFilterAfterComplete() {
+        final ReplicationChannel channel = new ReplicationChannel();
+        final LWWRegister<String> register1 = new LWWRegister<>("ND-165", "86-AD-1");
+        final LWWRegister<String> register2 = new LWWRegister<>("ND-165", "86-AD-2");
+        final int handle1 = channel.open(register1);
+        channel.open(register2);
+        final List<ReplicationChannel.Frame> received = new ArrayList<>();
+        channel.asFlux(ReplicationFilter.prefix("86-AD")).subscribe(frame -> {
+            received.add(frame);
+            if (frame.getHandle() != handle1 && !frame.isLast()) {
+                // queued behind this frame while the channel delivers it
+                register1.set("STROKE_DOWN");
+                register1.complete();
+            }
+        });
+        register2.set("STROKE_UP");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(received).filteredOn(frame -> frame.getHandle() == handle1)
+                .extracting(ReplicationChannel.Frame::isLast).containsExactly(false, true);
+        softly.assertAll();
+    }
+}
@@ -0,0 +1,55 @@
+package com.juliuskrah;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Julius Krah
+ * @see {@link ReplicationFilter Selective replication}
+ */
+public class ReplicationFilterTest {
+
+    @Test
+    @DisplayName("A store replicates only the CRDTs of a peer that match its filter")
+    void testPrefix() {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-136");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-137");
+        crdtStore1.<String>createLWWElementSet("tenant-42/59-AD").add("STROKE_UP");
+        crdtStore1.<String>createLWWElementSet("tenant-7/59-AD").add("STROKE_UP");
+        crdtStore2.connect(crdtStore1, ReplicationFilter.prefix("tenant-42/"));
+        crdtStore1.<String>createLWWRegister("tenant-42/60-AD").set("STROKE_DOWN");
+        crdtStore1.<String>createLWWRegister("tenant-7/60-AD").set("STROKE_DOWN");
+        crdtStore1.<String>findLWWElementSet("tenant-7/59-AD").get().add("STROKE_LEFT");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(crdtStore2.getCrdts().map(CRDT::getCrdtId)).containsExactlyInAnyOrder("tenant-42/59-AD",
+                "tenant-42/60-AD");
+        softly.assertThat(crdtStore2.<String>findLWWRegister("tenant-42/60-AD").get().get()).isEqualTo("STROKE_DOWN");
+        softly.assertThat(crdtStore2.getCursor(crdtStore1, "tenant-7/59-AD")).isEmpty();
+
+        // the peer still replicates everything of the filtered store
+        crdtStore2.<String>createLWWRegister("tenant-7/61-AD").set("STROKE_RIGHT");
+        softly.assertThat(crdtStore1.<String>findLWWRegister("tenant-7/61-AD").get().get()).isEqualTo("STROKE_RIGHT");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Filters select CRDTs by class and combine")
+    void testCrdtClass() {
+        final InMemoryCRDTStore crdtStore = new InMemoryCRDTStore("ND-138");
+        crdtStore.createLWWRegister("tenant-42/62-AD");
+        crdtStore.createRGA("tenant-42/63-AD");
+        crdtStore.createRGA("tenant-7/64-AD");
+        final ReplicationFilter filter = ReplicationFilter.crdtClass(RGA.class)
+                .and(ReplicationFilter.of(crdtId -> crdtId.startsWith("tenant-42/")));
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(Flux.<CRDTDefinition>from(subscriber -> crdtStore.subscribe(subscriber, filter))
+                .map(CRDTDefinition::getCrdtId).take(1).collectList().block()).containsExactly("tenant-42/63-AD");
+        softly.assertThat(ReplicationFilter.all().and(filter)).isSameAs(filter);
+        softly.assertAll();
+    }
+}
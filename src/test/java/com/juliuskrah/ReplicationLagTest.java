@@ -0,0 +1,100 @@
+package com.juliuskrah;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Julius Krah
+ * @see {@link ReplicationLag Replication lag}
+ */
+public class ReplicationLagTest {
+
+    @Test
+    @DisplayName("Stores track the lag of commands per peer and per CRDT")
+    void testLag() {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-152");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-153");
+        final LWWElementSet<String> replica1 = crdtStore1.createLWWElementSet("77-AD");
+        final RGA<String> rga1 = crdtStore1.createRGA("78-AD");
+        crdtStore2.connect(crdtStore1);
+
+        replica1.add("STROKE_UP");
+        rga1.add("STROKE_DOWN");
+        final LWWElementSet.SetCommand<String> late = new LWWElementSet.SetCommand<>("77-AD", "STROKE_LEFT",
+                new VectorClock("ND-154").increment(), 1);
+        late.stamp(new Dot("ND-154/1", 1), CRDTCommand.currentTime() - 10_000_000L);
+        crdtStore2.<String>findLWWElementSet("77-AD").get().receive(late);
+
+        final ReplicationLag lag = crdtStore2.getReplicationLag();
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(lag.getPeers()).containsOnly("ND-152", "ND-154");
+        softly.assertThat(lag.getLagging()).containsOnly("ND-154");
+        softly.assertThat(lag.isLagging("ND-152")).isFalse();
+        softly.assertThat(lag.getLastLag("ND-154").get()).isGreaterThanOrEqualTo(Duration.ofSeconds(10));
+        softly.assertThat(lag.getPeerLag("ND-152", 0.99)).isLessThan(Duration.ofSeconds(5));
+        softly.assertThat(lag.getCrdtLag("77-AD", 1.0)).isGreaterThanOrEqualTo(Duration.ofSeconds(10));
+        softly.assertThat(lag.getCrdtLag("78-AD", 0.5)).isLessThan(Duration.ofSeconds(5));
+        softly.assertThat(lag.getPeerLag("ND-155", 0.5)).isEqualTo(Duration.ZERO);
+        softly.assertThat(crdtStore1.getReplicationLag().getLagging()).containsOnly("ND-154");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Peers are flagged against a configurable threshold")
+    void testThreshold() {
+        final ReplicationLag lag = new InMemoryCRDTStore("ND-156").getReplicationLag();
+        final CRDTCommand command = new LWWRegister.SetCommand<>("79-AD", "STROKE_UP",
+                new VectorClock("ND-157").increment());
+        command.stamp(new Dot("ND-157/1", 1), CRDTCommand.currentTime() - 1_000_000L);
+        lag.record("79-AD", command);
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(lag.getThreshold()).isEqualTo(Duration.ofSeconds(5));
+        softly.assertThat(lag.isLagging("ND-157")).isFalse();
+        lag.setThreshold(Duration.ofMillis(500));
+        softly.assertThat(lag.getLagging()).containsOnly("ND-157");
+        softly.assertThatThrownBy(() -> lag.setThreshold(Duration.ofMillis(-1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        softly.assertThatThrownBy(() -> lag.getPeerLag("ND-157", 1.5)).isInstanceOf(IllegalArgumentException.class);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Own and restored commands are not lag, and lags are kept for a bounded number of CRDTs")
+    void testLiveCommandsOnly() {
+        final InMemoryCRDTStore crdtStore = new InMemoryCRDTStore("ND-160");
+        final LWWElementSet<String> replica = crdtStore.createLWWElementSet("82-AD");
+        final ReplicationLag lag = crdtStore.getReplicationLag();
+
+        // the store's own write, as a peer relays it back
+        final LWWElementSet.SetCommand<String> own = new LWWElementSet.SetCommand<>("82-AD", "STROKE_UP",
+                new VectorClock("ND-160").increment(), 1);
+        own.stamp(new Dot("ND-160/1", 1), CRDTCommand.currentTime() - 10_000_000L);
+        replica.receive(own);
+        // a peer's command restored from a snapshot
+        final LWWElementSet.SetCommand<String> restored = new LWWElementSet.SetCommand<>("82-AD", "STROKE_DOWN",
+                new VectorClock("ND-161").increment(), 1);
+        restored.stamp(new Dot("ND-161/1", 1), CRDTCommand.currentTime() - 10_000_000L);
+        replica.restore(List.of(restored));
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(replica.get()).containsExactlyInAnyOrder("STROKE_UP", "STROKE_DOWN");
+        softly.assertThat(lag.getPeers()).isEmpty();
+
+        for (int crdt = 0; crdt <= ReplicationLag.MAX_CRDTS; crdt++) {
+            final CRDTCommand command = new LWWRegister.SetCommand<>("83-AD-" + crdt, "STROKE_LEFT",
+                    new VectorClock("ND-161").increment());
+            command.stamp(new Dot("ND-161/1", crdt + 2), CRDTCommand.currentTime() - 1_000_000L);
+            lag.record("83-AD-" + crdt, command);
+        }
+        softly.assertThat(lag.getCrdtLag("83-AD-0", 1.0)).isGreaterThan(Duration.ZERO);
+        softly.assertThat(lag.getCrdtLag("83-AD-" + ReplicationLag.MAX_CRDTS, 1.0)).isEqualTo(Duration.ZERO);
+        lag.forget("83-AD-0");
+        softly.assertThat(lag.getCrdtLag("83-AD-0", 1.0)).isEqualTo(Duration.ZERO);
+        softly.assertAll();
+    }
+}
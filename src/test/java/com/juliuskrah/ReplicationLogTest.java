@@ -0,0 +1,70 @@
+package com.juliuskrah;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.juliuskrah.LWWElementSet.LWWBias;
+import com.juliuskrah.ReplicationLog.Retention;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Julius Krah
+ * @see {@link ReplicationLog Replication Log}
+ */
+public class ReplicationLogTest {
+    private final CRDTStoreFactory factory = CRDTStoreFactory.getInstance();
+
+    @Test
+    @DisplayName("Replication log sends a snapshot followed by a bounded tail")
+    void testBoundedRetention() {
+        // retain only the last 2 commands
+        final var replica1 = new LWWElementSet<String>("ND-51", "16-AD", LWWBias.ADD, Retention.ofSize(2));
+        replica1.add("STROKE_UP");
+        replica1.add("STROKE_DOWN");
+        replica1.add("STROKE_LEFT");
+        replica1.remove("STROKE_UP");
+
+        final List<LWWElementSet.SetCommand<String>> received = new ArrayList<>();
+        Flux.from(replica1).subscribe(received::add);
+
+        SoftAssertions softly = new SoftAssertions();
+        // 3 commands in the snapshot (2 adds, 1 remove) and 2 commands in the tail
+        softly.assertThat(received).hasSize(5);
+        softly.assertThat(received.subList(0, 3)).extracting(command -> command.element) //
+                .containsExactlyInAnyOrder("STROKE_UP", "STROKE_DOWN", "STROKE_LEFT");
+        softly.assertThat(received.subList(3, 5)).extracting(command -> command.element) //
+                .containsExactly("STROKE_LEFT", "STROKE_UP");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A late replica converges from the snapshot")
+    @SuppressWarnings("unchecked")
+    void testLateReplica() {
+        final CRDTStore crdtStore1 = factory.crdtStore("ND-52");
+        final CRDTStore crdtStore2 = factory.crdtStore("ND-53");
+        crdtStore1.registerFactory(RGA.class, (nodeId, crdtId) -> new RGA<>(nodeId, crdtId, Retention.ofSize(1)));
+
+        final var replica1 = crdtStore1.<String>createRGA("17-AD");
+        replica1.add("STROKE_UP");
+        replica1.add("STROKE_DOWN");
+        replica1.add("STROKE_LEFT");
+        replica1.remove("STROKE_DOWN");
+
+        // connect after the commands fell out of the tail
+        crdtStore1.connect(crdtStore2);
+        final var replica2 = crdtStore2.<String>findRGA("17-AD").get();
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(replica2).containsExactly("STROKE_UP", "STROKE_LEFT");
+
+        replica2.add("STROKE_RIGHT");
+        softly.assertThat(replica1).containsExactly("STROKE_UP", "STROKE_LEFT", "STROKE_RIGHT");
+        softly.assertAll();
+    }
+}
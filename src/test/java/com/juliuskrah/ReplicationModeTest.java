@@ -0,0 +1,75 @@
+package com.juliuskrah;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Julius Krah
+ * @see {@link ReplicationMode Replication modes}
+ */
+public class ReplicationModeTest {
+
+    @Test
+    @DisplayName("Replicas converge with blocking replication loops")
+    void testBlockingMode() throws InterruptedException {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-91");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-92");
+        crdtStore1.setReplicationMode(ReplicationMode.BLOCKING);
+        crdtStore2.setReplicationMode(ReplicationMode.BLOCKING);
+        crdtStore1.connect(crdtStore2);
+
+        final var replica1 = crdtStore1.<String>createRGA("21-AD");
+        final var replica2 = crdtStore2.<String>findRGA("21-AD").get();
+        for (int i = 0; i < 1_000; i++) {
+            replica1.add("STROKE-" + i);
+        }
+        replica2.add(0, "STROKE_UP");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(await(() -> replica1.size() == 1_001 && replica2.size() == 1_001)).isTrue();
+        softly.assertThat(replica1).containsExactlyElementsOf(replica2);
+
+        crdtStore1.disconnect(crdtStore2);
+        replica1.add("STROKE_DOWN");
+        Thread.sleep(100);
+        softly.assertThat(replica2).doesNotContain("STROKE_DOWN");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Blocking replication loops do not start a thread per CRDT")
+    void testBlockingModeThreads() throws InterruptedException {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-166");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-167");
+        crdtStore1.setReplicationMode(ReplicationMode.BLOCKING);
+        crdtStore2.setReplicationMode(ReplicationMode.BLOCKING);
+        crdtStore1.connect(crdtStore2);
+        final int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        for (int i = 0; i < 500; i++) {
+            crdtStore1.<String>createLWWRegister("87-AD-" + i).set("STROKE_UP");
+        }
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(await(() -> crdtStore2.<String>findLWWRegister("87-AD-499")
+                .map(register -> "STROKE_UP".equals(register.get())).getOrElse(false))).isTrue();
+        softly.assertThat(ManagementFactory.getThreadMXBean().getThreadCount() - threads).isLessThan(500);
+        softly.assertAll();
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (deadline - System.nanoTime() < 0) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
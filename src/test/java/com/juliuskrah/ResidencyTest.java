@@ -0,0 +1,111 @@
+package com.juliuskrah;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
+/**
+ * @author Julius Krah
+ * @see {@link Residency Lazy stores}
+ */
+public class ResidencyTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("A lazy store evicts the least recently used CRDT and loads it again")
+    void testEvict() {
+        final InMemoryCRDTStore crdtStore = new InMemoryCRDTStore("ND-124", Retention.ofDefault(),
+                Residency.lazy(2));
+        crdtStore.<String>createLWWRegister("46-AD").set("STROKE_UP");
+        crdtStore.<Integer>createLWWElementSet("47-AD").add(47);
+        crdtStore.findCrdt("46-AD");
+        crdtStore.<String>createRGA("48-AD").add("STROKE_DOWN");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(crdtStore.getCrdts().map(CRDT::getCrdtId)).containsExactlyInAnyOrder("46-AD", "48-AD");
+        softly.assertThat(crdtStore.<Integer>findLWWElementSet("47-AD").get().get()).containsExactly(47);
+        softly.assertThat(crdtStore.getCrdts().map(CRDT::getCrdtId)).containsExactlyInAnyOrder("47-AD", "48-AD");
+        softly.assertThat(crdtStore.<String>findLWWRegister("46-AD").get().get()).isEqualTo("STROKE_UP");
+        softly.assertThat(crdtStore.<String>findRGA("48-AD").get()).containsExactly("STROKE_DOWN");
+        softly.assertThat(crdtStore.findCrdt("49-AD")).isEmpty();
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A lazy store with LFU evicts the CRDT looked up least often")
+    void testLeastFrequentlyUsed() {
+        final InMemoryCRDTStore crdtStore = new InMemoryCRDTStore("ND-125", Retention.ofDefault(),
+                Residency.lazy(2, Residency.Policy.LFU, BinaryCodec.ofDefault()));
+        crdtStore.<String>createLWWRegister("50-AD").set("STROKE_UP");
+        crdtStore.findCrdt("50-AD");
+        crdtStore.findCrdt("50-AD");
+        crdtStore.<String>createLWWRegister("51-AD").set("STROKE_DOWN");
+        crdtStore.<String>createLWWRegister("52-AD").set("STROKE_LEFT");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(crdtStore.getCrdts().map(CRDT::getCrdtId)).containsExactlyInAnyOrder("50-AD", "52-AD");
+        softly.assertThat(crdtStore.<String>findLWWRegister("51-AD").get().get()).isEqualTo("STROKE_DOWN");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A lazy store instantiates the CRDTs of a peer when they are used")
+    void testLazyPeer() {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-126");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-127", Retention.ofDefault(),
+                Residency.lazy(1));
+        final LWWElementSet<String> replica1 = crdtStore1.createLWWElementSet("53-AD");
+        replica1.add("STROKE_UP");
+        crdtStore1.<String>createLWWRegister("54-AD").set("STROKE_DOWN");
+        crdtStore1.connect(crdtStore2);
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(crdtStore2.getCrdts()).isEmpty();
+        softly.assertThat(crdtStore2.<String>findLWWElementSet("53-AD").get().get()).containsExactly("STROKE_UP");
+
+        // evicted, then instantiated by the next command of the peer
+        softly.assertThat(crdtStore2.<String>findLWWRegister("54-AD").get().get()).isEqualTo("STROKE_DOWN");
+        softly.assertThat(crdtStore2.getCrdts().map(CRDT::getCrdtId)).containsExactly("54-AD");
+        replica1.add("STROKE_LEFT");
+        softly.assertThat(crdtStore2.getCrdts().map(CRDT::getCrdtId)).containsExactly("53-AD");
+        softly.assertThat(crdtStore2.<String>findLWWElementSet("53-AD").get().get())
+                .containsExactlyInAnyOrder("STROKE_UP", "STROKE_LEFT");
+
+        // the peer follows the instance loaded after an eviction
+        crdtStore2.findCrdt("54-AD");
+        crdtStore2.<String>findLWWElementSet("53-AD").get().add("STROKE_RIGHT");
+        softly.assertThat(replica1.get()).containsExactlyInAnyOrder("STROKE_UP", "STROKE_LEFT", "STROKE_RIGHT");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A lazy store spills encoded CRDTs beyond its heap budget to disk")
+    void testSpill() throws IOException {
+        final InMemoryCRDTStore crdtStore = new InMemoryCRDTStore("ND-162", Retention.ofDefault(),
+                Residency.lazy(1, Residency.Policy.LRU, BinaryCodec.ofDefault(), directory, 0L));
+        crdtStore.<String>createLWWRegister("84-AD").set("STROKE_UP");
+        crdtStore.<String>createLWWRegister("85-AD").set("STROKE_DOWN");
+
+        SoftAssertions softly = new SoftAssertions();
+        try (var files = Files.list(directory)) {
+            softly.assertThat(files.count()).isEqualTo(1L);
+        }
+        softly.assertThat(crdtStore.<String>findLWWRegister("84-AD").get().get()).isEqualTo("STROKE_UP");
+        softly.assertThat(crdtStore.<String>findLWWRegister("85-AD").get().get()).isEqualTo("STROKE_DOWN");
+        // loading deletes the file, the CRDT evicted meanwhile has one
+        try (var files = Files.list(directory)) {
+            softly.assertThat(files.count()).isEqualTo(1L);
+        }
+        softly.assertThatThrownBy(() -> Residency.lazy(1, Residency.Policy.LRU, BinaryCodec.ofDefault(), directory,
+                -1L)).isInstanceOf(IllegalArgumentException.class);
+        softly.assertAll();
+    }
+}
@@ -0,0 +1,127 @@
+package com.juliuskrah;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.vavr.control.Option;
+
+/**
+ * @author Julius Krah
+ * @see {@link SeenSet Duplicate suppression}
+ */
+public class SeenSetTest {
+
+    @Test
+    @DisplayName("Seen set keeps a watermark and the dots above it")
+    void testWatermark() {
+        final SeenSet seen = new SeenSet("ND-100");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(seen.add(new Dot("ND-101", 1))).isTrue();
+        softly.assertThat(seen.add(new Dot("ND-101", 3))).isTrue();
+        softly.assertThat(seen.getWatermark("ND-101")).isEqualTo(1L);
+        softly.assertThat(seen.contains(new Dot("ND-101", 2))).isFalse();
+        softly.assertThat(seen.add(new Dot("ND-101", 3))).isFalse();
+        softly.assertThat(seen.add(new Dot("ND-101", 2))).isTrue();
+        softly.assertThat(seen.getWatermark("ND-101")).isEqualTo(3L);
+        softly.assertThat(seen.add(new Dot("ND-101", 1))).isFalse();
+        // local writes are seen as soon as they are made
+        final Dot dot = seen.next();
+        softly.assertThat(dot).isEqualTo(new Dot("ND-100", 1));
+        softly.assertThat(seen.add(dot)).isFalse();
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Seen set never drops a dot it has not seen")
+    void testGaps() {
+        final SeenSet seen = new SeenSet("ND-100");
+        // every other dot leaves more gaps than the set keeps
+        for (long sequence = 2; sequence <= 4_000; sequence += 2) {
+            seen.add(new Dot("ND-105", sequence));
+        }
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(seen.getWatermark("ND-105")).isZero();
+        softly.assertThat(seen.contains(new Dot("ND-105", 1))).isFalse();
+        softly.assertThat(seen.add(new Dot("ND-105", 1))).isTrue();
+        softly.assertThat(seen.add(new Dot("ND-105", 3))).isTrue();
+        softly.assertThat(seen.getWatermark("ND-105")).isEqualTo(1L);
+        // runs of consecutive dots take one entry
+        for (long sequence = 1; sequence <= 4_000; sequence++) {
+            seen.add(new Dot("ND-106", sequence == 2 ? 4_001 : sequence));
+        }
+        softly.assertThat(seen.contains(new Dot("ND-106", 2))).isFalse();
+        softly.assertThat(seen.add(new Dot("ND-106", 3_000))).isFalse();
+        softly.assertThat(seen.add(new Dot("ND-106", 2))).isTrue();
+        softly.assertThat(seen.getWatermark("ND-106")).isEqualTo(4_001L);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Seen set keeps the latest incarnation of each node")
+    void testIncarnations() {
+        final SeenSet seen = new SeenSet(SeenSet.incarnation("ND-100"));
+        final String older = SeenSet.incarnation("ND-107");
+        final String newer = SeenSet.incarnation("ND-107");
+        seen.add(new Dot(older, 1));
+        seen.add(new Dot(newer, 1));
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(SeenSet.startOf(newer)).isGreaterThan(SeenSet.startOf(older));
+        softly.assertThat(SeenSet.nodeOf(newer)).isEqualTo("ND-107");
+        softly.assertThat(seen.getWatermark(newer)).isEqualTo(1L);
+        softly.assertThat(seen.getWatermark(older)).isZero();
+        // a late dot of the older incarnation is applied and does not replace the newer
+        softly.assertThat(seen.add(new Dot(older, 1))).isTrue();
+        softly.assertThat(seen.add(new Dot(newer, 1))).isFalse();
+        for (int restart = 0; restart < 100; restart++) {
+            seen.add(new Dot(SeenSet.incarnation("ND-107"), 1));
+        }
+        softly.assertThat(seen.size()).isEqualTo(1);
+        seen.next();
+        softly.assertThat(seen.size()).isEqualTo(2);
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("Commands relayed around a cycle are applied once")
+    void testCycle() {
+        final AtomicInteger processed1 = new AtomicInteger();
+        final AtomicInteger processed2 = new AtomicInteger();
+        final AtomicInteger processed3 = new AtomicInteger();
+        final var replica1 = counting("ND-102", processed1);
+        final var replica2 = counting("ND-103", processed2);
+        final var replica3 = counting("ND-104", processed3);
+        // replica3 hears from replica1 directly and through replica2, replica1 hears its
+        // own writes back
+        replica2.subscribeTo(replica1);
+        replica3.subscribeTo(replica1);
+        replica3.subscribeTo(replica2);
+        replica1.subscribeTo(replica3);
+
+        replica1.add("STROKE_LEFT");
+        replica1.add("STROKE_UP");
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(replica2.get()).containsExactlyInAnyOrder("STROKE_LEFT", "STROKE_UP");
+        softly.assertThat(replica3.get()).containsExactlyInAnyOrder("STROKE_LEFT", "STROKE_UP");
+        softly.assertThat(processed1).hasValue(0);
+        softly.assertThat(processed2).hasValue(2);
+        softly.assertThat(processed3).hasValue(2);
+        softly.assertAll();
+    }
+
+    private static LWWElementSet<String> counting(String nodeId, AtomicInteger processed) {
+        return new LWWElementSet<>(nodeId, "27-AD") {
+            @Override
+            protected Option<? extends SetCommand<String>> processCommand(SetCommand<String> command) {
+                processed.incrementAndGet();
+                return super.processCommand(command);
+            }
+        };
+    }
+}
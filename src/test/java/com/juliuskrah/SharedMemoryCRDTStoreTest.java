@@ -0,0 +1,116 @@
+package com.juliuskrah;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
+/**
+ * @author Julius Krah
+ * @see {@link SharedMemoryCRDTStore Shared memory replication}
+ */
+public class SharedMemoryCRDTStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Stores replicate through memory-mapped files")
+    void testReplicate() throws InterruptedException {
+        final Path file1 = directory.resolve("ND-114.ring");
+        final Path file2 = directory.resolve("ND-115.ring");
+        // a small ring wraps around and makes the writer wait for the reader
+        try (SharedMemoryCRDTStore crdtStore1 = new SharedMemoryCRDTStore("ND-114", file1, 64 * 1024,
+                Retention.ofDefault(), BinaryCodec.ofDefault());
+                SharedMemoryCRDTStore crdtStore2 = new SharedMemoryCRDTStore("ND-115", file2)) {
+            final var replica1 = crdtStore1.<Integer>createLWWElementSet("38-AD");
+            replica1.add(-1);
+            crdtStore2.connect(file1);
+            crdtStore1.connect(file2);
+
+            for (int i = 0; i < 5_000; i++) {
+                replica1.add(i);
+            }
+            final var register2 = crdtStore2.<String>createLWWRegister("39-AD");
+            register2.set("STROKE_LEFT");
+
+            SoftAssertions softly = new SoftAssertions();
+            softly.assertThat(await(() -> crdtStore2.findLWWElementSet("38-AD").isDefined())).isTrue();
+            final var replica2 = crdtStore2.<Integer>findLWWElementSet("38-AD").get();
+            softly.assertThat(await(() -> replica2.get().size() == 5_001)).isTrue();
+            softly.assertThat(await(() -> crdtStore1.findLWWRegister("39-AD").isDefined())).isTrue();
+            final var register1 = crdtStore1.<String>findLWWRegister("39-AD").get();
+            softly.assertThat(await(() -> "STROKE_LEFT".equals(register1.get()))).isTrue();
+
+            // nearly half of the small ring
+            final String large = "STROKE_".repeat(4_000);
+            register1.set(large);
+            replica2.remove(0);
+            softly.assertThat(await(() -> large.equals(register2.get()))).isTrue();
+            softly.assertThat(await(() -> !replica1.get().contains(0))).isTrue();
+
+            // larger than the whole ring, sent in fragments
+            final String huge = "STROKE_".repeat(15_000);
+            register1.set(huge);
+            softly.assertThat(await(() -> huge.equals(register2.get()))).isTrue();
+            register1.set("STROKE_RIGHT");
+            softly.assertThat(await(() -> "STROKE_RIGHT".equals(register2.get()))).isTrue();
+            softly.assertThat(crdtStore1.getConnectionCount()).isEqualTo(1);
+            softly.assertAll();
+        }
+    }
+
+    @Test
+    @DisplayName("A store that connects late receives the history")
+    void testJoin() throws InterruptedException {
+        final Path file1 = directory.resolve("ND-116.ring");
+        try (SharedMemoryCRDTStore crdtStore1 = new SharedMemoryCRDTStore("ND-116", file1);
+                SharedMemoryCRDTStore crdtStore2 = new SharedMemoryCRDTStore("ND-117",
+                        directory.resolve("ND-117.ring"));
+                SharedMemoryCRDTStore crdtStore3 = new SharedMemoryCRDTStore("ND-118",
+                        directory.resolve("ND-118.ring"))) {
+            final var replica1 = crdtStore1.<String>createRGA("40-AD");
+            replica1.add("STROKE_UP");
+            crdtStore2.connect(file1);
+            replica1.add("STROKE_DOWN");
+
+            SoftAssertions softly = new SoftAssertions();
+            softly.assertThat(await(() -> crdtStore2.findRGA("40-AD").isDefined())).isTrue();
+            final var replica2 = crdtStore2.<String>findRGA("40-AD").get();
+            softly.assertThat(await(() -> replica2.size() == 2)).isTrue();
+
+            // the stream starts over for the new reader, the first applies it again
+            crdtStore3.connect(file1);
+            replica1.add("STROKE_LEFT");
+            softly.assertThat(await(() -> crdtStore3.findRGA("40-AD").isDefined())).isTrue();
+            final var replica3 = crdtStore3.<String>findRGA("40-AD").get();
+            softly.assertThat(await(() -> replica3.size() == 3)).isTrue();
+            softly.assertThat(replica3).containsExactly("STROKE_UP", "STROKE_DOWN", "STROKE_LEFT");
+            softly.assertThat(await(() -> replica2.size() == 3)).isTrue();
+            softly.assertThat(replica2).containsExactly("STROKE_UP", "STROKE_DOWN", "STROKE_LEFT");
+
+            crdtStore2.disconnect(file1);
+            softly.assertThat(crdtStore2.getConnectionCount()).isZero();
+            replica1.add("STROKE_RIGHT");
+            softly.assertThat(await(() -> replica3.size() == 4)).isTrue();
+            softly.assertThat(replica2.size()).isEqualTo(3);
+            softly.assertAll();
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (deadline - System.nanoTime() < 0) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,99 @@
+package com.juliuskrah;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.juliuskrah.ReplicationLog.Retention;
+
+/**
+ * @author Julius Krah
+ * @see {@link StoreSnapshot Snapshot export and import}
+ */
+public class StoreSnapshotTest {
+
+    @Test
+    @DisplayName("A new store imports the CRDTs another store exported")
+    void testExportImport() {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-139");
+        final LWWElementSet<Integer> set1 = crdtStore1.createLWWElementSet("65-AD");
+        for (int i = 0; i < 100; i++) {
+            set1.add(i);
+        }
+        set1.remove(42);
+        final RGA<String> rga1 = crdtStore1.createRGA("66-AD");
+        rga1.add("STROKE_UP");
+        rga1.add(0, "STROKE_DOWN");
+        final LWWElementGraph<String> graph1 = crdtStore1.createLWWElementGraph("67-AD");
+        graph1.addVertex("julius");
+        graph1.addVertex("krah");
+        graph1.addEdge("julius", "krah");
+        final byte[] snapshot = export(crdtStore1);
+
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-140");
+        crdtStore2.<String>createLWWRegister("68-AD").set("STROKE_LEFT");
+        crdtStore2.importSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot)));
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(crdtStore2.getCrdts().map(CRDT::getCrdtId)).containsExactlyInAnyOrder("65-AD", "66-AD",
+                "67-AD", "68-AD");
+        softly.assertThat(crdtStore2.<Integer>findLWWElementSet("65-AD").get().get()).hasSize(99)
+                .doesNotContain(42);
+        softly.assertThat(crdtStore2.<String>findRGA("66-AD").get()).containsExactly("STROKE_DOWN", "STROKE_UP");
+        softly.assertThat(crdtStore2.<String>findLWWElementGraph("67-AD").get().findPath("julius", "krah"))
+                .containsExactly("julius", "krah");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A lazy store exports the CRDTs it evicted")
+    void testExportLazy() {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-141", Retention.ofDefault(),
+                Residency.lazy(1));
+        crdtStore1.<String>createLWWRegister("69-AD").set("STROKE_UP");
+        crdtStore1.<String>createLWWRegister("70-AD").set("STROKE_DOWN");
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-142");
+        crdtStore2.importSnapshot(Channels.newChannel(new ByteArrayInputStream(export(crdtStore1))));
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(crdtStore2.<String>findLWWRegister("69-AD").get().get()).isEqualTo("STROKE_UP");
+        softly.assertThat(crdtStore2.<String>findLWWRegister("70-AD").get().get()).isEqualTo("STROKE_DOWN");
+        softly.assertAll();
+    }
+
+    @Test
+    @DisplayName("A corrupt snapshot is rejected")
+    void testCorrupt() {
+        final InMemoryCRDTStore crdtStore1 = new InMemoryCRDTStore("ND-143");
+        crdtStore1.<String>createLWWRegister("71-AD").set("STROKE_UP");
+        final byte[] snapshot = export(crdtStore1);
+        snapshot[snapshot.length - 12] ^= 0x7f;
+        // length of the first frame beyond the cap
+        final byte[] oversized = export(crdtStore1);
+        oversized[8] = 0x7f;
+
+        final InMemoryCRDTStore crdtStore2 = new InMemoryCRDTStore("ND-144");
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThatThrownBy(
+                () -> crdtStore2.importSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot))))
+                .isInstanceOf(UncheckedIOException.class);
+        softly.assertThatThrownBy(
+                () -> crdtStore2.importSnapshot(Channels.newChannel(new ByteArrayInputStream(new byte[3]))))
+                .isInstanceOf(UncheckedIOException.class);
+        softly.assertThatThrownBy(
+                () -> crdtStore2.importSnapshot(Channels.newChannel(new ByteArrayInputStream(oversized))))
+                .isInstanceOf(UncheckedIOException.class).hasMessageContaining("Corrupt snapshot frame");
+        softly.assertAll();
+    }
+
+    private static byte[] export(CRDTStore crdtStore) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        crdtStore.exportSnapshot(Channels.newChannel(out));
+        return out.toByteArray();
+    }
+}